@@ -0,0 +1,160 @@
+package kr.motd.maven.sphinx;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures {@link SphinxUtil#convertLineSeparators(File)} against a generated output directory which resembles
+ * the HTML output of Sphinx, i.e. many small HTML pages and a few large JavaScript files such as
+ * the search index.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class LineSeparatorBenchmark {
+
+    /**
+     * The line separator used in the generated files. {@code MIXED} uses both {@code "\n"} and {@code "\r\n"}.
+     */
+    @Param({ "LF", "CRLF", "MIXED" })
+    private String lineSeparator;
+
+    @Param({ "200" })
+    private int pages;
+
+    private File dir;
+    private byte[][] contents;
+    private String[] names;
+
+    @Setup(Level.Trial)
+    public void generate() throws IOException {
+        dir = Files.createTempDirectory("sphinx-line-separator-benchmark").toFile();
+
+        final Random random = new Random(42);
+        contents = new byte[pages + 2][];
+        names = new String[pages + 2];
+        for (int i = 0; i < pages; i++) {
+            names[i] = "page" + i + ".html";
+            contents[i] = html(random, i);
+        }
+        names[pages] = "searchindex.js";
+        contents[pages] = javaScript(random, 4000);
+        names[pages + 1] = "_static/doctools.js";
+        contents[pages + 1] = javaScript(random, 1000);
+    }
+
+    @Setup(Level.Invocation)
+    public void reset() throws IOException {
+        for (int i = 0; i < names.length; i++) {
+            final File f = new File(dir, names[i]);
+            f.getParentFile().mkdirs();
+            Files.write(f.toPath(), contents[i]);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void delete() {
+        delete(dir);
+    }
+
+    @Benchmark
+    public void convertLineSeparators() throws IOException {
+        SphinxUtil.convertLineSeparators(dir);
+    }
+
+    private byte[] html(Random random, int page) {
+        final StringBuilder buf = new StringBuilder(32768);
+        append(buf, random, "<!DOCTYPE html>");
+        append(buf, random, "<html lang=\"en\">");
+        append(buf, random, "<head><meta charset=\"utf-8\" /><title>Page " + page + "</title>");
+        append(buf, random, "<link rel=\"stylesheet\" href=\"_static/pygments.css\" type=\"text/css\" />");
+        append(buf, random, "</head><body><div class=\"document\"><div class=\"body\" role=\"main\">");
+        final int paragraphs = 20 + random.nextInt(40);
+        for (int i = 0; i < paragraphs; i++) {
+            append(buf, random, "<div class=\"section\" id=\"section-" + i + "\">");
+            append(buf, random, "<h2>Section " + i + "<a class=\"headerlink\" href=\"#section-" + i +
+                                "\" title=\"Permalink to this headline\">¶</a></h2>");
+            append(buf, random, "<p>" + words(random, 40 + random.nextInt(80)) + "</p>");
+            if (random.nextInt(4) == 0) {
+                append(buf, random, "<div class=\"highlight-java notranslate\"><div class=\"highlight\"><pre>");
+                for (int j = 0; j < 10; j++) {
+                    append(buf, random, "<span class=\"kd\">final</span> <span class=\"n\">String</span> " +
+                                        "<span class=\"n\">s" + j + "</span> = <span class=\"s\">&quot;" +
+                                        words(random, 3) + "&quot;</span>;");
+                }
+                append(buf, random, "</pre></div></div>");
+            }
+            append(buf, random, "</div>");
+        }
+        append(buf, random, "</div></div></body></html>");
+        return buf.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private byte[] javaScript(Random random, int lines) {
+        final StringBuilder buf = new StringBuilder(lines * 64);
+        for (int i = 0; i < lines; i++) {
+            append(buf, random, "  var v" + i + " = {\"" + words(random, 2) + "\": [" + random.nextInt(1000) +
+                                ", " + random.nextInt(1000) + "]};");
+        }
+        return buf.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private void append(StringBuilder buf, Random random, String line) {
+        buf.append(line);
+        switch (lineSeparator) {
+            case "LF":
+                buf.append('\n');
+                break;
+            case "CRLF":
+                buf.append("\r\n");
+                break;
+            default:
+                buf.append(random.nextBoolean() ? "\n" : "\r\n");
+        }
+    }
+
+    private static String words(Random random, int count) {
+        final StringBuilder buf = new StringBuilder(count * 6);
+        for (int i = 0; i < count; i++) {
+            if (i != 0) {
+                buf.append(' ');
+            }
+            final int length = 2 + random.nextInt(8);
+            for (int j = 0; j < length; j++) {
+                buf.append((char) ('a' + random.nextInt(26)));
+            }
+        }
+        return buf.toString();
+    }
+
+    private static void delete(File f) {
+        final File[] children = f.listFiles();
+        if (children != null) {
+            for (File c : children) {
+                delete(c);
+            }
+        }
+        f.delete();
+    }
+}
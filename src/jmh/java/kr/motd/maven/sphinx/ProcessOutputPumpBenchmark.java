@@ -0,0 +1,69 @@
+package kr.motd.maven.sphinx;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures how fast {@link ProcessOutputPump} decodes and delivers the output of a process which resembles
+ * the output of Sphinx, i.e. many short progress lines on the standard output and a few warnings on
+ * the standard error.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class ProcessOutputPumpBenchmark {
+
+    @Param({ "10000" })
+    private int lines;
+
+    @Param({ "16", "1024" })
+    private int capacity;
+
+    private byte[] stdout;
+    private byte[] stderr;
+
+    @Setup
+    public void setup() {
+        final StringBuilder out = new StringBuilder(lines * 64);
+        final StringBuilder err = new StringBuilder();
+        for (int i = 0; i < lines; i++) {
+            out.append("reading sources... [").append(i * 100 / lines).append("%] docs/page")
+               .append(i).append('\n');
+            if (i % 100 == 0) {
+                err.append("/src/docs/page").append(i).append(".rst:12: WARNING: undefined label: foo-")
+                   .append(i).append('\n');
+            }
+        }
+        stdout = out.toString().getBytes(StandardCharsets.UTF_8);
+        stderr = err.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public boolean pump(final Blackhole bh) throws Exception {
+        final ProcessOutputPump pump = new ProcessOutputPump(new SphinxRunnerListenerAdapter() {
+            @Override
+            public void onProcessOutput(String line, boolean error) {
+                bh.consume(line);
+            }
+        }, capacity);
+        pump.start(new ByteArrayInputStream(stdout), new ByteArrayInputStream(stderr));
+        return pump.await(1, TimeUnit.MINUTES);
+    }
+}
@@ -0,0 +1,87 @@
+package kr.motd.maven.sphinx;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the throughput of {@link Sha256} with the SHA-256 implementation of the JDK.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class Sha256Benchmark {
+
+    @Param({ "1024", "65536", "1048576" })
+    private int size;
+
+    /**
+     * The number of bytes passed to each update call, which mimics the buffer size used when
+     * the data is read from a stream.
+     */
+    @Param({ "8192" })
+    private int chunkSize;
+
+    private byte[] data;
+    private ByteBuffer directData;
+    private byte[] sum;
+
+    @Setup
+    public void setup() {
+        data = new byte[size];
+        new Random(42).nextBytes(data);
+        directData = ByteBuffer.allocateDirect(size);
+        directData.put(data).flip();
+        sum = new byte[32];
+    }
+
+    @Benchmark
+    public byte[] sha256() {
+        final Sha256 digest = new Sha256();
+        for (int i = 0; i < data.length; i += chunkSize) {
+            digest.update(data, i, Math.min(chunkSize, data.length - i));
+        }
+        digest.finishDigest(sum, 0);
+        return sum;
+    }
+
+    @Benchmark
+    public byte[] sha256DirectBuffer() {
+        final Sha256 digest = new Sha256();
+        digest.update(directData.duplicate());
+        digest.finishDigest(sum, 0);
+        return sum;
+    }
+
+    @Benchmark
+    public byte[] messageDigestDirectBuffer() throws Exception {
+        final MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        digest.update(directData.duplicate());
+        return digest.digest();
+    }
+
+    @Benchmark
+    public byte[] messageDigest() throws Exception {
+        final MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        for (int i = 0; i < data.length; i += chunkSize) {
+            digest.update(data, i, Math.min(chunkSize, data.length - i));
+        }
+        return digest.digest();
+    }
+}
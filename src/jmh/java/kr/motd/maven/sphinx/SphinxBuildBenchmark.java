@@ -0,0 +1,377 @@
+package kr.motd.maven.sphinx;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Measures whole documentation builds against a {@link SyntheticSphinxProject}. Each scenario runs Sphinx
+ * the same way {@link SphinxMojo} does and reports the median wall-clock time and the time of each build phase:
+ * <ul>
+ *   <li>{@code cold-file} - a clean build with the binary given as a {@code file:} URL</li>
+ *   <li>{@code cold-http} - a clean build with an empty binary cache, downloading the binary from
+ *       a local HTTP server</li>
+ *   <li>{@code warm} - a build without any changes since the previous build</li>
+ *   <li>{@code incremental} - a build after one page has been modified</li>
+ * </ul>
+ *
+ * <p>The options are given as {@code --name=value} arguments:</p>
+ * <ul>
+ *   <li>{@code binary} - the path to the Sphinx binary; downloaded from
+ *       {@link SphinxRunner#defaultBinaryUrl()} if unspecified</li>
+ *   <li>{@code pages}, {@code crossReferences}, {@code diagrams}, {@code assets} - the size of the project</li>
+ *   <li>{@code iterations} - the number of builds per scenario</li>
+ *   <li>{@code workDir} - the directory where the project is generated and built</li>
+ *   <li>{@code result} - the JSON file where the result is written to</li>
+ *   <li>{@code baseline} - the JSON file written by a previous run; the benchmark fails if a scenario
+ *       became slower than the baseline by more than {@code tolerance}</li>
+ *   <li>{@code tolerance} - the allowed slowdown, e.g. {@code 0.2} for 20%</li>
+ * </ul>
+ */
+public final class SphinxBuildBenchmark {
+
+    private static final String[] SCENARIOS = { "cold-file", "cold-http", "warm", "incremental" };
+
+    /**
+     * Regressions smaller than this are ignored because they are within the noise of process startup.
+     */
+    private static final long MIN_REGRESSION_MILLIS = 200;
+
+    private static final Pattern BASELINE_PATTERN =
+            Pattern.compile("\"([^\"]+)\"\\s*:\\s*\\{\\s*\"medianMillis\"\\s*:\\s*(\\d+)");
+
+    public static void main(String[] args) throws Exception {
+        final Map<String, String> options = parseOptions(args);
+        final File workDir = new File(option(options, "workDir", "target/build-benchmark")).getAbsoluteFile();
+        final int pages = Integer.parseInt(option(options, "pages", "200"));
+        final int crossReferences = Integer.parseInt(option(options, "crossReferences", "5"));
+        final int diagrams = Integer.parseInt(option(options, "diagrams", "10"));
+        final int assets = Integer.parseInt(option(options, "assets", "20"));
+        final int iterations = Integer.parseInt(option(options, "iterations", "3"));
+        final File resultFile = new File(option(options, "result", "target/build-benchmark.json"));
+        final String baseline = option(options, "baseline", "");
+        final double tolerance = Double.parseDouble(option(options, "tolerance", "0.2"));
+
+        final File binary = resolveBinary(option(options, "binary", ""), workDir);
+        final SyntheticSphinxProject project =
+                new SyntheticSphinxProject(pages, crossReferences, diagrams, assets, 42);
+
+        final File sourceDir = new File(workDir, "source");
+        deleteRecursively(sourceDir);
+        project.generate(sourceDir);
+        log("Generated " + pages + " pages, " + diagrams + " diagrams and " + assets + " assets in " + sourceDir);
+
+        final Map<String, ScenarioResult> results = new LinkedHashMap<>();
+        final HttpServer server = startServer(binary);
+        try {
+            final String fileUrl = binary.toURI().toString();
+            final String httpUrl = "http://127.0.0.1:" + server.getAddress().getPort() + "/sphinx";
+            for (String scenario : SCENARIOS) {
+                final ScenarioResult result = new ScenarioResult();
+                for (int i = 0; i < iterations; i++) {
+                    final File outputDir = new File(workDir, "output");
+                    final File doctreeDir = new File(workDir, "doctree");
+                    final File cacheDir = new File(workDir, "binary-cache");
+                    switch (scenario) {
+                        case "cold-file":
+                            deleteRecursively(outputDir);
+                            deleteRecursively(doctreeDir);
+                            break;
+                        case "cold-http":
+                            deleteRecursively(outputDir);
+                            deleteRecursively(doctreeDir);
+                            deleteRecursively(cacheDir);
+                            break;
+                        case "warm":
+                            break;
+                        case "incremental":
+                            project.touch(sourceDir, i % pages);
+                            break;
+                    }
+
+                    result.add(build("cold-http".equals(scenario) ? httpUrl : fileUrl,
+                                     cacheDir, sourceDir, outputDir, doctreeDir));
+                }
+                results.put(scenario, result);
+                log(String.format(Locale.US, "%-12s median: %6d ms, runs: %s",
+                                  scenario, result.medianMillis(), result.millis));
+            }
+        } finally {
+            server.stop(0);
+        }
+
+        writeResult(resultFile, options, results);
+        log("Wrote the result to " + resultFile);
+
+        if (!baseline.isEmpty()) {
+            if (!compare(readBaseline(new File(baseline)), results, tolerance)) {
+                System.exit(1);
+            }
+        }
+    }
+
+    private static BuildResult build(String binaryUrl, File cacheDir, File sourceDir,
+                                     File outputDir, File doctreeDir) throws IOException {
+        final SphinxBuildTimings timings = new SphinxBuildTimings(0);
+        final StringBuilder output = new StringBuilder();
+        final SphinxRunnerListener listener = new CompositeSphinxRunnerListener(
+                timings, new SphinxRunnerListenerAdapter() {
+                    @Override
+                    public synchronized void onProcessOutput(String line, boolean error) {
+                        output.append(line).append('\n');
+                    }
+                });
+
+        // Use the same arguments as SphinxMojo with its default configuration, which is verbose.
+        // SphinxBuildTimings needs the progress messages to tell the phases apart.
+        final List<String> args = new ArrayList<>(Arrays.asList(
+                "-b", "html", "-v", "-d", doctreeDir.getPath(), "-n",
+                sourceDir.getPath(), outputDir.getPath()));
+
+        final long startTime = System.nanoTime();
+        final SphinxRunner runner = new SphinxRunner(binaryUrl, cacheDir, Collections.<String, String>emptyMap(),
+                                                     null, SphinxRunner.findPlantUmlJar(), listener);
+        final int exitCode = runner.run(sourceDir, args);
+        if (exitCode != 0) {
+            System.err.print(output);
+            throw new IllegalStateException("Sphinx exited with " + exitCode);
+        }
+        SphinxUtil.convertLineSeparators(outputDir, listener);
+        final long elapsedNanos = System.nanoTime() - startTime;
+
+        final Map<String, Long> phaseMillis = new LinkedHashMap<>();
+        for (Entry<String, Long> e : timings.phaseNanos().entrySet()) {
+            phaseMillis.put(e.getKey(), TimeUnit.NANOSECONDS.toMillis(e.getValue()));
+        }
+        return new BuildResult(TimeUnit.NANOSECONDS.toMillis(elapsedNanos), phaseMillis);
+    }
+
+    /**
+     * Returns the specified binary, or downloads the default binary into the work directory.
+     */
+    private static File resolveBinary(String path, File workDir) {
+        if (!path.isEmpty()) {
+            final File binary = new File(path).getAbsoluteFile();
+            if (!binary.isFile()) {
+                throw new IllegalArgumentException("binary not found: " + binary);
+            }
+            return binary;
+        }
+
+        final Path[] resolved = new Path[1];
+        final SphinxRunner runner = new SphinxRunner(
+                SphinxRunner.defaultBinaryUrl(), new File(workDir, "default-binary-cache"),
+                Collections.<String, String>emptyMap(), null, null, new SphinxRunnerListenerAdapter() {
+                    @Override
+                    public void onBinaryResolved(Path binary, boolean cached) {
+                        resolved[0] = binary;
+                    }
+                });
+        runner.run(workDir, Collections.singletonList("--version"));
+        return resolved[0].toFile();
+    }
+
+    /**
+     * Starts an HTTP server which serves the binary and its checksum, standing in for the release server.
+     */
+    private static HttpServer startServer(File binary) throws IOException {
+        final byte[] content = Files.readAllBytes(binary.toPath());
+        final byte[] sha256 = (SphinxUtil.sha256(content) + '\n').getBytes(StandardCharsets.US_ASCII);
+        final HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                final String path = exchange.getRequestURI().getPath();
+                final byte[] body;
+                if ("/sphinx".equals(path)) {
+                    body = content;
+                } else if ("/sphinx.sha256".equals(path)) {
+                    body = sha256;
+                } else {
+                    body = null;
+                }
+
+                if (body == null) {
+                    exchange.sendResponseHeaders(404, -1);
+                } else {
+                    exchange.sendResponseHeaders(200, body.length);
+                    try (OutputStream out = exchange.getResponseBody()) {
+                        out.write(body);
+                    }
+                }
+                exchange.close();
+            }
+        });
+        server.start();
+        return server;
+    }
+
+    private static void writeResult(File file, Map<String, String> options,
+                                    Map<String, ScenarioResult> results) throws IOException {
+        final StringBuilder buf = new StringBuilder(1024);
+        buf.append("{\n  \"options\": {");
+        boolean first = true;
+        for (Entry<String, String> e : options.entrySet()) {
+            buf.append(first ? " " : ", ");
+            Json.quote(buf, e.getKey()).append(": ");
+            Json.quote(buf, e.getValue());
+            first = false;
+        }
+        buf.append(" },\n  \"scenarios\": {");
+        first = true;
+        for (Entry<String, ScenarioResult> e : results.entrySet()) {
+            final ScenarioResult r = e.getValue();
+            buf.append(first ? "\n" : ",\n").append("    ");
+            Json.quote(buf, e.getKey()).append(": { \"medianMillis\": ").append(r.medianMillis());
+            buf.append(", \"millis\": ").append(r.millis);
+            buf.append(", \"phases\": {");
+            boolean firstPhase = true;
+            for (Entry<String, Long> p : r.medianPhaseMillis().entrySet()) {
+                buf.append(firstPhase ? " " : ", ");
+                Json.quote(buf, p.getKey()).append(": ").append(p.getValue());
+                firstPhase = false;
+            }
+            buf.append(" } }");
+            first = false;
+        }
+        buf.append("\n  }\n}\n");
+
+        final File parent = file.getAbsoluteFile().getParentFile();
+        parent.mkdirs();
+        Files.write(file.toPath(), buf.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Reads the median time of each scenario from a result file.
+     */
+    private static Map<String, Long> readBaseline(File file) throws IOException {
+        final String content = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+        final Map<String, Long> medians = new LinkedHashMap<>();
+        final Matcher m = BASELINE_PATTERN.matcher(content);
+        while (m.find()) {
+            medians.put(m.group(1), Long.parseLong(m.group(2)));
+        }
+        if (medians.isEmpty()) {
+            throw new IOException("no scenarios found in the baseline: " + file);
+        }
+        return medians;
+    }
+
+    /**
+     * Compares the result with the baseline.
+     *
+     * @return {@code false} if any scenario regressed
+     */
+    private static boolean compare(Map<String, Long> baseline, Map<String, ScenarioResult> results,
+                                   double tolerance) {
+        boolean passed = true;
+        for (Entry<String, ScenarioResult> e : results.entrySet()) {
+            final Long baselineMillis = baseline.get(e.getKey());
+            if (baselineMillis == null) {
+                log(String.format(Locale.US, "%-12s not in the baseline", e.getKey()));
+                continue;
+            }
+            final long millis = e.getValue().medianMillis();
+            final double change = baselineMillis > 0 ? (double) (millis - baselineMillis) / baselineMillis : 0;
+            final boolean regressed = change > tolerance && millis - baselineMillis >= MIN_REGRESSION_MILLIS;
+            log(String.format(Locale.US, "%-12s %6d ms -> %6d ms (%+.1f%%)%s", e.getKey(), baselineMillis,
+                              millis, change * 100, regressed ? " REGRESSION" : ""));
+            if (regressed) {
+                passed = false;
+            }
+        }
+        return passed;
+    }
+
+    private static Map<String, String> parseOptions(String[] args) {
+        final Map<String, String> options = new LinkedHashMap<>();
+        for (String a : args) {
+            final int equalsIdx = a.indexOf('=');
+            if (!a.startsWith("--") || equalsIdx < 0) {
+                throw new IllegalArgumentException("invalid option: " + a + " (expected: --name=value)");
+            }
+            options.put(a.substring(2, equalsIdx), a.substring(equalsIdx + 1));
+        }
+        return options;
+    }
+
+    private static String option(Map<String, String> options, String name, String defaultValue) {
+        final String value = options.get(name);
+        return value != null ? value : defaultValue;
+    }
+
+    private static void deleteRecursively(File f) {
+        final File[] children = f.listFiles();
+        if (children != null) {
+            for (File c : children) {
+                deleteRecursively(c);
+            }
+        }
+        f.delete();
+    }
+
+    private static void log(String msg) {
+        System.out.println("[build-benchmark] " + msg);
+    }
+
+    private SphinxBuildBenchmark() {}
+
+    private static final class BuildResult {
+        final long millis;
+        final Map<String, Long> phaseMillis;
+
+        BuildResult(long millis, Map<String, Long> phaseMillis) {
+            this.millis = millis;
+            this.phaseMillis = phaseMillis;
+        }
+    }
+
+    private static final class ScenarioResult {
+        final List<Long> millis = new ArrayList<>();
+        final List<BuildResult> builds = new ArrayList<>();
+
+        void add(BuildResult build) {
+            millis.add(build.millis);
+            builds.add(build);
+        }
+
+        long medianMillis() {
+            return median().millis;
+        }
+
+        Map<String, Long> medianPhaseMillis() {
+            return median().phaseMillis;
+        }
+
+        private BuildResult median() {
+            final List<BuildResult> sorted = new ArrayList<>(builds);
+            Collections.sort(sorted, new Comparator<BuildResult>() {
+                @Override
+                public int compare(BuildResult o1, BuildResult o2) {
+                    return Long.compare(o1.millis, o2.millis);
+                }
+            });
+            return sorted.get(sorted.size() / 2);
+        }
+    }
+}
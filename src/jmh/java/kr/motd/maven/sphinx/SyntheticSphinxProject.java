@@ -0,0 +1,182 @@
+package kr.motd.maven.sphinx;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Random;
+
+/**
+ * Generates a Sphinx project of the configurable size, with cross-references between pages, PlantUML diagrams
+ * and static assets, so that the cost of a documentation build can be measured repeatably.
+ */
+final class SyntheticSphinxProject {
+
+    private final int pages;
+    private final int crossReferences;
+    private final int diagrams;
+    private final int assets;
+    private final long seed;
+
+    /**
+     * Creates a new instance.
+     *
+     * @param pages the number of pages
+     * @param crossReferences the number of references to other pages in each page
+     * @param diagrams the number of PlantUML diagrams, spread across the pages
+     * @param assets the number of files in {@code _static}, half of them CSS and the other half JavaScript
+     * @param seed the seed of the random text, so that the same project is generated every time
+     */
+    SyntheticSphinxProject(int pages, int crossReferences, int diagrams, int assets, long seed) {
+        if (pages <= 0) {
+            throw new IllegalArgumentException("pages: " + pages + " (expected: > 0)");
+        }
+        this.pages = pages;
+        this.crossReferences = crossReferences;
+        this.diagrams = diagrams;
+        this.assets = assets;
+        this.seed = seed;
+    }
+
+    /**
+     * Writes the project into the specified directory.
+     */
+    void generate(File dir) throws IOException {
+        final Random random = new Random(seed);
+        write(new File(dir, "conf.py"),
+              "# -*- coding: utf-8 -*-\n" +
+              "import os\n" +
+              "project = u'synthetic'\n" +
+              "master_doc = 'index'\n" +
+              "extensions = ['sphinxcontrib.plantuml']\n" +
+              "html_static_path = ['_static']\n" +
+              "plantuml = os.getenv('plantuml')\n" +
+              "plantuml_output_format = 'svg'\n");
+
+        final StringBuilder index = new StringBuilder();
+        index.append("Synthetic documentation\n=======================\n\n");
+        index.append(".. toctree::\n   :maxdepth: 1\n\n");
+        for (int i = 0; i < pages; i++) {
+            index.append("   ").append(pageName(i)).append('\n');
+        }
+        write(new File(dir, "index.rst"), index.toString());
+
+        for (int i = 0; i < pages; i++) {
+            write(new File(dir, pageName(i) + ".rst"), page(random, i));
+        }
+
+        final File staticDir = new File(dir, "_static");
+        for (int i = 0; i < assets; i++) {
+            if (i % 2 == 0) {
+                write(new File(staticDir, "asset" + i + ".css"), css(random));
+            } else {
+                write(new File(staticDir, "asset" + i + ".js"), javaScript(random));
+            }
+        }
+    }
+
+    /**
+     * Modifies the specified page as if a user has edited it, so that an incremental build has to rebuild it.
+     */
+    void touch(File dir, int page) throws IOException {
+        final File f = new File(dir, pageName(page) + ".rst");
+        final String content = new String(Files.readAllBytes(f.toPath()), StandardCharsets.UTF_8);
+        write(f, content + "\nEdited at " + System.nanoTime() + ".\n");
+    }
+
+    static String pageName(int page) {
+        return "page" + page;
+    }
+
+    private String page(Random random, int page) {
+        final String title = "Page " + page;
+        final StringBuilder buf = new StringBuilder(8192);
+        buf.append(".. _").append(pageName(page)).append(":\n\n");
+        buf.append(title).append('\n');
+        appendUnderline(buf, '=', title.length());
+
+        final int sections = 3 + random.nextInt(5);
+        for (int i = 0; i < sections; i++) {
+            final String sectionTitle = "Section " + page + '.' + i;
+            buf.append('\n').append(sectionTitle).append('\n');
+            appendUnderline(buf, '-', sectionTitle.length());
+            buf.append('\n').append(words(random, 60 + random.nextInt(120))).append("\n\n");
+
+            buf.append(".. code-block:: java\n\n");
+            for (int j = 0; j < 5; j++) {
+                buf.append("    final String s").append(j).append(" = \"").append(words(random, 3)).append("\";\n");
+            }
+            buf.append('\n');
+        }
+
+        if (crossReferences > 0) {
+            buf.append("\nSee also\n--------\n\n");
+            for (int i = 0; i < crossReferences; i++) {
+                buf.append("- :ref:`").append(pageName(random.nextInt(pages))).append("`\n");
+            }
+        }
+
+        // Spread the diagrams evenly across the pages.
+        final int firstDiagram = (int) ((long) page * diagrams / pages);
+        final int lastDiagram = (int) ((long) (page + 1) * diagrams / pages);
+        for (int i = firstDiagram; i < lastDiagram; i++) {
+            buf.append("\n.. uml::\n\n");
+            buf.append("   @startuml\n");
+            final int participants = 2 + random.nextInt(4);
+            for (int j = 1; j < participants; j++) {
+                buf.append("   P").append(j - 1).append(" -> P").append(j).append(": ")
+                   .append(words(random, 2)).append('\n');
+            }
+            buf.append("   @enduml\n");
+        }
+        return buf.toString();
+    }
+
+    private static String css(Random random) {
+        final StringBuilder buf = new StringBuilder(4096);
+        for (int i = 0; i < 100; i++) {
+            buf.append(".c").append(random.nextInt(100000)).append(" {\n");
+            buf.append("  margin: ").append(random.nextInt(20)).append("px;\n");
+            buf.append("  color: #").append(Integer.toHexString(0x100000 + random.nextInt(0xefffff))).append(";\n");
+            buf.append("}\n");
+        }
+        return buf.toString();
+    }
+
+    private static String javaScript(Random random) {
+        final StringBuilder buf = new StringBuilder(4096);
+        for (int i = 0; i < 100; i++) {
+            buf.append("function f").append(i).append("(a, b) {\n");
+            buf.append("  // ").append(words(random, 8)).append('\n');
+            buf.append("  return a * ").append(random.nextInt(1000)).append(" + b;\n");
+            buf.append("}\n");
+        }
+        return buf.toString();
+    }
+
+    private static String words(Random random, int count) {
+        final StringBuilder buf = new StringBuilder(count * 6);
+        for (int i = 0; i < count; i++) {
+            if (i != 0) {
+                buf.append(i % 12 == 0 ? '\n' : ' ');
+            }
+            final int length = 2 + random.nextInt(8);
+            for (int j = 0; j < length; j++) {
+                buf.append((char) ('a' + random.nextInt(26)));
+            }
+        }
+        return buf.toString();
+    }
+
+    private static void appendUnderline(StringBuilder buf, char ch, int length) {
+        for (int i = 0; i < length; i++) {
+            buf.append(ch);
+        }
+        buf.append('\n');
+    }
+
+    private static void write(File f, String content) throws IOException {
+        f.getParentFile().mkdirs();
+        Files.write(f.toPath(), content.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,337 @@
+package kr.motd.maven.sphinx;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.maven.execution.MavenSession;
+import org.apache.maven.plugin.AbstractMojo;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugins.annotations.Component;
+import org.apache.maven.plugins.annotations.Parameter;
+import org.apache.maven.project.MavenProject;
+import org.apache.maven.settings.Proxy;
+import org.eclipse.aether.RepositorySystem;
+import org.eclipse.aether.RepositorySystemSession;
+import org.eclipse.aether.artifact.Artifact;
+import org.eclipse.aether.artifact.DefaultArtifact;
+import org.eclipse.aether.repository.RemoteRepository;
+import org.eclipse.aether.resolution.ArtifactRequest;
+import org.eclipse.aether.resolution.ArtifactResolutionException;
+import org.eclipse.aether.resolution.ArtifactResult;
+
+/**
+ * The base of the Mojos which run Sphinx, with the parameters that determine how the Sphinx binary is
+ * resolved and launched.
+ */
+public abstract class AbstractSphinxMojo extends AbstractMojo {
+
+    @Parameter( defaultValue = "${session}", readonly = true )
+    protected MavenSession session;
+
+    @Parameter( defaultValue = "${project}", readonly = true )
+    protected MavenProject project;
+
+    @Component
+    private RepositorySystem repositorySystem;
+
+    /**
+     * The repository session of {@link #session}, i.e. {@code session.getRepositorySession()}.
+     */
+    @Parameter( defaultValue = "${repositorySystemSession}", readonly = true )
+    private RepositorySystemSession repositorySession;
+
+    /**
+     * The remote repositories of {@link #project} with the mirrors, proxies and authentication of
+     * {@code settings.xml} applied, i.e. {@code project.getRemoteProjectRepositories()}.
+     */
+    @Parameter( defaultValue = "${project.remoteProjectRepositories}", readonly = true )
+    private List<RemoteRepository> remoteRepositories;
+
+    /**
+     * The remote plugin repositories of {@link #project}, i.e. {@code project.getRemotePluginRepositories()},
+     * which provide the artifacts used by this plugin at runtime such as PlantUML.
+     */
+    @Parameter( defaultValue = "${project.remotePluginRepositories}", readonly = true )
+    private List<RemoteRepository> remotePluginRepositories;
+
+    /**
+     * The base URL of the Sphinx binary, which will be used when downloading the Sphinx binary; must start
+     * with {@code http://}, {@code https://} or {@code file://}. The binary for the current platform is
+     * downloaded from GitHub if unspecified.
+     */
+    @Parameter(property = "sphinx.binUrl")
+    private String binaryUrl;
+
+    /**
+     * The Maven coordinates of the Sphinx binary, i.e. {@code groupId:artifactId:version[:type[:classifier]]},
+     * which will be resolved from the repositories of the project and the mirrors configured in
+     * {@code settings.xml} instead of being downloaded from {@link #binaryUrl}. The type defaults to
+     * {@code exe} and the classifier defaults to the current platform, e.g. {@code linux-x86_64}.
+     */
+    @Parameter(property = "sphinx.binaryArtifact", alias = "binaryArtifact")
+    private String binaryArtifact;
+
+    /**
+     * The directory for Sphinx binary cache.
+     */
+    @Parameter(property = "sphinx.binCacheDir", defaultValue = "${settings.localRepository}/kr/motd/maven/sphinx-binary", required = true)
+    private File binaryCacheDir;
+
+    /**
+     * The maximum size of the directory for Sphinx binary cache in megabytes. The least recently used binaries
+     * are evicted after a build when the directory is larger than this, unless used by another build at the
+     * moment. {@code 0} disables the limit.
+     */
+    @Parameter(property = "sphinx.binCacheMaxSize", defaultValue = "0", alias = "binaryCacheMaxSize")
+    private long binaryCacheMaxSize;
+
+    /**
+     * The number of days after which an unused binary is evicted from the directory for Sphinx binary cache.
+     * {@code 0} disables the limit.
+     */
+    @Parameter(property = "sphinx.binCacheMaxAge", defaultValue = "0", alias = "binaryCacheMaxAge")
+    private long binaryCacheMaxAge;
+
+    /**
+     * The version of PlantUML which renders the diagrams. The PlantUML JAR is resolved from the repositories
+     * only when the documentation uses PlantUML. The version this plugin has been tested with is used
+     * if unspecified.
+     */
+    @Parameter(property = "sphinx.plantUmlVersion", alias = "plantUmlVersion")
+    private String plantUmlVersion;
+
+    /**
+     * Whether the documentation uses PlantUML: {@code true}, {@code false} or {@code auto}. The PlantUML JAR is
+     * resolved only when the documentation uses PlantUML, which is determined by whether {@code conf.py}
+     * mentions {@code plantuml}, e.g. in {@code extensions}, if {@code auto}.
+     */
+    @Parameter(property = "sphinx.plantUml", defaultValue = "auto", required = true, alias = "plantUml")
+    private String plantUml;
+
+    /**
+     * The environment variables to set when launching Sphinx.
+     */
+    @Parameter(property = "sphinx.env")
+    private Map<String, String> environments = Collections.emptyMap();
+
+    /**
+     * The path to Graphviz {@code dot} binary.
+     */
+    @Parameter(property = "sphinx.dotBin")
+    private String dotBinary;
+
+    /**
+     * Returns the canonical path of the directory for Sphinx binary cache, creating it if necessary.
+     */
+    protected final File binaryCacheDir() throws MojoExecutionException {
+        return canonicalize(binaryCacheDir);
+    }
+
+    /**
+     * Returns the {@link SphinxRunner} shared by the modules of the current session which have the same
+     * configuration, resolving {@link #binaryArtifact} if specified.
+     *
+     * @param plantUmlJar the PlantUML JAR, or {@code null} if the documentation does not use PlantUML
+     */
+    protected final SphinxRunner sphinxRunner(File plantUmlJar) throws MojoExecutionException {
+        final File binaryCacheDir = binaryCacheDir();
+        final String binaryUrl = binaryUrl(binaryCacheDir);
+        configureProxy();
+        return SphinxRunnerRegistry.get(session).runner(
+                binaryUrl, binaryCacheDir, environments, "".equals(dotBinary) ? null : dotBinary, plantUmlJar);
+    }
+
+    /**
+     * Resolves the PlantUML JAR of {@link #plantUmlVersion} from the plugin repositories.
+     */
+    protected final File resolvePlantUmlJar() throws MojoExecutionException {
+        final String version = plantUmlVersion != null ? plantUmlVersion : SphinxRunner.PLANTUML_VERSION;
+        return resolveArtifact(repositorySystem, repositorySession, remotePluginRepositories,
+                               new DefaultArtifact("net.sourceforge.plantuml", "plantuml", "jar", version));
+    }
+
+    /**
+     * Returns a new {@link LoggingSphinxRunnerListener} which logs the standard error of Sphinx and the warnings
+     * at the warning level and the others at the info level.
+     *
+     * @param linePrefix the prefix to prepend to each line of the Sphinx output, e.g. a module name
+     * @param quiet whether the Sphinx output should be logged only when Sphinx fails
+     * @param maxRetainedLines the maximum number of the last output lines to retain in quiet mode
+     */
+    protected final LoggingSphinxRunnerListener newLoggingListener(String linePrefix, boolean quiet,
+                                                                   int maxRetainedLines) {
+        return new LoggingSphinxRunnerListener(new SphinxRunnerLogger() {
+            @Override
+            public void log(String msg) {
+                getLog().info(msg);
+            }
+        }, new SphinxRunnerLogger() {
+            @Override
+            public void log(String msg) {
+                getLog().warn(msg);
+            }
+        }, linePrefix, quiet, maxRetainedLines);
+    }
+
+    /**
+     * Evicts the least recently used entries from the directory for Sphinx binary cache if it exceeds
+     * {@link #binaryCacheMaxSize} or {@link #binaryCacheMaxAge}.
+     */
+    protected final void evictBinaryCache(SphinxRunnerListener listener) throws MojoExecutionException {
+        if (binaryCacheMaxSize <= 0 && binaryCacheMaxAge <= 0) {
+            return;
+        }
+
+        final File binaryCacheDir = binaryCacheDir();
+        try {
+            final List<File> evicted = BinaryCache.evict(binaryCacheDir, binaryCacheMaxSize << 20,
+                                                         TimeUnit.DAYS.toMillis(binaryCacheMaxAge), listener);
+            for (File e : evicted) {
+                getLog().info("Evicted from the Sphinx binary cache: " + e.getName());
+            }
+        } catch (IOException e) {
+            listener.onWarning("Failed to evict the Sphinx binary cache: " + binaryCacheDir, e);
+        }
+    }
+
+    /**
+     * Returns whether the documentation configured by the {@code conf.py} in the specified directory uses
+     * PlantUML, as specified by {@link #plantUml}.
+     */
+    protected final boolean usesPlantUml(File configDirectory) throws MojoExecutionException {
+        switch (plantUml.trim().toLowerCase(Locale.US)) {
+            case "true":
+                return true;
+            case "false":
+                return false;
+            case "auto":
+                break;
+            default:
+                throw new MojoExecutionException("plantUml must be 'true', 'false' or 'auto': " + plantUml);
+        }
+
+        final File confPy = new File(configDirectory, "conf.py");
+        if (!confPy.isFile()) {
+            return false;
+        }
+        try {
+            for (String line : Files.readAllLines(confPy.toPath(), StandardCharsets.UTF_8)) {
+                final int commentStart = line.indexOf('#');
+                final String code = commentStart >= 0 ? line.substring(0, commentStart) : line;
+                if (code.toLowerCase(Locale.US).contains("plantuml")) {
+                    return true;
+                }
+            }
+            return false;
+        } catch (IOException e) {
+            // Not a UTF-8 file; assume that PlantUML is used.
+            return true;
+        }
+    }
+
+    /**
+     * Returns the URL of the Sphinx binary, resolving {@link #binaryArtifact} if specified.
+     */
+    private String binaryUrl(File binaryCacheDir) throws MojoExecutionException {
+        if (binaryArtifact == null || binaryArtifact.trim().isEmpty()) {
+            return binaryUrl != null ? binaryUrl : SphinxRunner.defaultBinaryUrl();
+        }
+        if (binaryUrl != null) {
+            throw new MojoExecutionException("binaryUrl and binaryArtifact are mutually exclusive.");
+        }
+
+        final SphinxBinaryArtifact artifact = new SphinxBinaryArtifact(binaryArtifact);
+        getLog().info("Resolving the Sphinx binary: " + artifact);
+        final File file = resolveArtifact(artifact.newArtifact(repositorySession.getArtifactTypeRegistry()));
+        return artifact.install(file, binaryCacheDir).toURI().toString();
+    }
+
+    /**
+     * Resolves the specified {@link Artifact} with the repositories of the project and the mirrors, proxies and
+     * offline mode configured in {@code settings.xml}.
+     *
+     * @return the resolved file in the local repository
+     */
+    private File resolveArtifact(Artifact artifact) throws MojoExecutionException {
+        return resolveArtifact(repositorySystem, repositorySession, remoteRepositories, artifact);
+    }
+
+    /**
+     * Resolves the specified {@link Artifact} with the specified {@link RepositorySystem}.
+     *
+     * @return the resolved file in the local repository
+     */
+    static File resolveArtifact(RepositorySystem repositorySystem, RepositorySystemSession repositorySession,
+                                List<RemoteRepository> remoteRepositories,
+                                Artifact artifact) throws MojoExecutionException {
+        final ArtifactResult result;
+        try {
+            result = repositorySystem.resolveArtifact(
+                    repositorySession, new ArtifactRequest(artifact, remoteRepositories, null));
+        } catch (ArtifactResolutionException e) {
+            throw new MojoExecutionException("failed to resolve: " + artifact, e);
+        }
+        final File file = result.getArtifact() != null ? result.getArtifact().getFile() : null;
+        if (file == null || !file.isFile()) {
+            throw new MojoExecutionException("failed to resolve: " + artifact);
+        }
+        return file;
+    }
+
+    /**
+     * Returns the reporting output directory of the specified project.
+     */
+    protected static File reportingDirectory(MavenProject p) {
+        if (p.getReporting() != null && p.getReporting().getOutputDirectory() != null) {
+            return new File(p.getReporting().getOutputDirectory());
+        }
+        return new File(p.getBuild().getDirectory(), "site");
+    }
+
+    protected static File canonicalize(File directory) throws MojoExecutionException {
+        if (directory == null) {
+            return null;
+        }
+
+        try {
+            directory.mkdirs();
+            return directory.getCanonicalFile();
+        } catch (IOException e) {
+            throw new MojoExecutionException("failed to create a directory: " + directory, e);
+        }
+    }
+
+    private void configureProxy() {
+        if (session != null) {
+            final Proxy proxy = session.getSettings().getActiveProxy();
+            if (proxy != null && proxy.getProtocol() != null &&
+                proxy.getProtocol().toLowerCase().startsWith("http")) {
+                for (String protocol : Arrays.asList("http", "https")) {
+                    System.setProperty(protocol + ".proxyHost", proxy.getHost());
+                    System.setProperty(protocol + ".proxyPort", String.valueOf(proxy.getPort()));
+                    if (proxy.getUsername() != null && proxy.getPassword() != null) {
+                        System.setProperty(protocol + ".proxyUser", proxy.getUsername());
+                        System.setProperty(protocol + ".proxyPassword", proxy.getPassword());
+                    }
+                    if (proxy.getNonProxyHosts() != null) {
+                        System.setProperty(protocol + ".nonProxyHosts", proxy.getNonProxyHosts());
+                    }
+                }
+                if (System.getProperty("jdk.http.auth.tunneling.disabledSchemes") == null) {
+                    System.setProperty("jdk.http.auth.tunneling.disabledSchemes", "");
+                }
+                if (System.getProperty("https.protocols") == null) {
+                    System.setProperty("https.protocols", "TLSv1,TLSv1.1,TLSv1.2");
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,363 @@
+package kr.motd.maven.sphinx;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Copies the style sheets and scripts in {@code _static} of the generated output to the names with the
+ * checksum of their content, e.g. {@code _static/basic.1a2b3c4d.css}, and rewrites the references in the HTML
+ * files to point to the copies. Because the name of a copy changes whenever its content changes, the copies can
+ * be served with {@code Cache-Control: immutable}. The original files are kept for the scripts which load
+ * them by their names.
+ *
+ * <p>The mapping from the original files to the copies is written into {@value #MANIFEST_FILE_NAME} in the
+ * output directory, and also into an index file next to the output directory, so that the copies made by
+ * the previous run are removed once they are not used anymore, and so that the references to them in the HTML
+ * files Sphinx did not rewrite are updated.</p>
+ */
+final class AssetFingerprinter {
+
+    static final String MANIFEST_FILE_NAME = "asset-manifest.json";
+
+    private static final String STATIC_DIRECTORY = "_static";
+
+    /**
+     * The number of the bytes of the checksum in the names of the copies.
+     */
+    private static final int FINGERPRINT_LENGTH = 4;
+
+    private static final Pattern HTML_LINK_PATTERN = Pattern.compile("(\\s(?:href|src)=\")([^\"]*)(\")");
+
+    private static final Pattern CSS_LINK_PATTERN =
+            Pattern.compile("(url\\(\\s*['\"]?|@import\\s+['\"])([^'\")\\s]+)");
+
+    private static final Pattern SCHEME_PATTERN = Pattern.compile("^[a-zA-Z][a-zA-Z0-9+.-]*:");
+
+    private Path root;
+    private Map<Path, Path> fingerprinted;
+    private Set<Path> inProgress;
+
+    /**
+     * Fingerprints the assets in the specified directory, notifying the specified {@link SphinxRunnerListener}
+     * of the progress.
+     */
+    Result fingerprint(File dir, SphinxRunnerListener listener) throws IOException {
+        final String name = "fingerprintAssets";
+        final long startTime = System.nanoTime();
+        listener.onPostProcessingStarted(name, dir);
+        final Result result = fingerprint(dir);
+        listener.onPostProcessingFinished(name, dir, result.scannedFiles, result.modifiedFiles,
+                                          result.modifiedBytes, System.nanoTime() - startTime);
+        return result;
+    }
+
+    private Result fingerprint(File dir) throws IOException {
+        final Result result = new Result();
+        final File staticDir = new File(dir, STATIC_DIRECTORY);
+        if (!staticDir.isDirectory()) {
+            return result;
+        }
+
+        root = dir.toPath().toAbsolutePath().normalize();
+        fingerprinted = new HashMap<>();
+        inProgress = new HashSet<>();
+
+        final File indexFile = new File(dir.getPath() + ".fingerprint.index");
+        final Properties oldIndex = new Properties();
+        if (indexFile.isFile()) {
+            try (InputStream in = new FileInputStream(indexFile)) {
+                oldIndex.load(in);
+            }
+        }
+        final Set<Path> oldCopies = new HashSet<>();
+        for (String path : oldIndex.stringPropertyNames()) {
+            oldCopies.add(resolve(oldIndex.getProperty(path)));
+        }
+
+        // Find the assets, except the copies made by the previous run.
+        final Set<Path> assets = new LinkedHashSet<>();
+        Files.walkFileTree(staticDir.toPath().toAbsolutePath().normalize(), new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                if (attrs.isRegularFile() && isAsset(file) && !oldCopies.contains(file)) {
+                    assets.add(file);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        for (Path asset : assets) {
+            fingerprint(asset, assets);
+        }
+        result.assets = fingerprinted.size();
+
+        // Remove the copies which are not used anymore.
+        final Set<Path> newCopies = new HashSet<>(fingerprinted.values());
+        for (Path p : oldCopies) {
+            if (!newCopies.contains(p)) {
+                Files.deleteIfExists(p);
+            }
+        }
+
+        // Map the copies made by the previous run as well as the original files.
+        final Map<Path, Path> replacements = new HashMap<>(fingerprinted);
+        for (String path : oldIndex.stringPropertyNames()) {
+            final Path copy = fingerprinted.get(resolve(path));
+            if (copy != null) {
+                replacements.put(resolve(oldIndex.getProperty(path)), copy);
+            }
+        }
+
+        final List<Path> htmlFiles = new ArrayList<>();
+        Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                final String name = file.getFileName().toString().toLowerCase(Locale.US);
+                if (attrs.isRegularFile() && (name.endsWith(".html") || name.endsWith(".htm"))) {
+                    htmlFiles.add(file);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        for (Path htmlFile : htmlFiles) {
+            result.scannedFiles++;
+            final long newSize = rewriteHtml(htmlFile, replacements);
+            if (newSize >= 0) {
+                result.modifiedFiles++;
+                result.modifiedBytes += newSize;
+            }
+        }
+
+        final Map<String, String> manifest = new TreeMap<>();
+        for (Entry<Path, Path> e : fingerprinted.entrySet()) {
+            manifest.put(relativize(e.getKey()), relativize(e.getValue()));
+        }
+        writeManifest(new File(dir, MANIFEST_FILE_NAME), manifest);
+
+        final Properties index = new Properties();
+        index.putAll(manifest);
+        try (OutputStream out = new FileOutputStream(indexFile)) {
+            index.store(out, "Fingerprinted Sphinx assets");
+        }
+        return result;
+    }
+
+    /**
+     * Copies the specified asset to the name with its checksum, after fingerprinting the assets it refers to
+     * and rewriting the references to them if it is a style sheet.
+     *
+     * @return the copy, or {@code null} if the asset is being fingerprinted, i.e. there is a circular reference
+     */
+    private Path fingerprint(Path asset, Set<Path> assets) throws IOException {
+        final Path done = fingerprinted.get(asset);
+        if (done != null) {
+            return done;
+        }
+        if (!inProgress.add(asset)) {
+            return null;
+        }
+
+        byte[] content = Files.readAllBytes(asset);
+        if (isStyleSheet(asset)) {
+            final String css = new String(content, StandardCharsets.UTF_8);
+            final Matcher m = CSS_LINK_PATTERN.matcher(css);
+            final StringBuffer buf = new StringBuffer(css.length());
+            while (m.find()) {
+                final String link = m.group(2);
+                final Path target = resolveLink(asset, link);
+                final Path copy = target != null && assets.contains(target) ? fingerprint(target, assets) : null;
+                final String newLink = copy != null ? relink(asset, link, copy) : link;
+                m.appendReplacement(buf, Matcher.quoteReplacement(m.group(1) + newLink));
+            }
+            m.appendTail(buf);
+            content = buf.toString().getBytes(StandardCharsets.UTF_8);
+        }
+
+        final String checksum = SphinxUtil.toHexString(SphinxUtil.sha256(ByteBuffer.wrap(content)));
+        final String fingerprint = checksum.substring(0, FINGERPRINT_LENGTH * 2);
+        final String name = asset.getFileName().toString();
+        final int dotIdx = name.lastIndexOf('.');
+        final Path copy = asset.resolveSibling(name.substring(0, dotIdx) + '.' + fingerprint + name.substring(dotIdx));
+        // Do not overwrite the existing copy, which may have been minified since.
+        if (!Files.exists(copy)) {
+            final Path tmp = copy.resolveSibling(copy.getFileName() + ".tmp");
+            Files.write(tmp, content);
+            Files.move(tmp, copy, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        }
+
+        inProgress.remove(asset);
+        fingerprinted.put(asset, copy);
+        return copy;
+    }
+
+    /**
+     * Rewrites the references to the assets in the specified HTML file, line by line.
+     *
+     * @return the new size of the file, or {@code -1} if the file has not been modified
+     */
+    private long rewriteHtml(Path htmlFile, Map<Path, Path> replacements) throws IOException {
+        final Path tmp = htmlFile.resolveSibling(htmlFile.getFileName() + ".tmp");
+        boolean modified = false;
+        try (BufferedReader in = Files.newBufferedReader(htmlFile, StandardCharsets.UTF_8);
+             BufferedWriter out = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+            final String lineSeparator = System.lineSeparator();
+            final StringBuffer buf = new StringBuffer();
+            String line;
+            boolean firstLine = true;
+            while ((line = in.readLine()) != null) {
+                if (!firstLine) {
+                    // The line separators have been converted by SphinxUtil.convertLineSeparators().
+                    out.write(lineSeparator);
+                }
+                firstLine = false;
+
+                final Matcher m = HTML_LINK_PATTERN.matcher(line);
+                if (!m.find()) {
+                    out.write(line);
+                    continue;
+                }
+                buf.setLength(0);
+                do {
+                    final String link = m.group(2);
+                    final Path target = resolveLink(htmlFile, link);
+                    final Path copy = target != null ? replacements.get(target) : null;
+                    final String newLink = copy != null ? relink(htmlFile, link, copy) : link;
+                    modified |= !newLink.equals(link);
+                    m.appendReplacement(buf, Matcher.quoteReplacement(m.group(1) + newLink + m.group(3)));
+                } while (m.find());
+                m.appendTail(buf);
+                out.write(buf.toString());
+            }
+            if (!firstLine && endsWithLineBreak(htmlFile)) {
+                out.write(lineSeparator);
+            }
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(tmp);
+            throw e;
+        }
+
+        if (!modified) {
+            Files.delete(tmp);
+            return -1;
+        }
+        Files.move(tmp, htmlFile, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        return Files.size(htmlFile);
+    }
+
+    private static boolean endsWithLineBreak(Path file) throws IOException {
+        final long size = Files.size(file);
+        if (size == 0) {
+            return false;
+        }
+        try (InputStream in = Files.newInputStream(file)) {
+            if (in.skip(size - 1) != size - 1) {
+                throw new IOException("file size has been changed during processing: " + file);
+            }
+            return in.read() == '\n';
+        }
+    }
+
+    /**
+     * Returns the file the specified relative link in the specified file points to, or {@code null} if
+     * the link is not relative.
+     */
+    private static Path resolveLink(Path file, String link) {
+        final String path = stripSuffix(link);
+        if (path.isEmpty() || path.startsWith("/") || SCHEME_PATTERN.matcher(path).find()) {
+            return null;
+        }
+        try {
+            return file.getParent().resolve(path).normalize();
+        } catch (RuntimeException e) {
+            // Not a valid path.
+            return null;
+        }
+    }
+
+    /**
+     * Replaces the path of the specified link in the specified file with the relative path to
+     * the specified target, keeping its query string and fragment.
+     */
+    private static String relink(Path file, String link, Path target) {
+        return file.getParent().relativize(target).toString().replace(File.separatorChar, '/') +
+               link.substring(stripSuffix(link).length());
+    }
+
+    private static String stripSuffix(String link) {
+        int end = link.length();
+        for (char ch : new char[] { '#', '?' }) {
+            final int i = link.indexOf(ch);
+            if (i >= 0 && i < end) {
+                end = i;
+            }
+        }
+        return link.substring(0, end);
+    }
+
+    private static boolean isAsset(Path file) {
+        final String name = file.getFileName().toString().toLowerCase(Locale.US);
+        return (name.endsWith(".css") || name.endsWith(".js")) && name.indexOf('.') > 0;
+    }
+
+    private static boolean isStyleSheet(Path file) {
+        return file.getFileName().toString().toLowerCase(Locale.US).endsWith(".css");
+    }
+
+    private Path resolve(String path) {
+        return root.resolve(path.replace('/', File.separatorChar)).normalize();
+    }
+
+    private String relativize(Path file) {
+        return root.relativize(file).toString().replace(File.separatorChar, '/');
+    }
+
+    private static void writeManifest(File file, Map<String, String> manifest) throws IOException {
+        final StringBuilder buf = new StringBuilder(manifest.size() * 64 + 4);
+        buf.append('{');
+        boolean first = true;
+        for (Entry<String, String> e : manifest.entrySet()) {
+            buf.append(first ? "\n  " : ",\n  ");
+            Json.quote(buf, e.getKey()).append(": ");
+            Json.quote(buf, e.getValue());
+            first = false;
+        }
+        buf.append(first ? "}\n" : "\n}\n");
+        Files.write(file.toPath(), buf.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * The statistics of an {@link AssetFingerprinter} run.
+     */
+    static final class Result {
+        int assets;
+        int scannedFiles;
+        int modifiedFiles;
+        long modifiedBytes;
+    }
+}
@@ -0,0 +1,275 @@
+package kr.motd.maven.sphinx;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Tracks the use of the entries in the Sphinx binary cache directory, i.e. its subdirectories, and evicts
+ * the least recently used ones. Each entry has two files:
+ * <ul>
+ *   <li>{@code .last-used}, whose last modified time is the last time the entry was used, and</li>
+ *   <li>{@code .lock}, which a user of the entry holds a shared lock on, so that an entry used by any process
+ *       at the moment is never evicted.</li>
+ * </ul>
+ */
+final class BinaryCache {
+
+    static final String LAST_USED_FILE_NAME = ".last-used";
+    static final String LOCK_FILE_NAME = ".lock";
+
+    /**
+     * The leases held by this JVM, keyed by their lock file, because a JVM cannot hold more than one lock on
+     * the same file even if they are all shared.
+     */
+    private static final Map<Path, Lease> leases = new HashMap<>();
+
+    /**
+     * Marks the specified entry as used just now and holds a shared lock on it until the returned
+     * {@link Lease} is closed, creating the entry if necessary.
+     */
+    static Lease acquire(File entryDir) throws IOException {
+        final Path lockFile = entryDir.toPath().resolve(LOCK_FILE_NAME).toAbsolutePath().normalize();
+        for (;;) {
+            synchronized (leases) {
+                final Lease lease = leases.get(lockFile);
+                if (lease != null) {
+                    lease.refCnt++;
+                    touch(entryDir);
+                    return lease;
+                }
+            }
+
+            Files.createDirectories(lockFile.getParent());
+            final FileChannel ch = FileChannel.open(lockFile, StandardOpenOption.CREATE,
+                                                    StandardOpenOption.READ, StandardOpenOption.WRITE);
+            boolean success = false;
+            try {
+                final FileLock lock = ch.lock(0, Long.MAX_VALUE, true);
+                // Try again if the entry has been evicted while waiting for the lock.
+                if (Files.exists(lockFile)) {
+                    synchronized (leases) {
+                        if (!leases.containsKey(lockFile)) {
+                            final Lease lease = new Lease(lockFile, ch, lock);
+                            leases.put(lockFile, lease);
+                            touch(entryDir);
+                            success = true;
+                            return lease;
+                        }
+                    }
+                }
+            } catch (OverlappingFileLockException e) {
+                // Another thread of this JVM has just acquired the lease; try again to share it.
+            } finally {
+                if (!success) {
+                    ch.close();
+                }
+            }
+        }
+    }
+
+    /**
+     * Marks the specified entry as used just now.
+     */
+    static void touch(File entryDir) throws IOException {
+        final Path lastUsed = entryDir.toPath().resolve(LAST_USED_FILE_NAME);
+        final FileTime now = FileTime.fromMillis(System.currentTimeMillis());
+        try {
+            Files.setLastModifiedTime(lastUsed, now);
+        } catch (IOException e) {
+            Files.write(lastUsed, new byte[0]);
+        }
+    }
+
+    /**
+     * Evicts the least recently used entries of the specified cache directory until its size does not exceed
+     * {@code maxBytes}, as well as the entries not used for longer than {@code maxAgeMillis}. The most recently
+     * used entry and the entries used by any process at the moment are never evicted.
+     *
+     * @param maxBytes the maximum size of the cache directory, or {@code 0} to disable
+     * @param maxAgeMillis the maximum period an entry can be unused, or {@code 0} to disable
+     *
+     * @return the entries evicted
+     */
+    static List<File> evict(File binaryCacheDir, long maxBytes, long maxAgeMillis,
+                            SphinxRunnerListener listener) throws IOException {
+        final File[] dirs = binaryCacheDir.listFiles();
+        if (dirs == null || (maxBytes <= 0 && maxAgeMillis <= 0)) {
+            return Collections.emptyList();
+        }
+
+        final List<Entry> entries = new ArrayList<>();
+        long totalBytes = 0;
+        for (File dir : dirs) {
+            if (dir.isDirectory()) {
+                final Entry e = Entry.of(dir);
+                entries.add(e);
+                totalBytes += e.bytes;
+            }
+        }
+        Collections.sort(entries, new Comparator<Entry>() {
+            @Override
+            public int compare(Entry a, Entry b) {
+                return Long.compare(a.lastUsedMillis, b.lastUsedMillis);
+            }
+        });
+
+        final long now = System.currentTimeMillis();
+        final List<File> evicted = new ArrayList<>();
+        for (int i = 0; i < entries.size() - 1; i++) {
+            final Entry e = entries.get(i);
+            final boolean tooOld = maxAgeMillis > 0 && now - e.lastUsedMillis > maxAgeMillis;
+            final boolean tooLarge = maxBytes > 0 && totalBytes > maxBytes;
+            if (!tooOld && !tooLarge) {
+                continue;
+            }
+            try {
+                if (delete(e.dir)) {
+                    totalBytes -= e.bytes;
+                    evicted.add(e.dir);
+                }
+            } catch (IOException cause) {
+                listener.onWarning("Failed to evict a Sphinx binary cache entry: " + e.dir, cause);
+            }
+        }
+        return evicted;
+    }
+
+    /**
+     * Deletes the specified entry if no process uses it.
+     *
+     * @return {@code true} if deleted, or {@code false} if in use
+     */
+    private static boolean delete(final File entryDir) throws IOException {
+        final Path lockFile = entryDir.toPath().resolve(LOCK_FILE_NAME);
+        try (FileChannel ch = FileChannel.open(lockFile, StandardOpenOption.CREATE,
+                                               StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            final FileLock lock;
+            try {
+                lock = ch.tryLock();
+            } catch (OverlappingFileLockException e) {
+                // Used by this JVM.
+                return false;
+            }
+            if (lock == null) {
+                // Used by another process.
+                return false;
+            }
+
+            try {
+                Files.walkFileTree(entryDir.toPath(), new SimpleFileVisitor<Path>() {
+                    @Override
+                    public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                        if (!file.equals(lockFile)) {
+                            Files.delete(file);
+                        }
+                        return FileVisitResult.CONTINUE;
+                    }
+
+                    @Override
+                    public FileVisitResult postVisitDirectory(Path dir, IOException e) throws IOException {
+                        if (e != null) {
+                            throw e;
+                        }
+                        if (!dir.equals(entryDir.toPath())) {
+                            Files.delete(dir);
+                        }
+                        return FileVisitResult.CONTINUE;
+                    }
+                });
+                // Delete the lock file while holding the lock, so that a waiting user notices the eviction.
+                // Windows does not allow deleting a locked file; delete it after releasing the lock then.
+                try {
+                    Files.delete(lockFile);
+                } catch (IOException e) {
+                    lock.release();
+                    Files.deleteIfExists(lockFile);
+                }
+            } finally {
+                if (lock.isValid()) {
+                    lock.release();
+                }
+            }
+        }
+        Files.deleteIfExists(entryDir.toPath());
+        return true;
+    }
+
+    /**
+     * A shared lock on a cache entry, which prevents the entry from being evicted.
+     */
+    static final class Lease implements Closeable {
+        private final Path lockFile;
+        private final FileChannel ch;
+        private final FileLock lock;
+        private int refCnt = 1;
+
+        Lease(Path lockFile, FileChannel ch, FileLock lock) {
+            this.lockFile = lockFile;
+            this.ch = ch;
+            this.lock = lock;
+        }
+
+        @Override
+        public void close() throws IOException {
+            synchronized (leases) {
+                if (--refCnt > 0) {
+                    return;
+                }
+                leases.remove(lockFile);
+            }
+            try {
+                lock.release();
+            } finally {
+                ch.close();
+            }
+        }
+    }
+
+    private static final class Entry {
+        final File dir;
+        final long bytes;
+        final long lastUsedMillis;
+
+        static Entry of(File dir) throws IOException {
+            final long[] bytes = new long[1];
+            final long[] lastModifiedMillis = new long[1];
+            Files.walkFileTree(dir.toPath(), new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                    bytes[0] += attrs.size();
+                    lastModifiedMillis[0] = Math.max(lastModifiedMillis[0], attrs.lastModifiedTime().toMillis());
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+
+            // Use the last modified time of the newest file for the entries created by the older versions.
+            final File lastUsed = new File(dir, LAST_USED_FILE_NAME);
+            return new Entry(dir, bytes[0], lastUsed.isFile() ? lastUsed.lastModified() : lastModifiedMillis[0]);
+        }
+
+        private Entry(File dir, long bytes, long lastUsedMillis) {
+            this.dir = dir;
+            this.bytes = bytes;
+            this.lastUsedMillis = lastUsedMillis;
+        }
+    }
+
+    private BinaryCache() {}
+}
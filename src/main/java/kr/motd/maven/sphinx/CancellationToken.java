@@ -0,0 +1,28 @@
+package kr.motd.maven.sphinx;
+
+/**
+ * Signals {@link SphinxRunner} to cancel a run. When cancelled, the Sphinx process tree is destroyed,
+ * its output is no longer pumped and any partially downloaded files are removed.
+ *
+ * <p>{@link SphinxRunner} polls {@link #isCancelled()} several times a second while downloading and while
+ * waiting for Sphinx, so a subclass may override it to derive the cancellation from an external condition.
+ * Interrupting the thread which runs Sphinx has the same effect as cancelling the token.</p>
+ */
+public class CancellationToken {
+
+    private volatile boolean cancelled;
+
+    /**
+     * Requests the cancellation.
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    /**
+     * Returns whether the cancellation has been requested.
+     */
+    public boolean isCancelled() {
+        return cancelled;
+    }
+}
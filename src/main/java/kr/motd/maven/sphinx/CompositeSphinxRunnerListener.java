@@ -0,0 +1,169 @@
+package kr.motd.maven.sphinx;
+
+import static java.util.Objects.requireNonNull;
+
+import java.io.File;
+import java.net.URI;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A {@link SphinxRunnerListener} which forwards all events to the specified listeners in order. An exception
+ * raised by a listener does not prevent the other listeners from receiving the event; it is reported to
+ * the other listeners via {@link #onWarning(String, Throwable)} instead.
+ */
+public final class CompositeSphinxRunnerListener implements SphinxRunnerListener {
+
+    private final SphinxRunnerListener[] listeners;
+
+    public CompositeSphinxRunnerListener(SphinxRunnerListener... listeners) {
+        this(Arrays.asList(requireNonNull(listeners, "listeners")));
+    }
+
+    public CompositeSphinxRunnerListener(Iterable<? extends SphinxRunnerListener> listeners) {
+        requireNonNull(listeners, "listeners");
+        final List<SphinxRunnerListener> list = new ArrayList<>();
+        for (SphinxRunnerListener l : listeners) {
+            list.add(requireNonNull(l, "listeners contains null."));
+        }
+        this.listeners = list.toArray(new SphinxRunnerListener[list.size()]);
+    }
+
+    @Override
+    public void onBinaryResolved(Path binary, boolean cached) {
+        for (SphinxRunnerListener l : listeners) {
+            try {
+                l.onBinaryResolved(binary, cached);
+            } catch (RuntimeException e) {
+                listenerFailed(l, e);
+            }
+        }
+    }
+
+    @Override
+    public void onDownloadStarted(URI uri) {
+        for (SphinxRunnerListener l : listeners) {
+            try {
+                l.onDownloadStarted(uri);
+            } catch (RuntimeException e) {
+                listenerFailed(l, e);
+            }
+        }
+    }
+
+    @Override
+    public void onDownloadProgress(URI uri, long transferredBytes, long totalBytes) {
+        for (SphinxRunnerListener l : listeners) {
+            try {
+                l.onDownloadProgress(uri, transferredBytes, totalBytes);
+            } catch (RuntimeException e) {
+                listenerFailed(l, e);
+            }
+        }
+    }
+
+    @Override
+    public void onDownloadFinished(URI uri, long transferredBytes, long elapsedNanos) {
+        for (SphinxRunnerListener l : listeners) {
+            try {
+                l.onDownloadFinished(uri, transferredBytes, elapsedNanos);
+            } catch (RuntimeException e) {
+                listenerFailed(l, e);
+            }
+        }
+    }
+
+    @Override
+    public void onBinaryVerified(Path binary, String sha256, long elapsedNanos) {
+        for (SphinxRunnerListener l : listeners) {
+            try {
+                l.onBinaryVerified(binary, sha256, elapsedNanos);
+            } catch (RuntimeException e) {
+                listenerFailed(l, e);
+            }
+        }
+    }
+
+    @Override
+    public void onProcessStarted(List<String> command, File workingDir) {
+        for (SphinxRunnerListener l : listeners) {
+            try {
+                l.onProcessStarted(command, workingDir);
+            } catch (RuntimeException e) {
+                listenerFailed(l, e);
+            }
+        }
+    }
+
+    @Override
+    public void onProcessOutput(String line, boolean error) {
+        for (SphinxRunnerListener l : listeners) {
+            try {
+                l.onProcessOutput(line, error);
+            } catch (RuntimeException e) {
+                listenerFailed(l, e);
+            }
+        }
+    }
+
+    @Override
+    public void onProcessExited(int exitCode, long elapsedNanos, ProcessResourceUsage usage) {
+        for (SphinxRunnerListener l : listeners) {
+            try {
+                l.onProcessExited(exitCode, elapsedNanos, usage);
+            } catch (RuntimeException e) {
+                listenerFailed(l, e);
+            }
+        }
+    }
+
+    @Override
+    public void onPostProcessingStarted(String name, File dir) {
+        for (SphinxRunnerListener l : listeners) {
+            try {
+                l.onPostProcessingStarted(name, dir);
+            } catch (RuntimeException e) {
+                listenerFailed(l, e);
+            }
+        }
+    }
+
+    @Override
+    public void onPostProcessingFinished(String name, File dir, int scannedFiles, int modifiedFiles,
+                                         long modifiedBytes, long elapsedNanos) {
+        for (SphinxRunnerListener l : listeners) {
+            try {
+                l.onPostProcessingFinished(name, dir, scannedFiles, modifiedFiles, modifiedBytes, elapsedNanos);
+            } catch (RuntimeException e) {
+                listenerFailed(l, e);
+            }
+        }
+    }
+
+    @Override
+    public void onWarning(String message, Throwable cause) {
+        for (SphinxRunnerListener l : listeners) {
+            try {
+                l.onWarning(message, cause);
+            } catch (RuntimeException ignored) {
+                // Do not report the failure to report a failure.
+            }
+        }
+    }
+
+    private void listenerFailed(SphinxRunnerListener failedListener, RuntimeException cause) {
+        final String message = "Unexpected exception from a listener: " + failedListener;
+        for (SphinxRunnerListener l : listeners) {
+            if (l == failedListener) {
+                continue;
+            }
+            try {
+                l.onWarning(message, cause);
+            } catch (RuntimeException ignored) {
+                // Do not report the failure to report a failure.
+            }
+        }
+    }
+}
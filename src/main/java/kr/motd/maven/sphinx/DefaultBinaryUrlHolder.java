@@ -0,0 +1,17 @@
+package kr.motd.maven.sphinx;
+
+/**
+ * Holds {@link SphinxRunner#DEFAULT_BINARY_URL}. Unlike a field of {@link SphinxRunner}, a field of
+ * an interface is initialized when it is accessed for the first time rather than when the class which
+ * implements the interface is initialized, so that the platform is not detected until it is needed.
+ */
+interface DefaultBinaryUrlHolder {
+
+    /**
+     * The URL of the Sphinx binary for the current platform.
+     *
+     * @deprecated Use {@link SphinxRunner#defaultBinaryUrl()}.
+     */
+    @Deprecated
+    String DEFAULT_BINARY_URL = SphinxRunner.defaultBinaryUrl();
+}
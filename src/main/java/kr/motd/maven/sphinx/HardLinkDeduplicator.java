@@ -0,0 +1,255 @@
+package kr.motd.maven.sphinx;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystemException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+/**
+ * Replaces the identical files in the generated output with the hard links to one of them, e.g. the fonts,
+ * scripts and style sheets of the theme which are copied into the {@code _static} directory of every output.
+ * The files are compared by their SHA-256 checksums, which are computed in parallel only for the files of
+ * the same size. The files in other directories, such as the outputs of the other modules, can be linked to,
+ * but only the files in the output directory are replaced.
+ *
+ * <p>Because a file written in place would change all files linked to it, the files which have other links
+ * must be {@linkplain #unshare(File) unshared} before the output directory is written again. This requires
+ * the number of links of a file, which is available only on the file systems with the {@code unix} attribute
+ * view, so the output directory on the other file systems is not deduplicated. The writers which do not
+ * unshare the files first, such as other Maven plugins, may still change the linked files in place.</p>
+ */
+final class HardLinkDeduplicator {
+
+    private static final String LINK_COUNT_ATTRIBUTE = "unix:nlink";
+
+    private final int threads;
+
+    /**
+     * Creates a new instance.
+     *
+     * @param threads the number of the threads which compute the checksums, or {@code 0} to use as many
+     *                threads as the available processors
+     */
+    HardLinkDeduplicator(int threads) {
+        this.threads = threads;
+    }
+
+    /**
+     * Returns whether the files in the specified directory can be deduplicated.
+     */
+    static boolean isSupported(File dir) {
+        try {
+            return dir.isDirectory() && Files.getFileStore(dir.toPath()).supportsFileAttributeView("unix");
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Replaces the files in the specified directory which have other links with their copies, so that writing
+     * them in place does not change the other files.
+     *
+     * @return the number of the files unshared
+     */
+    static int unshare(File dir) throws IOException {
+        if (!isSupported(dir)) {
+            return 0;
+        }
+
+        final int[] unshared = new int[1];
+        Files.walkFileTree(dir.toPath(), new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                if (attrs.isRegularFile() && linkCount(file) > 1) {
+                    final Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+                    Files.copy(file, tmp, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.COPY_ATTRIBUTES);
+                    Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+                    unshared[0]++;
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        return unshared[0];
+    }
+
+    /**
+     * Deduplicates the files in the specified directory, notifying the specified {@link SphinxRunnerListener}
+     * of the progress.
+     *
+     * @param otherDirs the directories which contain the files the files in {@code dir} can be linked to
+     */
+    Result deduplicate(File dir, List<File> otherDirs, SphinxRunnerListener listener) throws IOException {
+        final String name = "deduplicate";
+        final long startTime = System.nanoTime();
+        listener.onPostProcessingStarted(name, dir);
+        final Result result = deduplicate(dir, otherDirs);
+        listener.onPostProcessingFinished(name, dir, result.scannedFiles, result.linkedFiles,
+                                          result.savedBytes, System.nanoTime() - startTime);
+        return result;
+    }
+
+    private Result deduplicate(File dir, List<File> otherDirs) throws IOException {
+        final Result result = new Result();
+        if (!isSupported(dir)) {
+            return result;
+        }
+
+        // Group the files by their sizes, visiting the other directories first so that the files in them are
+        // preferred as the link targets, because only the files in the output directory are replaced.
+        final Path root = dir.toPath().toAbsolutePath().normalize();
+        final Map<Long, List<Path>> filesBySize = new HashMap<>();
+        final Map<Path, Object> fileKeys = new HashMap<>();
+        for (File d : otherDirs) {
+            final Path otherRoot = d.toPath().toAbsolutePath().normalize();
+            if (d.isDirectory() && !otherRoot.startsWith(root) &&
+                Files.getFileStore(otherRoot).equals(Files.getFileStore(root))) {
+                scan(otherRoot, root, filesBySize, fileKeys, null);
+            }
+        }
+        scan(root, root, filesBySize, fileKeys, result);
+
+        // Compute the checksums of the files which may have a duplicate, once for each set of linked files.
+        final Map<Object, Path> filesByKey = new LinkedHashMap<>();
+        for (List<Path> files : filesBySize.values()) {
+            if (files.size() > 1) {
+                for (Path f : files) {
+                    final Object key = fileKeys.get(f);
+                    if (key == null || !filesByKey.containsKey(key)) {
+                        filesByKey.put(key != null ? key : f, f);
+                    }
+                }
+            }
+        }
+        final List<Path> hashedFiles = new ArrayList<>(filesByKey.values());
+        final List<Callable<String>> tasks = new ArrayList<>(hashedFiles.size());
+        for (final Path f : hashedFiles) {
+            tasks.add(new Callable<String>() {
+                @Override
+                public String call() throws IOException {
+                    return SphinxUtil.toHexString(SphinxUtil.sha256(f));
+                }
+            });
+        }
+        final List<String> checksums = ParallelTasks.run("dedupe", threads, tasks);
+        final Map<Path, String> checksumByFile = new HashMap<>();
+        for (int i = 0; i < hashedFiles.size(); i++) {
+            checksumByFile.put(hashedFiles.get(i), checksums.get(i));
+        }
+
+        // Link the files in the output directory to the first file of the same size and checksum.
+        for (List<Path> files : filesBySize.values()) {
+            if (files.size() < 2) {
+                continue;
+            }
+
+            final Map<String, Path> targets = new HashMap<>();
+            for (Path f : files) {
+                final Object key = fileKeys.get(f);
+                final Path hashed = key != null ? filesByKey.get(key) : f;
+                final String checksum = checksumByFile.get(hashed);
+                final Path target = targets.get(checksum);
+                if (target == null) {
+                    targets.put(checksum, f);
+                    continue;
+                }
+
+                if (!f.startsWith(root)) {
+                    continue;
+                }
+                final long size = Files.size(f);
+                if (key != null && key.equals(fileKeys.get(target))) {
+                    // Linked already.
+                    result.sharedBytes += size;
+                    continue;
+                }
+
+                final Path tmp = f.resolveSibling(f.getFileName() + ".tmp");
+                try {
+                    Files.deleteIfExists(tmp);
+                    Files.createLink(tmp, target);
+                    Files.move(tmp, f, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+                } catch (UnsupportedOperationException | FileSystemException e) {
+                    // Hard links are not allowed for the file, e.g. by the file system or the permissions.
+                    Files.deleteIfExists(tmp);
+                    continue;
+                }
+                fileKeys.put(f, fileKeys.get(target));
+                result.linkedFiles++;
+                result.savedBytes += size;
+                result.sharedBytes += size;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @param result the {@link Result} to update, or {@code null} if {@code dir} is not the output directory
+     */
+    private static void scan(Path dir, final Path root, final Map<Long, List<Path>> filesBySize,
+                             final Map<Path, Object> fileKeys, final Result result) throws IOException {
+        Files.walkFileTree(dir, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path d, BasicFileAttributes attrs) {
+                // Do not scan the output directory twice if it is in the other directory.
+                return result == null && d.equals(root) ? FileVisitResult.SKIP_SUBTREE
+                                                        : FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                if (!attrs.isRegularFile() || attrs.size() == 0) {
+                    return FileVisitResult.CONTINUE;
+                }
+                if (result != null) {
+                    result.scannedFiles++;
+                }
+
+                List<Path> files = filesBySize.get(attrs.size());
+                if (files == null) {
+                    files = new ArrayList<>(2);
+                    filesBySize.put(attrs.size(), files);
+                }
+                files.add(file);
+                if (attrs.fileKey() != null) {
+                    fileKeys.put(file, attrs.fileKey());
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    private static int linkCount(Path file) throws IOException {
+        return ((Number) Files.getAttribute(file, LINK_COUNT_ATTRIBUTE)).intValue();
+    }
+
+    /**
+     * The statistics of a {@link HardLinkDeduplicator} run.
+     */
+    static final class Result {
+        int scannedFiles;
+        int linkedFiles;
+
+        /**
+         * The total size of the files replaced with a hard link in this run, i.e. the disk space saved.
+         */
+        long savedBytes;
+
+        /**
+         * The total size of the files in the output directory which share their content with another file,
+         * i.e. the bytes which do not have to be written when the output is copied with its hard links
+         * preserved, e.g. with {@code rsync -H}.
+         */
+        long sharedBytes;
+    }
+}
@@ -0,0 +1,482 @@
+package kr.motd.maven.sphinx;
+
+import java.awt.color.ColorSpace;
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.IndexColorModel;
+import java.awt.image.WritableRaster;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+
+/**
+ * Recompresses the PNG images of the generated output losslessly with the PNG encoder of the JDK, e.g.
+ * the diagrams rendered by PlantUML and the images copied into {@code _static}. An image is replaced only if
+ * the recompressed one is smaller and decodes to exactly the same pixels. The chunks which affect how the colors
+ * are displayed, i.e. {@code gAMA}, {@code cHRM}, {@code sRGB} and {@code iCCP}, are copied from the original
+ * image, while the other ancillary chunks, such as text ({@code tEXt}, {@code zTXt} and {@code iTXt}) and
+ * timestamps ({@code tIME}), are dropped. Optionally, the alternatives of the images in other formats, such as
+ * WebP, are written next to them if an {@link ImageIO} writer for the format is in the class path of the plugin.
+ *
+ * <p>The results are cached in a directory by the SHA-256 checksum of the images, so that an image is never
+ * processed twice even if Sphinx writes it again, and the images already optimized are skipped quickly.</p>
+ */
+final class ImageOptimizer {
+
+    private static final String OPTIMAL_SUFFIX = ".optimal";
+
+    /**
+     * The suffix of the cached optimized images, which is changed whenever the encoding changes, so that
+     * the images cached by an older version are not reused.
+     */
+    private static final String CACHED_SUFFIX = ".v2.png";
+
+    private static final byte[] PNG_SIGNATURE = { (byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1a, '\n' };
+
+    /**
+     * The ancillary PNG chunks which are copied from the original image, because they affect how the colors
+     * are displayed.
+     */
+    private static final Set<String> COLOR_CHUNKS =
+            new HashSet<>(Arrays.asList("gAMA", "cHRM", "sRGB", "iCCP"));
+
+    /**
+     * The images larger than this are skipped, to keep the memory usage of the parallel tasks bounded.
+     */
+    private static final long MAX_PIXELS = 16L * 1024 * 1024;
+
+    private final File cacheDir;
+    private final List<String> alternativeFormats;
+    private final int threads;
+
+    /**
+     * Creates a new instance.
+     *
+     * @param cacheDir the directory where the optimized images are cached
+     * @param alternativeFormats the formats of the alternatives to write, e.g. {@code webp}
+     * @param threads the number of the threads which process the images, or {@code 0} to use as many threads
+     *                as the available processors
+     */
+    ImageOptimizer(File cacheDir, List<String> alternativeFormats, int threads) {
+        this.cacheDir = cacheDir;
+        this.alternativeFormats = new ArrayList<>();
+        for (String f : alternativeFormats) {
+            this.alternativeFormats.add(f.trim().toLowerCase(Locale.US));
+        }
+        this.threads = threads;
+    }
+
+    /**
+     * Returns the formats among the specified ones which cannot be written because there is no {@link ImageIO}
+     * writer for them.
+     */
+    static List<String> unsupportedFormats(List<String> formats) {
+        final List<String> unsupported = new ArrayList<>();
+        for (String f : formats) {
+            if (!ImageIO.getImageWritersByFormatName(f.trim().toLowerCase(Locale.US)).hasNext()) {
+                unsupported.add(f);
+            }
+        }
+        return unsupported;
+    }
+
+    /**
+     * Optimizes the PNG images in the specified directory, notifying the specified {@link SphinxRunnerListener}
+     * of the progress.
+     */
+    Result optimize(File dir, SphinxRunnerListener listener) throws IOException {
+        final String name = "optimizeImages";
+        final long startTime = System.nanoTime();
+        listener.onPostProcessingStarted(name, dir);
+        final Result result = optimize(dir);
+        listener.onPostProcessingFinished(name, dir, result.scannedFiles, result.modifiedFiles,
+                                          result.optimizedBytes, System.nanoTime() - startTime);
+        return result;
+    }
+
+    private Result optimize(File dir) throws IOException {
+        final Result result = new Result();
+        if (!dir.isDirectory()) {
+            return result;
+        }
+        Files.createDirectories(cacheDir.toPath());
+
+        final List<Path> images = new ArrayList<>();
+        Files.walkFileTree(dir.toPath(), new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                if (attrs.isRegularFile() &&
+                    file.getFileName().toString().toLowerCase(Locale.US).endsWith(".png")) {
+                    images.add(file);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+
+        final List<Callable<long[]>> tasks = new ArrayList<>(images.size());
+        for (final Path image : images) {
+            tasks.add(new Callable<long[]>() {
+                @Override
+                public long[] call() throws IOException {
+                    return optimizeFile(image);
+                }
+            });
+        }
+
+        result.scannedFiles = images.size();
+        for (long[] s : ParallelTasks.run("images", threads, tasks)) {
+            if (s[1] >= 0) {
+                result.modifiedFiles++;
+                result.originalBytes += s[0];
+                result.optimizedBytes += s[1];
+            }
+            result.alternativeFiles += s[2];
+        }
+        return result;
+    }
+
+    /**
+     * @return the original size and the new size of the image, which is {@code -1} if the image has not been
+     *         modified, and the number of the alternatives written
+     */
+    private long[] optimizeFile(Path file) throws IOException {
+        final byte[] content = Files.readAllBytes(file);
+        final String checksum = SphinxUtil.sha256(content);
+        final Path optimalMarker = cacheDir.toPath().resolve(checksum + OPTIMAL_SUFFIX);
+        final Path cached = cacheDir.toPath().resolve(checksum + CACHED_SUFFIX);
+
+        byte[] optimized = null;
+        BufferedImage image = null;
+        if (Files.exists(cached)) {
+            optimized = Files.readAllBytes(cached);
+        } else if (!Files.exists(optimalMarker)) {
+            image = read(content);
+            optimized = image != null ? recompress(image, content) : null;
+            if (optimized != null) {
+                writeCache(cached, optimized);
+                // Skip the optimized image when it is processed again.
+                writeCache(cacheDir.toPath().resolve(SphinxUtil.sha256(optimized) + OPTIMAL_SUFFIX), new byte[0]);
+            } else {
+                writeCache(optimalMarker, new byte[0]);
+            }
+        }
+
+        long newSize = -1;
+        String newChecksum = checksum;
+        if (optimized != null) {
+            write(file, optimized);
+            newSize = optimized.length;
+            newChecksum = SphinxUtil.sha256(optimized);
+        }
+
+        int alternatives = 0;
+        for (String format : alternativeFormats) {
+            final Path alternative = file.resolveSibling(file.getFileName() + "." + format);
+            final Path cachedAlternative = cacheDir.toPath().resolve(newChecksum + "." + format);
+            if (!Files.exists(cachedAlternative)) {
+                if (image == null) {
+                    image = read(optimized != null ? optimized : content);
+                }
+                final byte[] encoded = image != null ? encode(image, format) : null;
+                if (encoded == null) {
+                    continue;
+                }
+                writeCache(cachedAlternative, encoded);
+            }
+            final byte[] encoded = Files.readAllBytes(cachedAlternative);
+            if (!Files.isRegularFile(alternative) ||
+                !Arrays.equals(Files.readAllBytes(alternative), encoded)) {
+                write(alternative, encoded);
+                alternatives++;
+            }
+        }
+
+        return new long[] { content.length, newSize, alternatives };
+    }
+
+    /**
+     * @return the decoded image, or {@code null} if the image is not supported
+     */
+    private static BufferedImage read(byte[] content) throws IOException {
+        final BufferedImage image = ImageIO.read(new ByteArrayInputStream(content));
+        if (image == null || (long) image.getWidth() * image.getHeight() > MAX_PIXELS) {
+            return null;
+        }
+
+        final ColorModel cm = image.getColorModel();
+        for (int size : cm.getComponentSize()) {
+            if (size > 8) {
+                // Do not risk losing the precision of a 16-bit image.
+                return null;
+            }
+        }
+        final ColorSpace cs = cm.getColorSpace();
+        if (!cs.isCS_sRGB() && cs.getType() != ColorSpace.TYPE_GRAY) {
+            // The image with an embedded color profile would look different without it.
+            return null;
+        }
+        return image;
+    }
+
+    /**
+     * @return the smallest lossless encoding of the specified image, or {@code null} if none is smaller than
+     *         the original
+     */
+    private static byte[] recompress(BufferedImage image, byte[] original) throws IOException {
+        final List<byte[]> colorChunks = colorChunks(original);
+        final List<BufferedImage> candidates = new ArrayList<>(2);
+        candidates.add(image);
+        final BufferedImage indexed = toIndexed(image);
+        if (indexed != null) {
+            candidates.add(indexed);
+        }
+
+        int[] pixels = null;
+        byte[] best = null;
+        for (BufferedImage c : candidates) {
+            byte[] encoded = encode(c, "png");
+            if (encoded != null) {
+                encoded = insertChunks(encoded, colorChunks);
+            }
+            if (encoded == null || encoded.length >= original.length ||
+                best != null && encoded.length >= best.length) {
+                continue;
+            }
+
+            // Make sure that the encoding is lossless.
+            if (pixels == null) {
+                pixels = pixels(image);
+            }
+            final BufferedImage decoded = ImageIO.read(new ByteArrayInputStream(encoded));
+            if (decoded != null && decoded.getWidth() == image.getWidth() &&
+                decoded.getHeight() == image.getHeight() && Arrays.equals(pixels(decoded), pixels)) {
+                best = encoded;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Returns the {@link #COLOR_CHUNKS} of the specified PNG image, including their lengths and CRCs.
+     */
+    private static List<byte[]> colorChunks(byte[] png) {
+        final List<byte[]> chunks = new ArrayList<>();
+        int pos = PNG_SIGNATURE.length;
+        while (pos + 8 <= png.length) {
+            final int length = readInt(png, pos);
+            final String type = new String(png, pos + 4, 4, StandardCharsets.US_ASCII);
+            final int end = pos + 12 + length;
+            if (length < 0 || end > png.length || "IDAT".equals(type)) {
+                // The color chunks precede the image data.
+                break;
+            }
+            if (COLOR_CHUNKS.contains(type)) {
+                chunks.add(Arrays.copyOfRange(png, pos, end));
+            }
+            pos = end;
+        }
+        return chunks;
+    }
+
+    /**
+     * Inserts the specified chunks right after the {@code IHDR} chunk of the specified PNG image written by
+     * {@link ImageIO}, replacing the chunks of the same types.
+     *
+     * @return the new image, or {@code null} if the image is malformed
+     */
+    private static byte[] insertChunks(byte[] png, List<byte[]> chunks) {
+        if (chunks.isEmpty()) {
+            return png;
+        }
+        if (png.length < PNG_SIGNATURE.length + 8 ||
+            !Arrays.equals(Arrays.copyOf(png, PNG_SIGNATURE.length), PNG_SIGNATURE)) {
+            return null;
+        }
+
+        final ByteArrayOutputStream buf = new ByteArrayOutputStream(png.length + 1024);
+        buf.write(png, 0, PNG_SIGNATURE.length);
+        int pos = PNG_SIGNATURE.length;
+        boolean inserted = false;
+        while (pos < png.length) {
+            if (pos + 8 > png.length) {
+                return null;
+            }
+            final int length = readInt(png, pos);
+            final String type = new String(png, pos + 4, 4, StandardCharsets.US_ASCII);
+            final int end = pos + 12 + length;
+            if (length < 0 || end > png.length) {
+                return null;
+            }
+            if (!COLOR_CHUNKS.contains(type)) {
+                buf.write(png, pos, end - pos);
+            }
+            if (!inserted && "IHDR".equals(type)) {
+                for (byte[] c : chunks) {
+                    buf.write(c, 0, c.length);
+                }
+                inserted = true;
+            }
+            pos = end;
+        }
+        return inserted ? buf.toByteArray() : null;
+    }
+
+    private static int readInt(byte[] data, int offset) {
+        return (data[offset] & 0xff) << 24 | (data[offset + 1] & 0xff) << 16 |
+               (data[offset + 2] & 0xff) << 8 | data[offset + 3] & 0xff;
+    }
+
+    /**
+     * Converts the specified image into a palette-based one if it has 256 colors or less.
+     *
+     * @return the converted image, or {@code null} if the image has more than 256 colors, already has a palette
+     *         or is not an sRGB image
+     */
+    private static BufferedImage toIndexed(BufferedImage image) {
+        final ColorModel cm = image.getColorModel();
+        if (cm instanceof IndexColorModel || !cm.getColorSpace().isCS_sRGB()) {
+            // A palette is always sRGB, and the grayscale samples are converted as linear ones by Java 2D.
+            return null;
+        }
+
+        final int[] pixels = pixels(image);
+        final Map<Integer, Integer> palette = new HashMap<>();
+        for (int p : pixels) {
+            if (!palette.containsKey(p)) {
+                if (palette.size() == 256) {
+                    return null;
+                }
+                palette.put(p, palette.size());
+            }
+        }
+
+        final int size = palette.size();
+        final byte[] r = new byte[size];
+        final byte[] g = new byte[size];
+        final byte[] b = new byte[size];
+        final byte[] a = new byte[size];
+        for (Map.Entry<Integer, Integer> e : palette.entrySet()) {
+            final int p = e.getKey();
+            final int i = e.getValue();
+            a[i] = (byte) (p >>> 24);
+            r[i] = (byte) (p >>> 16);
+            g[i] = (byte) (p >>> 8);
+            b[i] = (byte) p;
+        }
+
+        final int bits = size <= 2 ? 1 : size <= 4 ? 2 : size <= 16 ? 4 : 8;
+        final BufferedImage indexed = new BufferedImage(
+                image.getWidth(), image.getHeight(),
+                bits < 8 ? BufferedImage.TYPE_BYTE_BINARY : BufferedImage.TYPE_BYTE_INDEXED,
+                new IndexColorModel(bits, size, r, g, b, a));
+        final WritableRaster raster = indexed.getRaster();
+        final int width = image.getWidth();
+        for (int i = 0; i < pixels.length; i++) {
+            raster.setSample(i % width, i / width, 0, palette.get(pixels[i]));
+        }
+        return indexed;
+    }
+
+    private static int[] pixels(BufferedImage image) {
+        return image.getRGB(0, 0, image.getWidth(), image.getHeight(), null, 0, image.getWidth());
+    }
+
+    /**
+     * Encodes the specified image without metadata, with the best compression if the format is {@code png}.
+     *
+     * @return the encoded image, or {@code null} if there is no writer for the format or it cannot encode
+     *         the image
+     */
+    private static byte[] encode(BufferedImage image, String format) throws IOException {
+        final Iterator<ImageWriter> writers = ImageIO.getImageWritersByFormatName(format);
+        if (!writers.hasNext()) {
+            return null;
+        }
+
+        final ImageWriter writer = writers.next();
+        try {
+            final ImageWriteParam param = writer.getDefaultWriteParam();
+            if ("png".equals(format) && param.canWriteCompressed()) {
+                param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+                // 0 means the best compression.
+                param.setCompressionQuality(0.0f);
+            }
+
+            final ByteArrayOutputStream buf = new ByteArrayOutputStream();
+            try (ImageOutputStream out = ImageIO.createImageOutputStream(buf)) {
+                writer.setOutput(out);
+                writer.write(null, new IIOImage(image, null, null), param);
+            } catch (IllegalArgumentException | UnsupportedOperationException e) {
+                // The writer does not support the type of the image.
+                return null;
+            }
+            return buf.toByteArray();
+        } finally {
+            writer.dispose();
+        }
+    }
+
+    /**
+     * Writes a cache entry, which may be written by another thread or build at the same time.
+     */
+    private static void writeCache(Path file, byte[] content) throws IOException {
+        final Path tmp = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+        try {
+            Files.write(tmp, content);
+            Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    private static void write(Path file, byte[] content) throws IOException {
+        final Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(tmp.toFile())) {
+            out.write(content);
+        }
+        Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * The statistics of an {@link ImageOptimizer} run.
+     */
+    static final class Result {
+        int scannedFiles;
+        int modifiedFiles;
+        long originalBytes;
+        long optimizedBytes;
+        int alternativeFiles;
+
+        /**
+         * Returns the number of the bytes removed by recompression.
+         */
+        long savedBytes() {
+            return originalBytes - optimizedBytes;
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package kr.motd.maven.sphinx;
+
+/**
+ * Provides the {@link SphinxRunnerListener} which records Java Flight Recorder events.
+ *
+ * <p>This class is replaced with the implementation in {@code META-INF/versions/11} when running on Java 11
+ * or above, because Java Flight Recorder is not available in older Java versions.</p>
+ */
+final class JfrSupport {
+
+    /**
+     * Returns a new {@link SphinxRunnerListener} which records Java Flight Recorder events,
+     * or {@code null} if Java Flight Recorder is not available.
+     */
+    static SphinxRunnerListener newListener() {
+        return null;
+    }
+
+    private JfrSupport() {}
+}
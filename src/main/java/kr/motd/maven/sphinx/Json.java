@@ -0,0 +1,307 @@
+package kr.motd.maven.sphinx;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+/**
+ * Utility methods for reading and writing JSON documents.
+ */
+final class Json {
+
+    /**
+     * Parses the specified JSON document into a {@link Map}, a {@link List}, a {@link String}, a {@link Long},
+     * a {@link Double}, a {@link Boolean} or {@code null}. The order of the members of an object is preserved.
+     * A member name may also be a bare identifier, as written by the {@code jsdump} module of Sphinx before 5.0.
+     *
+     * @throws IllegalArgumentException if the document is malformed
+     */
+    static Object parse(String json) {
+        final Parser parser = new Parser(json);
+        final Object value = parser.value();
+        parser.skipWhitespace();
+        if (parser.pos != json.length()) {
+            throw parser.error("trailing characters");
+        }
+        return value;
+    }
+
+    /**
+     * Appends the specified value, which is one of the types returned by {@link #parse(String)}, to
+     * the specified buffer in compact JSON.
+     */
+    static StringBuilder write(StringBuilder buf, Object value) {
+        if (value == null) {
+            return buf.append("null");
+        }
+        if (value instanceof String) {
+            return quote(buf, (String) value);
+        }
+        if (value instanceof Map) {
+            buf.append('{');
+            boolean first = true;
+            for (Entry<?, ?> e : ((Map<?, ?>) value).entrySet()) {
+                if (!first) {
+                    buf.append(',');
+                }
+                quote(buf, String.valueOf(e.getKey())).append(':');
+                write(buf, e.getValue());
+                first = false;
+            }
+            return buf.append('}');
+        }
+        if (value instanceof List) {
+            buf.append('[');
+            boolean first = true;
+            for (Object e : (List<?>) value) {
+                if (!first) {
+                    buf.append(',');
+                }
+                write(buf, e);
+                first = false;
+            }
+            return buf.append(']');
+        }
+        return buf.append(value);
+    }
+
+    /**
+     * Appends the specified string to the specified buffer as a JSON string literal.
+     */
+    static StringBuilder quote(StringBuilder buf, String value) {
+        buf.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            final char ch = value.charAt(i);
+            switch (ch) {
+                case '"':
+                    buf.append("\\\"");
+                    break;
+                case '\\':
+                    buf.append("\\\\");
+                    break;
+                case '\n':
+                    buf.append("\\n");
+                    break;
+                case '\r':
+                    buf.append("\\r");
+                    break;
+                case '\t':
+                    buf.append("\\t");
+                    break;
+                default:
+                    if (ch < 0x20) {
+                        buf.append(String.format("\\u%04x", (int) ch));
+                    } else {
+                        buf.append(ch);
+                    }
+            }
+        }
+        return buf.append('"');
+    }
+
+    private static final class Parser {
+        private final String in;
+        int pos;
+
+        Parser(String in) {
+            this.in = in;
+        }
+
+        Object value() {
+            skipWhitespace();
+            if (pos >= in.length()) {
+                throw error("unexpected end of document");
+            }
+            final char ch = in.charAt(pos);
+            switch (ch) {
+                case '{':
+                    return object();
+                case '[':
+                    return array();
+                case '"':
+                    return string();
+                case 't':
+                    return literal("true", Boolean.TRUE);
+                case 'f':
+                    return literal("false", Boolean.FALSE);
+                case 'n':
+                    return literal("null", null);
+                default:
+                    if (ch == '-' || ch >= '0' && ch <= '9') {
+                        return number();
+                    }
+                    throw error("unexpected character: " + ch);
+            }
+        }
+
+        private Map<String, Object> object() {
+            final Map<String, Object> map = new LinkedHashMap<>();
+            pos++;
+            skipWhitespace();
+            if (peek() == '}') {
+                pos++;
+                return map;
+            }
+            for (;;) {
+                skipWhitespace();
+                final String name;
+                if (peek() == '"') {
+                    name = string();
+                } else if (Character.isJavaIdentifierStart(peek())) {
+                    name = identifier();
+                } else {
+                    throw error("a member name expected");
+                }
+                skipWhitespace();
+                expect(':');
+                map.put(name, value());
+                skipWhitespace();
+                if (peek() == ',') {
+                    pos++;
+                } else {
+                    expect('}');
+                    return map;
+                }
+            }
+        }
+
+        private String identifier() {
+            final int start = pos;
+            while (pos < in.length() && Character.isJavaIdentifierPart(in.charAt(pos))) {
+                pos++;
+            }
+            return in.substring(start, pos);
+        }
+
+        private List<Object> array() {
+            final List<Object> list = new ArrayList<>();
+            pos++;
+            skipWhitespace();
+            if (peek() == ']') {
+                pos++;
+                return list;
+            }
+            for (;;) {
+                list.add(value());
+                skipWhitespace();
+                if (peek() == ',') {
+                    pos++;
+                } else {
+                    expect(']');
+                    return list;
+                }
+            }
+        }
+
+        private String string() {
+            pos++;
+            final StringBuilder buf = new StringBuilder();
+            for (;;) {
+                if (pos >= in.length()) {
+                    throw error("unterminated string");
+                }
+                final char ch = in.charAt(pos++);
+                if (ch == '"') {
+                    return buf.toString();
+                }
+                if (ch != '\\') {
+                    buf.append(ch);
+                    continue;
+                }
+                if (pos >= in.length()) {
+                    throw error("unterminated string");
+                }
+                final char escaped = in.charAt(pos++);
+                switch (escaped) {
+                    case 'b':
+                        buf.append('\b');
+                        break;
+                    case 'f':
+                        buf.append('\f');
+                        break;
+                    case 'n':
+                        buf.append('\n');
+                        break;
+                    case 'r':
+                        buf.append('\r');
+                        break;
+                    case 't':
+                        buf.append('\t');
+                        break;
+                    case 'u':
+                        if (pos + 4 > in.length()) {
+                            throw error("malformed unicode escape");
+                        }
+                        try {
+                            buf.append((char) Integer.parseInt(in.substring(pos, pos + 4), 16));
+                        } catch (NumberFormatException e) {
+                            throw error("malformed unicode escape");
+                        }
+                        pos += 4;
+                        break;
+                    default:
+                        buf.append(escaped);
+                }
+            }
+        }
+
+        private Object number() {
+            final int start = pos;
+            boolean integral = true;
+            while (pos < in.length()) {
+                final char ch = in.charAt(pos);
+                if (ch == '.' || ch == 'e' || ch == 'E') {
+                    integral = false;
+                } else if (!(ch >= '0' && ch <= '9' || ch == '-' || ch == '+')) {
+                    break;
+                }
+                pos++;
+            }
+            final String number = in.substring(start, pos);
+            try {
+                if (integral) {
+                    return Long.parseLong(number);
+                }
+                return Double.parseDouble(number);
+            } catch (NumberFormatException e) {
+                throw error("malformed number: " + number);
+            }
+        }
+
+        private Object literal(String literal, Object value) {
+            if (!in.startsWith(literal, pos)) {
+                throw error("unexpected character: " + in.charAt(pos));
+            }
+            pos += literal.length();
+            return value;
+        }
+
+        private char peek() {
+            if (pos >= in.length()) {
+                throw error("unexpected end of document");
+            }
+            return in.charAt(pos);
+        }
+
+        private void expect(char ch) {
+            if (peek() != ch) {
+                throw error("'" + ch + "' expected");
+            }
+            pos++;
+        }
+
+        void skipWhitespace() {
+            while (pos < in.length() && Character.isWhitespace(in.charAt(pos))) {
+                pos++;
+            }
+        }
+
+        IllegalArgumentException error(String message) {
+            return new IllegalArgumentException(message + " at " + pos);
+        }
+    }
+
+    private Json() {}
+}
@@ -0,0 +1,146 @@
+package kr.motd.maven.sphinx;
+
+import static java.util.Objects.requireNonNull;
+
+import java.io.File;
+import java.net.URI;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A {@link SphinxRunnerListener} which logs the events and the output of Sphinx as messages via
+ * a {@link SphinxRunnerLogger}. The standard error of Sphinx and the warnings can be logged via another
+ * {@link SphinxRunnerLogger}, e.g. at a higher level.
+ *
+ * <p>In quiet mode, the output of Sphinx is logged only when Sphinx fails, and only the last lines
+ * of the output are retained in memory until then.</p>
+ */
+public class LoggingSphinxRunnerListener extends SphinxRunnerListenerAdapter {
+
+    private static final long PROGRESS_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final SphinxRunnerLogger logger;
+    private final SphinxRunnerLogger errorLogger;
+    private final String linePrefix;
+    private final boolean quiet;
+    private final int maxRetainedLines;
+    private final Deque<OutputLine> retainedLines;
+    private int discardedLines;
+    private long lastProgressTimeNanos;
+
+    public LoggingSphinxRunnerListener(SphinxRunnerLogger logger) {
+        this(logger, "", false, 0);
+    }
+
+    /**
+     * Creates a new instance.
+     *
+     * @param linePrefix the prefix to prepend to each line of the Sphinx output, e.g. a module name
+     * @param quiet whether the Sphinx output should be logged only when Sphinx fails
+     * @param maxRetainedLines the maximum number of the last output lines to retain in quiet mode
+     */
+    public LoggingSphinxRunnerListener(SphinxRunnerLogger logger, String linePrefix,
+                                       boolean quiet, int maxRetainedLines) {
+        this(logger, logger, linePrefix, quiet, maxRetainedLines);
+    }
+
+    /**
+     * Creates a new instance.
+     *
+     * @param errorLogger the {@link SphinxRunnerLogger} which logs the standard error of Sphinx and the warnings
+     * @param linePrefix the prefix to prepend to each line of the Sphinx output, e.g. a module name
+     * @param quiet whether the Sphinx output should be logged only when Sphinx fails
+     * @param maxRetainedLines the maximum number of the last output lines to retain in quiet mode
+     */
+    public LoggingSphinxRunnerListener(SphinxRunnerLogger logger, SphinxRunnerLogger errorLogger,
+                                       String linePrefix, boolean quiet, int maxRetainedLines) {
+        this.logger = requireNonNull(logger, "logger");
+        this.errorLogger = requireNonNull(errorLogger, "errorLogger");
+        this.linePrefix = requireNonNull(linePrefix, "linePrefix");
+        if (quiet && maxRetainedLines <= 0) {
+            throw new IllegalArgumentException("maxRetainedLines: " + maxRetainedLines + " (expected: > 0)");
+        }
+        this.quiet = quiet;
+        this.maxRetainedLines = maxRetainedLines;
+        retainedLines = quiet ? new ArrayDeque<OutputLine>(Math.min(maxRetainedLines, 1024)) : null;
+    }
+
+    @Override
+    public void onDownloadStarted(URI uri) {
+        lastProgressTimeNanos = System.nanoTime();
+        logger.log("Download " + uri);
+    }
+
+    @Override
+    public void onDownloadProgress(URI uri, long transferredBytes, long totalBytes) {
+        final long currentTimeNanos = System.nanoTime();
+        if (currentTimeNanos - lastProgressTimeNanos >= PROGRESS_INTERVAL_NANOS) {
+            logger.log("Download " + transferredBytes + '/' + (totalBytes >= 0 ? String.valueOf(totalBytes) : "?"));
+            lastProgressTimeNanos = currentTimeNanos;
+        }
+    }
+
+    @Override
+    public void onProcessOutput(String line, boolean error) {
+        if (!quiet) {
+            (error ? errorLogger : logger).log(linePrefix + line);
+            return;
+        }
+
+        synchronized (retainedLines) {
+            if (retainedLines.size() == maxRetainedLines) {
+                retainedLines.poll();
+                discardedLines++;
+            }
+            retainedLines.add(new OutputLine(line, error));
+        }
+    }
+
+    @Override
+    public void onProcessExited(int exitCode, long elapsedNanos, ProcessResourceUsage usage) {
+        if (quiet) {
+            synchronized (retainedLines) {
+                if (exitCode != 0) {
+                    if (discardedLines > 0) {
+                        logger.log(linePrefix + "... (" + discardedLines + " line(s) omitted)");
+                    }
+                    for (OutputLine line : retainedLines) {
+                        (line.error ? errorLogger : logger).log(linePrefix + line.text);
+                    }
+                }
+                retainedLines.clear();
+                discardedLines = 0;
+            }
+        }
+        if (usage.samples() == 0) {
+            logger.log("Sphinx exited with code " + exitCode + ". Took " +
+                       TimeUnit.NANOSECONDS.toMillis(elapsedNanos) + "ms.");
+        } else {
+            logger.log("Sphinx exited with code " + exitCode + ". Took " +
+                       TimeUnit.NANOSECONDS.toMillis(elapsedNanos) + "ms. (" + usage + ')');
+        }
+    }
+
+    @Override
+    public void onPostProcessingFinished(String name, File dir, int scannedFiles, int modifiedFiles,
+                                         long modifiedBytes, long elapsedNanos) {
+        logger.log("Post-processing '" + name + "' modified " + modifiedFiles + " of " + scannedFiles +
+                   " file(s). Took " + TimeUnit.NANOSECONDS.toMillis(elapsedNanos) + "ms.");
+    }
+
+    @Override
+    public void onWarning(String message, Throwable cause) {
+        errorLogger.log(cause != null ? message + ": " + cause : message);
+    }
+
+    private static final class OutputLine {
+        final String text;
+        final boolean error;
+
+        OutputLine(String text, boolean error) {
+            this.text = text;
+            this.error = error;
+        }
+    }
+}
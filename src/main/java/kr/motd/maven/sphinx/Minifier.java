@@ -0,0 +1,394 @@
+package kr.motd.maven.sphinx;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Conservative minifiers for the HTML, CSS and JavaScript files generated by Sphinx. They remove only
+ * the comments and the whitespace which cannot affect the rendering or the behavior, and leave the content
+ * they do not understand as it is.
+ */
+final class Minifier {
+
+    /**
+     * The elements whose content is preserved as it is, or is minified as CSS or JavaScript.
+     */
+    private static final Pattern HTML_RAW_ELEMENT_PATTERN = Pattern.compile(
+            "<(pre|textarea|script|style)\\b[^>]*>.*?</\\1\\s*>",
+            Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+
+    /**
+     * HTML comments except the conditional comments of Internet Explorer.
+     */
+    private static final Pattern HTML_COMMENT_PATTERN = Pattern.compile("<!--(?!\\[if).*?-->", Pattern.DOTALL);
+
+    private static final Pattern WHITESPACE_PATTERN = Pattern.compile("\\s{2,}|[\\t\\r\\n\\f]");
+
+    /**
+     * Minifies the specified HTML document by removing the comments and collapsing the whitespace outside of
+     * {@code <pre>}, {@code <textarea>}, {@code <script>} and {@code <style>} elements.
+     */
+    static String html(String html) {
+        final StringBuilder buf = new StringBuilder(html.length());
+        final Matcher m = HTML_RAW_ELEMENT_PATTERN.matcher(html);
+        int start = 0;
+        while (m.find()) {
+            appendHtmlText(buf, html.substring(start, m.start()));
+            buf.append(m.group());
+            start = m.end();
+        }
+        appendHtmlText(buf, html.substring(start));
+        return buf.toString();
+    }
+
+    private static void appendHtmlText(StringBuilder buf, String text) {
+        final String uncommented = HTML_COMMENT_PATTERN.matcher(text).replaceAll("");
+        final Matcher m = WHITESPACE_PATTERN.matcher(uncommented);
+        int start = 0;
+        while (m.find()) {
+            buf.append(uncommented, start, m.start());
+            // Keep a line break if there was one, so that the output stays readable and diffable.
+            buf.append(m.group().indexOf('\n') >= 0 ? '\n' : ' ');
+            start = m.end();
+        }
+        buf.append(uncommented, start, uncommented.length());
+    }
+
+    /**
+     * Minifies the specified style sheet by removing the comments, except {@code /*!} ones which usually
+     * contain a license, and the whitespace around <code>{</code>, <code>}</code>, {@code ;} and {@code ,} and
+     * after {@code :}.
+     */
+    static String css(String css) {
+        final StringBuilder buf = new StringBuilder(css.length());
+        final int length = css.length();
+        boolean pendingSpace = false;
+        for (int i = 0; i < length;) {
+            final char ch = css.charAt(i);
+            if (ch == '/' && i + 1 < length && css.charAt(i + 1) == '*') {
+                int end = css.indexOf("*/", i + 2);
+                end = end < 0 ? length : end + 2;
+                if (i + 2 < length && css.charAt(i + 2) == '!') {
+                    buf.append(css, i, end).append('\n');
+                    pendingSpace = false;
+                }
+                i = end;
+                continue;
+            }
+            if (ch == '"' || ch == '\'') {
+                if (pendingSpace) {
+                    appendSpace(buf);
+                    pendingSpace = false;
+                }
+                final int end = skipQuoted(css, i, ch);
+                buf.append(css, i, end);
+                i = end;
+                continue;
+            }
+            if (Character.isWhitespace(ch)) {
+                pendingSpace = buf.length() != 0;
+                i++;
+                continue;
+            }
+            if (ch == ':') {
+                // Keep the whitespace before a colon, which is a descendant combinator in a selector,
+                // e.g. 'a :hover'.
+                if (pendingSpace) {
+                    appendSpace(buf);
+                    pendingSpace = false;
+                }
+                buf.append(ch);
+                i++;
+                while (i < length && Character.isWhitespace(css.charAt(i))) {
+                    i++;
+                }
+                continue;
+            }
+            if (ch == '{' || ch == '}' || ch == ';' || ch == ',') {
+                pendingSpace = false;
+                buf.append(ch);
+                i++;
+                // Skip the whitespace after the punctuation.
+                while (i < length && Character.isWhitespace(css.charAt(i))) {
+                    i++;
+                }
+                continue;
+            }
+            if (pendingSpace) {
+                appendSpace(buf);
+                pendingSpace = false;
+            }
+            buf.append(ch);
+            i++;
+        }
+        return buf.toString();
+    }
+
+    private static void appendSpace(StringBuilder buf) {
+        final char last = buf.charAt(buf.length() - 1);
+        if (last != '{' && last != '}' && last != ';' && last != ',' && last != '\n') {
+            buf.append(' ');
+        }
+    }
+
+    /**
+     * Minifies the specified script with the algorithm of Douglas Crockford's JSMin, which removes
+     * the comments and the whitespace which does not separate tokens, while keeping the line breaks which
+     * may terminate a statement. Template literals are preserved as well as string and regular expression
+     * literals. {@code /*!} comments are preserved.
+     */
+    static String js(String js) {
+        return new JsMin(js).minify();
+    }
+
+    private static int skipQuoted(String s, int start, char quote) {
+        final int length = s.length();
+        for (int i = start + 1; i < length; i++) {
+            final char ch = s.charAt(i);
+            if (ch == '\\') {
+                i++;
+            } else if (ch == quote) {
+                return i + 1;
+            }
+        }
+        return length;
+    }
+
+    private static final class JsMin {
+        private static final int EOF = -1;
+
+        private final String in;
+        private final StringBuilder out;
+        private int pos;
+        private int theA;
+        private int theB;
+        private int theLookahead = EOF;
+        private int theX = EOF;
+        private int theY = EOF;
+
+        JsMin(String in) {
+            this.in = in;
+            out = new StringBuilder(in.length());
+        }
+
+        String minify() {
+            if (in.startsWith("#!")) {
+                // Leave the scripts with a shebang line as they are.
+                return in;
+            }
+
+            theA = '\n';
+            action(3);
+            while (theA != EOF) {
+                switch (theA) {
+                    case ' ':
+                        action(isAlphanum(theB) ? 1 : 2);
+                        break;
+                    case '\n':
+                        switch (theB) {
+                            case '{': case '[': case '(': case '+': case '-': case '!': case '~':
+                                action(1);
+                                break;
+                            case ' ':
+                                action(3);
+                                break;
+                            default:
+                                action(isAlphanum(theB) ? 1 : 2);
+                        }
+                        break;
+                    default:
+                        switch (theB) {
+                            case ' ':
+                                action(isAlphanum(theA) ? 1 : 3);
+                                break;
+                            case '\n':
+                                switch (theA) {
+                                    case '}': case ']': case ')': case '+': case '-':
+                                    case '"': case '\'': case '`':
+                                        action(1);
+                                        break;
+                                    default:
+                                        action(isAlphanum(theA) ? 1 : 3);
+                                }
+                                break;
+                            default:
+                                action(1);
+                        }
+                }
+            }
+
+            // Strip the leading line break.
+            if (out.length() != 0 && out.charAt(0) == '\n') {
+                out.deleteCharAt(0);
+            }
+            return out.toString();
+        }
+
+        /**
+         * 1: Output A. Copy B to A. Get the next B.
+         * 2: Copy B to A. Get the next B.
+         * 3: Get the next B.
+         */
+        private void action(int determined) {
+            switch (determined) {
+                case 1:
+                    put(theA);
+                    if ((theY == '\n' || theY == ' ') &&
+                        (theA == '+' || theA == '-' || theA == '*' || theA == '/') &&
+                        (theB == '+' || theB == '-' || theB == '*' || theB == '/')) {
+                        put(theY);
+                    }
+                    // fall through
+                case 2:
+                    theA = theB;
+                    if (theA == '\'' || theA == '"' || theA == '`') {
+                        for (;;) {
+                            put(theA);
+                            theA = get();
+                            if (theA == theB) {
+                                break;
+                            }
+                            if (theA == '\\') {
+                                put(theA);
+                                theA = get();
+                            }
+                            if (theA == EOF) {
+                                // Unterminated string; give up minifying the rest.
+                                return;
+                            }
+                        }
+                    }
+                    // fall through
+                case 3:
+                    theB = next();
+                    if (theB == '/' && isRegexPrefix(theA)) {
+                        put(theA);
+                        if (theA == '/' || theA == '*') {
+                            put(' ');
+                        }
+                        put(theB);
+                        for (;;) {
+                            theA = get();
+                            if (theA == '[') {
+                                for (;;) {
+                                    put(theA);
+                                    theA = get();
+                                    if (theA == ']') {
+                                        break;
+                                    }
+                                    if (theA == '\\') {
+                                        put(theA);
+                                        theA = get();
+                                    }
+                                    if (theA == EOF) {
+                                        return;
+                                    }
+                                }
+                            } else if (theA == '/') {
+                                break;
+                            } else if (theA == '\\') {
+                                put(theA);
+                                theA = get();
+                            }
+                            if (theA == EOF) {
+                                return;
+                            }
+                            put(theA);
+                        }
+                        theB = next();
+                    }
+            }
+        }
+
+        private static boolean isRegexPrefix(int ch) {
+            switch (ch) {
+                case '(': case ',': case '=': case ':': case '[': case '!': case '&': case '|':
+                case '?': case '+': case '-': case '~': case '*': case '/': case '{': case '}':
+                case ';': case '\n':
+                    return true;
+                default:
+                    return false;
+            }
+        }
+
+        /**
+         * Returns the next character, skipping the comments.
+         */
+        private int next() {
+            int c = get();
+            if (c == '/') {
+                switch (peek()) {
+                    case '/':
+                        for (;;) {
+                            c = get();
+                            if (c <= '\n') {
+                                break;
+                            }
+                        }
+                        break;
+                    case '*':
+                        get();
+                        final boolean preserved = peek() == '!';
+                        if (preserved) {
+                            out.append("/*");
+                        }
+                        while (c != ' ') {
+                            final int d = get();
+                            if (preserved && d != EOF) {
+                                out.append((char) d);
+                            }
+                            if (d == '*') {
+                                if (peek() == '/') {
+                                    get();
+                                    if (preserved) {
+                                        out.append("/\n");
+                                    }
+                                    c = ' ';
+                                }
+                            } else if (d == EOF) {
+                                // Unterminated comment.
+                                return EOF;
+                            }
+                        }
+                        break;
+                }
+            }
+            theY = theX;
+            theX = c;
+            return c;
+        }
+
+        private int peek() {
+            theLookahead = get();
+            return theLookahead;
+        }
+
+        private int get() {
+            int c = theLookahead;
+            theLookahead = EOF;
+            if (c == EOF) {
+                c = pos < in.length() ? in.charAt(pos++) : EOF;
+            }
+            if (c >= ' ' || c == '\n' || c == EOF) {
+                return c;
+            }
+            if (c == '\r') {
+                return '\n';
+            }
+            return ' ';
+        }
+
+        private void put(int c) {
+            if (c != EOF) {
+                out.append((char) c);
+            }
+        }
+
+        private static boolean isAlphanum(int c) {
+            return c >= 'a' && c <= 'z' || c >= '0' && c <= '9' || c >= 'A' && c <= 'Z' ||
+                   c == '_' || c == '$' || c == '\\' || c > 126;
+        }
+    }
+
+    private Minifier() {}
+}
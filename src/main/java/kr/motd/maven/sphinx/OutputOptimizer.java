@@ -0,0 +1,302 @@
+package kr.motd.maven.sphinx;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Minifies the HTML, CSS and JavaScript files of the generated output and writes the precompressed
+ * {@code .gz} siblings of the text files, which web servers such as nginx ({@code gzip_static}) can serve
+ * without compressing them on every request. The files are processed in parallel.
+ *
+ * <p>Only the files which have been changed since the last run are processed. The size and last modification
+ * time of every processed file are recorded in an index file next to the output directory, so that the files
+ * Sphinx did not rewrite are not minified and compressed again.</p>
+ */
+final class OutputOptimizer {
+
+    private static final String OPTIONS_KEY = ".options";
+
+    /**
+     * The files smaller than this are not worth compressing, because of the overhead of the gzip format and
+     * the round trip to the server.
+     */
+    private static final int MIN_COMPRESSED_SIZE = 256;
+
+    private final boolean minify;
+    private final boolean precompress;
+    private final int threads;
+
+    /**
+     * Creates a new instance.
+     *
+     * @param threads the number of the threads which process the files, or {@code 0} to use as many threads
+     *                as the available processors
+     */
+    OutputOptimizer(boolean minify, boolean precompress, int threads) {
+        this.minify = minify;
+        this.precompress = precompress;
+        this.threads = threads;
+    }
+
+    /**
+     * Minifies and compresses the files in the specified directory, notifying the specified
+     * {@link SphinxRunnerListener} of the progress.
+     */
+    Result optimize(File dir, SphinxRunnerListener listener) throws IOException {
+        final String name = "optimizeOutput";
+        final long startTime = System.nanoTime();
+        listener.onPostProcessingStarted(name, dir);
+        final Result result = optimize(dir);
+        listener.onPostProcessingFinished(name, dir, result.scannedFiles, result.modifiedFiles,
+                                          result.modifiedBytes, System.nanoTime() - startTime);
+        return result;
+    }
+
+    private Result optimize(File dir) throws IOException {
+        final Result result = new Result();
+        if (!dir.isDirectory() || !minify && !precompress) {
+            return result;
+        }
+
+        final File indexFile = new File(dir.getPath() + ".optimized.index");
+        final Properties oldIndex = new Properties();
+        if (indexFile.isFile()) {
+            try (InputStream in = new FileInputStream(indexFile)) {
+                oldIndex.load(in);
+            }
+            if (!options().equals(oldIndex.getProperty(OPTIONS_KEY))) {
+                // Process all files again with the new options.
+                oldIndex.clear();
+            }
+        }
+
+        // Find the files changed since the last run.
+        final Map<String, String> newIndex = new TreeMap<>();
+        final List<Path> changedFiles = new ArrayList<>();
+        final Path root = dir.toPath();
+        Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                if (!attrs.isRegularFile() || !isCandidate(file.getFileName().toString())) {
+                    return FileVisitResult.CONTINUE;
+                }
+
+                result.scannedFiles++;
+                final String path = root.relativize(file).toString().replace(File.separatorChar, '/');
+                final String stamp = stamp(attrs.size(), attrs.lastModifiedTime());
+                if (stamp.equals(oldIndex.getProperty(path)) &&
+                    (!precompress || attrs.size() < MIN_COMPRESSED_SIZE || Files.exists(gzipFile(file)))) {
+                    newIndex.put(path, stamp);
+                } else {
+                    changedFiles.add(file);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+
+        final List<Callable<long[]>> tasks = new ArrayList<>(changedFiles.size());
+        for (final Path file : changedFiles) {
+            tasks.add(new Callable<long[]>() {
+                @Override
+                public long[] call() throws IOException {
+                    return optimizeFile(file);
+                }
+            });
+        }
+
+        final List<long[]> stats = ParallelTasks.run("optimizer", threads, tasks);
+        for (int i = 0; i < changedFiles.size(); i++) {
+            final Path file = changedFiles.get(i);
+            final long[] s = stats.get(i);
+            final String path = root.relativize(file).toString().replace(File.separatorChar, '/');
+            newIndex.put(path, stamp(Files.size(file), Files.getLastModifiedTime(file)));
+            result.modifiedFiles++;
+            result.modifiedBytes += s[1];
+            result.originalBytes += s[0];
+            result.minifiedBytes += s[1];
+            if (s[2] >= 0) {
+                result.compressedFiles++;
+                result.uncompressedBytes += s[1];
+                result.compressedBytes += s[2];
+            }
+        }
+
+        // Remove the compressed files whose original file does not exist anymore.
+        for (String path : oldIndex.stringPropertyNames()) {
+            if (!OPTIONS_KEY.equals(path) && !newIndex.containsKey(path)) {
+                Files.deleteIfExists(gzipFile(root.resolve(path.replace('/', File.separatorChar))));
+            }
+        }
+
+        final Properties index = new Properties();
+        index.putAll(newIndex);
+        index.setProperty(OPTIONS_KEY, options());
+        try (OutputStream out = new FileOutputStream(indexFile)) {
+            index.store(out, "Optimized Sphinx output");
+        }
+        return result;
+    }
+
+    /**
+     * @return the original size, the minified size and the compressed size of the file, which is {@code -1}
+     *         if the file has not been compressed
+     */
+    private long[] optimizeFile(Path file) throws IOException {
+        final String name = file.getFileName().toString().toLowerCase(Locale.US);
+        final byte[] content = Files.readAllBytes(file);
+        byte[] newContent = content;
+
+        if (minify) {
+            final String text = decode(content);
+            if (text != null) {
+                final String minified;
+                if (name.endsWith(".min.js") || name.endsWith(".min.css")) {
+                    minified = text;
+                } else if (name.endsWith(".html") || name.endsWith(".htm")) {
+                    minified = Minifier.html(text);
+                } else if (name.endsWith(".css")) {
+                    minified = Minifier.css(text);
+                } else if (name.endsWith(".js")) {
+                    minified = Minifier.js(text);
+                } else {
+                    minified = text;
+                }
+
+                final byte[] encoded = minified.getBytes(StandardCharsets.UTF_8);
+                if (encoded.length < content.length) {
+                    newContent = encoded;
+                    write(file, newContent);
+                }
+            }
+        }
+
+        long compressedSize = -1;
+        final Path gzipFile = gzipFile(file);
+        if (precompress) {
+            final byte[] compressed = newContent.length >= MIN_COMPRESSED_SIZE ? gzip(newContent) : null;
+            if (compressed != null && compressed.length < newContent.length) {
+                write(gzipFile, compressed);
+                // Let the web servers which compare the timestamps of the two files know it is up to date.
+                Files.setLastModifiedTime(gzipFile, Files.getLastModifiedTime(file));
+                compressedSize = compressed.length;
+            } else {
+                Files.deleteIfExists(gzipFile);
+            }
+        } else {
+            Files.deleteIfExists(gzipFile);
+        }
+        return new long[] { content.length, newContent.length, compressedSize };
+    }
+
+    private boolean isCandidate(String fileName) {
+        final String name = fileName.toLowerCase(Locale.US);
+        if (name.endsWith(".html") || name.endsWith(".htm") || name.endsWith(".css") || name.endsWith(".js")) {
+            return true;
+        }
+        return precompress && (name.endsWith(".svg") || name.endsWith(".txt") || name.endsWith(".xml") ||
+                               name.endsWith(".json") || name.endsWith(".map"));
+    }
+
+    private String options() {
+        return "minify=" + minify + ",precompress=" + precompress;
+    }
+
+    private static String stamp(long size, FileTime lastModifiedTime) {
+        return size + "," + lastModifiedTime.toMillis();
+    }
+
+    private static Path gzipFile(Path file) {
+        return file.resolveSibling(file.getFileName() + ".gz");
+    }
+
+    /**
+     * @return the decoded text, or {@code null} if the specified content is not valid UTF-8
+     */
+    private static String decode(byte[] content) {
+        try {
+            return StandardCharsets.UTF_8.newDecoder()
+                                         .onMalformedInput(CodingErrorAction.REPORT)
+                                         .onUnmappableCharacter(CodingErrorAction.REPORT)
+                                         .decode(ByteBuffer.wrap(content)).toString();
+        } catch (CharacterCodingException e) {
+            return null;
+        }
+    }
+
+    private static byte[] gzip(byte[] content) throws IOException {
+        final ByteArrayOutputStream buf = new ByteArrayOutputStream(content.length / 3 + 64);
+        try (GZIPOutputStream out = new GZIPOutputStream(buf) {
+            {
+                def.setLevel(Deflater.BEST_COMPRESSION);
+            }
+        }) {
+            out.write(content);
+        }
+        return buf.toByteArray();
+    }
+
+    /**
+     * Writes the specified content into a temporary file and moves it to the specified file, so that
+     * a web server never serves a partially written file.
+     */
+    private static void write(Path file, byte[] content) throws IOException {
+        final Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(tmp.toFile())) {
+            out.write(content);
+        }
+        Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * The statistics of an {@link OutputOptimizer} run.
+     */
+    static final class Result {
+        int scannedFiles;
+        int modifiedFiles;
+        long modifiedBytes;
+        long originalBytes;
+        long minifiedBytes;
+        int compressedFiles;
+        long uncompressedBytes;
+        long compressedBytes;
+
+        /**
+         * Returns the number of the bytes removed by minification.
+         */
+        long minificationSavedBytes() {
+            return originalBytes - minifiedBytes;
+        }
+
+        /**
+         * Returns the number of the bytes saved by serving the compressed files instead of the minified ones.
+         */
+        long compressionSavedBytes() {
+            return uncompressedBytes - compressedBytes;
+        }
+    }
+}
@@ -0,0 +1,221 @@
+package kr.motd.maven.sphinx;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+
+/**
+ * Synchronizes the output built in a staging directory into the report output directory, copying only
+ * the files whose content has changed, so that the unchanged files keep their last modification times and
+ * the tools which deploy the changed files only, such as {@code rsync}, do not upload them again.
+ * The files synchronized by the previous run but not built anymore are removed, while the other files in
+ * the report output directory, e.g. the ones generated by other reports, are left intact.
+ *
+ * <p>The size and last modification time of every synchronized file are recorded in an index file next to
+ * the staging directory, so that the content of a file is compared only when it may have changed.</p>
+ */
+final class OutputSynchronizer {
+
+    private static final int BUFFER_SIZE = 65536;
+
+    /**
+     * Synchronizes the specified staging directory into the specified target directory, notifying
+     * the specified {@link SphinxRunnerListener} of the progress.
+     */
+    Result sync(File stagingDir, File targetDir, SphinxRunnerListener listener) throws IOException {
+        final String name = "syncOutput";
+        final long startTime = System.nanoTime();
+        listener.onPostProcessingStarted(name, targetDir);
+        final Result result = sync(stagingDir, targetDir);
+        listener.onPostProcessingFinished(name, targetDir, result.scannedFiles,
+                                          result.added.size() + result.modified.size() + result.deleted.size(),
+                                          result.copiedBytes, System.nanoTime() - startTime);
+        return result;
+    }
+
+    private Result sync(File stagingDir, File targetDir) throws IOException {
+        final Result result = new Result();
+        final File indexFile = new File(stagingDir.getPath() + ".sync.index");
+        final Properties oldIndex = new Properties();
+        if (indexFile.isFile()) {
+            try (InputStream in = new FileInputStream(indexFile)) {
+                oldIndex.load(in);
+            }
+        }
+
+        final Map<String, String> newIndex = new TreeMap<>();
+        final Path root = stagingDir.toPath();
+        final Path targetRoot = targetDir.toPath();
+        if (stagingDir.isDirectory()) {
+            Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                    if (attrs.isRegularFile()) {
+                        result.scannedFiles++;
+                        final String path = root.relativize(file).toString().replace(File.separatorChar, '/');
+                        final Path dst = targetRoot.resolve(path.replace('/', File.separatorChar));
+                        newIndex.put(path, syncFile(file, attrs, dst, path, oldIndex.getProperty(path), result));
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        }
+
+        // Remove the files synchronized by the previous run which have not been built this time.
+        for (String path : oldIndex.stringPropertyNames()) {
+            if (newIndex.containsKey(path)) {
+                continue;
+            }
+            final Path dst = targetRoot.resolve(path.replace('/', File.separatorChar));
+            if (Files.deleteIfExists(dst)) {
+                result.deleted.add(path);
+                deleteEmptyParents(dst, targetRoot);
+            }
+        }
+
+        Collections.sort(result.added);
+        Collections.sort(result.modified);
+        Collections.sort(result.deleted);
+
+        final Properties index = new Properties();
+        index.putAll(newIndex);
+        try (OutputStream out = new FileOutputStream(indexFile)) {
+            index.store(out, "Synchronized Sphinx output");
+        }
+        return result;
+    }
+
+    /**
+     * @return the index entry of the file, i.e. the size and last modification time of the source and
+     *         the last modification time of the destination
+     */
+    private static String syncFile(Path src, BasicFileAttributes attrs, Path dst, String path,
+                                   String oldEntry, Result result) throws IOException {
+        final String srcStamp = attrs.size() + "," + attrs.lastModifiedTime().toMillis();
+        if (Files.isRegularFile(dst)) {
+            final long dstSize = Files.size(dst);
+            final String entry = srcStamp + ',' + Files.getLastModifiedTime(dst).toMillis();
+            // Neither the source nor the destination has been changed since the last run.
+            if (entry.equals(oldEntry) && dstSize == attrs.size()) {
+                return entry;
+            }
+            if (dstSize == attrs.size() && contentEquals(src, dst)) {
+                return entry;
+            }
+            result.modified.add(path);
+        } else {
+            result.added.add(path);
+        }
+
+        Files.createDirectories(dst.getParent());
+        final Path tmp = dst.resolveSibling(dst.getFileName() + ".tmp");
+        Files.copy(src, tmp, StandardCopyOption.REPLACE_EXISTING);
+        Files.move(tmp, dst, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        result.copiedBytes += attrs.size();
+        return srcStamp + ',' + Files.getLastModifiedTime(dst).toMillis();
+    }
+
+    private static boolean contentEquals(Path a, Path b) throws IOException {
+        try (InputStream inA = Files.newInputStream(a);
+             InputStream inB = Files.newInputStream(b)) {
+            final byte[] bufA = new byte[BUFFER_SIZE];
+            final byte[] bufB = new byte[BUFFER_SIZE];
+            for (;;) {
+                final int lenA = readFully(inA, bufA);
+                final int lenB = readFully(inB, bufB);
+                if (lenA != lenB) {
+                    return false;
+                }
+                for (int i = 0; i < lenA; i++) {
+                    if (bufA[i] != bufB[i]) {
+                        return false;
+                    }
+                }
+                if (lenA < BUFFER_SIZE) {
+                    return true;
+                }
+            }
+        }
+    }
+
+    private static int readFully(InputStream in, byte[] buf) throws IOException {
+        int length = 0;
+        while (length < buf.length) {
+            final int readBytes = in.read(buf, length, buf.length - length);
+            if (readBytes < 0) {
+                break;
+            }
+            length += readBytes;
+        }
+        return length;
+    }
+
+    private static void deleteEmptyParents(Path file, Path root) {
+        for (Path dir = file.getParent(); dir != null && dir.startsWith(root) && !dir.equals(root);
+             dir = dir.getParent()) {
+            final String[] children = dir.toFile().list();
+            if (children == null || children.length != 0 || !dir.toFile().delete()) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * The changes made by an {@link OutputSynchronizer} run.
+     */
+    static final class Result {
+        int scannedFiles;
+        long copiedBytes;
+        final List<String> added = new ArrayList<>();
+        final List<String> modified = new ArrayList<>();
+        final List<String> deleted = new ArrayList<>();
+
+        /**
+         * Writes the changes as a JSON document, with the paths relative to the report output directory.
+         */
+        void writeJson(File file) throws IOException {
+            final StringBuilder buf = new StringBuilder(1024);
+            buf.append('{');
+            appendPaths(buf, "added", added);
+            buf.append(',');
+            appendPaths(buf, "modified", modified);
+            buf.append(',');
+            appendPaths(buf, "deleted", deleted);
+            buf.append("\n}\n");
+
+            final File parent = file.getParentFile();
+            if (parent != null && !parent.isDirectory() && !parent.mkdirs()) {
+                throw new IOException("failed to create a directory: " + parent);
+            }
+            Files.write(file.toPath(), buf.toString().getBytes(StandardCharsets.UTF_8));
+        }
+
+        private static void appendPaths(StringBuilder buf, String name, List<String> paths) {
+            buf.append("\n  ");
+            Json.quote(buf, name).append(": [");
+            boolean first = true;
+            for (String p : paths) {
+                buf.append(first ? "\n    " : ",\n    ");
+                Json.quote(buf, p);
+                first = false;
+            }
+            buf.append(first ? "]" : "\n  ]");
+        }
+    }
+}
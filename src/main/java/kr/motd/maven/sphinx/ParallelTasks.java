@@ -0,0 +1,84 @@
+package kr.motd.maven.sphinx;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs the tasks of a post-processing pass on a bounded pool of daemon threads.
+ */
+final class ParallelTasks {
+
+    /**
+     * Returns the number of the threads to use for the specified configured value, which is the number of
+     * the available processors if not positive.
+     */
+    static int threads(int configured) {
+        return configured > 0 ? configured : Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * Runs the specified tasks with up to the specified number of threads and returns their results in
+     * the same order. When a task fails, the remaining tasks are cancelled and its exception is rethrown.
+     */
+    static <T> List<T> run(final String name, int threads, List<? extends Callable<T>> tasks) throws IOException {
+        final List<T> results = new ArrayList<>(tasks.size());
+        if (tasks.isEmpty()) {
+            return results;
+        }
+
+        final ExecutorService executor = Executors.newFixedThreadPool(
+                Math.min(threads(threads), tasks.size()), new ThreadFactory() {
+                    private final AtomicInteger nextId = new AtomicInteger();
+
+                    @Override
+                    public Thread newThread(Runnable r) {
+                        final Thread t = new Thread(r, "sphinx-" + name + '-' + nextId.incrementAndGet());
+                        t.setDaemon(true);
+                        return t;
+                    }
+                });
+        try {
+            final List<Future<T>> futures = new ArrayList<>(tasks.size());
+            for (Callable<T> task : tasks) {
+                futures.add(executor.submit(task));
+            }
+            for (Future<T> f : futures) {
+                results.add(get(f));
+            }
+            return results;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static <T> T get(Future<T> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted while waiting for a task", e);
+        } catch (ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    private ParallelTasks() {}
+}
@@ -0,0 +1,90 @@
+package kr.motd.maven.sphinx;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Manages the class data sharing (CDS) archive of PlantUML, which lets the JVMs launched by Sphinx for
+ * rendering diagrams map the pre-parsed PlantUML classes instead of loading them from the JAR every time.
+ * The archive is created by the {@code prefetch} goal with the {@code java} command in {@code PATH},
+ * because it is valid only for the JVM that created it. A JVM which cannot use the archive, e.g. a different
+ * version of JVM or one older than Java 13, silently ignores it.
+ */
+final class PlantUmlArchive {
+
+    private static final String DIRECTORY_NAME = "plantuml";
+    private static final String WARM_UP_DIAGRAM = "@startuml\nAlice -> Bob: warm up\n@enduml\n";
+
+    /**
+     * Returns the location of the archive of the specified PlantUML JAR.
+     */
+    static File file(File binaryCacheDir, File plantUmlJar) {
+        final String jarName = plantUmlJar.getName();
+        final String baseName = jarName.substring(0, jarName.length() - ".jar".length());
+        return new File(new File(binaryCacheDir, DIRECTORY_NAME), baseName + ".jsa");
+    }
+
+    /**
+     * Returns the JVM options which make PlantUML use the archive, or an empty string if there is no archive.
+     */
+    static String jvmOptions(File binaryCacheDir, File plantUmlJar) {
+        final File archive = file(binaryCacheDir, plantUmlJar);
+        if (!archive.isFile()) {
+            return "";
+        }
+        try {
+            BinaryCache.touch(archive.getParentFile());
+        } catch (IOException e) {
+            // Not critical; the archive may be evicted earlier than necessary.
+        }
+        return "-XX:+IgnoreUnrecognizedVMOptions -Xshare:auto " +
+               "-XX:SharedArchiveFile=" + archive.getPath().replace("\\", "\\\\") + ' ';
+    }
+
+    /**
+     * Creates the archive by rendering a small diagram with the classes loaded by the JVM being recorded.
+     *
+     * @return {@code true} if the archive has been created, or {@code false} if the JVM does not support
+     *         creating an archive. The output of the JVM is left in the {@code .log} file next to the archive.
+     */
+    static boolean create(File binaryCacheDir, File plantUmlJar) throws IOException, InterruptedException {
+        final File archive = file(binaryCacheDir, plantUmlJar);
+        final File dir = archive.getParentFile();
+        dir.mkdirs();
+        if (!dir.isDirectory()) {
+            throw new IOException("failed to create a directory: " + dir);
+        }
+
+        final File tmp = new File(dir, archive.getName() + ".tmp");
+        final File log = new File(dir, archive.getName() + ".log");
+        Files.deleteIfExists(tmp.toPath());
+        try {
+            final ProcessBuilder builder = new ProcessBuilder(
+                    "java", "-XX:ArchiveClassesAtExit=" + tmp.getPath(), "-Djava.awt.headless=true",
+                    "-jar", plantUmlJar.getPath(), "-tsvg", "-pipe");
+            builder.redirectErrorStream(true);
+            builder.redirectOutput(log);
+
+            final Process process = builder.start();
+            try (OutputStream out = process.getOutputStream()) {
+                out.write(WARM_UP_DIAGRAM.getBytes(StandardCharsets.UTF_8));
+            }
+            if (process.waitFor() != 0 || !tmp.isFile() || tmp.length() == 0) {
+                return false;
+            }
+
+            Files.move(tmp.toPath(), archive.toPath(),
+                       StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            BinaryCache.touch(dir);
+            return true;
+        } finally {
+            Files.deleteIfExists(tmp.toPath());
+        }
+    }
+
+    private PlantUmlArchive() {}
+}
@@ -0,0 +1,56 @@
+package kr.motd.maven.sphinx;
+
+/**
+ * The limits enforced on the Sphinx process by {@link SphinxRunner}. When a limit is exceeded, the process tree
+ * is asked to terminate, and is killed if it does not terminate within the grace period.
+ */
+public final class ProcessLimits {
+
+    /**
+     * No limits.
+     */
+    public static final ProcessLimits NONE = new ProcessLimits(0, 0, 10000);
+
+    /**
+     * Returns a new instance.
+     *
+     * @param timeoutMillis the maximum wall-clock time of the process, or {@code 0} for no limit
+     * @param maxRssBytes the maximum resident set size of the process tree, or {@code 0} for no limit;
+     *                    enforced only on Linux
+     * @param gracePeriodMillis the time to wait for the process to terminate before killing it
+     */
+    public static ProcessLimits of(long timeoutMillis, long maxRssBytes, long gracePeriodMillis) {
+        return new ProcessLimits(timeoutMillis, maxRssBytes, gracePeriodMillis);
+    }
+
+    private final long timeoutMillis;
+    private final long maxRssBytes;
+    private final long gracePeriodMillis;
+
+    private ProcessLimits(long timeoutMillis, long maxRssBytes, long gracePeriodMillis) {
+        if (timeoutMillis < 0) {
+            throw new IllegalArgumentException("timeoutMillis: " + timeoutMillis + " (expected: >= 0)");
+        }
+        if (maxRssBytes < 0) {
+            throw new IllegalArgumentException("maxRssBytes: " + maxRssBytes + " (expected: >= 0)");
+        }
+        if (gracePeriodMillis < 0) {
+            throw new IllegalArgumentException("gracePeriodMillis: " + gracePeriodMillis + " (expected: >= 0)");
+        }
+        this.timeoutMillis = timeoutMillis;
+        this.maxRssBytes = maxRssBytes;
+        this.gracePeriodMillis = gracePeriodMillis;
+    }
+
+    public long timeoutMillis() {
+        return timeoutMillis;
+    }
+
+    public long maxRssBytes() {
+        return maxRssBytes;
+    }
+
+    public long gracePeriodMillis() {
+        return gracePeriodMillis;
+    }
+}
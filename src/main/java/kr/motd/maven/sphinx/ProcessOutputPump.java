@@ -0,0 +1,354 @@
+package kr.motd.maven.sphinx;
+
+import static java.util.Objects.requireNonNull;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Reads the standard output and error of a process, frames them into lines and delivers the lines to
+ * {@link SphinxRunnerListener#onProcessOutput(String, boolean)} in the order of arrival.
+ *
+ * <p>The streams are read by the threads of an executor shared by all pumps, and the framed lines are
+ * passed through a bounded queue, so that a slow listener eventually blocks the process instead of
+ * buffering its output without limit. All lines of a pump are delivered from a single thread.</p>
+ *
+ * <p>A stream is copied into the line framer by a {@link Redirector}, which may transform the output on
+ * its way.</p>
+ */
+final class ProcessOutputPump {
+
+    /**
+     * The maximum number of lines buffered between the readers and the listener.
+     */
+    static final int DEFAULT_CAPACITY = 1024;
+
+    /**
+     * The maximum length of a line in bytes; a longer line is split at a character boundary.
+     */
+    private static final int MAX_LINE_LENGTH = 65536;
+
+    private static final Line END_OF_STREAM = new Line(null, false);
+
+    private static final ExecutorService executor = Executors.newCachedThreadPool(new ThreadFactory() {
+        private final AtomicInteger nextId = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r) {
+            final Thread t = new Thread(r, "sphinx-output-pump-" + nextId.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        }
+    });
+
+    private final SphinxRunnerListener listener;
+    private final BlockingQueue<Line> queue;
+    private final CountDownLatch delivered = new CountDownLatch(1);
+    private volatile InputStream[] streams;
+    private volatile boolean stopped;
+    private boolean listenerFailed;
+
+    ProcessOutputPump(SphinxRunnerListener listener) {
+        this(listener, DEFAULT_CAPACITY);
+    }
+
+    ProcessOutputPump(SphinxRunnerListener listener, int capacity) {
+        this.listener = requireNonNull(listener, "listener");
+        queue = new ArrayBlockingQueue<>(capacity);
+    }
+
+    /**
+     * Starts pumping the specified streams. The streams are closed when they reach the end.
+     */
+    void start(InputStream stdout, InputStream stderr) {
+        start(stdout, stderr, null);
+    }
+
+    /**
+     * Starts pumping the specified streams, copying them with the specified {@link Redirector}.
+     * The streams are closed when they reach the end.
+     *
+     * @param redirector the {@link Redirector}, or {@code null} to copy the streams as they are
+     */
+    void start(InputStream stdout, InputStream stderr, Redirector redirector) {
+        streams = new InputStream[] { requireNonNull(stdout, "stdout"), requireNonNull(stderr, "stderr") };
+        executor.execute(new Reader(stdout, false, redirector));
+        executor.execute(new Reader(stderr, true, redirector));
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                deliver();
+            }
+        });
+    }
+
+    /**
+     * Waits until all lines have been delivered to the listener.
+     *
+     * @return {@code true} if all lines have been delivered, {@code false} if timed out
+     */
+    boolean await(long timeout, TimeUnit unit) throws InterruptedException {
+        return delivered.await(timeout, unit);
+    }
+
+    /**
+     * Stops pumping, discarding the lines which have not been delivered yet.
+     */
+    void stop() {
+        stopped = true;
+        final InputStream[] streams = this.streams;
+        if (streams != null) {
+            for (InputStream s : streams) {
+                closeQuietly(s);
+            }
+        }
+        queue.clear();
+        // Wake up the deliverer if it is waiting for a line.
+        queue.offer(END_OF_STREAM);
+        queue.offer(END_OF_STREAM);
+    }
+
+    private void deliver() {
+        try {
+            int remainingStreams = 2;
+            while (remainingStreams > 0) {
+                final Line line = queue.take();
+                if (line == END_OF_STREAM) {
+                    remainingStreams--;
+                    continue;
+                }
+                if (stopped) {
+                    continue;
+                }
+                try {
+                    listener.onProcessOutput(line.text, line.error);
+                } catch (Throwable t) {
+                    // A broken listener must not block the process, but its first failure is reported.
+                    if (!listenerFailed) {
+                        listenerFailed = true;
+                        reportListenerFailure(t);
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            delivered.countDown();
+        }
+    }
+
+    private void reportListenerFailure(Throwable cause) {
+        final String message = "Failed to deliver the output of Sphinx to " + listener +
+                               "; ignoring the further failures";
+        try {
+            listener.onWarning(message, cause);
+        } catch (Throwable t) {
+            System.err.println(message);
+            cause.printStackTrace();
+        }
+    }
+
+    /**
+     * Returns the length of the longest prefix of the specified UTF-8 bytes which does not end in the middle of
+     * a character, or {@code length} if the bytes do not end with an incomplete character or the prefix is empty.
+     */
+    static int charBoundary(byte[] bytes, int length) {
+        if (length == 0) {
+            return 0;
+        }
+        // Find the first byte of the last character, skipping at most 3 continuation bytes.
+        int start = length - 1;
+        while (start > 0 && length - start < 4 && (bytes[start] & 0xc0) == 0x80) {
+            start--;
+        }
+        final int lead = bytes[start] & 0xff;
+        final int charLength = lead >= 0xf0 ? 4 : lead >= 0xe0 ? 3 : lead >= 0xc0 ? 2 : 1;
+        return start + charLength <= length || start == 0 ? length : start;
+    }
+
+    private static void closeQuietly(InputStream in) {
+        try {
+            in.close();
+        } catch (IOException e) {
+            // Swallow.
+        }
+    }
+
+    /**
+     * Copies a stream of a process into the {@link OutputStream} which frames it into lines.
+     */
+    interface Redirector {
+        /**
+         * Copies the specified stream into the specified {@link OutputStream} until the end of the stream.
+         *
+         * @param error {@code true} if the stream is the standard error
+         */
+        void redirect(InputStream in, OutputStream out, boolean error) throws Exception;
+    }
+
+    private final class Reader implements Runnable {
+
+        private final InputStream in;
+        private final boolean error;
+        private final Redirector redirector;
+
+        Reader(InputStream in, boolean error, Redirector redirector) {
+            this.in = in;
+            this.error = error;
+            this.redirector = redirector;
+        }
+
+        @Override
+        public void run() {
+            final LineFramer out = new LineFramer(error);
+            try {
+                if (redirector != null) {
+                    redirector.redirect(in, out, error);
+                } else {
+                    final byte[] buf = new byte[8192];
+                    for (;;) {
+                        final int readBytes = in.read(buf);
+                        if (readBytes < 0) {
+                            break;
+                        }
+                        out.write(buf, 0, readBytes);
+                    }
+                }
+                out.close();
+            } catch (InterruptedIOException e) {
+                Thread.currentThread().interrupt();
+            } catch (IOException e) {
+                if (!stopped) {
+                    listener.onWarning("Failed to read the " + (error ? "stderr" : "stdout") + " of Sphinx", e);
+                }
+            } catch (Exception e) {
+                if (!stopped) {
+                    listener.onWarning("Failed to redirect the " + (error ? "stderr" : "stdout") + " of Sphinx", e);
+                }
+            } finally {
+                closeQuietly(in);
+                if (!stopped) {
+                    try {
+                        queue.put(END_OF_STREAM);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            }
+        }
+
+    }
+
+    /**
+     * Frames the bytes written into lines and puts them into the queue.
+     */
+    private final class LineFramer extends OutputStream {
+
+        private final boolean error;
+        private final ByteArrayOutputStream lineBuf = new ByteArrayOutputStream(256);
+        private boolean lastCr;
+
+        LineFramer(boolean error) {
+            this.error = error;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            try {
+                frame((byte) b);
+            } catch (InterruptedException e) {
+                throw new InterruptedIOException();
+            }
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            try {
+                for (int i = off; i < off + len; i++) {
+                    frame(b[i]);
+                }
+            } catch (InterruptedException e) {
+                throw new InterruptedIOException();
+            }
+        }
+
+        /**
+         * Emits the last line which does not end with a line separator.
+         */
+        @Override
+        public void close() throws IOException {
+            if (lineBuf.size() == 0) {
+                return;
+            }
+            try {
+                emit();
+            } catch (InterruptedException e) {
+                throw new InterruptedIOException();
+            }
+        }
+
+        private void frame(byte b) throws InterruptedException {
+            if (b == '\n') {
+                if (!lastCr) {
+                    emit();
+                }
+                lastCr = false;
+            } else if (b == '\r') {
+                emit();
+                lastCr = true;
+            } else {
+                lineBuf.write(b);
+                lastCr = false;
+                if (lineBuf.size() >= MAX_LINE_LENGTH) {
+                    split();
+                }
+            }
+        }
+
+        /**
+         * Emits the buffered bytes up to the last character boundary, keeping the incomplete character.
+         */
+        private void split() throws InterruptedException {
+            final byte[] bytes = lineBuf.toByteArray();
+            final int end = charBoundary(bytes, bytes.length);
+            lineBuf.reset();
+            lineBuf.write(bytes, end, bytes.length - end);
+            put(new String(bytes, 0, end, StandardCharsets.UTF_8));
+        }
+
+        private void emit() throws InterruptedException {
+            final String text = new String(lineBuf.toByteArray(), StandardCharsets.UTF_8);
+            lineBuf.reset();
+            put(text);
+        }
+
+        private void put(String text) throws InterruptedException {
+            if (!stopped) {
+                // Blocks when the listener falls behind, which eventually blocks the process.
+                queue.put(new Line(text, error));
+            }
+        }
+    }
+
+    private static final class Line {
+        final String text;
+        final boolean error;
+
+        Line(String text, boolean error) {
+            this.text = text;
+            this.error = error;
+        }
+    }
+}
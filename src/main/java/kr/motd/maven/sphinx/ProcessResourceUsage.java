@@ -0,0 +1,61 @@
+package kr.motd.maven.sphinx;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The resources used by the Sphinx process and its descendants, as sampled by the watchdog.
+ * The values are {@code -1} if they could not be sampled, e.g. on an operating system without {@code /proc}.
+ */
+public final class ProcessResourceUsage {
+
+    static final ProcessResourceUsage UNKNOWN = new ProcessResourceUsage(-1, -1, -1, 0);
+
+    private final long peakRssBytes;
+    private final long cpuTimeNanos;
+    private final int peakThreads;
+    private final int samples;
+
+    ProcessResourceUsage(long peakRssBytes, long cpuTimeNanos, int peakThreads, int samples) {
+        this.peakRssBytes = peakRssBytes;
+        this.cpuTimeNanos = cpuTimeNanos;
+        this.peakThreads = peakThreads;
+        this.samples = samples;
+    }
+
+    /**
+     * Returns the peak resident set size of the process tree in bytes.
+     */
+    public long peakRssBytes() {
+        return peakRssBytes;
+    }
+
+    /**
+     * Returns the user and system CPU time consumed by the process tree in nanoseconds.
+     */
+    public long cpuTimeNanos() {
+        return cpuTimeNanos;
+    }
+
+    /**
+     * Returns the peak number of the threads in the process tree.
+     */
+    public int peakThreads() {
+        return peakThreads;
+    }
+
+    /**
+     * Returns the number of the samples taken.
+     */
+    public int samples() {
+        return samples;
+    }
+
+    @Override
+    public String toString() {
+        if (samples == 0) {
+            return "unknown";
+        }
+        return "peak RSS: " + (peakRssBytes >> 20) + " MiB, CPU time: " +
+               TimeUnit.NANOSECONDS.toMillis(cpuTimeNanos) + "ms, peak threads: " + peakThreads;
+    }
+}
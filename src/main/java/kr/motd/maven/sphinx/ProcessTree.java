@@ -0,0 +1,307 @@
+package kr.motd.maven.sphinx;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Utility methods for inspecting and terminating a process and its descendants.
+ * The process tree is read from {@code /proc} on Linux.
+ */
+final class ProcessTree {
+
+    static final boolean PROCFS_AVAILABLE = new File("/proc/self/stat").isFile();
+
+    private static final boolean WINDOWS =
+            System.getProperty("os.name", "").toLowerCase(Locale.US).startsWith("windows");
+
+    private static long pageSize;
+    private static long clockTicksPerSecond;
+
+    /**
+     * Returns the process ID of the specified process, or {@code -1} if unknown.
+     */
+    static long pid(Process process) {
+        try {
+            // Java 9+
+            final Method m = Process.class.getMethod("pid");
+            return (Long) m.invoke(process);
+        } catch (Exception ignored) {
+            // Fall back to the private field of the implementation.
+        }
+
+        try {
+            final Field f = process.getClass().getDeclaredField("pid");
+            f.setAccessible(true);
+            return f.getInt(process);
+        } catch (Exception ignored) {
+            return -1;
+        }
+    }
+
+    /**
+     * Returns whether the specified process is still running.
+     */
+    static boolean isAlive(Process process) {
+        try {
+            process.exitValue();
+            return false;
+        } catch (IllegalThreadStateException e) {
+            return true;
+        }
+    }
+
+    /**
+     * Returns the IDs of the descendants of the specified process, parents first.
+     */
+    static List<Long> descendants(long pid) {
+        final List<Long> result = new ArrayList<>();
+        if (!PROCFS_AVAILABLE || pid <= 0) {
+            return result;
+        }
+
+        final Map<Long, List<Long>> children = new HashMap<>();
+        final String[] names = new File("/proc").list();
+        if (names == null) {
+            return result;
+        }
+        for (String name : names) {
+            if (!isNumeric(name)) {
+                continue;
+            }
+            final String[] fields = readStat(Long.parseLong(name));
+            if (fields == null) {
+                continue;
+            }
+            final long ppid = Long.parseLong(fields[1]);
+            List<Long> list = children.get(ppid);
+            if (list == null) {
+                list = new ArrayList<>();
+                children.put(ppid, list);
+            }
+            list.add(Long.parseLong(name));
+        }
+
+        final Deque<Long> queue = new ArrayDeque<>();
+        queue.add(pid);
+        while (!queue.isEmpty()) {
+            final List<Long> list = children.get(queue.poll());
+            if (list != null) {
+                result.addAll(list);
+                queue.addAll(list);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Reads the fields of {@code /proc/<pid>/stat} after the command name, i.e. the first element is
+     * the state of the process.
+     *
+     * @return the fields, or {@code null} if the process does not exist
+     */
+    static String[] readStat(long pid) {
+        final String content;
+        try {
+            content = new String(Files.readAllBytes(new File("/proc/" + pid + "/stat").toPath()),
+                                 StandardCharsets.US_ASCII);
+        } catch (IOException e) {
+            return null;
+        }
+        final int commandEnd = content.lastIndexOf(')');
+        if (commandEnd < 0 || commandEnd + 2 >= content.length()) {
+            return null;
+        }
+        return content.substring(commandEnd + 2).trim().split(" ");
+    }
+
+    /**
+     * Returns the user and system CPU time of the process and its waited-for children from
+     * the specified {@code /proc/<pid>/stat} fields, in nanoseconds.
+     */
+    static long cpuTimeNanos(String[] stat) {
+        final long ticks = Long.parseLong(stat[11]) + Long.parseLong(stat[12]) +
+                           Long.parseLong(stat[13]) + Long.parseLong(stat[14]);
+        return ticks * 1000000000L / clockTicksPerSecond();
+    }
+
+    /**
+     * Returns whether the process of the specified {@code /proc/<pid>/stat} fields has exited but has not been
+     * waited for by its parent yet.
+     */
+    static boolean isZombie(String[] stat) {
+        return "Z".equals(stat[0]);
+    }
+
+    /**
+     * Returns the start time of the specified process in clock ticks since the boot, which tells the process
+     * from another one that reuses its ID.
+     *
+     * @return the start time, or {@code -1} if the process does not exist
+     */
+    static long startTime(long pid) {
+        final String[] stat = readStat(pid);
+        return stat != null ? Long.parseLong(stat[19]) : -1;
+    }
+
+    static int threads(String[] stat) {
+        return Integer.parseInt(stat[17]);
+    }
+
+    static long rssBytes(String[] stat) {
+        return Long.parseLong(stat[21]) * pageSize();
+    }
+
+    /**
+     * Terminates the specified process and its descendants. The process ID is not used once the process has
+     * exited, and a known descendant is terminated only if it has the same start time as when it was found,
+     * so that an unrelated process which reuses the ID of an exited one is never terminated.
+     *
+     * @param force {@code true} to kill the processes, {@code false} to ask them to terminate
+     * @param knownDescendants the IDs and the start times of the descendants found previously, which need to be
+     *                         terminated even if they are not descendants anymore because their parent has exited
+     *
+     * @return the IDs and the start times of the descendants which have been terminated
+     */
+    static Map<Long, Long> destroy(Process process, boolean force, Map<Long, Long> knownDescendants) {
+        final long pid = pid(process);
+        final boolean alive = isAlive(process);
+        final Map<Long, Long> descendants = new LinkedHashMap<>();
+        for (Map.Entry<Long, Long> e : knownDescendants.entrySet()) {
+            if (startTime(e.getKey()) == e.getValue()) {
+                descendants.put(e.getKey(), e.getValue());
+            }
+        }
+
+        if (WINDOWS) {
+            if (pid > 0 && alive) {
+                if (force) {
+                    exec("taskkill", "/PID", String.valueOf(pid), "/T", "/F");
+                } else {
+                    exec("taskkill", "/PID", String.valueOf(pid), "/T");
+                }
+            }
+        } else {
+            final List<String> command = new ArrayList<>();
+            command.add("kill");
+            command.add(force ? "-KILL" : "-TERM");
+            if (pid > 0 && alive) {
+                command.add(String.valueOf(pid));
+                for (Long p : descendants(pid)) {
+                    final long startTime = startTime(p);
+                    if (startTime >= 0) {
+                        descendants.put(p, startTime);
+                    }
+                }
+            }
+            for (Long p : descendants.keySet()) {
+                command.add(String.valueOf(p));
+            }
+            if (command.size() > 2) {
+                exec(command.toArray(new String[command.size()]));
+            }
+        }
+
+        if (force) {
+            try {
+                // Java 8+
+                Process.class.getMethod("destroyForcibly").invoke(process);
+                return descendants;
+            } catch (Exception ignored) {
+                // Fall back to destroy().
+            }
+        }
+        process.destroy();
+        return descendants;
+    }
+
+    private static void exec(String... command) {
+        try {
+            final Process p = new ProcessBuilder(command).redirectErrorStream(true).start();
+            p.getOutputStream().close();
+            SphinxUtil.readFully(p.getInputStream());
+            p.waitFor();
+        } catch (IOException e) {
+            // The processes will be destroyed via Process.destroy() anyway.
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static synchronized long pageSize() {
+        if (pageSize != 0) {
+            return pageSize;
+        }
+
+        pageSize = 4096;
+        try (BufferedReader in = Files.newBufferedReader(new File("/proc/self/smaps").toPath(),
+                                                         StandardCharsets.US_ASCII)) {
+            for (;;) {
+                final String line = in.readLine();
+                if (line == null) {
+                    break;
+                }
+                if (line.startsWith("KernelPageSize:")) {
+                    final String[] fields = line.substring(15).trim().split("\\s+");
+                    pageSize = Long.parseLong(fields[0]) * 1024;
+                    break;
+                }
+            }
+        } catch (Exception ignored) {
+            // Use the default.
+        }
+        return pageSize;
+    }
+
+    /**
+     * Returns the number of clock ticks per second, as reported by {@code getconf CLK_TCK}.
+     */
+    static synchronized long clockTicksPerSecond() {
+        if (clockTicksPerSecond != 0) {
+            return clockTicksPerSecond;
+        }
+
+        clockTicksPerSecond = 100;
+        try {
+            final Process p = new ProcessBuilder("getconf", "CLK_TCK").redirectErrorStream(true).start();
+            p.getOutputStream().close();
+            final String output = new String(SphinxUtil.readFully(p.getInputStream()),
+                                             StandardCharsets.US_ASCII).trim();
+            if (p.waitFor() == 0) {
+                final long ticks = Long.parseLong(output);
+                if (ticks > 0) {
+                    clockTicksPerSecond = ticks;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception ignored) {
+            // Use the default.
+        }
+        return clockTicksPerSecond;
+    }
+
+    private static boolean isNumeric(String s) {
+        for (int i = 0; i < s.length(); i++) {
+            final char ch = s.charAt(i);
+            if (ch < '0' || ch > '9') {
+                return false;
+            }
+        }
+        return !s.isEmpty();
+    }
+
+    private ProcessTree() {}
+}
@@ -0,0 +1,156 @@
+package kr.motd.maven.sphinx;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Samples the resource usage of a process tree periodically and terminates the tree when it exceeds
+ * the {@link ProcessLimits}. The process is asked to terminate first, and then killed if it is still running
+ * after the grace period.
+ */
+final class ProcessWatchdog {
+
+    private static final long SAMPLE_INTERVAL_MILLIS = 500;
+
+    private static final ScheduledExecutorService scheduler =
+            Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    final Thread t = new Thread(r, "sphinx-watchdog");
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+
+    private final Process process;
+    private final ProcessLimits limits;
+    private final SphinxRunnerListener listener;
+    private final long pid;
+    private final long startTimeNanos;
+
+    private ScheduledFuture<?> sampleFuture;
+    private ScheduledFuture<?> killFuture;
+    private long peakRssBytes = -1;
+    private long cpuTimeNanos = -1;
+    private int peakThreads = -1;
+    private int samples;
+    private String violation;
+    private Map<Long, Long> terminatedDescendants = Collections.emptyMap();
+
+    ProcessWatchdog(Process process, ProcessLimits limits, SphinxRunnerListener listener, long startTimeNanos) {
+        this.process = process;
+        this.limits = limits;
+        this.listener = listener;
+        this.startTimeNanos = startTimeNanos;
+        pid = ProcessTree.PROCFS_AVAILABLE ? ProcessTree.pid(process) : -1;
+    }
+
+    void start() {
+        if (pid <= 0 && limits.timeoutMillis() == 0) {
+            // Nothing to sample or enforce.
+            return;
+        }
+        sampleFuture = scheduler.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    sample();
+                } catch (Throwable t) {
+                    listener.onWarning("Failed to sample the Sphinx process", t);
+                }
+            }
+        }, 0, SAMPLE_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops sampling and returns the resource usage sampled so far. If the process has been terminated
+     * because of an exceeded limit, its remaining descendants are killed, unless their IDs have been reused.
+     */
+    synchronized ProcessResourceUsage stop() {
+        if (sampleFuture != null) {
+            sampleFuture.cancel(false);
+        }
+        if (killFuture != null) {
+            killFuture.cancel(false);
+            ProcessTree.destroy(process, true, terminatedDescendants);
+        }
+        if (samples == 0) {
+            return ProcessResourceUsage.UNKNOWN;
+        }
+        return new ProcessResourceUsage(peakRssBytes, cpuTimeNanos, peakThreads, samples);
+    }
+
+    /**
+     * Returns the description of the exceeded limit, or {@code null} if no limit has been exceeded.
+     */
+    synchronized String violation() {
+        return violation;
+    }
+
+    private synchronized void sample() {
+        if (violation != null || !ProcessTree.isAlive(process)) {
+            return;
+        }
+
+        if (pid > 0) {
+            final String[] rootStat = ProcessTree.readStat(pid);
+            if (rootStat != null) {
+                long rss = ProcessTree.rssBytes(rootStat);
+                long cpu = ProcessTree.cpuTimeNanos(rootStat);
+                int threads = ProcessTree.threads(rootStat);
+                // A process is read after its parent, so that the CPU time of a child reaped in between is
+                // counted only in the time of its parent's waited-for children. A zombie is skipped because
+                // its CPU time is added to its parent's once reaped; the next sample counts it.
+                final List<Long> descendants = ProcessTree.descendants(pid);
+                for (Long p : descendants) {
+                    final String[] stat = ProcessTree.readStat(p);
+                    if (stat != null && !ProcessTree.isZombie(stat)) {
+                        rss += ProcessTree.rssBytes(stat);
+                        cpu += ProcessTree.cpuTimeNanos(stat);
+                        threads += ProcessTree.threads(stat);
+                    }
+                }
+
+                samples++;
+                peakRssBytes = Math.max(peakRssBytes, rss);
+                cpuTimeNanos = Math.max(cpuTimeNanos, cpu);
+                peakThreads = Math.max(peakThreads, threads);
+
+                if (limits.maxRssBytes() > 0 && rss > limits.maxRssBytes()) {
+                    terminate("Sphinx exceeded the memory limit of " + (limits.maxRssBytes() >> 20) +
+                              " MiB (RSS: " + (rss >> 20) + " MiB)");
+                    return;
+                }
+            }
+        }
+
+        if (limits.timeoutMillis() > 0 &&
+            System.nanoTime() - startTimeNanos > TimeUnit.MILLISECONDS.toNanos(limits.timeoutMillis())) {
+            terminate("Sphinx exceeded the time limit of " + limits.timeoutMillis() + "ms");
+        }
+    }
+
+    private void terminate(String reason) {
+        violation = reason;
+        listener.onWarning(reason + "; terminating the process tree", null);
+        final Map<Long, Long> descendants =
+                ProcessTree.destroy(process, false, Collections.<Long, Long>emptyMap());
+        terminatedDescendants = descendants;
+        killFuture = scheduler.schedule(new Runnable() {
+            @Override
+            public void run() {
+                if (ProcessTree.isAlive(process)) {
+                    listener.onWarning("Sphinx did not terminate within " + limits.gracePeriodMillis() +
+                                       "ms; killing the process tree", null);
+                    ProcessTree.destroy(process, true, descendants);
+                }
+            }
+        }, limits.gracePeriodMillis(), TimeUnit.MILLISECONDS);
+    }
+}
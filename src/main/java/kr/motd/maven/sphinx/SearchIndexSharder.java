@@ -0,0 +1,302 @@
+package kr.motd.maven.sphinx;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Splits the search index generated by Sphinx, {@code searchindex.js}, into the shards of the terms with
+ * the same prefix, so that the search page of a very large documentation loads only the shards of the words in
+ * a query instead of the whole index. The index without the terms and the runtime which loads the shards on
+ * demand are written into {@value #LOADER_FILE_NAME}, and the shards into {@value #SHARD_DIRECTORY}.
+ *
+ * <p>{@code searchindex.js} is left intact, because Sphinx reads it back to update the index incrementally,
+ * and the HTML files are rewritten to load {@value #LOADER_FILE_NAME} instead. The checksums of the shards are
+ * recorded in an index file next to the output directory, so that only the shards whose terms have changed are
+ * written again.</p>
+ */
+final class SearchIndexSharder {
+
+    static final String LOADER_FILE_NAME = "searchshards.js";
+
+    static final String SHARD_DIRECTORY = "_searchindex";
+
+    private static final String INDEX_FILE_NAME = "searchindex.js";
+
+    private static final String RUNTIME_RESOURCE = "searchshards.js";
+
+    private static final String SOURCE_STAMP_KEY = ".source";
+
+    private static final String[] TERM_PROPERTIES = { "terms", "titleterms" };
+
+    private static final Pattern INDEX_LINK_PATTERN = Pattern.compile("([\"'/])searchindex\\.js([\"'?#])");
+
+    private final int prefixLength;
+
+    /**
+     * Creates a new instance.
+     *
+     * @param prefixLength the number of the leading characters of a term which determine its shard
+     */
+    SearchIndexSharder(int prefixLength) {
+        if (prefixLength <= 0) {
+            throw new IllegalArgumentException("prefixLength: " + prefixLength + " (expected: > 0)");
+        }
+        this.prefixLength = prefixLength;
+    }
+
+    /**
+     * Shards the search index in the specified directory, notifying the specified {@link SphinxRunnerListener}
+     * of the progress.
+     */
+    Result shard(File dir, SphinxRunnerListener listener) throws IOException {
+        final String name = "shardSearchIndex";
+        final long startTime = System.nanoTime();
+        listener.onPostProcessingStarted(name, dir);
+        final Result result = shard(dir);
+        listener.onPostProcessingFinished(name, dir, result.shards, result.modifiedFiles,
+                                          result.modifiedBytes, System.nanoTime() - startTime);
+        return result;
+    }
+
+    private Result shard(File dir) throws IOException {
+        final Result result = new Result();
+        final File indexFile = new File(dir, INDEX_FILE_NAME);
+        if (!indexFile.isFile()) {
+            return result;
+        }
+
+        final File shardIndexFile = new File(dir.getPath() + ".searchshards.index");
+        final Properties oldIndex = new Properties();
+        if (shardIndexFile.isFile()) {
+            try (InputStream in = new FileInputStream(shardIndexFile)) {
+                oldIndex.load(in);
+            }
+        }
+
+        final File loaderFile = new File(dir, LOADER_FILE_NAME);
+        final String sourceStamp = prefixLength + "," + indexFile.length() + ',' + indexFile.lastModified();
+        if (sourceStamp.equals(oldIndex.getProperty(SOURCE_STAMP_KEY)) && loaderFile.isFile()) {
+            // The search index has not been rebuilt since the last run.
+            result.shards = oldIndex.size() - 1;
+        } else {
+            final Map<String, String> newIndex = shard(dir, indexFile, loaderFile, oldIndex, result);
+            newIndex.put(SOURCE_STAMP_KEY, sourceStamp);
+            final Properties index = new Properties();
+            index.putAll(newIndex);
+            try (OutputStream out = new FileOutputStream(shardIndexFile)) {
+                index.store(out, "Sharded Sphinx search index");
+            }
+        }
+
+        // Sphinx writes the search page on every build, so the reference to the index is always rewritten.
+        final List<Path> htmlFiles = new ArrayList<>();
+        Files.walkFileTree(dir.toPath(), new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                final String name = file.getFileName().toString().toLowerCase(Locale.US);
+                if (attrs.isRegularFile() && (name.endsWith(".html") || name.endsWith(".htm"))) {
+                    htmlFiles.add(file);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        for (Path htmlFile : htmlFiles) {
+            final long newSize = rewriteHtml(htmlFile);
+            if (newSize >= 0) {
+                result.modifiedFiles++;
+                result.modifiedBytes += newSize;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Writes the shards and the loader of the specified search index.
+     *
+     * @return the new index entries, i.e. the checksums of the shards
+     */
+    private Map<String, String> shard(File dir, File indexFile, File loaderFile,
+                                      Properties oldIndex, Result result) throws IOException {
+        final Map<String, Object> index = parseIndex(indexFile);
+
+        // Move the terms out of the index into the shards.
+        final Map<String, Map<String, Map<String, Object>>> shards = new TreeMap<>();
+        for (String property : TERM_PROPERTIES) {
+            final Object terms = index.get(property);
+            if (!(terms instanceof Map)) {
+                continue;
+            }
+            for (Entry<?, ?> e : ((Map<?, ?>) terms).entrySet()) {
+                final String term = String.valueOf(e.getKey());
+                final String key = shardKey(term);
+                Map<String, Map<String, Object>> shard = shards.get(key);
+                if (shard == null) {
+                    shard = new LinkedHashMap<>();
+                    for (String p : TERM_PROPERTIES) {
+                        shard.put(p, new LinkedHashMap<String, Object>());
+                    }
+                    shards.put(key, shard);
+                }
+                shard.get(property).put(term, e.getValue());
+            }
+            index.put(property, new LinkedHashMap<String, Object>());
+        }
+        result.shards = shards.size();
+
+        final File shardDir = new File(dir, SHARD_DIRECTORY);
+        if (!shards.isEmpty() && !shardDir.isDirectory() && !shardDir.mkdirs()) {
+            throw new IOException("failed to create a directory: " + shardDir);
+        }
+
+        final Map<String, String> newIndex = new TreeMap<>();
+        final StringBuilder buf = new StringBuilder(4096);
+        for (Entry<String, Map<String, Map<String, Object>>> e : shards.entrySet()) {
+            final String key = e.getKey();
+            buf.setLength(0);
+            buf.append("SearchShards.addShard(");
+            Json.quote(buf, key).append(", ");
+            Json.write(buf, e.getValue()).append(");\n");
+
+            final byte[] content = buf.toString().getBytes(StandardCharsets.UTF_8);
+            final String checksum = SphinxUtil.toHexString(SphinxUtil.sha256(ByteBuffer.wrap(content)));
+            final File shardFile = new File(shardDir, key + ".js");
+            newIndex.put(key, checksum);
+            if (checksum.equals(oldIndex.getProperty(key)) && shardFile.isFile()) {
+                continue;
+            }
+            write(shardFile, content);
+            result.modifiedFiles++;
+            result.modifiedBytes += content.length;
+        }
+
+        // Remove the shards of the terms which are not in the index anymore.
+        for (String key : oldIndex.stringPropertyNames()) {
+            if (!key.equals(SOURCE_STAMP_KEY) && !newIndex.containsKey(key)) {
+                Files.deleteIfExists(new File(shardDir, key + ".js").toPath());
+            }
+        }
+
+        buf.setLength(0);
+        buf.append(loadRuntime());
+        buf.append("SearchShards.init(");
+        Json.write(buf, index).append(", ");
+        Json.write(buf, new ArrayList<>(shards.keySet())).append(", ").append(prefixLength).append(");\n");
+        final byte[] loader = buf.toString().getBytes(StandardCharsets.UTF_8);
+        write(loaderFile, loader);
+        result.modifiedFiles++;
+        result.modifiedBytes += loader.length;
+        return newIndex;
+    }
+
+    /**
+     * Parses the JSON object passed to {@code Search.setIndex()} in the specified search index.
+     */
+    private static Map<String, Object> parseIndex(File indexFile) throws IOException {
+        final String content = new String(Files.readAllBytes(indexFile.toPath()), StandardCharsets.UTF_8);
+        final int start = content.indexOf('{');
+        final int end = content.lastIndexOf('}');
+        if (!content.trim().startsWith("Search.setIndex(") || start < 0 || end < start) {
+            throw new IOException("unrecognized search index: " + indexFile);
+        }
+
+        final Object index;
+        try {
+            index = Json.parse(content.substring(start, end + 1));
+        } catch (IllegalArgumentException e) {
+            throw new IOException("malformed search index: " + indexFile, e);
+        }
+        if (!(index instanceof Map)) {
+            throw new IOException("unrecognized search index: " + indexFile);
+        }
+
+        @SuppressWarnings("unchecked")
+        final Map<String, Object> cast = (Map<String, Object>) index;
+        return cast;
+    }
+
+    /**
+     * Returns the key of the shard of the specified term, i.e. the hexadecimal representation of the UTF-8
+     * encoded first {@link #prefixLength} code points of the term. Keep in sync with {@code searchshards.js}.
+     */
+    String shardKey(String term) {
+        int end = 0;
+        for (int i = 0; i < prefixLength && end < term.length(); i++) {
+            end = term.offsetByCodePoints(end, 1);
+        }
+        return SphinxUtil.toHexString(term.substring(0, end).getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String loadRuntime() throws IOException {
+        try (InputStream in = SearchIndexSharder.class.getResourceAsStream(RUNTIME_RESOURCE)) {
+            if (in == null) {
+                throw new IOException("missing resource: " + RUNTIME_RESOURCE);
+            }
+            return new String(SphinxUtil.readFully(in), StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * Makes the specified HTML file load {@value #LOADER_FILE_NAME} instead of {@value #INDEX_FILE_NAME}.
+     *
+     * @return the new size of the file, or {@code -1} if the file has not been modified
+     */
+    private static long rewriteHtml(Path htmlFile) throws IOException {
+        final byte[] content = Files.readAllBytes(htmlFile);
+        final String html = new String(content, StandardCharsets.UTF_8);
+        if (!html.contains(INDEX_FILE_NAME)) {
+            return -1;
+        }
+
+        final Matcher m = INDEX_LINK_PATTERN.matcher(html);
+        if (!m.find()) {
+            return -1;
+        }
+        final StringBuffer buf = new StringBuffer(html.length());
+        do {
+            m.appendReplacement(buf, Matcher.quoteReplacement(m.group(1) + LOADER_FILE_NAME + m.group(2)));
+        } while (m.find());
+        m.appendTail(buf);
+
+        final byte[] newContent = buf.toString().getBytes(StandardCharsets.UTF_8);
+        write(htmlFile.toFile(), newContent);
+        return newContent.length;
+    }
+
+    private static void write(File file, byte[] content) throws IOException {
+        final Path dst = file.toPath();
+        final Path tmp = dst.resolveSibling(dst.getFileName() + ".tmp");
+        Files.write(tmp, content);
+        Files.move(tmp, dst, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * The statistics of a {@link SearchIndexSharder} run.
+     */
+    static final class Result {
+        int shards;
+        int modifiedFiles;
+        long modifiedBytes;
+    }
+}
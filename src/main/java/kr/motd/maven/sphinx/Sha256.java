@@ -18,6 +18,8 @@
  */
 package kr.motd.maven.sphinx;
 
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.util.Arrays;
 
 /**
@@ -96,22 +98,87 @@ final class Sha256 {
 
         byteCount += length;
 
-        // Process any full blocks we get by combining cached input
-        // with the new input
-        while (bufOff + length >= buf.length) {
-            int todo = buf.length - bufOff;
+        // Complete the cached partial block first.
+        if (bufOff != 0) {
+            final int todo = Math.min(buf.length - bufOff, length);
             System.arraycopy(data, offset, buf, bufOff, todo);
-            transform(buf);
-            length -= todo;
+            bufOff += todo;
             offset += todo;
+            length -= todo;
+            if (bufOff < buf.length) {
+                return;
+            }
+            transform(buf, 0);
             bufOff = 0;
         }
 
+        // Process the full blocks in place.
+        while (length >= BLOCK_LEN) {
+            transform(data, offset);
+            offset += BLOCK_LEN;
+            length -= BLOCK_LEN;
+        }
+
         // Copy any extra data into the cached input buffer.
         System.arraycopy(data, offset, buf, bufOff, length);
         bufOff += length;
     }
 
+    /**
+     * Updates the message digest with the remaining bytes of the specified buffer, which may be a heap,
+     * direct or memory-mapped buffer. The full blocks are processed in place without copying.
+     * The position of the buffer is advanced to its limit.
+     */
+    void update(ByteBuffer data) {
+        if (data == null) {
+            throw new NullPointerException("Input data buffer is null");
+        }
+
+        if (data.hasArray()) {
+            final int length = data.remaining();
+            update(data.array(), data.arrayOffset() + data.position(), length);
+            data.position(data.position() + length);
+            return;
+        }
+
+        int offset = data.position();
+        int length = data.remaining();
+        byteCount += length;
+
+        // Complete the cached partial block first.
+        if (bufOff != 0) {
+            final int todo = Math.min(buf.length - bufOff, length);
+            for (int i = 0; i < todo; i++) {
+                buf[bufOff++] = data.get(offset++);
+            }
+            length -= todo;
+            if (bufOff < buf.length) {
+                data.position(offset);
+                return;
+            }
+            transform(buf, 0);
+            bufOff = 0;
+        }
+
+        // Process the full blocks in place.
+        final boolean bigEndian = data.order() == ByteOrder.BIG_ENDIAN;
+        while (length >= BLOCK_LEN) {
+            for (int i = 0; i < BLOCK_LEN / 4; i++) {
+                final int v = data.getInt(offset + i * 4);
+                bufInts[i] = bigEndian ? v : Integer.reverseBytes(v);
+            }
+            transform();
+            offset += BLOCK_LEN;
+            length -= BLOCK_LEN;
+        }
+
+        // Copy any extra data into the cached input buffer.
+        for (int i = 0; i < length; i++) {
+            buf[bufOff++] = data.get(offset++);
+        }
+        data.position(offset);
+    }
+
     /**
      * Completes the digest calculation and returns the result in the
      * supplied array. The output will be {@code getDigestLen()}
@@ -142,7 +209,7 @@ final class Sha256 {
         // process it, and start a new block.
         if (bufOff + 8 > buf.length) {
             Arrays.fill(buf, bufOff, getBlockLen(), (byte) 0);
-            transform(buf);
+            transform(buf, 0);
             bufOff = 0;
         }
 
@@ -155,7 +222,7 @@ final class Sha256 {
         }
 
         // Process the final block
-        transform(buf);
+        transform(buf, 0);
 
         // Copy the result to the output buffer.
         int2byte(state, 0, out, outOffset, state.length);
@@ -173,6 +240,18 @@ final class Sha256 {
     /** Size (in bytes) of one process block */
     private static final int BLOCK_LEN = 64;
 
+    /** Round constants */
+    private static final int[] K = {
+            0x428a2f98, 0x71374491, 0xb5c0fbcf, 0xe9b5dba5, 0x3956c25b, 0x59f111f1, 0x923f82a4, 0xab1c5ed5,
+            0xd807aa98, 0x12835b01, 0x243185be, 0x550c7dc3, 0x72be5d74, 0x80deb1fe, 0x9bdc06a7, 0xc19bf174,
+            0xe49b69c1, 0xefbe4786, 0x0fc19dc6, 0x240ca1cc, 0x2de92c6f, 0x4a7484aa, 0x5cb0a9dc, 0x76f988da,
+            0x983e5152, 0xa831c66d, 0xb00327c8, 0xbf597fc7, 0xc6e00bf3, 0xd5a79147, 0x06ca6351, 0x14292967,
+            0x27b70a85, 0x2e1b2138, 0x4d2c6dfc, 0x53380d13, 0x650a7354, 0x766a0abb, 0x81c2c92e, 0x92722c85,
+            0xa2bfe8a1, 0xa81a664b, 0xc24b8b70, 0xc76c51a3, 0xd192e819, 0xd6990624, 0xf40e3585, 0x106aa070,
+            0x19a4c116, 0x1e376c08, 0x2748774c, 0x34b0bcb5, 0x391c0cb3, 0x4ed8aa4a, 0x5b9cca4f, 0x682e6ff3,
+            0x748f82ee, 0x78a5636f, 0x84c87814, 0x8cc70208, 0x90befffa, 0xa4506ceb, 0xbef9a3f7, 0xc67178f2,
+    };
+
     /** 64 byte input buffer */
     private final byte[] buf = new byte[64];
 
@@ -229,7 +308,7 @@ final class Sha256 {
     }
 
     private static int RR(int a, int n) {
-        return a >>> n | a << 32 - n;
+        return Integer.rotateRight(a, n);
     }
 
     private static int S0(int a) {
@@ -248,270 +327,44 @@ final class Sha256 {
         return RR(a, 17) ^ RR(a, 19) ^ a >>> 10;
     }
 
-    private void transform(
-            byte[] block) {
-        byte2int(buf, 0, bufInts, 0, BLOCK_LEN / 4);
-
-        int A, B, C, D, E, F, G, H;
-
-        /* init A - H */
-
-        A = state[0];
-        B = state[1];
-        C = state[2];
-        D = state[3];
-        E = state[4];
-        F = state[5];
-        G = state[6];
-        H = state[7];
-
-        /* rounds 0 - 15 */
-
-        H += S1(E) + (E & (F ^ G) ^ G) + 0x428A2F98 + bufInts[0];
-        D += H;
-        H += S0(A) + (A & B | C & (A | B));
-        G += S1(D) + (D & (E ^ F) ^ F) + 0x71374491 + bufInts[1];
-        C += G;
-        G += S0(H) + (H & A | B & (H | A));
-        F += S1(C) + (C & (D ^ E) ^ E) + 0xB5C0FBCF + bufInts[2];
-        B += F;
-        F += S0(G) + (G & H | A & (G | H));
-        E += S1(B) + (B & (C ^ D) ^ D) + 0xE9B5DBA5 + bufInts[3];
-        A += E;
-        E += S0(F) + (F & G | H & (F | G));
-        D += S1(A) + (A & (B ^ C) ^ C) + 0x3956C25B + bufInts[4];
-        H += D;
-        D += S0(E) + (E & F | G & (E | F));
-        C += S1(H) + (H & (A ^ B) ^ B) + 0x59F111F1 + bufInts[5];
-        G += C;
-        C += S0(D) + (D & E | F & (D | E));
-        B += S1(G) + (G & (H ^ A) ^ A) + 0x923F82A4 + bufInts[6];
-        F += B;
-        B += S0(C) + (C & D | E & (C | D));
-        A += S1(F) + (F & (G ^ H) ^ H) + 0xAB1C5ED5 + bufInts[7];
-        E += A;
-        A += S0(B) + (B & C | D & (B | C));
-        H += S1(E) + (E & (F ^ G) ^ G) + 0xD807AA98 + bufInts[8];
-        D += H;
-        H += S0(A) + (A & B | C & (A | B));
-        G += S1(D) + (D & (E ^ F) ^ F) + 0x12835B01 + bufInts[9];
-        C += G;
-        G += S0(H) + (H & A | B & (H | A));
-        F += S1(C) + (C & (D ^ E) ^ E) + 0x243185BE + bufInts[10];
-        B += F;
-        F += S0(G) + (G & H | A & (G | H));
-        E += S1(B) + (B & (C ^ D) ^ D) + 0x550C7DC3 + bufInts[11];
-        A += E;
-        E += S0(F) + (F & G | H & (F | G));
-        D += S1(A) + (A & (B ^ C) ^ C) + 0x72BE5D74 + bufInts[12];
-        H += D;
-        D += S0(E) + (E & F | G & (E | F));
-        C += S1(H) + (H & (A ^ B) ^ B) + 0x80DEB1FE + bufInts[13];
-        G += C;
-        C += S0(D) + (D & E | F & (D | E));
-        B += S1(G) + (G & (H ^ A) ^ A) + 0x9BDC06A7 + bufInts[14];
-        F += B;
-        B += S0(C) + (C & D | E & (C | D));
-        A += S1(F) + (F & (G ^ H) ^ H) + 0xC19BF174 + bufInts[15];
-        E += A;
-        A += S0(B) + (B & C | D & (B | C));
-
-        /* rounds 16 - 63 */
-
-        w[0] = bufInts[0] + s0(bufInts[1]) + bufInts[9] + s1(bufInts[14]);
-        H += S1(E) + (E & (F ^ G) ^ G) + 0xE49B69C1 + w[0];
-        D += H;
-        H += S0(A) + (A & B | C & (A | B));
-        w[1] = bufInts[1] + s0(bufInts[2]) + bufInts[10] + s1(bufInts[15]);
-        G += S1(D) + (D & (E ^ F) ^ F) + 0xEFBE4786 + w[1];
-        C += G;
-        G += S0(H) + (H & A | B & (H | A));
-        w[2] = bufInts[2] + s0(bufInts[3]) + bufInts[11] + s1(w[0]);
-        F += S1(C) + (C & (D ^ E) ^ E) + 0x0FC19DC6 + w[2];
-        B += F;
-        F += S0(G) + (G & H | A & (G | H));
-        w[3] = bufInts[3] + s0(bufInts[4]) + bufInts[12] + s1(w[1]);
-        E += S1(B) + (B & (C ^ D) ^ D) + 0x240CA1CC + w[3];
-        A += E;
-        E += S0(F) + (F & G | H & (F | G));
-        w[4] = bufInts[4] + s0(bufInts[5]) + bufInts[13] + s1(w[2]);
-        D += S1(A) + (A & (B ^ C) ^ C) + 0x2DE92C6F + w[4];
-        H += D;
-        D += S0(E) + (E & F | G & (E | F));
-        w[5] = bufInts[5] + s0(bufInts[6]) + bufInts[14] + s1(w[3]);
-        C += S1(H) + (H & (A ^ B) ^ B) + 0x4A7484AA + w[5];
-        G += C;
-        C += S0(D) + (D & E | F & (D | E));
-        w[6] = bufInts[6] + s0(bufInts[7]) + bufInts[15] + s1(w[4]);
-        B += S1(G) + (G & (H ^ A) ^ A) + 0x5CB0A9DC + w[6];
-        F += B;
-        B += S0(C) + (C & D | E & (C | D));
-        w[7] = bufInts[7] + s0(bufInts[8]) + w[0] + s1(w[5]);
-        A += S1(F) + (F & (G ^ H) ^ H) + 0x76F988DA + w[7];
-        E += A;
-        A += S0(B) + (B & C | D & (B | C));
-        w[8] = bufInts[8] + s0(bufInts[9]) + w[1] + s1(w[6]);
-        H += S1(E) + (E & (F ^ G) ^ G) + 0x983E5152 + w[8];
-        D += H;
-        H += S0(A) + (A & B | C & (A | B));
-        w[9] = bufInts[9] + s0(bufInts[10]) + w[2] + s1(w[7]);
-        G += S1(D) + (D & (E ^ F) ^ F) + 0xA831C66D + w[9];
-        C += G;
-        G += S0(H) + (H & A | B & (H | A));
-        w[10] = bufInts[10] + s0(bufInts[11]) + w[3] + s1(w[8]);
-        F += S1(C) + (C & (D ^ E) ^ E) + 0xB00327C8 + w[10];
-        B += F;
-        F += S0(G) + (G & H | A & (G | H));
-        w[11] = bufInts[11] + s0(bufInts[12]) + w[4] + s1(w[9]);
-        E += S1(B) + (B & (C ^ D) ^ D) + 0xBF597FC7 + w[11];
-        A += E;
-        E += S0(F) + (F & G | H & (F | G));
-        w[12] = bufInts[12] + s0(bufInts[13]) + w[5] + s1(w[10]);
-        D += S1(A) + (A & (B ^ C) ^ C) + 0xC6E00BF3 + w[12];
-        H += D;
-        D += S0(E) + (E & F | G & (E | F));
-        w[13] = bufInts[13] + s0(bufInts[14]) + w[6] + s1(w[11]);
-        C += S1(H) + (H & (A ^ B) ^ B) + 0xD5A79147 + w[13];
-        G += C;
-        C += S0(D) + (D & E | F & (D | E));
-        w[14] = bufInts[14] + s0(bufInts[15]) + w[7] + s1(w[12]);
-        B += S1(G) + (G & (H ^ A) ^ A) + 0x06CA6351 + w[14];
-        F += B;
-        B += S0(C) + (C & D | E & (C | D));
-        w[15] = bufInts[15] + s0(w[0]) + w[8] + s1(w[13]);
-        A += S1(F) + (F & (G ^ H) ^ H) + 0x14292967 + w[15];
-        E += A;
-        A += S0(B) + (B & C | D & (B | C));
-        w[0] += s0(w[1]) + w[9] + s1(w[14]);
-        H += S1(E) + (E & (F ^ G) ^ G) + 0x27B70A85 + w[0];
-        D += H;
-        H += S0(A) + (A & B | C & (A | B));
-        w[1] += s0(w[2]) + w[10] + s1(w[15]);
-        G += S1(D) + (D & (E ^ F) ^ F) + 0x2E1B2138 + w[1];
-        C += G;
-        G += S0(H) + (H & A | B & (H | A));
-        w[2] += s0(w[3]) + w[11] + s1(w[0]);
-        F += S1(C) + (C & (D ^ E) ^ E) + 0x4D2C6DFC + w[2];
-        B += F;
-        F += S0(G) + (G & H | A & (G | H));
-        w[3] += s0(w[4]) + w[12] + s1(w[1]);
-        E += S1(B) + (B & (C ^ D) ^ D) + 0x53380D13 + w[3];
-        A += E;
-        E += S0(F) + (F & G | H & (F | G));
-        w[4] += s0(w[5]) + w[13] + s1(w[2]);
-        D += S1(A) + (A & (B ^ C) ^ C) + 0x650A7354 + w[4];
-        H += D;
-        D += S0(E) + (E & F | G & (E | F));
-        w[5] += s0(w[6]) + w[14] + s1(w[3]);
-        C += S1(H) + (H & (A ^ B) ^ B) + 0x766A0ABB + w[5];
-        G += C;
-        C += S0(D) + (D & E | F & (D | E));
-        w[6] += s0(w[7]) + w[15] + s1(w[4]);
-        B += S1(G) + (G & (H ^ A) ^ A) + 0x81C2C92E + w[6];
-        F += B;
-        B += S0(C) + (C & D | E & (C | D));
-        w[7] += s0(w[8]) + w[0] + s1(w[5]);
-        A += S1(F) + (F & (G ^ H) ^ H) + 0x92722C85 + w[7];
-        E += A;
-        A += S0(B) + (B & C | D & (B | C));
-        w[8] += s0(w[9]) + w[1] + s1(w[6]);
-        H += S1(E) + (E & (F ^ G) ^ G) + 0xA2BFE8A1 + w[8];
-        D += H;
-        H += S0(A) + (A & B | C & (A | B));
-        w[9] += s0(w[10]) + w[2] + s1(w[7]);
-        G += S1(D) + (D & (E ^ F) ^ F) + 0xA81A664B + w[9];
-        C += G;
-        G += S0(H) + (H & A | B & (H | A));
-        w[10] += s0(w[11]) + w[3] + s1(w[8]);
-        F += S1(C) + (C & (D ^ E) ^ E) + 0xC24B8B70 + w[10];
-        B += F;
-        F += S0(G) + (G & H | A & (G | H));
-        w[11] += s0(w[12]) + w[4] + s1(w[9]);
-        E += S1(B) + (B & (C ^ D) ^ D) + 0xC76C51A3 + w[11];
-        A += E;
-        E += S0(F) + (F & G | H & (F | G));
-        w[12] += s0(w[13]) + w[5] + s1(w[10]);
-        D += S1(A) + (A & (B ^ C) ^ C) + 0xD192E819 + w[12];
-        H += D;
-        D += S0(E) + (E & F | G & (E | F));
-        w[13] += s0(w[14]) + w[6] + s1(w[11]);
-        C += S1(H) + (H & (A ^ B) ^ B) + 0xD6990624 + w[13];
-        G += C;
-        C += S0(D) + (D & E | F & (D | E));
-        w[14] += s0(w[15]) + w[7] + s1(w[12]);
-        B += S1(G) + (G & (H ^ A) ^ A) + 0xF40E3585 + w[14];
-        F += B;
-        B += S0(C) + (C & D | E & (C | D));
-        w[15] += s0(w[0]) + w[8] + s1(w[13]);
-        A += S1(F) + (F & (G ^ H) ^ H) + 0x106AA070 + w[15];
-        E += A;
-        A += S0(B) + (B & C | D & (B | C));
-        w[0] += s0(w[1]) + w[9] + s1(w[14]);
-        H += S1(E) + (E & (F ^ G) ^ G) + 0x19A4C116 + w[0];
-        D += H;
-        H += S0(A) + (A & B | C & (A | B));
-        w[1] += s0(w[2]) + w[10] + s1(w[15]);
-        G += S1(D) + (D & (E ^ F) ^ F) + 0x1E376C08 + w[1];
-        C += G;
-        G += S0(H) + (H & A | B & (H | A));
-        w[2] += s0(w[3]) + w[11] + s1(w[0]);
-        F += S1(C) + (C & (D ^ E) ^ E) + 0x2748774C + w[2];
-        B += F;
-        F += S0(G) + (G & H | A & (G | H));
-        w[3] += s0(w[4]) + w[12] + s1(w[1]);
-        E += S1(B) + (B & (C ^ D) ^ D) + 0x34B0BCB5 + w[3];
-        A += E;
-        E += S0(F) + (F & G | H & (F | G));
-        w[4] += s0(w[5]) + w[13] + s1(w[2]);
-        D += S1(A) + (A & (B ^ C) ^ C) + 0x391C0CB3 + w[4];
-        H += D;
-        D += S0(E) + (E & F | G & (E | F));
-        w[5] += s0(w[6]) + w[14] + s1(w[3]);
-        C += S1(H) + (H & (A ^ B) ^ B) + 0x4ED8AA4A + w[5];
-        G += C;
-        C += S0(D) + (D & E | F & (D | E));
-        w[6] += s0(w[7]) + w[15] + s1(w[4]);
-        B += S1(G) + (G & (H ^ A) ^ A) + 0x5B9CCA4F + w[6];
-        F += B;
-        B += S0(C) + (C & D | E & (C | D));
-        w[7] += s0(w[8]) + w[0] + s1(w[5]);
-        A += S1(F) + (F & (G ^ H) ^ H) + 0x682E6FF3 + w[7];
-        E += A;
-        A += S0(B) + (B & C | D & (B | C));
-        w[8] += s0(w[9]) + w[1] + s1(w[6]);
-        H += S1(E) + (E & (F ^ G) ^ G) + 0x748F82EE + w[8];
-        D += H;
-        H += S0(A) + (A & B | C & (A | B));
-        w[9] += s0(w[10]) + w[2] + s1(w[7]);
-        G += S1(D) + (D & (E ^ F) ^ F) + 0x78A5636F + w[9];
-        C += G;
-        G += S0(H) + (H & A | B & (H | A));
-        w[10] += s0(w[11]) + w[3] + s1(w[8]);
-        F += S1(C) + (C & (D ^ E) ^ E) + 0x84C87814 + w[10];
-        B += F;
-        F += S0(G) + (G & H | A & (G | H));
-        w[11] += s0(w[12]) + w[4] + s1(w[9]);
-        E += S1(B) + (B & (C ^ D) ^ D) + 0x8CC70208 + w[11];
-        A += E;
-        E += S0(F) + (F & G | H & (F | G));
-        w[12] += s0(w[13]) + w[5] + s1(w[10]);
-        D += S1(A) + (A & (B ^ C) ^ C) + 0x90BEFFFA + w[12];
-        H += D;
-        D += S0(E) + (E & F | G & (E | F));
-        w[13] += s0(w[14]) + w[6] + s1(w[11]);
-        C += S1(H) + (H & (A ^ B) ^ B) + 0xA4506CEB + w[13];
-        G += C;
-        C += S0(D) + (D & E | F & (D | E));
-        w[14] += s0(w[15]) + w[7] + s1(w[12]);
-        B += S1(G) + (G & (H ^ A) ^ A) + 0xBEF9A3F7 + w[14];
-        F += B;
-        B += S0(C) + (C & D | E & (C | D));
-        w[15] += s0(w[0]) + w[8] + s1(w[13]);
-        A += S1(F) + (F & (G ^ H) ^ H) + 0xC67178F2 + w[15];
-        E += A;
-        A += S0(B) + (B & C | D & (B | C));
-
-        /* update H0 - H7 */
+    private void transform(byte[] block, int offset) {
+        byte2int(block, offset, bufInts, 0, BLOCK_LEN / 4);
+        transform();
+    }
+
+    /**
+     * Processes the block in {@link #bufInts}.
+     */
+    private void transform() {
+        final int[] w = this.w;
+        System.arraycopy(bufInts, 0, w, 0, 16);
+        for (int t = 16; t < 64; t++) {
+            w[t] = s1(w[t - 2]) + w[t - 7] + s0(w[t - 15]) + w[t - 16];
+        }
+
+        int A = state[0];
+        int B = state[1];
+        int C = state[2];
+        int D = state[3];
+        int E = state[4];
+        int F = state[5];
+        int G = state[6];
+        int H = state[7];
+
+        // A compact loop rather than 64 unrolled rounds, so that the JIT compiler can inline
+        // the helper functions and keep the working variables in registers.
+        for (int t = 0; t < 64; t++) {
+            final int t1 = H + S1(E) + (E & F ^ ~E & G) + K[t] + w[t];
+            final int t2 = S0(A) + (A & B ^ A & C ^ B & C);
+            H = G;
+            G = F;
+            F = E;
+            E = D + t1;
+            D = C;
+            C = B;
+            B = A;
+            A = t1 + t2;
+        }
 
         state[0] += A;
         state[1] += B;
@@ -521,10 +374,5 @@ final class Sha256 {
         state[5] += F;
         state[6] += G;
         state[7] += H;
-
-        /* clear temp variables */
-
-        Arrays.fill(bufInts, 0);
-        Arrays.fill(w, 0);
     }
 }
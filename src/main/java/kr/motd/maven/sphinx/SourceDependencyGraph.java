@@ -0,0 +1,700 @@
+package kr.motd.maven.sphinx;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A dependency graph of the Sphinx documents in a source directory, which is used for determining the minimal
+ * set of documents affected by a set of changed files.
+ *
+ * <p>A document depends on the files it references via {@code include}, {@code literalinclude}, {@code image}
+ * and {@code figure} directives, Markdown images and the documents listed in its {@code toctree}s.
+ * All paths are relative to the source directory and use {@code '/'} as a separator.</p>
+ *
+ * <p>The {@code .rst} and {@code .md} files matched by the {@code exclude_patterns} of {@code conf.py} are not
+ * documents, and neither are the files which are only included by other files, i.e. which are neither
+ * the root document nor listed in a {@code toctree}.</p>
+ */
+final class SourceDependencyGraph {
+
+    private static final String MTIME_PREFIX = "mtime.";
+    private static final String DEPS_PREFIX = "deps.";
+    private static final String GLOBS_PREFIX = "globs.";
+    private static final String EXCLUDED_PREFIX = "excluded.";
+    private static final String[] SOURCE_SUFFIXES = { ".rst", ".md" };
+
+    private static final Pattern DIRECTIVE_PATTERN = Pattern.compile(
+            "^\\s*\\.\\.\\s+(?:\\|[^|]+\\|\\s+)?(include|literalinclude|image|figure|toctree)::\\s*(.*?)\\s*$");
+    private static final Pattern MARKDOWN_IMAGE_PATTERN = Pattern.compile("!\\[[^\\]]*]\\(\\s*([^)\\s]+)[^)]*\\)");
+    private static final Pattern TOCTREE_ENTRY_PATTERN = Pattern.compile("^(?:.*<([^>]+)>|(.+))$");
+    private static final Pattern EXCLUDE_PATTERNS_PATTERN = Pattern.compile(
+            "^\\s*exclude_patterns\\s*(\\+?=)\\s*\\[(.*?)]", Pattern.MULTILINE | Pattern.DOTALL);
+    private static final Pattern ROOT_DOC_PATTERN = Pattern.compile(
+            "^\\s*(?:root_doc|master_doc)\\s*=\\s*(['\"])(.*?)\\1", Pattern.MULTILINE);
+    private static final Pattern STRING_PATTERN = Pattern.compile("'([^']*)'|\"([^\"]*)\"");
+
+    /**
+     * Scans the specified source directory and builds a new dependency graph, reading {@code conf.py}
+     * from the source directory.
+     */
+    static SourceDependencyGraph scan(File sourceDir) throws IOException {
+        return scan(sourceDir, sourceDir);
+    }
+
+    /**
+     * Scans the specified source directory and builds a new dependency graph.
+     *
+     * @param configDir the directory which contains {@code conf.py}
+     */
+    static SourceDependencyGraph scan(final File sourceDir, File configDir) throws IOException {
+        final Map<String, Long> lastModified = new TreeMap<>();
+        final Path root = sourceDir.toPath();
+        Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                if (!dir.equals(root) && dir.getFileName().toString().startsWith(".")) {
+                    return FileVisitResult.SKIP_SUBTREE;
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                if (attrs.isRegularFile()) {
+                    lastModified.put(relativize(root, file), attrs.lastModifiedTime().toMillis());
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+
+        final String confPy = readConfPy(configDir);
+        final List<Pattern> excludePatterns = new ArrayList<>();
+        for (String p : excludePatterns(confPy)) {
+            excludePatterns.add(compileGlob(p));
+        }
+        final String rootDoc = rootDoc(confPy);
+
+        final Set<String> excluded = new TreeSet<>();
+        final Set<String> sources = new TreeSet<>();
+        for (String path : lastModified.keySet()) {
+            if (isExcluded(path, excludePatterns)) {
+                excluded.add(path);
+            } else if (isSource(path)) {
+                sources.add(path);
+            }
+        }
+
+        final Map<String, Set<String>> dependencies = new TreeMap<>();
+        final Map<String, Set<String>> globs = new TreeMap<>();
+        final Set<String> included = new HashSet<>();
+        final Set<String> listed = new HashSet<>();
+        for (String path : sources) {
+            final Set<String> docGlobs = new TreeSet<>();
+            dependencies.put(path, findDependencies(sourceDir, path, sources, included, listed, docGlobs));
+            if (!docGlobs.isEmpty()) {
+                globs.put(path, docGlobs);
+            }
+        }
+
+        // Leave out the files which are only included by other files.
+        for (String path : sources) {
+            if (included.contains(path) && !listed.contains(path) && !rootDoc.equals(docName(path))) {
+                dependencies.remove(path);
+                globs.remove(path);
+            }
+        }
+
+        return new SourceDependencyGraph(lastModified, dependencies, globs, excluded);
+    }
+
+    /**
+     * Loads the dependency graph stored by {@link #store(File)}.
+     *
+     * @return the loaded graph, or {@code null} if the file does not exist or is not readable
+     */
+    static SourceDependencyGraph load(File file) {
+        if (!file.isFile()) {
+            return null;
+        }
+
+        final Properties props = new Properties();
+        try (InputStream in = new FileInputStream(file)) {
+            props.load(in);
+        } catch (IOException e) {
+            return null;
+        }
+
+        final Map<String, Long> lastModified = new TreeMap<>();
+        final Map<String, Set<String>> dependencies = new TreeMap<>();
+        final Map<String, Set<String>> globs = new TreeMap<>();
+        final Set<String> excluded = new TreeSet<>();
+        try {
+            for (String key : props.stringPropertyNames()) {
+                final String value = props.getProperty(key);
+                if (key.startsWith(MTIME_PREFIX)) {
+                    lastModified.put(key.substring(MTIME_PREFIX.length()), Long.parseLong(value));
+                } else if (key.startsWith(DEPS_PREFIX)) {
+                    dependencies.put(key.substring(DEPS_PREFIX.length()), split(value));
+                } else if (key.startsWith(GLOBS_PREFIX)) {
+                    globs.put(key.substring(GLOBS_PREFIX.length()), split(value));
+                } else if (key.startsWith(EXCLUDED_PREFIX)) {
+                    excluded.add(key.substring(EXCLUDED_PREFIX.length()));
+                }
+            }
+        } catch (NumberFormatException e) {
+            return null;
+        }
+
+        return new SourceDependencyGraph(lastModified, dependencies, globs, excluded);
+    }
+
+    private final Map<String, Long> lastModified;
+    private final Map<String, Set<String>> dependencies;
+    /** The glob patterns of the {@code toctree}s of the documents, resolved against the source directory. */
+    private final Map<String, Set<String>> globs;
+    /** The files matched by {@code exclude_patterns}. */
+    private final Set<String> excluded;
+
+    private SourceDependencyGraph(Map<String, Long> lastModified, Map<String, Set<String>> dependencies,
+                                  Map<String, Set<String>> globs, Set<String> excluded) {
+        this.lastModified = lastModified;
+        this.dependencies = dependencies;
+        this.globs = globs;
+        this.excluded = excluded;
+    }
+
+    /**
+     * Returns the paths of all documents in this graph.
+     */
+    Set<String> documents() {
+        return Collections.unmodifiableSet(dependencies.keySet());
+    }
+
+    /**
+     * Updates the last modification time of the specified file, e.g. after it was touched on purpose,
+     * so that the change is not detected by the next build.
+     */
+    void updateLastModified(String path, long lastModified) {
+        if (this.lastModified.containsKey(path)) {
+            this.lastModified.put(path, lastModified);
+        }
+    }
+
+    /**
+     * Returns the paths of the files that were added, removed or modified since the specified graph was built,
+     * based on their last modification times.
+     */
+    Set<String> changedSince(SourceDependencyGraph previous) {
+        final Set<String> changed = new TreeSet<>();
+        for (Entry<String, Long> e : lastModified.entrySet()) {
+            if (!e.getValue().equals(previous.lastModified.get(e.getKey()))) {
+                changed.add(e.getKey());
+            }
+        }
+        for (String path : previous.lastModified.keySet()) {
+            if (!lastModified.containsKey(path)) {
+                changed.add(path);
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * Determines the documents that need to be rebuilt because of the specified changed files.
+     *
+     * @param changedFiles the paths of the changed files
+     * @param previous the graph of the previous build, which is used for tracking the dependencies
+     *                 of the files removed since then; may be {@code null}
+     *
+     * @return the paths of the affected documents, or {@code null} if a full build is required, e.g. a document
+     *         was removed, a file which does not belong to any document, such as {@code conf.py}, was changed,
+     *         or a document with a {@code :glob:} {@code toctree} or a new document matched by one was changed
+     */
+    Set<String> affectedDocuments(Collection<String> changedFiles, SourceDependencyGraph previous) {
+        final Map<String, Set<String>> dependents = new HashMap<>();
+        addDependents(dependents, this);
+        if (previous != null) {
+            addDependents(dependents, previous);
+        }
+
+        final Set<String> affected = new TreeSet<>();
+        final Deque<String> queue = new ArrayDeque<>();
+        for (String path : changedFiles) {
+            if (globs.containsKey(path) || previous != null && previous.globs.containsKey(path)) {
+                // The entries of a glob toctree can only be determined by Sphinx.
+                return null;
+            }
+            if (dependencies.containsKey(path)) {
+                if ((previous == null || !previous.dependencies.containsKey(path)) && matchesGlob(path)) {
+                    // A new document matched by a glob toctree changes the toctree.
+                    return null;
+                }
+            } else if (previous != null && previous.dependencies.containsKey(path)) {
+                // A removed document affects the toctree and indices of other documents.
+                return null;
+            } else if (!dependents.containsKey(path)) {
+                if (excluded.contains(path) || previous != null && previous.excluded.contains(path)) {
+                    continue;
+                }
+                return null;
+            }
+            queue.add(path);
+        }
+
+        final Set<String> visited = new HashSet<>();
+        while (!queue.isEmpty()) {
+            final String path = queue.poll();
+            if (!visited.add(path)) {
+                continue;
+            }
+            if (dependencies.containsKey(path)) {
+                affected.add(path);
+            }
+            final Set<String> ds = dependents.get(path);
+            if (ds != null) {
+                queue.addAll(ds);
+            }
+        }
+
+        return affected;
+    }
+
+    /**
+     * Stores this graph into the specified file.
+     */
+    void store(File file) throws IOException {
+        final Properties props = new Properties();
+        for (Entry<String, Long> e : lastModified.entrySet()) {
+            props.setProperty(MTIME_PREFIX + e.getKey(), String.valueOf(e.getValue()));
+        }
+        for (Entry<String, Set<String>> e : dependencies.entrySet()) {
+            props.setProperty(DEPS_PREFIX + e.getKey(), join(e.getValue()));
+        }
+        for (Entry<String, Set<String>> e : globs.entrySet()) {
+            props.setProperty(GLOBS_PREFIX + e.getKey(), join(e.getValue()));
+        }
+        for (String path : excluded) {
+            props.setProperty(EXCLUDED_PREFIX + path, "");
+        }
+
+        final File parent = file.getParentFile();
+        if (parent != null) {
+            parent.mkdirs();
+        }
+        try (OutputStream out = new FileOutputStream(file)) {
+            props.store(out, "Sphinx source dependency graph");
+        }
+    }
+
+    /**
+     * Returns the paths of the files under the specified source directory which differ from the specified
+     * Git revision, including untracked files.
+     */
+    static Set<String> gitChangedFiles(File sourceDir, String revision) throws IOException {
+        final Set<String> changed = new TreeSet<>();
+        git(sourceDir, changed, "diff", "--name-only", "--relative", revision, "--");
+        git(sourceDir, changed, "ls-files", "--others", "--exclude-standard");
+        return changed;
+    }
+
+    private static void git(File workingDir, Set<String> result, String... args) throws IOException {
+        final List<String> command = new ArrayList<>();
+        command.add("git");
+        Collections.addAll(command, args);
+
+        final Process process = new ProcessBuilder(command).directory(workingDir)
+                                                           .redirectErrorStream(true)
+                                                           .start();
+        process.getOutputStream().close();
+        final List<String> lines = new ArrayList<>();
+        try (InputStream in = process.getInputStream()) {
+            final String output = new String(SphinxUtil.readFully(in), StandardCharsets.UTF_8);
+            for (String line : output.split("\r?\n")) {
+                if (!line.isEmpty()) {
+                    lines.add(line);
+                }
+            }
+        }
+
+        final int exitCode;
+        try {
+            exitCode = process.waitFor();
+        } catch (InterruptedException e) {
+            process.destroy();
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted while running git", e);
+        }
+        if (exitCode != 0) {
+            throw new IOException("git " + command.subList(1, command.size()) + " exited with code " +
+                                  exitCode + ": " + lines);
+        }
+        result.addAll(lines);
+    }
+
+    private boolean matchesGlob(String path) {
+        final String docName = docName(path);
+        for (Set<String> patterns : globs.values()) {
+            for (String p : patterns) {
+                if (compileGlob(p).matcher(docName).matches()) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static void addDependents(Map<String, Set<String>> dependents, SourceDependencyGraph graph) {
+        for (Entry<String, Set<String>> e : graph.dependencies.entrySet()) {
+            for (String d : e.getValue()) {
+                Set<String> ds = dependents.get(d);
+                if (ds == null) {
+                    ds = new HashSet<>();
+                    dependents.put(d, ds);
+                }
+                ds.add(e.getKey());
+            }
+        }
+    }
+
+    /**
+     * Finds the dependencies of the specified document.
+     *
+     * @param sources the paths of all source files which are not excluded
+     * @param included the set where the paths of the included files are added
+     * @param listed the set where the paths of the documents listed in a {@code toctree} are added
+     * @param globs the set where the glob patterns of the {@code toctree}s are added
+     */
+    private static Set<String> findDependencies(File sourceDir, String document, Set<String> sources,
+                                                Set<String> included, Set<String> listed, Set<String> globs)
+            throws IOException {
+        final Set<String> deps = new TreeSet<>();
+        final Set<String> visited = new HashSet<>();
+        final Deque<String> queue = new ArrayDeque<>();
+        queue.add(document);
+
+        while (!queue.isEmpty()) {
+            final String path = queue.poll();
+            if (!visited.add(path)) {
+                continue;
+            }
+            final File file = new File(sourceDir, path.replace('/', File.separatorChar));
+            if (!file.isFile()) {
+                continue;
+            }
+
+            final List<String> lines = Files.readAllLines(file.toPath(), StandardCharsets.ISO_8859_1);
+            for (Reference ref : parse(lines, path.endsWith(".md"))) {
+                final String target = resolve(path, ref.target);
+                switch (ref.kind) {
+                    case TOCTREE:
+                        for (String suffix : SOURCE_SUFFIXES) {
+                            if (sources.contains(target + suffix)) {
+                                deps.add(target + suffix);
+                                listed.add(target + suffix);
+                            }
+                        }
+                        break;
+                    case TOCTREE_GLOB:
+                        globs.add(target);
+                        final Pattern pattern = compileGlob(target);
+                        for (String source : sources) {
+                            if (!source.equals(document) && pattern.matcher(docName(source)).matches()) {
+                                deps.add(source);
+                                listed.add(source);
+                            }
+                        }
+                        break;
+                    default:
+                        if (!target.equals(document)) {
+                            deps.add(target);
+                        }
+                        if (ref.kind == Reference.Kind.INCLUDE) {
+                            included.add(target);
+                            // Included files may include other files.
+                            queue.add(target);
+                        }
+                }
+            }
+        }
+
+        return deps;
+    }
+
+    private static List<Reference> parse(List<String> lines, boolean markdown) {
+        final List<Reference> refs = new ArrayList<>();
+        int toctreeIndent = -1;
+        boolean toctreeGlob = false;
+        for (String line : lines) {
+            if (toctreeIndent >= 0) {
+                final String trimmed = line.trim();
+                if (trimmed.isEmpty()) {
+                    continue;
+                }
+                if (indentOf(line) > toctreeIndent) {
+                    if (trimmed.startsWith(":")) {
+                        toctreeGlob |= trimmed.startsWith(":glob:");
+                    } else {
+                        final Matcher m = TOCTREE_ENTRY_PATTERN.matcher(trimmed);
+                        if (m.matches()) {
+                            final String target = m.group(1) != null ? m.group(1) : m.group(2);
+                            if (!target.contains("://") && !"self".equals(target)) {
+                                refs.add(new Reference(target.trim(), toctreeGlob && isGlob(target)
+                                                                      ? Reference.Kind.TOCTREE_GLOB
+                                                                      : Reference.Kind.TOCTREE));
+                            }
+                        }
+                    }
+                    continue;
+                }
+                toctreeIndent = -1;
+            }
+
+            final Matcher m = DIRECTIVE_PATTERN.matcher(line);
+            if (m.matches()) {
+                final String directive = m.group(1);
+                if ("toctree".equals(directive)) {
+                    toctreeIndent = indentOf(line);
+                    toctreeGlob = false;
+                } else if (!m.group(2).isEmpty() && !m.group(2).contains("://")) {
+                    refs.add(new Reference(m.group(2), "include".equals(directive) ? Reference.Kind.INCLUDE
+                                                                                  : Reference.Kind.FILE));
+                }
+                continue;
+            }
+
+            if (markdown) {
+                final Matcher mm = MARKDOWN_IMAGE_PATTERN.matcher(line);
+                while (mm.find()) {
+                    if (!mm.group(1).contains("://")) {
+                        refs.add(new Reference(mm.group(1), Reference.Kind.FILE));
+                    }
+                }
+            }
+        }
+        return refs;
+    }
+
+    private static String resolve(String base, String target) {
+        final Deque<String> segments = new ArrayDeque<>();
+        if (!target.startsWith("/")) {
+            final String[] baseSegments = base.split("/");
+            for (int i = 0; i < baseSegments.length - 1; i++) {
+                segments.add(baseSegments[i]);
+            }
+        }
+
+        for (String s : target.split("/")) {
+            if (s.isEmpty() || ".".equals(s)) {
+                continue;
+            }
+            if ("..".equals(s)) {
+                segments.pollLast();
+            } else {
+                segments.add(s);
+            }
+        }
+
+        final StringBuilder buf = new StringBuilder();
+        for (String s : segments) {
+            if (buf.length() != 0) {
+                buf.append('/');
+            }
+            buf.append(s);
+        }
+        return buf.toString();
+    }
+
+    private static int indentOf(String line) {
+        int i = 0;
+        while (i < line.length() && Character.isWhitespace(line.charAt(i))) {
+            i++;
+        }
+        return i;
+    }
+
+    private static boolean isGlob(String s) {
+        return s.indexOf('*') >= 0 || s.indexOf('?') >= 0 || s.indexOf('[') >= 0;
+    }
+
+    private static boolean isSource(String path) {
+        for (String suffix : SOURCE_SUFFIXES) {
+            if (path.endsWith(suffix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the document name of the specified source file, i.e. its path without the suffix.
+     */
+    private static String docName(String path) {
+        final int dot = path.lastIndexOf('.');
+        return dot > path.lastIndexOf('/') ? path.substring(0, dot) : path;
+    }
+
+    /**
+     * Returns whether the specified file or one of its parent directories is matched by any of the specified
+     * patterns, as Sphinx does for {@code exclude_patterns}.
+     */
+    private static boolean isExcluded(String path, List<Pattern> excludePatterns) {
+        for (Pattern p : excludePatterns) {
+            for (int i = path.length(); i > 0; i = path.lastIndexOf('/', i - 1)) {
+                if (p.matcher(path.substring(0, i)).matches()) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Compiles the specified Sphinx glob pattern, where {@code *} and {@code ?} do not match {@code '/'}
+     * and {@code **} matches any path.
+     */
+    private static Pattern compileGlob(String glob) {
+        final StringBuilder buf = new StringBuilder();
+        for (int i = 0; i < glob.length(); i++) {
+            final char c = glob.charAt(i);
+            switch (c) {
+                case '*':
+                    if (i + 1 < glob.length() && glob.charAt(i + 1) == '*') {
+                        buf.append(".*");
+                        i++;
+                    } else {
+                        buf.append("[^/]*");
+                    }
+                    break;
+                case '?':
+                    buf.append("[^/]");
+                    break;
+                case '[':
+                    final int end = glob.indexOf(']', i + 2);
+                    if (end < 0) {
+                        buf.append("\\[");
+                        break;
+                    }
+                    String chars = glob.substring(i + 1, end).replace("\\", "\\\\");
+                    if (chars.startsWith("!")) {
+                        chars = "^/" + chars.substring(1);
+                    } else if (chars.startsWith("^")) {
+                        chars = "\\" + chars;
+                    }
+                    buf.append('[').append(chars).append(']');
+                    i = end;
+                    break;
+                default:
+                    buf.append(Pattern.quote(String.valueOf(c)));
+            }
+        }
+        return Pattern.compile(buf.toString());
+    }
+
+    private static String readConfPy(File configDir) throws IOException {
+        final File confPy = new File(configDir, "conf.py");
+        if (!confPy.isFile()) {
+            return "";
+        }
+        final StringBuilder buf = new StringBuilder();
+        for (String line : Files.readAllLines(confPy.toPath(), StandardCharsets.ISO_8859_1)) {
+            final int commentStart = line.indexOf('#');
+            buf.append(commentStart >= 0 ? line.substring(0, commentStart) : line).append('\n');
+        }
+        return buf.toString();
+    }
+
+    /**
+     * Returns the {@code exclude_patterns} assigned in the specified {@code conf.py}.
+     */
+    private static List<String> excludePatterns(String confPy) {
+        final List<String> patterns = new ArrayList<>();
+        final Matcher m = EXCLUDE_PATTERNS_PATTERN.matcher(confPy);
+        while (m.find()) {
+            if ("=".equals(m.group(1))) {
+                patterns.clear();
+            }
+            final Matcher sm = STRING_PATTERN.matcher(m.group(2));
+            while (sm.find()) {
+                patterns.add(sm.group(1) != null ? sm.group(1) : sm.group(2));
+            }
+        }
+        return patterns;
+    }
+
+    /**
+     * Returns the name of the root document specified in the specified {@code conf.py}.
+     */
+    private static String rootDoc(String confPy) {
+        String rootDoc = "index";
+        final Matcher m = ROOT_DOC_PATTERN.matcher(confPy);
+        while (m.find()) {
+            rootDoc = m.group(2);
+        }
+        return rootDoc;
+    }
+
+    private static Set<String> split(String value) {
+        final Set<String> values = new TreeSet<>();
+        for (String v : value.split("\\|")) {
+            if (!v.isEmpty()) {
+                values.add(v);
+            }
+        }
+        return values;
+    }
+
+    private static String join(Set<String> values) {
+        final StringBuilder buf = new StringBuilder();
+        for (String v : values) {
+            if (buf.length() != 0) {
+                buf.append('|');
+            }
+            buf.append(v);
+        }
+        return buf.toString();
+    }
+
+    private static String relativize(Path root, Path file) {
+        return root.relativize(file).toString().replace(File.separatorChar, '/');
+    }
+
+    private static final class Reference {
+        enum Kind {
+            FILE, INCLUDE, TOCTREE, TOCTREE_GLOB
+        }
+
+        final String target;
+        final Kind kind;
+
+        Reference(String target, Kind kind) {
+            this.target = target;
+            this.kind = kind;
+        }
+    }
+}
@@ -0,0 +1,190 @@
+package kr.motd.maven.sphinx;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.StringWriter;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+
+import org.apache.maven.shared.filtering.MavenReaderFilter;
+import org.apache.maven.shared.utils.io.FileUtils.FilterWrapper;
+
+/**
+ * Copies the Sphinx sources into a staging directory, replacing the {@code ${...}} expressions in the text files
+ * with Maven's resource filtering. A staged file is rewritten only when its content has changed, so that
+ * Sphinx can still determine the outdated documents from their last modification times.
+ *
+ * <p>The SHA-256 checksum, size and last modification time of every source file are recorded in an index file
+ * next to the staging directory, so that unchanged files which are not filtered are not even read.</p>
+ */
+final class SourceStager {
+
+    private final MavenReaderFilter readerFilter;
+    private final List<FilterWrapper> filterWrappers;
+    private final String encoding;
+    private final Set<String> filteredExtensions;
+
+    private int written;
+    private int unchanged;
+    private int deleted;
+
+    SourceStager(MavenReaderFilter readerFilter, List<FilterWrapper> filterWrappers,
+                 String encoding, Iterable<String> filteredExtensions) {
+        this.readerFilter = readerFilter;
+        this.filterWrappers = filterWrappers;
+        this.encoding = encoding;
+        this.filteredExtensions = new HashSet<>();
+        for (String e : filteredExtensions) {
+            this.filteredExtensions.add(e.toLowerCase(Locale.US));
+        }
+    }
+
+    /**
+     * Stages the files in {@code sourceDir} into {@code stagingDir}, removing the staged files whose source file
+     * has been removed. If the index file is missing or corrupt, the staged files are compared with the sources
+     * by their content, and the staged files without a source are removed.
+     */
+    void stage(File sourceDir, final File stagingDir) throws IOException {
+        final File indexFile = new File(stagingDir.getPath() + ".index");
+        final Properties oldIndex = new Properties();
+        boolean hasOldIndex = false;
+        if (indexFile.isFile() && stagingDir.isDirectory()) {
+            try (InputStream in = new FileInputStream(indexFile)) {
+                oldIndex.load(in);
+                hasOldIndex = true;
+            } catch (IllegalArgumentException e) {
+                // Corrupt; the staged files are compared with the sources instead.
+                oldIndex.clear();
+            }
+        }
+
+        final Map<String, String> newIndex = new TreeMap<>();
+        final Path root = sourceDir.toPath();
+        Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                if (attrs.isRegularFile()) {
+                    final String path = root.relativize(file).toString().replace(File.separatorChar, '/');
+                    final File dst = new File(stagingDir, path.replace('/', File.separatorChar));
+                    newIndex.put(path, stageFile(file.toFile(), attrs, dst, oldIndex.getProperty(path)));
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+
+        // Remove the files which do not exist in the source directory anymore. Without the index, any staged file
+        // which is not in the source directory may be a leftover of a removed source.
+        if (hasOldIndex) {
+            for (String path : oldIndex.stringPropertyNames()) {
+                if (!newIndex.containsKey(path) &&
+                    new File(stagingDir, path.replace('/', File.separatorChar)).delete()) {
+                    deleted++;
+                }
+            }
+        } else if (stagingDir.isDirectory()) {
+            final Path stagingRoot = stagingDir.toPath();
+            Files.walkFileTree(stagingRoot, new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                    final String path = stagingRoot.relativize(file).toString().replace(File.separatorChar, '/');
+                    if (!newIndex.containsKey(path)) {
+                        Files.delete(file);
+                        deleted++;
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        }
+
+        final Properties index = new Properties();
+        index.putAll(newIndex);
+        try (OutputStream out = new FileOutputStream(indexFile)) {
+            index.store(out, "Staged Sphinx sources");
+        }
+    }
+
+    int written() {
+        return written;
+    }
+
+    int unchanged() {
+        return unchanged;
+    }
+
+    int deleted() {
+        return deleted;
+    }
+
+    private String stageFile(File src, BasicFileAttributes attrs, File dst, String oldEntry) throws IOException {
+        final String sourceStamp = attrs.size() + "," + attrs.lastModifiedTime().toMillis();
+        final boolean filtered = isFiltered(src.getName());
+        if (!filtered && oldEntry != null && oldEntry.startsWith(sourceStamp + ',') && dst.isFile()) {
+            // Neither the source nor the staged copy needs to be read.
+            unchanged++;
+            return oldEntry;
+        }
+
+        final byte[] content;
+        if (filtered) {
+            final StringWriter buf = new StringWriter();
+            try (Reader in = readerFilter.filter(new InputStreamReader(new FileInputStream(src), encoding),
+                                                 true, filterWrappers)) {
+                final char[] chars = new char[8192];
+                for (;;) {
+                    final int readChars = in.read(chars);
+                    if (readChars < 0) {
+                        break;
+                    }
+                    buf.write(chars, 0, readChars);
+                }
+            }
+            content = buf.toString().getBytes(encoding);
+        } else {
+            content = Files.readAllBytes(src.toPath());
+        }
+
+        final String sha256 = SphinxUtil.sha256(content);
+        final String newEntry = sourceStamp + ',' + sha256;
+        if (dst.isFile() && (oldEntry != null ? oldEntry.endsWith(',' + sha256)
+                                              : Arrays.equals(content, Files.readAllBytes(dst.toPath())))) {
+            unchanged++;
+            return newEntry;
+        }
+
+        final File parent = dst.getParentFile();
+        parent.mkdirs();
+        final Path tmp = Files.createTempFile(parent.toPath(), dst.getName() + '.', ".tmp");
+        try {
+            Files.copy(new ByteArrayInputStream(content), tmp, StandardCopyOption.REPLACE_EXISTING);
+            Files.move(tmp, dst.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+        written++;
+        return newEntry;
+    }
+
+    private boolean isFiltered(String name) {
+        final int lastDotIdx = name.lastIndexOf('.');
+        return lastDotIdx >= 0 && filteredExtensions.contains(name.substring(lastDotIdx + 1).toLowerCase(Locale.US));
+    }
+}
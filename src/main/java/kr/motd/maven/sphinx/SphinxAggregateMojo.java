@@ -0,0 +1,305 @@
+package kr.motd.maven.sphinx;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+import org.apache.maven.project.MavenProject;
+import org.apache.maven.shared.utils.io.FileUtils;
+import org.apache.maven.shared.utils.io.FileUtils.FilterWrapper;
+
+/**
+ * Builds the Sphinx documentation of all modules in the reactor with a single Sphinx process, rather than
+ * running Sphinx once for each module. The source directories of the modules are staged as the sections of
+ * a combined documentation, whose master document lists them in its {@code toctree}. After the build,
+ * the output of each section is copied into the reporting directory of its module.
+ *
+ * <p>The combined documentation is configured by the {@code conf.py} in {@link #configDirectory}, and
+ * the references between the documents of the different modules are not resolved.</p>
+ */
+@Mojo(name = "aggregate", aggregator = true, threadSafe = true)
+public class SphinxAggregateMojo extends AbstractSphinxMojo {
+
+    /**
+     * The directory of the Sphinx sources in each module, relative to the base directory of the module.
+     */
+    @Parameter(property = "sphinx.moduleSrcDir", defaultValue = "src/site/sphinx", required = true, alias = "moduleSourceDirectory")
+    private String moduleSourceDirectory;
+
+    /**
+     * The directory which contains the {@code conf.py} of the combined documentation.
+     */
+    @Parameter(property = "sphinx.cfgDir", defaultValue = "${project.basedir}/src/site/sphinx", required = true)
+    private File configDirectory;
+
+    /**
+     * The directory where the sources, the doctree cache and the output of the combined documentation go.
+     */
+    @Parameter(property = "sphinx.aggregateDir", defaultValue = "${project.build.directory}/sphinx-aggregate", required = true, alias = "aggregateDirectory")
+    private File aggregateDirectory;
+
+    /**
+     * The URL where the output of the combined documentation, i.e. the {@code html} directory in
+     * {@link #aggregateDirectory}, is published, e.g. {@code https://example.com/docs/}. The links from
+     * the output of each module to the other modules, the index and the search page point to this URL.
+     * They point to the combined documentation on the local file system if unspecified, which works only
+     * until the output of the module is published.
+     */
+    @Parameter(property = "sphinx.aggregateUrl", alias = "aggregateUrl")
+    private String aggregateUrl;
+
+    /**
+     * The builder to use. See <a href="http://www.sphinx-doc.org/en/master/builders.html">Available builders</a>
+     * for a list of supported builders. The output of each section is copied into the reporting directory of
+     * its module, so the builder should generate HTML.
+     */
+    @Parameter(property = "sphinx.builder", required = true, alias = "builder", defaultValue = "html")
+    private String builder;
+
+    /**
+     * The <a href="http://www.sphinx-doc.org/en/master/usage/restructuredtext/directives.html#tags">tags</a>
+     * to pass to Sphinx.
+     */
+    @Parameter(property = "sphinx.tags", alias = "tags")
+    private List<String> tags;
+
+    /**
+     * Whether Sphinx should generate verbose output.
+     */
+    @Parameter(property = "sphinx.verbose", defaultValue = "true", required = true, alias = "verbose")
+    private boolean verbose;
+
+    /**
+     * Whether Sphinx should print full traceback on exception.
+     */
+    @Parameter(property = "sphinx.traceback", defaultValue = "true", required = true, alias = "traceback")
+    private boolean traceback;
+
+    /**
+     * Whether Sphinx should treat warnings as errors.
+     */
+    @Parameter(property = "sphinx.warningAsErrors", defaultValue = "false", required = true, alias = "warningAsErrors")
+    private boolean warningsAsErrors;
+
+    /**
+     * Whether Sphinx should generate output for all files instead of only the changed ones.
+     */
+    @Parameter(property = "sphinx.force", defaultValue = "false", required = true, alias = "force")
+    private boolean force;
+
+    /**
+     * Whether Sphinx execution should be skipped.
+     */
+    @Parameter(property = "sphinx.skip", defaultValue = "false", required = true, alias = "skip")
+    private boolean skip;
+
+    @Override
+    public void execute() throws MojoExecutionException {
+        if (skip) {
+            getLog().info("Skipping Sphinx execution.");
+            return;
+        }
+
+        final File configDirectory = canonicalize(this.configDirectory);
+        if (!new File(configDirectory, "conf.py").isFile()) {
+            throw new MojoExecutionException("conf.py does not exist in: " + configDirectory);
+        }
+
+        final Map<String, MavenProject> sections = sections();
+        if (sections.isEmpty()) {
+            getLog().info("Skipping Sphinx execution; no modules have " + moduleSourceDirectory);
+            return;
+        }
+
+        final File aggregateDirectory = canonicalize(this.aggregateDirectory);
+        final File sourceDirectory = new File(aggregateDirectory, "source");
+        final File doctreeCacheDir = new File(aggregateDirectory, "doctrees");
+        final File outputDirectory = new File(aggregateDirectory, "html");
+        final SphinxRunner sphinxRunner = sphinxRunner(usesPlantUml(configDirectory) ? resolvePlantUmlJar() : null);
+
+        try {
+            stageSources(sections, sourceDirectory);
+
+            final SphinxRunnerListener listener = newLoggingListener("", false, 0);
+            getLog().info("Running Sphinx for " + sections.size() + " module(s); output will be placed in " +
+                          outputDirectory);
+            final List<String> args =
+                    getSphinxRunnerCmdLine(configDirectory, sourceDirectory, outputDirectory, doctreeCacheDir);
+            final long startTime = System.nanoTime();
+            final int exitCode = sphinxRunner.run(sourceDirectory, args, ProcessLimits.NONE,
+                                                  new CancellationToken(), listener);
+            if (exitCode != 0) {
+                throw new MojoExecutionException("Sphinx report generation failed");
+            }
+            SphinxUtil.convertLineSeparators(outputDirectory, listener);
+            getLog().info("Built the documentation of " + sections.size() + " module(s) in " +
+                          TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime) + " ms");
+
+            final SphinxOutputSplitter splitter = new SphinxOutputSplitter(outputDirectory, aggregateUrl);
+            int localLinks = 0;
+            for (Map.Entry<String, MavenProject> e : sections.entrySet()) {
+                final File moduleOutputDirectory = reportingDirectory(e.getValue());
+                final SphinxOutputSplitter.Result result = splitter.split(e.getKey(), moduleOutputDirectory);
+                getLog().info("Copied " + result.copiedFiles + " file(s) of " + e.getKey() + " into " +
+                              moduleOutputDirectory + "; " + result.unchangedFiles + " unchanged, " +
+                              result.deletedFiles + " deleted");
+                localLinks += result.localLinks;
+            }
+            if (localLinks > 0) {
+                getLog().warn(localLinks + " link(s) point to the combined documentation in " + outputDirectory +
+                              ", which will be broken once published; set aggregateUrl to the URL where " +
+                              "the combined documentation is published.");
+            }
+
+            evictBinaryCache(listener);
+        } catch (MojoExecutionException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new MojoExecutionException("Failed to run the report", e);
+        }
+    }
+
+    /**
+     * Returns the modules with Sphinx sources, keyed by their section names.
+     */
+    private Map<String, MavenProject> sections() {
+        final List<MavenProject> projects = session.getProjects() != null ? session.getProjects()
+                                                                          : Collections.singletonList(project);
+        final Map<String, MavenProject> sections = new LinkedHashMap<>();
+        final Set<String> artifactIds = new HashSet<>();
+        final Set<String> duplicateArtifactIds = new HashSet<>();
+        for (MavenProject p : projects) {
+            if (!artifactIds.add(p.getArtifactId())) {
+                duplicateArtifactIds.add(p.getArtifactId());
+            }
+        }
+        for (MavenProject p : projects) {
+            if (!new File(moduleSourceDir(p), "index.rst").isFile()) {
+                continue;
+            }
+            // Disambiguate the modules of the same artifact ID with their group IDs.
+            final String section = duplicateArtifactIds.contains(p.getArtifactId()) ?
+                                   p.getGroupId() + '.' + p.getArtifactId() : p.getArtifactId();
+            sections.put(section, p);
+        }
+        return sections;
+    }
+
+    /**
+     * Stages the sources of the modules into the subdirectories of the specified directory and generates
+     * the master document which links to them.
+     */
+    void stageSources(Map<String, MavenProject> sections, File sourceDirectory) throws IOException {
+        final SourceStager stager = new SourceStager(null, Collections.<FilterWrapper>emptyList(),
+                                                     StandardCharsets.UTF_8.name(),
+                                                     Collections.<String>emptyList());
+        for (Map.Entry<String, MavenProject> e : sections.entrySet()) {
+            stager.stage(moduleSourceDir(e.getValue()), new File(sourceDirectory, e.getKey()));
+        }
+        getLog().info("Staged the Sphinx sources: " + stager.written() + " written, " +
+                      stager.unchanged() + " unchanged, " + stager.deleted() + " deleted");
+
+        // Remove the sections of the modules which do not have Sphinx sources anymore.
+        final File[] staged = sourceDirectory.listFiles();
+        if (staged != null) {
+            for (File f : staged) {
+                final String name = f.getName();
+                final String section = name.endsWith(".index") ? name.substring(0, name.length() - 6) : name;
+                if (!"index.rst".equals(name) && !sections.containsKey(section)) {
+                    if (f.isDirectory()) {
+                        FileUtils.deleteDirectory(f);
+                    } else {
+                        Files.delete(f.toPath());
+                    }
+                }
+            }
+        }
+
+        final String title = project.getName() != null ? project.getName() : project.getArtifactId();
+        final StringBuilder buf = new StringBuilder();
+        buf.append(title).append('\n');
+        for (int i = 0; i < title.length(); i++) {
+            buf.append('=');
+        }
+        buf.append("\n\n.. toctree::\n   :maxdepth: 2\n\n");
+        for (String section : sections.keySet()) {
+            buf.append("   ").append(section).append("/index\n");
+        }
+
+        // Rewrite the master document only when changed, so that Sphinx does not rebuild it needlessly.
+        final File index = new File(sourceDirectory, "index.rst");
+        final byte[] content = buf.toString().getBytes(StandardCharsets.UTF_8);
+        if (!index.isFile() || !Arrays.equals(Files.readAllBytes(index.toPath()), content)) {
+            Files.write(index.toPath(), content);
+        }
+    }
+
+    /**
+     * Returns the command line arguments of Sphinx, which are built in the same way as {@link SphinxMojo}
+     * except that the master document is always the generated {@code index.rst}.
+     */
+    List<String> getSphinxRunnerCmdLine(File configDirectory, File sourceDirectory, File outputDirectory,
+                                        File doctreeCacheDir) {
+        final List<String> args = new ArrayList<>();
+
+        args.add("-b");
+        args.add(builder);
+
+        if (verbose) {
+            args.add("-v");
+        } else {
+            args.add("-Q");
+        }
+
+        if (traceback) {
+            args.add("-T");
+        }
+
+        if (warningsAsErrors) {
+            args.add("-W");
+        }
+
+        if (force) {
+            args.add("-a");
+            args.add("-E");
+        }
+
+        args.add("-c");
+        args.add(configDirectory.getPath());
+        args.add("-d");
+        args.add(doctreeCacheDir.getPath());
+        args.add("-D");
+        args.add("master_doc=index");
+
+        if (tags != null && !tags.isEmpty()) {
+            for (String tag : tags) {
+                args.add("-t");
+                args.add(tag);
+            }
+        }
+
+        args.add("-n");
+
+        args.add(sourceDirectory.getPath());
+        args.add(outputDirectory.getPath());
+
+        return args;
+    }
+
+    private File moduleSourceDir(MavenProject p) {
+        return new File(p.getBasedir(), moduleSourceDirectory);
+    }
+}
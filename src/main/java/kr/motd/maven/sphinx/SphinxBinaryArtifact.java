@@ -0,0 +1,116 @@
+package kr.motd.maven.sphinx;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.eclipse.aether.artifact.Artifact;
+import org.eclipse.aether.artifact.ArtifactType;
+import org.eclipse.aether.artifact.ArtifactTypeRegistry;
+import org.eclipse.aether.artifact.DefaultArtifact;
+
+/**
+ * Resolves the Sphinx binary declared as Maven coordinates, i.e.
+ * {@code groupId:artifactId:version[:type[:classifier]]}, through the repository system of the current session,
+ * so that it is fetched through the configured mirrors and shared via the local repository. The type defaults
+ * to {@code exe} and the classifier defaults to the detected platform, e.g. {@code linux-x86_64}, following
+ * the convention of the other native tools such as {@code protoc}.
+ */
+final class SphinxBinaryArtifact {
+
+    private static final String DEFAULT_TYPE = "exe";
+
+    private final String groupId;
+    private final String artifactId;
+    private final String version;
+    private final String type;
+    private final String classifier;
+
+    SphinxBinaryArtifact(String coordinates) throws MojoExecutionException {
+        final String[] components = coordinates.trim().split(":");
+        if (components.length < 3 || components.length > 5) {
+            throw new MojoExecutionException(
+                    "binaryArtifact must be 'groupId:artifactId:version[:type[:classifier]]': " + coordinates);
+        }
+        for (String c : components) {
+            if (c.isEmpty()) {
+                throw new MojoExecutionException("binaryArtifact contains an empty component: " + coordinates);
+            }
+        }
+        groupId = components[0];
+        artifactId = components[1];
+        version = components[2];
+        type = components.length > 3 ? components[3] : DEFAULT_TYPE;
+        classifier = components.length > 4 ? components[4] : SphinxRunner.detectedClassifier();
+    }
+
+    /**
+     * Returns a new {@link Artifact} of the binary. The extension of the artifact is determined by its type
+     * in the specified {@link ArtifactTypeRegistry}, or is the type itself if the type is not registered.
+     */
+    Artifact newArtifact(ArtifactTypeRegistry typeRegistry) {
+        final ArtifactType artifactType = typeRegistry.get(type);
+        final String extension = artifactType != null ? artifactType.getExtension() : type;
+        return new DefaultArtifact(groupId, artifactId, classifier, extension, version, artifactType);
+    }
+
+    /**
+     * Copies the resolved binary into the specified cache directory as an executable file, because
+     * the files in the local repository are not executable.
+     *
+     * @return the executable Sphinx binary
+     */
+    File install(File artifactFile, File binaryCacheDir) throws MojoExecutionException {
+        try {
+            return install(artifactFile.toPath(), binaryCacheDir).toFile();
+        } catch (IOException e) {
+            throw new MojoExecutionException("failed to copy the Sphinx binary into: " + binaryCacheDir, e);
+        }
+    }
+
+    /**
+     * Copies the resolved artifact into the cache directory unless an identical copy exists already.
+     */
+    private Path install(Path artifactFile, File binaryCacheDir) throws IOException {
+        final File dir = new File(binaryCacheDir, toString().replaceAll("[/\\\\<>:\"|?*]", "_"));
+        dir.mkdirs();
+        final String extension = "exe".equals(type) && classifier.startsWith("windows") ? ".exe" : "";
+        final Path binary = new File(dir, "sphinx." + classifier + extension).toPath();
+
+        final long size = Files.size(artifactFile);
+        final FileTime lastModifiedTime = Files.getLastModifiedTime(artifactFile);
+        if (Files.isRegularFile(binary) && Files.size(binary) == size &&
+            Files.getLastModifiedTime(binary).equals(lastModifiedTime) && Files.isExecutable(binary)) {
+            return binary;
+        }
+
+        // Keep the entry from being evicted while copying.
+        final BinaryCache.Lease lease = BinaryCache.acquire(dir);
+        try {
+            final Path tmp = Files.createTempFile(dir.toPath(), binary.getFileName() + ".", ".tmp");
+            try {
+                Files.copy(artifactFile, tmp,
+                           StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.COPY_ATTRIBUTES);
+                if (!tmp.toFile().setExecutable(true)) {
+                    throw new IOException("failed to make the Sphinx binary executable: " + tmp);
+                }
+                Files.setLastModifiedTime(tmp, lastModifiedTime);
+                Files.move(tmp, binary, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } finally {
+                Files.deleteIfExists(tmp);
+            }
+        } finally {
+            lease.close();
+        }
+        return binary;
+    }
+
+    @Override
+    public String toString() {
+        return groupId + ':' + artifactId + ':' + version + ':' + type + ':' + classifier;
+    }
+}
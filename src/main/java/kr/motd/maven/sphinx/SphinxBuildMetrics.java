@@ -0,0 +1,376 @@
+package kr.motd.maven.sphinx;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Map.Entry;
+
+/**
+ * Collects the cost of a Sphinx build, such as whether the binary was cached, how long the download and
+ * the Sphinx process took and how many files were rewritten by the post-processing steps, and writes it
+ * as a JSON document or as a Prometheus text file which can be picked up by the textfile collector of
+ * node_exporter.
+ */
+final class SphinxBuildMetrics extends SphinxRunnerListenerAdapter {
+
+    private static final Object prometheusLock = new Object();
+
+    private Boolean binaryCacheHit;
+    private long downloadBytes;
+    private long downloadNanos;
+    private long verificationNanos;
+    private int exitCode = -1;
+    private long sphinxNanos = -1;
+    private ProcessResourceUsage usage = ProcessResourceUsage.UNKNOWN;
+    private final Map<String, PostProcessingMetrics> postProcessing = new LinkedHashMap<>();
+    private long outputFiles = -1;
+    private long outputBytes = -1;
+
+    @Override
+    public synchronized void onBinaryResolved(Path binary, boolean cached) {
+        binaryCacheHit = cached;
+    }
+
+    @Override
+    public synchronized void onDownloadFinished(URI uri, long transferredBytes, long elapsedNanos) {
+        downloadBytes += transferredBytes;
+        downloadNanos += elapsedNanos;
+    }
+
+    @Override
+    public synchronized void onBinaryVerified(Path binary, String sha256, long elapsedNanos) {
+        verificationNanos += elapsedNanos;
+    }
+
+    @Override
+    public synchronized void onProcessExited(int exitCode, long elapsedNanos, ProcessResourceUsage usage) {
+        this.exitCode = exitCode;
+        sphinxNanos = elapsedNanos;
+        this.usage = usage;
+    }
+
+    @Override
+    public synchronized void onPostProcessingFinished(String name, File dir, int scannedFiles, int modifiedFiles,
+                                                      long modifiedBytes, long elapsedNanos) {
+        PostProcessingMetrics m = postProcessing.get(name);
+        if (m == null) {
+            m = new PostProcessingMetrics();
+            postProcessing.put(name, m);
+        }
+        m.nanos += elapsedNanos;
+        m.scannedFiles += scannedFiles;
+        m.modifiedFiles += modifiedFiles;
+        m.modifiedBytes += modifiedBytes;
+    }
+
+    /**
+     * Records the number of files and their total size in the specified output directory.
+     */
+    synchronized void measureOutput(File outputDirectory) {
+        final long[] stats = new long[2];
+        measure(outputDirectory, stats);
+        outputFiles = stats[0];
+        outputBytes = stats[1];
+    }
+
+    private static void measure(File dir, long[] stats) {
+        final File[] children = dir.listFiles();
+        if (children == null) {
+            return;
+        }
+        for (File f : children) {
+            if (f.isDirectory()) {
+                measure(f, stats);
+            } else {
+                stats[0]++;
+                stats[1] += f.length();
+            }
+        }
+    }
+
+    /**
+     * Writes the metrics as a JSON document.
+     */
+    synchronized void writeJson(File file) throws IOException {
+        final StringBuilder buf = new StringBuilder(1024);
+        buf.append("{\n  \"binaryCacheHit\": ").append(binaryCacheHit);
+        buf.append(",\n  \"download\": { \"bytes\": ").append(downloadBytes)
+           .append(", \"millis\": ").append(toMillis(downloadNanos)).append(" }");
+        buf.append(",\n  \"verificationMillis\": ").append(toMillis(verificationNanos));
+        buf.append(",\n  \"sphinx\": { \"exitCode\": ").append(exitCode)
+           .append(", \"millis\": ").append(toMillis(sphinxNanos))
+           .append(", \"peakRssBytes\": ").append(usage.peakRssBytes())
+           .append(", \"cpuMillis\": ").append(toMillis(usage.cpuTimeNanos())).append(" }");
+        buf.append(",\n  \"postProcessing\": [");
+        boolean first = true;
+        for (Entry<String, PostProcessingMetrics> e : postProcessing.entrySet()) {
+            final PostProcessingMetrics m = e.getValue();
+            buf.append(first ? "\n" : ",\n").append("    { \"name\": ");
+            Json.quote(buf, e.getKey())
+               .append(", \"millis\": ").append(toMillis(m.nanos))
+               .append(", \"scannedFiles\": ").append(m.scannedFiles)
+               .append(", \"modifiedFiles\": ").append(m.modifiedFiles)
+               .append(", \"modifiedBytes\": ").append(m.modifiedBytes).append(" }");
+            first = false;
+        }
+        buf.append("\n  ],\n  \"output\": { \"files\": ").append(outputFiles)
+           .append(", \"bytes\": ").append(outputBytes).append(" }\n}\n");
+
+        write(file, buf.toString());
+    }
+
+    /**
+     * Writes the metrics in the Prometheus text exposition format. The samples in the file whose labels start
+     * with the specified labels are replaced, and the samples with other labels are kept, so that the modules
+     * of a multi-module build can share a single file as long as each module has distinct labels.
+     *
+     * @param labels the labels attached to every sample, such as the coordinates of the project
+     */
+    synchronized void writePrometheus(File file, Map<String, String> labels) throws IOException {
+        final String commonLabels = formatLabels(labels, null, null);
+        final Map<String, MetricFamily> families = new LinkedHashMap<>();
+        if (binaryCacheHit != null) {
+            gauge(families, "sphinx_binary_cache_hit",
+                  "Whether the Sphinx binary was found in the cache (1) or downloaded (0).",
+                  commonLabels, binaryCacheHit ? 1 : 0);
+        }
+        gauge(families, "sphinx_download_bytes", "The number of bytes downloaded to get the Sphinx binary.",
+              commonLabels, downloadBytes);
+        gauge(families, "sphinx_download_seconds", "The time taken to download the Sphinx binary.",
+              commonLabels, toSeconds(downloadNanos));
+        gauge(families, "sphinx_verification_seconds",
+              "The time taken to verify the checksum of the Sphinx binary.",
+              commonLabels, toSeconds(verificationNanos));
+        if (sphinxNanos >= 0) {
+            gauge(families, "sphinx_exit_code", "The exit code of the Sphinx process.", commonLabels, exitCode);
+            gauge(families, "sphinx_run_seconds", "The wall-clock time of the Sphinx process.",
+                  commonLabels, toSeconds(sphinxNanos));
+        }
+        if (usage.peakRssBytes() >= 0) {
+            gauge(families, "sphinx_peak_rss_bytes", "The peak resident set size of the Sphinx process tree.",
+                  commonLabels, usage.peakRssBytes());
+        }
+        if (usage.cpuTimeNanos() >= 0) {
+            gauge(families, "sphinx_cpu_seconds", "The CPU time consumed by the Sphinx process tree.",
+                  commonLabels, toSeconds(usage.cpuTimeNanos()));
+        }
+
+        for (Entry<String, PostProcessingMetrics> e : postProcessing.entrySet()) {
+            final String stepLabels = formatLabels(labels, "step", e.getKey());
+            final PostProcessingMetrics m = e.getValue();
+            gauge(families, "sphinx_post_processing_seconds", "The time taken by each post-processing step.",
+                  stepLabels, toSeconds(m.nanos));
+            gauge(families, "sphinx_post_processing_scanned_files",
+                  "The number of files scanned by each post-processing step.", stepLabels, m.scannedFiles);
+            gauge(families, "sphinx_post_processing_modified_files",
+                  "The number of files rewritten by each post-processing step.", stepLabels, m.modifiedFiles);
+            gauge(families, "sphinx_post_processing_modified_bytes",
+                  "The number of bytes rewritten by each post-processing step.", stepLabels, m.modifiedBytes);
+        }
+
+        if (outputFiles >= 0) {
+            gauge(families, "sphinx_output_files", "The number of files in the output directory.",
+                  commonLabels, outputFiles);
+            gauge(families, "sphinx_output_bytes", "The total size of the files in the output directory.",
+                  commonLabels, outputBytes);
+        }
+        gauge(families, "sphinx_last_run_timestamp_seconds", "The time when the metrics were written.",
+              commonLabels, System.currentTimeMillis() / 1000.0);
+
+        // Lock the file against the other modules built concurrently, in this JVM or another.
+        final Path lockFile = new File(file.getAbsolutePath() + ".lock").toPath();
+        synchronized (prometheusLock) {
+            Files.createDirectories(lockFile.getParent());
+            try (FileChannel ch = FileChannel.open(lockFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+                final FileLock lock = ch.lock();
+                try {
+                    writeMerged(file, commonLabels, families);
+                } finally {
+                    lock.release();
+                }
+            }
+        }
+    }
+
+    /**
+     * Merges the specified metric families into the samples of the specified Prometheus text file, replacing
+     * the samples whose labels start with the specified labels.
+     */
+    private static void writeMerged(File file, String commonLabels,
+                                    Map<String, MetricFamily> families) throws IOException {
+        final Map<String, MetricFamily> merged = readPrometheus(file, commonLabels);
+        for (Entry<String, MetricFamily> e : families.entrySet()) {
+            final MetricFamily family = merged.get(e.getKey());
+            if (family != null) {
+                family.samples.addAll(e.getValue().samples);
+            } else {
+                merged.put(e.getKey(), e.getValue());
+            }
+        }
+
+        final StringBuilder buf = new StringBuilder(2048);
+        for (Entry<String, MetricFamily> e : merged.entrySet()) {
+            final MetricFamily family = e.getValue();
+            if (family.samples.isEmpty()) {
+                continue;
+            }
+            buf.append("# HELP ").append(e.getKey()).append(' ').append(family.help).append('\n');
+            buf.append("# TYPE ").append(e.getKey()).append(" gauge\n");
+            for (String sample : family.samples) {
+                buf.append(sample).append('\n');
+            }
+        }
+        write(file, buf.toString());
+    }
+
+    /**
+     * Reads the metric families in the specified Prometheus text file, except the samples whose labels
+     * start with the specified labels.
+     */
+    private static Map<String, MetricFamily> readPrometheus(File file, String excludedLabels) throws IOException {
+        final Map<String, MetricFamily> families = new LinkedHashMap<>();
+        if (!file.isFile()) {
+            return families;
+        }
+
+        // e.g. '{group_id="foo",artifact_id="bar"}' matches '{group_id="foo",artifact_id="bar",step="baz"}'.
+        final String excludedPrefix =
+                excludedLabels.isEmpty() ? "" : excludedLabels.substring(0, excludedLabels.length() - 1);
+        for (String line : Files.readAllLines(file.toPath(), StandardCharsets.UTF_8)) {
+            if (line.startsWith("# HELP ")) {
+                final int nameEnd = line.indexOf(' ', 7);
+                if (nameEnd > 0) {
+                    family(families, line.substring(7, nameEnd)).help = line.substring(nameEnd + 1);
+                }
+                continue;
+            }
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+
+            int nameEnd = line.indexOf('{');
+            if (nameEnd < 0) {
+                nameEnd = line.indexOf(' ');
+            }
+            if (nameEnd <= 0) {
+                continue;
+            }
+            final String labels = line.substring(nameEnd);
+            if (excludedPrefix.isEmpty() ||
+                labels.startsWith(excludedPrefix + '}') || labels.startsWith(excludedPrefix + ',')) {
+                continue;
+            }
+            family(families, line.substring(0, nameEnd)).samples.add(line);
+        }
+        return families;
+    }
+
+    private static MetricFamily family(Map<String, MetricFamily> families, String name) {
+        MetricFamily family = families.get(name);
+        if (family == null) {
+            family = new MetricFamily();
+            families.put(name, family);
+        }
+        return family;
+    }
+
+    private static void gauge(Map<String, MetricFamily> families, String name, String help,
+                              String labels, double value) {
+        final MetricFamily family = family(families, name);
+        family.help = help;
+
+        final StringBuilder buf = new StringBuilder(name.length() + labels.length() + 16);
+        buf.append(name).append(labels).append(' ');
+        if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+            buf.append((long) value);
+        } else {
+            buf.append(String.format(Locale.US, "%.6f", value));
+        }
+        family.samples.add(buf.toString());
+    }
+
+    private static String formatLabels(Map<String, String> labels, String extraName, String extraValue) {
+        final Map<String, String> all = new LinkedHashMap<>(labels);
+        if (extraName != null) {
+            all.put(extraName, extraValue);
+        }
+        if (all.isEmpty()) {
+            return "";
+        }
+
+        final StringBuilder buf = new StringBuilder();
+        buf.append('{');
+        for (Entry<String, String> e : all.entrySet()) {
+            if (buf.length() > 1) {
+                buf.append(',');
+            }
+            buf.append(e.getKey()).append("=\"");
+            final String value = e.getValue();
+            for (int i = 0; i < value.length(); i++) {
+                final char ch = value.charAt(i);
+                switch (ch) {
+                    case '\\':
+                        buf.append("\\\\");
+                        break;
+                    case '"':
+                        buf.append("\\\"");
+                        break;
+                    case '\n':
+                        buf.append("\\n");
+                        break;
+                    default:
+                        buf.append(ch);
+                }
+            }
+            buf.append('"');
+        }
+        return buf.append('}').toString();
+    }
+
+    /**
+     * Writes the specified content atomically, so that a collector never reads a partially written file.
+     */
+    private static void write(File file, String content) throws IOException {
+        final File parent = file.getAbsoluteFile().getParentFile();
+        parent.mkdirs();
+        final Path tmp = Files.createTempFile(parent.toPath(), file.getName() + '.', ".tmp");
+        try {
+            Files.write(tmp, content.getBytes(StandardCharsets.UTF_8));
+            Files.move(tmp, file.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    private static long toMillis(long nanos) {
+        return nanos >= 0 ? nanos / 1000000 : -1;
+    }
+
+    private static double toSeconds(long nanos) {
+        return nanos / 1e9;
+    }
+
+    private static final class MetricFamily {
+        String help = "";
+        final List<String> samples = new ArrayList<>();
+    }
+
+    private static final class PostProcessingMetrics {
+        long nanos;
+        long scannedFiles;
+        long modifiedFiles;
+        long modifiedBytes;
+    }
+}
@@ -0,0 +1,204 @@
+package kr.motd.maven.sphinx;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Determines how long each phase of a Sphinx build took by recognizing the phase markers in the standard
+ * output of Sphinx, such as {@code "reading sources... "} and {@code "writing output... "}, and records
+ * the slowest documents in the reading and writing phases.
+ */
+final class SphinxBuildTimings extends SphinxRunnerListenerAdapter {
+
+    private static final String STARTUP_PHASE = "startup";
+
+    /**
+     * The prefixes of the lines that start a new phase, in the order of appearance.
+     */
+    private static final String[] PHASE_MARKERS = {
+            "loading translations",
+            "loading pickled environment",
+            "building [",
+            "updating environment",
+            "reading sources",
+            "looking for now-outdated files",
+            "pickling environment",
+            "checking consistency",
+            "preparing documents",
+            "writing output",
+            "generating indices",
+            "writing additional pages",
+            "copying images",
+            "copying downloadable files",
+            "copying static files",
+            "copying extra files",
+            "dumping search index",
+            "dumping object inventory",
+            "build succeeded",
+            "build finished",
+    };
+
+    private static final Pattern ANSI_ESCAPE_PATTERN = Pattern.compile("\u001B\\[[0-9;]*[A-Za-z]");
+    private static final Pattern DOCUMENT_PROGRESS_PATTERN = Pattern.compile("^[^\\[]*\\[\\s*\\d+%]\\s+(.+)$");
+
+    private final int maxSlowestDocuments;
+    private final Map<String, Long> phaseNanos = new LinkedHashMap<>();
+    private final List<DocumentTiming> documents = new ArrayList<>();
+
+    private long processStartTime;
+    private long processElapsedNanos = -1;
+    private String currentPhase;
+    private long currentPhaseStartTime;
+    private String currentDocument;
+    private long currentDocumentStartTime;
+
+    SphinxBuildTimings(int maxSlowestDocuments) {
+        this.maxSlowestDocuments = maxSlowestDocuments;
+    }
+
+    @Override
+    public synchronized void onProcessStarted(List<String> command, File workingDir) {
+        processStartTime = System.nanoTime();
+        processElapsedNanos = -1;
+        phaseNanos.clear();
+        documents.clear();
+        currentPhase = STARTUP_PHASE;
+        currentPhaseStartTime = processStartTime;
+        currentDocument = null;
+    }
+
+    @Override
+    public synchronized void onProcessOutput(String line, boolean error) {
+        if (error || currentPhase == null) {
+            return;
+        }
+
+        final long now = System.nanoTime();
+        final String text = ANSI_ESCAPE_PATTERN.matcher(line).replaceAll("").trim();
+        final String phase = findPhase(text);
+        if (phase != null && !phase.equals(currentPhase)) {
+            endDocument(now);
+            endPhase(now);
+            currentPhase = phase;
+            currentPhaseStartTime = now;
+        }
+
+        if (phase != null) {
+            final Matcher m = DOCUMENT_PROGRESS_PATTERN.matcher(text);
+            if (m.matches()) {
+                endDocument(now);
+                currentDocument = m.group(1);
+                currentDocumentStartTime = now;
+            }
+        }
+    }
+
+    @Override
+    public synchronized void onProcessExited(int exitCode, long elapsedNanos, ProcessResourceUsage usage) {
+        if (currentPhase == null) {
+            return;
+        }
+        final long now = System.nanoTime();
+        endDocument(now);
+        endPhase(now);
+        currentPhase = null;
+        processElapsedNanos = elapsedNanos;
+    }
+
+    /**
+     * Returns the elapsed time of each phase in nanoseconds, in the order of appearance.
+     */
+    synchronized Map<String, Long> phaseNanos() {
+        return new LinkedHashMap<>(phaseNanos);
+    }
+
+    /**
+     * Writes the timings as a JSON document.
+     */
+    synchronized void writeReport(File file) throws IOException {
+        final List<DocumentTiming> slowest = new ArrayList<>(documents);
+        Collections.sort(slowest, new Comparator<DocumentTiming>() {
+            @Override
+            public int compare(DocumentTiming o1, DocumentTiming o2) {
+                return Long.compare(o2.nanos, o1.nanos);
+            }
+        });
+
+        final StringBuilder buf = new StringBuilder(1024);
+        buf.append("{\n  \"totalMillis\": ").append(toMillis(processElapsedNanos));
+        buf.append(",\n  \"phases\": [");
+        boolean first = true;
+        for (Entry<String, Long> e : phaseNanos.entrySet()) {
+            buf.append(first ? "\n" : ",\n").append("    { \"name\": ");
+            Json.quote(buf, e.getKey()).append(", \"millis\": ").append(toMillis(e.getValue())).append(" }");
+            first = false;
+        }
+        buf.append("\n  ],\n  \"slowestDocuments\": [");
+        first = true;
+        for (DocumentTiming d : slowest.subList(0, Math.min(maxSlowestDocuments, slowest.size()))) {
+            buf.append(first ? "\n" : ",\n").append("    { \"phase\": ");
+            Json.quote(buf, d.phase).append(", \"document\": ");
+            Json.quote(buf, d.document).append(", \"millis\": ").append(toMillis(d.nanos)).append(" }");
+            first = false;
+        }
+        buf.append("\n  ]\n}\n");
+
+        final File parent = file.getParentFile();
+        if (parent != null) {
+            parent.mkdirs();
+        }
+        Files.write(file.toPath(), buf.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private void endPhase(long now) {
+        final Long oldNanos = phaseNanos.get(currentPhase);
+        final long nanos = now - currentPhaseStartTime;
+        phaseNanos.put(currentPhase, oldNanos != null ? oldNanos + nanos : nanos);
+    }
+
+    private void endDocument(long now) {
+        if (currentDocument != null) {
+            documents.add(new DocumentTiming(currentPhase, currentDocument, now - currentDocumentStartTime));
+            currentDocument = null;
+        }
+    }
+
+    private static String findPhase(String text) {
+        final String lowerCased = text.toLowerCase(Locale.US);
+        for (String marker : PHASE_MARKERS) {
+            if (lowerCased.startsWith(marker)) {
+                return marker.endsWith(" [") ? marker.substring(0, marker.length() - 2) : marker;
+            }
+        }
+        return null;
+    }
+
+    private static long toMillis(long nanos) {
+        return nanos >= 0 ? TimeUnit.NANOSECONDS.toMillis(nanos) : -1;
+    }
+
+    private static final class DocumentTiming {
+        final String phase;
+        final String document;
+        final long nanos;
+
+        DocumentTiming(String phase, String document, long nanos) {
+            this.phase = phase;
+            this.document = document;
+            this.nanos = nanos;
+        }
+    }
+}
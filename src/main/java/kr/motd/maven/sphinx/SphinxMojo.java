@@ -5,29 +5,36 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
-import org.apache.maven.execution.MavenSession;
-import org.apache.maven.plugin.AbstractMojo;
+import org.apache.maven.execution.MavenExecutionRequest;
+import org.apache.maven.execution.MavenExecutionResult;
 import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugins.annotations.Component;
 import org.apache.maven.plugins.annotations.LifecyclePhase;
 import org.apache.maven.plugins.annotations.Mojo;
 import org.apache.maven.plugins.annotations.Parameter;
+import org.apache.maven.project.MavenProject;
 import org.apache.maven.reporting.MavenReport;
 import org.apache.maven.reporting.MavenReportException;
-import org.apache.maven.settings.Proxy;
+import org.apache.maven.shared.filtering.MavenFilteringException;
+import org.apache.maven.shared.filtering.MavenReaderFilter;
+import org.apache.maven.shared.filtering.MavenReaderFilterRequest;
 import org.codehaus.doxia.sink.Sink;
 
 /**
  * Sphinx Mojo
  */
 @Mojo(name = "generate", defaultPhase = LifecyclePhase.SITE, requiresReports = true)
-public class SphinxMojo extends AbstractMojo implements MavenReport {
+public class SphinxMojo extends AbstractSphinxMojo implements MavenReport {
 
-    @Parameter( defaultValue = "${session}", readonly = true )
-    private MavenSession session;
+    @Component
+    private MavenReaderFilter readerFilter;
 
     /**
      * Boolean to keep default site and make Sphinx doc a project report
@@ -91,31 +98,6 @@ public class SphinxMojo extends AbstractMojo implements MavenReport {
     @Parameter(defaultValue = "${project.reporting.outputDirectory}", required = true)
     private File outputDirectory;
 
-    /**
-     * The base URL of the Sphinx binary, which will be used when downloading the Sphinx binary; must start
-     * with {@code http://}, {@code https://} or {@code file://}.
-     */
-    @Parameter(property = "sphinx.binUrl")
-    private String binaryUrl = SphinxRunner.DEFAULT_BINARY_URL;
-
-    /**
-     * The directory for Sphinx binary cache.
-     */
-    @Parameter(property = "sphinx.binCacheDir", defaultValue = "${settings.localRepository}/kr/motd/maven/sphinx-binary", required = true)
-    private File binaryCacheDir;
-
-    /**
-     * The environment variables to set when launching Sphinx.
-     */
-    @Parameter(property = "sphinx.env")
-    private Map<String, String> environments = Collections.emptyMap();
-
-    /**
-     * The path to Graphviz {@code dot} binary.
-     */
-    @Parameter(property = "sphinx.dotBin")
-    private String dotBinary;
-
     /**
      * The builder to use. See <a href="http://www.sphinx-doc.org/en/master/builders.html">Available builders</a>
      * for a list of supported builders.
@@ -178,6 +160,230 @@ public class SphinxMojo extends AbstractMojo implements MavenReport {
     @Parameter(property = "sphinx.useMakeMode", defaultValue = "false", required = true, alias = "useMakeMode")
     private boolean useMakeMode;
 
+    /**
+     * Whether only the documents affected by the changes since the last build should be passed to Sphinx.
+     * The affected documents are determined from the dependency graph of the sources, which tracks
+     * {@code include}, {@code literalinclude}, {@code toctree} and image references.
+     */
+    @Parameter(property = "sphinx.changedOnly", defaultValue = "false", required = true, alias = "changedOnly")
+    private boolean changedOnly;
+
+    /**
+     * How to determine the changed files when {@code changedOnly} is {@code true}; {@code mtime} to compare
+     * the last modification times with the previous build, or {@code git} to compare the working tree with
+     * {@code changeDetectionGitRevision}.
+     */
+    @Parameter(property = "sphinx.changeDetection", defaultValue = "mtime", required = true, alias = "changeDetection")
+    private String changeDetection;
+
+    /**
+     * The Git revision to compare the working tree with when {@code changeDetection} is {@code git}.
+     */
+    @Parameter(property = "sphinx.changeDetectionGitRevision", defaultValue = "HEAD", required = true, alias = "changeDetectionGitRevision")
+    private String changeDetectionGitRevision;
+
+    /**
+     * The file where the dependency graph of the sources is stored between builds.
+     */
+    @Parameter(property = "sphinx.dependencyGraphFile", defaultValue = "${project.build.directory}/sphinx-dependencies.properties", required = true, alias = "dependencyGraphFile")
+    private File dependencyGraphFile;
+
+    /**
+     * Whether the {@code ${...}} expressions in the sources should be replaced with Maven's resource filtering.
+     * The filtered sources are staged into {@code stagingDirectory}, where only the files whose content
+     * has changed are rewritten.
+     */
+    @Parameter(property = "sphinx.filtering", defaultValue = "false", required = true, alias = "filtering")
+    private boolean filtering;
+
+    /**
+     * The extensions of the files to filter when {@code filtering} is {@code true}.
+     * The other files are copied as they are.
+     */
+    @Parameter(property = "sphinx.filteredExtensions", alias = "filteredExtensions")
+    private List<String> filteredExtensions = Arrays.asList("rst", "md", "txt");
+
+    /**
+     * The directory where the filtered sources are staged when {@code filtering} is {@code true}.
+     */
+    @Parameter(property = "sphinx.stagingDirectory", defaultValue = "${project.build.directory}/sphinx-source", required = true, alias = "stagingDirectory")
+    private File stagingDirectory;
+
+    /**
+     * The encoding of the sources to filter.
+     */
+    @Parameter(property = "sphinx.encoding", defaultValue = "${project.build.sourceEncoding}", alias = "encoding")
+    private String encoding;
+
+    /**
+     * The file where the elapsed time of each Sphinx build phase and the slowest documents are written to,
+     * in JSON format, e.g. {@code ${project.build.directory}/sphinx-timings.json}. The timings are not
+     * written if unspecified.
+     */
+    @Parameter(property = "sphinx.timingReportFile", alias = "timingReportFile")
+    private File timingReportFile;
+
+    /**
+     * The file where the metrics of the build, such as whether the Sphinx binary was cached, the time taken by
+     * the download, Sphinx and post-processing and the size of the output, are written to, in JSON format.
+     */
+    @Parameter(property = "sphinx.metricsFile", defaultValue = "${project.build.directory}/sphinx-metrics.json", required = true, alias = "metricsFile")
+    private File metricsFile;
+
+    /**
+     * The file where the metrics of the build are written to, in the Prometheus text format. Point this to
+     * a {@code .prom} file in the directory of the node_exporter textfile collector to collect the metrics.
+     * The samples are labelled with the group and artifact IDs of the module, so the modules of a multi-module
+     * build can share the same file; each module replaces only its own samples. The metrics are not written
+     * in the Prometheus text format if unspecified.
+     */
+    @Parameter(property = "sphinx.prometheusMetricsFile", alias = "prometheusMetricsFile")
+    private File prometheusMetricsFile;
+
+    /**
+     * Whether the output of Sphinx should be logged only when Sphinx fails.
+     */
+    @Parameter(property = "sphinx.quiet", defaultValue = "false", required = true, alias = "quiet")
+    private boolean quiet;
+
+    /**
+     * The number of the last lines of the Sphinx output to log when Sphinx fails in quiet mode.
+     */
+    @Parameter(property = "sphinx.quietTailLines", defaultValue = "200", required = true, alias = "quietTailLines")
+    private int quietTailLines;
+
+    /**
+     * The maximum number of seconds Sphinx may run for, or {@code 0} for no limit.
+     */
+    @Parameter(property = "sphinx.timeout", defaultValue = "0", required = true, alias = "timeout")
+    private long timeout;
+
+    /**
+     * The maximum resident set size of Sphinx and its child processes in MiB, or {@code 0} for no limit.
+     * Enforced only on Linux.
+     */
+    @Parameter(property = "sphinx.maxMemory", defaultValue = "0", required = true, alias = "maxMemory")
+    private long maxMemory;
+
+    /**
+     * The number of seconds to wait for Sphinx to terminate after exceeding a limit, before killing it.
+     */
+    @Parameter(property = "sphinx.terminationGracePeriod", defaultValue = "10", required = true, alias = "terminationGracePeriod")
+    private long terminationGracePeriod;
+
+    /**
+     * Whether to minify the generated HTML, CSS and JavaScript files, removing the comments and
+     * the insignificant whitespace. Only the files changed since the last build are minified.
+     */
+    @Parameter(property = "sphinx.minify", defaultValue = "false", required = true, alias = "minify")
+    private boolean minify;
+
+    /**
+     * Whether to write the gzip-compressed {@code .gz} siblings of the generated text files, which web servers
+     * can serve as they are, e.g. with {@code gzip_static} of nginx. Only the files changed since the last build
+     * are compressed.
+     */
+    @Parameter(property = "sphinx.precompress", defaultValue = "false", required = true, alias = "precompress")
+    private boolean precompress;
+
+    /**
+     * The number of the threads which minify and compress the generated files, or {@code 0} to use as many
+     * threads as the available processors.
+     */
+    @Parameter(property = "sphinx.optimizerThreads", defaultValue = "0", required = true, alias = "optimizerThreads")
+    private int optimizerThreads;
+
+    /**
+     * Whether to recompress the generated PNG images losslessly, e.g. the diagrams rendered by PlantUML.
+     * The metadata of the images, such as text and timestamps, are removed, but the color space information
+     * such as the gamma and the ICC profile is kept.
+     */
+    @Parameter(property = "sphinx.optimizeImages", defaultValue = "false", required = true, alias = "optimizeImages")
+    private boolean optimizeImages;
+
+    /**
+     * The formats of the alternatives of the generated PNG images to write next to them when
+     * {@link #optimizeImages} is enabled, e.g. {@code webp} for {@code image.png.webp}. A format requires
+     * an {@code ImageIO} writer for it in the dependencies of the plugin.
+     */
+    @Parameter(property = "sphinx.imageAlternatives", alias = "imageAlternatives")
+    private List<String> imageAlternatives = Collections.emptyList();
+
+    /**
+     * The directory where the optimized images are cached by their checksums, so that the same image is not
+     * optimized again.
+     */
+    @Parameter(property = "sphinx.imageCacheDir", defaultValue = "${project.build.directory}/sphinx-image-cache", required = true, alias = "imageCacheDir")
+    private File imageCacheDir;
+
+    /**
+     * Whether to split the search index into the shards of the terms with the same prefix, which the search
+     * page loads only when a query needs them. Recommended for a very large documentation whose search index
+     * is too large to load at once. A word in a query matches only the terms with the same prefix.
+     */
+    @Parameter(property = "sphinx.shardSearchIndex", defaultValue = "false", required = true, alias = "shardSearchIndex")
+    private boolean shardSearchIndex;
+
+    /**
+     * The number of the leading characters of a term which determine its search index shard when
+     * {@link #shardSearchIndex} is enabled. A larger value makes more and smaller shards.
+     */
+    @Parameter(property = "sphinx.searchIndexPrefixLength", defaultValue = "2", required = true, alias = "searchIndexPrefixLength")
+    private int searchIndexPrefixLength;
+
+    /**
+     * Whether to copy the style sheets and scripts in {@code _static} to the names with the checksum of their
+     * content and make the generated HTML files refer to the copies, so that they can be cached by browsers and
+     * CDNs with {@code Cache-Control: immutable}. The mapping from the original files to the copies is written
+     * into {@code asset-manifest.json} in the output directory.
+     */
+    @Parameter(property = "sphinx.fingerprintAssets", defaultValue = "false", required = true, alias = "fingerprintAssets")
+    private boolean fingerprintAssets;
+
+    /**
+     * Whether to replace the identical files in the output directory, such as the files of the theme in
+     * {@code _static}, with the hard links to one of them. This saves disk space only: unless {@link #stageOutput}
+     * is enabled, the files with other links are copied before every Sphinx run, so that they are not changed
+     * through the links. Ignored on the file systems without the POSIX file attributes.
+     *
+     * <p>Only this plugin copies the linked files before writing them. Other writers, such as the
+     * maven-site-plugin or this plugin in a module where this option is disabled, may write a linked file in
+     * place, which changes the identical files linked to it as well.</p>
+     */
+    @Parameter(property = "sphinx.deduplicate", defaultValue = "false", required = true, alias = "deduplicate")
+    private boolean deduplicate;
+
+    /**
+     * Whether to link the files in the output directory to the identical files in the reporting directories of
+     * the other modules as well when {@link #deduplicate} is enabled. It must be enabled for all modules, so
+     * that every module copies the linked files before Sphinx runs, and no other plugin should write into
+     * the reporting directories after the deduplication.
+     */
+    @Parameter(property = "sphinx.deduplicateAcrossModules", defaultValue = "false", required = true, alias = "deduplicateAcrossModules")
+    private boolean deduplicateAcrossModules;
+
+    /**
+     * Whether to build the documentation in {@link #outputStagingDirectory} and copy only the files whose
+     * content has changed into the output directory, so that the unchanged files keep their last modification
+     * times. The files copied by the previous build but not generated anymore are removed from the output
+     * directory, and the changes are written into {@link #changeManifestFile}.
+     */
+    @Parameter(property = "sphinx.stageOutput", defaultValue = "false", required = true, alias = "stageOutput")
+    private boolean stageOutput;
+
+    /**
+     * The directory where the documentation is built when {@link #stageOutput} is enabled.
+     */
+    @Parameter(property = "sphinx.outputStagingDirectory", defaultValue = "${project.build.directory}/sphinx-output", required = true, alias = "outputStagingDirectory")
+    private File outputStagingDirectory;
+
+    /**
+     * The JSON file where the files added, modified and deleted in the output directory are written when
+     * {@link #stageOutput} is enabled, which can be used for uploading only the changes.
+     */
+    @Parameter(property = "sphinx.changeManifestFile", defaultValue = "${project.build.directory}/sphinx-changes.json", required = true, alias = "changeManifestFile")
+    private File changeManifestFile;
+
 
     @Override
     public void execute() throws MojoExecutionException {
@@ -186,87 +392,327 @@ public class SphinxMojo extends AbstractMojo implements MavenReport {
             return;
         }
 
-        final File sourceDirectory = canonicalize(this.sourceDirectory);
+        final File originalSourceDirectory = canonicalize(this.sourceDirectory);
+        final File sourceDirectory = filtering ? stageSources(originalSourceDirectory)
+                                               : originalSourceDirectory;
         final File outputDirectory = getReportOutputDirectory();
-        final File binaryCacheDir = canonicalize(this.binaryCacheDir);
+        final File buildDirectory = stageOutput ? canonicalize(outputStagingDirectory) : outputDirectory;
         final File doctreeCacheDir = useDoctreeCache ? canonicalize(this.doctreeCacheDir) : null;
+        final SphinxRunner sphinxRunner =
+                sphinxRunner(usesPlantUml(configDirectory != null ? configDirectory : sourceDirectory)
+                             ? resolvePlantUmlJar() : null);
 
-        // to avoid Maven overriding resulting index.html, update index.rst to force re-building of index
-        if (isHtmlReport()) {
-            new File(sourceDirectory.getPath() + "/index.rst").setLastModified(System.currentTimeMillis());
-        }
+        try {
+            // The staged output is copied into the output directory, which replaces the linked files.
+            if (deduplicate && !stageOutput) {
+                final int unshared = HardLinkDeduplicator.unshare(outputDirectory);
+                if (unshared > 0) {
+                    getLog().info("Copied " + unshared + " hard-linked file(s) before running Sphinx");
+                }
+            }
 
-        configureProxy();
+            final SphinxBuildTimings timings = timingReportFile != null ? new SphinxBuildTimings(10) : null;
+            final List<SphinxRunnerListener> listeners = new ArrayList<>();
+            listeners.add(newLoggingListener(linePrefix(), quiet, quietTailLines));
+            if (timings != null) {
+                listeners.add(timings);
+            }
+            final SphinxBuildMetrics metrics = new SphinxBuildMetrics();
+            listeners.add(metrics);
+            final SphinxRunnerListener jfrListener = JfrSupport.newListener();
+            if (jfrListener != null) {
+                listeners.add(jfrListener);
+            }
+            final SphinxRunnerListener listener = new CompositeSphinxRunnerListener(listeners);
+            final SphinxRunnerRegistry registry = SphinxRunnerRegistry.get(session);
+
+            final SourceDependencyGraph dependencyGraph =
+                    changedOnly ? SourceDependencyGraph.scan(sourceDirectory, configDirectory != null
+                                                                              ? configDirectory
+                                                                              : sourceDirectory)
+                                : null;
+            Set<String> changedDocuments =
+                    dependencyGraph != null ? findChangedDocuments(originalSourceDirectory, dependencyGraph)
+                                            : null;
+            if (changedDocuments != null && changedDocuments.isEmpty() && !buildDirectory.isDirectory()) {
+                getLog().info("Building all documents; the output of the last build is missing.");
+                changedDocuments = null;
+            }
+            if (changedDocuments != null && changedDocuments.isEmpty()) {
+                getLog().info("Skipping Sphinx; no documents have changed since the last build. " +
+                              "Keeping the existing output in " + outputDirectory);
+                dependencyGraph.store(dependencyGraphFile);
+                finish(outputDirectory, metrics, listener);
+                return;
+            }
 
-        try {
-            final SphinxRunner sphinxRunner = new SphinxRunner(
-                    binaryUrl, binaryCacheDir, environments,
-                    "".equals(dotBinary) ? null : dotBinary,
-                    new SphinxRunnerLogger() {
-                        @Override
-                        public void log(String msg) {
-                            getLog().info(msg);
-                        }
-                    });
-
-            getLog().info("Running Sphinx; output will be placed in " + outputDirectory);
-            final List<String> args = getSphinxRunnerCmdLine(sourceDirectory, outputDirectory, doctreeCacheDir);
-            if (sphinxRunner.run(sourceDirectory, args) != 0) {
+            // to avoid Maven overriding resulting index.html, update index.rst to force re-building of index.
+            // This happens after the change detection, so that the touch itself is not detected as a change.
+            if (isHtmlReport()) {
+                final File indexFile = new File(sourceDirectory, "index.rst");
+                if (indexFile.setLastModified(System.currentTimeMillis())) {
+                    if (dependencyGraph != null) {
+                        dependencyGraph.updateLastModified("index.rst", indexFile.lastModified());
+                    }
+                    if (changedDocuments != null && dependencyGraph.documents().contains("index.rst")) {
+                        changedDocuments.add("index.rst");
+                    }
+                }
+            }
+
+            getLog().info("Running Sphinx; output will be placed in " + buildDirectory);
+            final List<String> args = getSphinxRunnerCmdLine(sourceDirectory, buildDirectory, doctreeCacheDir);
+            if (changedDocuments != null) {
+                for (String path : changedDocuments) {
+                    args.add(new File(sourceDirectory, path.replace('/', File.separatorChar)).getPath());
+                }
+            }
+            final ProcessLimits limits = ProcessLimits.of(TimeUnit.SECONDS.toMillis(timeout), maxMemory << 20,
+                                                          TimeUnit.SECONDS.toMillis(terminationGracePeriod));
+            final int exitCode;
+            try {
+                exitCode = sphinxRunner.run(sourceDirectory, args, limits, newCancellationToken(), listener);
+            } catch (SphinxException e) {
+                // Record the metrics of a run which timed out, exceeded the memory limit or was cancelled.
+                try {
+                    writeMetrics(metrics);
+                } catch (IOException writeFailure) {
+                    e.addSuppressed(writeFailure);
+                }
+                throw e;
+            }
+            final long savedNanos = registry.savedNanos();
+            if (savedNanos > 0) {
+                getLog().info("Reused the Sphinx setup of the previous modules; saved " +
+                              TimeUnit.NANOSECONDS.toMillis(savedNanos) + " ms in this session so far.");
+            }
+            if (timings != null) {
+                timings.writeReport(timingReportFile);
+            }
+            if (exitCode != 0) {
+                writeMetrics(metrics);
                 throw new MavenReportException("Sphinx report generation failed");
             }
 
-            SphinxUtil.convertLineSeparators(outputDirectory);
-            // only delete crufts if Maven site is overridden (default behavior)
-            if (!asReport) {
-                deleteCruft(outputDirectory);
+            if (dependencyGraph != null) {
+                dependencyGraph.store(dependencyGraphFile);
+            }
+
+            SphinxUtil.convertLineSeparators(buildDirectory, listener);
+            if (optimizeImages) {
+                optimizeImages(buildDirectory, listener);
+            }
+            if (shardSearchIndex) {
+                final SearchIndexSharder.Result result =
+                        new SearchIndexSharder(searchIndexPrefixLength).shard(buildDirectory, listener);
+                getLog().info("Sharded the search index into " + result.shards + " shard(s); wrote " +
+                              result.modifiedFiles + " file(s)");
+            }
+            if (fingerprintAssets) {
+                final AssetFingerprinter.Result result =
+                        new AssetFingerprinter().fingerprint(buildDirectory, listener);
+                getLog().info("Fingerprinted " + result.assets + " asset(s); updated " + result.modifiedFiles +
+                              " HTML file(s) out of " + result.scannedFiles);
+            }
+            // Minify and compress the fingerprinted assets and the HTML files which refer to them.
+            if (minify || precompress) {
+                optimizeOutput(buildDirectory, listener);
+            }
+            if (stageOutput) {
+                syncOutput(buildDirectory, outputDirectory, listener);
+            }
+            if (deduplicate) {
+                deduplicateOutput(outputDirectory, listener);
             }
+            finish(outputDirectory, metrics, listener);
         } catch (Exception e) {
             throw new MojoExecutionException("Failed to run the report", e);
         }
     }
 
-    private static File canonicalize(File directory) throws MojoExecutionException {
-        if (directory == null) {
-            return null;
+    /**
+     * Performs the bookkeeping which follows a build, even if Sphinx was skipped because no documents changed.
+     */
+    private void finish(File outputDirectory, SphinxBuildMetrics metrics,
+                        SphinxRunnerListener listener) throws IOException, MojoExecutionException {
+        // only delete crufts if Maven site is overridden (default behavior)
+        if (!asReport) {
+            deleteCruft(outputDirectory);
         }
 
-        try {
-            directory.mkdirs();
-            return directory.getCanonicalFile();
-        } catch (IOException e) {
-            throw new MojoExecutionException("failed to create a directory: " + directory, e);
+        metrics.measureOutput(outputDirectory);
+        writeMetrics(metrics);
+        evictBinaryCache(listener);
+    }
+
+    private void optimizeImages(File outputDirectory, SphinxRunnerListener listener) throws IOException {
+        for (String format : ImageOptimizer.unsupportedFormats(imageAlternatives)) {
+            getLog().warn("Skipping the " + format + " alternatives of the images; no ImageIO writer for it");
         }
+        final List<String> formats = new ArrayList<>(imageAlternatives);
+        formats.removeAll(ImageOptimizer.unsupportedFormats(imageAlternatives));
+
+        final ImageOptimizer.Result result =
+                new ImageOptimizer(imageCacheDir, formats, optimizerThreads).optimize(outputDirectory, listener);
+        getLog().info("Recompressed " + result.modifiedFiles + " image(s) out of " + result.scannedFiles +
+                      "; saved " + result.savedBytes() + " bytes" +
+                      (formats.isEmpty() ? "" : "; wrote " + result.alternativeFiles + " alternative(s)"));
     }
 
-    private void configureProxy() {
-        if (session != null) {
-            final Proxy proxy = session.getSettings().getActiveProxy();
-            if (proxy != null && proxy.getProtocol() != null &&
-                proxy.getProtocol().toLowerCase().startsWith("http")) {
-                for (String protocol : Arrays.asList("http", "https")) {
-                    System.setProperty(protocol + ".proxyHost", proxy.getHost());
-                    System.setProperty(protocol + ".proxyPort", String.valueOf(proxy.getPort()));
-                    if (proxy.getUsername() != null && proxy.getPassword() != null) {
-                        System.setProperty(protocol + ".proxyUser", proxy.getUsername());
-                        System.setProperty(protocol + ".proxyPassword", proxy.getPassword());
-                    }
-                    if (proxy.getNonProxyHosts() != null) {
-                        System.setProperty(protocol + ".nonProxyHosts", proxy.getNonProxyHosts());
-                    }
-                }
-                if (System.getProperty("jdk.http.auth.tunneling.disabledSchemes") == null) {
-                    System.setProperty("jdk.http.auth.tunneling.disabledSchemes", "");
-                }
-                if (System.getProperty("https.protocols") == null) {
-                    System.setProperty("https.protocols", "TLSv1,TLSv1.1,TLSv1.2");
+    private void syncOutput(File buildDirectory, File outputDirectory,
+                            SphinxRunnerListener listener) throws IOException {
+        final OutputSynchronizer.Result result =
+                new OutputSynchronizer().sync(buildDirectory, outputDirectory, listener);
+        result.writeJson(changeManifestFile);
+        getLog().info("Synchronized the output: " + result.added.size() + " added, " +
+                      result.modified.size() + " modified, " + result.deleted.size() + " deleted, " +
+                      (result.scannedFiles - result.added.size() - result.modified.size()) + " unchanged");
+    }
+
+    private void deduplicateOutput(File outputDirectory, SphinxRunnerListener listener) throws IOException {
+        if (!HardLinkDeduplicator.isSupported(outputDirectory)) {
+            getLog().info("Skipping deduplication; the file system does not support POSIX file attributes");
+            return;
+        }
+
+        final List<File> otherDirs = new ArrayList<>();
+        if (deduplicateAcrossModules && session != null && session.getProjects() != null) {
+            for (MavenProject p : session.getProjects()) {
+                if (p != project) {
+                    otherDirs.add(reportingDirectory(p));
                 }
             }
         }
+        final HardLinkDeduplicator.Result result =
+                new HardLinkDeduplicator(optimizerThreads).deduplicate(outputDirectory, otherDirs, listener);
+        getLog().info("Replaced " + result.linkedFiles + " duplicate file(s) out of " + result.scannedFiles +
+                      " with hard links; saved " + result.savedBytes + " bytes of disk space (" +
+                      result.sharedBytes + " bytes shared in total)");
+    }
+
+    private void optimizeOutput(File outputDirectory, SphinxRunnerListener listener) throws IOException {
+        final OutputOptimizer.Result result =
+                new OutputOptimizer(minify, precompress, optimizerThreads).optimize(outputDirectory, listener);
+        if (minify) {
+            getLog().info("Minified " + result.modifiedFiles + " changed file(s) out of " + result.scannedFiles +
+                          "; saved " + result.minificationSavedBytes() + " bytes");
+        }
+        if (precompress) {
+            getLog().info("Compressed " + result.compressedFiles + " changed file(s) into .gz files; saved " +
+                          result.compressionSavedBytes() + " bytes");
+        }
+    }
+
+    private void writeMetrics(SphinxBuildMetrics metrics) throws IOException {
+        metrics.writeJson(metricsFile);
+        if (prometheusMetricsFile != null) {
+            final Map<String, String> labels = new LinkedHashMap<>();
+            labels.put("group_id", project.getGroupId());
+            labels.put("artifact_id", project.getArtifactId());
+            metrics.writePrometheus(prometheusMetricsFile, labels);
+        }
+    }
+
+    /**
+     * Filters the sources into the staging directory.
+     *
+     * @return the staging directory
+     */
+    private File stageSources(File sourceDirectory) throws MojoExecutionException {
+        final File stagingDirectory = canonicalize(this.stagingDirectory);
+        try {
+            final MavenReaderFilterRequest request = new MavenReaderFilterRequest();
+            request.setMavenProject(project);
+            request.setMavenSession(session);
+            request.setFilters(Collections.<String>emptyList());
+            request.setInjectProjectBuildFilters(false);
+            request.setFiltering(true);
+
+            final SourceStager stager = new SourceStager(
+                    readerFilter, readerFilter.getDefaultFilterWrappers(request),
+                    encoding != null ? encoding : "UTF-8", filteredExtensions);
+            stager.stage(sourceDirectory, stagingDirectory);
+            getLog().info("Staged sources into " + stagingDirectory + " (" + stager.written() + " written, " +
+                          stager.unchanged() + " unchanged, " + stager.deleted() + " deleted)");
+        } catch (IOException | MavenFilteringException e) {
+            throw new MojoExecutionException("failed to filter the sources into: " + stagingDirectory, e);
+        }
+        return stagingDirectory;
     }
 
     /**
-     * Deletes the crufts generated by maven-site-plugin.
+     * Determines the documents affected by the changes since the last build.
+     *
+     * @return the paths of the affected documents relative to {@code sourceDirectory},
+     *         an empty set if no document has to be built, or {@code null} if all documents have to be built
      */
+    private Set<String> findChangedDocuments(File originalSourceDirectory, SourceDependencyGraph dependencyGraph)
+            throws IOException, MojoExecutionException {
+        if (force || useMakeMode) {
+            getLog().info("Building all documents; changedOnly is not supported with force or useMakeMode.");
+            return null;
+        }
+
+        final SourceDependencyGraph previous = SourceDependencyGraph.load(dependencyGraphFile);
+        final Set<String> changedFiles;
+        switch (changeDetection) {
+            case "mtime":
+                if (previous == null) {
+                    getLog().info("Building all documents; no previous build information at: " +
+                                  dependencyGraphFile);
+                    return null;
+                }
+                changedFiles = dependencyGraph.changedSince(previous);
+                break;
+            case "git":
+                changedFiles = SourceDependencyGraph.gitChangedFiles(originalSourceDirectory,
+                                                                     changeDetectionGitRevision);
+                break;
+            default:
+                throw new MojoExecutionException(
+                        "changeDetection must be 'mtime' or 'git': " + changeDetection);
+        }
+
+        final Set<String> affected = dependencyGraph.affectedDocuments(changedFiles, previous);
+        if (affected == null) {
+            getLog().info("Building all documents; the changes affect the whole project.");
+        } else if (!affected.isEmpty()) {
+            getLog().info("Building " + affected.size() + " of " + dependencyGraph.documents().size() +
+                          " document(s) affected by " + changedFiles.size() + " changed file(s)");
+        }
+        return affected;
+    }
+
+    /**
+     * Returns a new {@link CancellationToken} which is cancelled when another module fails in a parallel build
+     * with the fail-fast reactor failure behavior, so that Sphinx does not keep running after the build failed.
+     */
+    private CancellationToken newCancellationToken() {
+        if (session == null || !session.isParallel() ||
+            !MavenExecutionRequest.REACTOR_FAIL_FAST.equals(session.getRequest().getReactorFailureBehavior())) {
+            return new CancellationToken();
+        }
+
+        final MavenExecutionResult result = session.getResult();
+        return new CancellationToken() {
+            @Override
+            public boolean isCancelled() {
+                return super.isCancelled() || result.hasExceptions();
+            }
+        };
+    }
+
+    /**
+     * Returns the prefix of the Sphinx output lines, which tells which module the lines are from
+     * in a parallel build.
+     */
+    private String linePrefix() {
+        if (session != null && project != null && session.isParallel()) {
+            return '[' + project.getArtifactId() + "] ";
+        }
+        return "";
+    }
+
     private static void deleteCruft(final File outputDirectory) {
         Runtime.getRuntime().addShutdownHook(new Thread() {
             @Override
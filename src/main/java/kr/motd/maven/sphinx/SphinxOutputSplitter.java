@@ -0,0 +1,246 @@
+package kr.motd.maven.sphinx;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Properties;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Copies a section, i.e. a top-level directory, of the HTML output of an aggregated Sphinx build into another
+ * directory, such as the reporting directory of the module the section was built from. The shared assets,
+ * such as {@code _static} and {@code _images}, are copied along with the section, and the relative links of
+ * the HTML files are rewritten so that they point to:
+ * <ul>
+ *   <li>the copied section and assets, or</li>
+ *   <li>the aggregated output for the others, e.g. the other sections, the index and the search page.</li>
+ * </ul>
+ * The links to the aggregated output are absolute URLs if the URL where the aggregated output is published
+ * is known, or relative paths to the aggregated output on the local file system otherwise, which are broken
+ * once the section is published.
+ *
+ * <p>Only the files whose content has changed are written, and the files copied by the previous run but not
+ * built anymore are removed, as {@link OutputSynchronizer} does. The copied files are recorded in an index file
+ * next to the aggregated output, so that the other files in the target directory are left intact.</p>
+ */
+final class SphinxOutputSplitter {
+
+    private static final Set<String> ASSET_DIRECTORIES =
+            new HashSet<>(Arrays.asList("_static", "_images", "_downloads"));
+
+    private static final Pattern LINK_PATTERN =
+            Pattern.compile("(\\s(?:href|src|data-url_root)=\")([^\"]*)(\")");
+
+    private static final Pattern SCHEME_PATTERN = Pattern.compile("^[a-zA-Z][a-zA-Z0-9+.-]*:");
+
+    private static final String TARGET_KEY = "target";
+    private static final String FILE_PREFIX = "file.";
+
+    private final Path outputDir;
+    private final String outputUrl;
+
+    /**
+     * Creates a new instance.
+     *
+     * @param outputUrl the URL where the aggregated output is published, or {@code null} if unknown
+     */
+    SphinxOutputSplitter(File outputDir, String outputUrl) {
+        this.outputDir = outputDir.toPath().toAbsolutePath().normalize();
+        if (outputUrl != null && !outputUrl.isEmpty() && !outputUrl.endsWith("/")) {
+            outputUrl += '/';
+        }
+        this.outputUrl = outputUrl == null || outputUrl.isEmpty() ? null : outputUrl;
+    }
+
+    /**
+     * Copies the specified section and the shared assets into the specified directory.
+     */
+    Result split(String section, File targetDir) throws IOException {
+        final Path sectionDir = outputDir.resolve(section);
+        final Path target = targetDir.toPath().toAbsolutePath().normalize();
+        final Result result = new Result();
+        final Set<Path> copied = new HashSet<>();
+        copy(sectionDir, target, true, copied, result);
+        for (String asset : ASSET_DIRECTORIES) {
+            final Path assetDir = outputDir.resolve(asset);
+            if (Files.isDirectory(assetDir)) {
+                copy(assetDir, target.resolve(asset), false, copied, result);
+            }
+        }
+
+        // Remove the files copied by the previous run which have not been copied this time.
+        final File indexFile = new File(outputDir + "." + section + ".split.index");
+        final Properties oldIndex = new Properties();
+        if (indexFile.isFile()) {
+            try (InputStream in = new FileInputStream(indexFile)) {
+                oldIndex.load(in);
+            }
+        }
+        if (target.toString().equals(oldIndex.getProperty(TARGET_KEY))) {
+            for (String key : oldIndex.stringPropertyNames()) {
+                if (!key.startsWith(FILE_PREFIX)) {
+                    continue;
+                }
+                final Path dst = target.resolve(key.substring(FILE_PREFIX.length()).replace('/', File.separatorChar));
+                if (!copied.contains(dst) && Files.deleteIfExists(dst)) {
+                    result.deletedFiles++;
+                    deleteEmptyParents(dst, target);
+                }
+            }
+        }
+
+        final Properties index = new Properties();
+        index.setProperty(TARGET_KEY, target.toString());
+        for (Path dst : copied) {
+            index.setProperty(FILE_PREFIX + target.relativize(dst).toString().replace(File.separatorChar, '/'), "");
+        }
+        try (OutputStream out = new FileOutputStream(indexFile)) {
+            index.store(out, "Files copied from the section '" + section + "' of the aggregated Sphinx output");
+        }
+        return result;
+    }
+
+    private void copy(final Path srcDir, final Path dstDir, final boolean rewrite,
+                      final Set<Path> copied, final Result result) throws IOException {
+        Files.walkFileTree(srcDir, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                final Path dst = dstDir.resolve(srcDir.relativize(file).toString());
+                copied.add(dst);
+                final String name = file.getFileName().toString().toLowerCase(Locale.US);
+                if (rewrite && (name.endsWith(".html") || name.endsWith(".htm"))) {
+                    final String html = new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+                    final byte[] rewritten =
+                            rewriteLinks(html, file, dst, srcDir, dstDir, result).getBytes(StandardCharsets.UTF_8);
+                    if (Files.isRegularFile(dst) && Files.size(dst) == rewritten.length &&
+                        Arrays.equals(Files.readAllBytes(dst), rewritten)) {
+                        result.unchangedFiles++;
+                        return FileVisitResult.CONTINUE;
+                    }
+                    Files.createDirectories(dst.getParent());
+                    final Path tmp = dst.resolveSibling(dst.getFileName() + ".tmp");
+                    Files.write(tmp, rewritten);
+                    Files.move(tmp, dst, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+                } else if (!Files.isRegularFile(dst) || Files.size(dst) != attrs.size() ||
+                           // Compared in milliseconds, because copying may truncate the modification time.
+                           Files.getLastModifiedTime(dst).toMillis() != attrs.lastModifiedTime().toMillis()) {
+                    Files.createDirectories(dst.getParent());
+                    Files.copy(file, dst, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.COPY_ATTRIBUTES);
+                } else {
+                    result.unchangedFiles++;
+                    return FileVisitResult.CONTINUE;
+                }
+                result.copiedFiles++;
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    private static void deleteEmptyParents(Path file, Path root) {
+        for (Path dir = file.getParent(); dir != null && dir.startsWith(root) && !dir.equals(root);
+             dir = dir.getParent()) {
+            final String[] children = dir.toFile().list();
+            if (children == null || children.length != 0 || !dir.toFile().delete()) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * Rewrites the relative links of the specified HTML file, which is copied from {@code src} to {@code dst}.
+     */
+    private String rewriteLinks(String html, Path src, Path dst, Path sectionDir, Path targetDir, Result result) {
+        final Matcher m = LINK_PATTERN.matcher(html);
+        final StringBuffer buf = new StringBuffer(html.length() + 256);
+        while (m.find()) {
+            final String link = m.group(2);
+            final String rewritten = rewriteLink(link, src, dst, sectionDir, targetDir, result);
+            m.appendReplacement(buf, Matcher.quoteReplacement(m.group(1) + rewritten + m.group(3)));
+        }
+        m.appendTail(buf);
+        return buf.toString();
+    }
+
+    private String rewriteLink(String link, Path src, Path dst, Path sectionDir, Path targetDir, Result result) {
+        if (link.isEmpty() || link.startsWith("#") || link.startsWith("/") ||
+            SCHEME_PATTERN.matcher(link).find()) {
+            return link;
+        }
+
+        int suffixStart = link.length();
+        for (char ch : new char[] { '#', '?' }) {
+            final int i = link.indexOf(ch);
+            if (i >= 0 && i < suffixStart) {
+                suffixStart = i;
+            }
+        }
+        final String path = link.substring(0, suffixStart);
+        final String suffix = link.substring(suffixStart);
+        if (path.isEmpty()) {
+            return link;
+        }
+
+        final Path resolved = src.getParent().resolve(path).normalize();
+        final Path newTarget;
+        if (resolved.startsWith(sectionDir)) {
+            newTarget = targetDir.resolve(sectionDir.relativize(resolved).toString());
+        } else if (resolved.startsWith(outputDir) && !resolved.equals(outputDir) &&
+                   ASSET_DIRECTORIES.contains(outputDir.relativize(resolved).getName(0).toString())) {
+            newTarget = targetDir.resolve(outputDir.relativize(resolved).toString());
+        } else if (resolved.startsWith(outputDir)) {
+            // Link to the aggregated output.
+            if (outputUrl != null) {
+                String newUrl = outputUrl + outputDir.relativize(resolved).toString().replace(File.separatorChar, '/');
+                if (path.endsWith("/") && !newUrl.endsWith("/")) {
+                    newUrl += '/';
+                }
+                return newUrl + suffix;
+            }
+            result.localLinks++;
+            newTarget = resolved;
+        } else {
+            newTarget = resolved;
+        }
+
+        String newPath;
+        try {
+            newPath = dst.getParent().relativize(newTarget).toString().replace(File.separatorChar, '/');
+        } catch (IllegalArgumentException e) {
+            // On a different drive.
+            return newTarget.toUri().toString() + suffix;
+        }
+        if (newPath.isEmpty()) {
+            newPath = ".";
+        }
+        if (path.endsWith("/") && !newPath.endsWith("/")) {
+            newPath += '/';
+        }
+        return newPath + suffix;
+    }
+
+    /**
+     * The statistics of a {@link SphinxOutputSplitter} run. {@code localLinks} is the number of the links which
+     * point to the aggregated output on the local file system.
+     */
+    static final class Result {
+        int copiedFiles;
+        int unchangedFiles;
+        int deletedFiles;
+        int localLinks;
+    }
+}
@@ -0,0 +1,217 @@
+package kr.motd.maven.sphinx;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+import org.apache.maven.shared.utils.io.FileUtils;
+
+/**
+ * Does the one-time work of a Sphinx build ahead of time, e.g. when building a CI image, so that the first
+ * real build does not pay for it: resolves and verifies the Sphinx binary, resolves the PlantUML JAR and creates
+ * its class data sharing archive, and runs Sphinx once on a trivial project so that the binary unpacks
+ * its runtime and compiles its Python modules. The goal is idempotent; the work done already is reported and skipped.
+ */
+@Mojo(name = "prefetch", requiresProject = false, threadSafe = true)
+public class SphinxPrefetchMojo extends AbstractSphinxMojo {
+
+    private static final String WARM_UP_STATE_FILE_NAME = "prefetch.properties";
+
+    /**
+     * Whether to create the class data sharing archive of PlantUML, which reduces the startup time of
+     * the JVMs that render diagrams. Requires the {@code java} command in {@code PATH} to be Java 13 or above.
+     */
+    @Parameter(property = "sphinx.prefetch.plantUmlArchive", defaultValue = "true", alias = "plantUmlArchive")
+    private boolean plantUmlArchive;
+
+    /**
+     * Whether to redo the work done already, e.g. after upgrading the JVM.
+     */
+    @Parameter(property = "sphinx.prefetch.force", defaultValue = "false", alias = "force")
+    private boolean force;
+
+    /**
+     * Skip prefetching.
+     */
+    @Parameter(property = "sphinx.skip", defaultValue = "false", alias = "skip")
+    private boolean skip;
+
+    @Override
+    public void execute() throws MojoExecutionException {
+        if (skip) {
+            getLog().info("Skipping Sphinx prefetch.");
+            return;
+        }
+
+        final File binaryCacheDir = binaryCacheDir();
+        final List<String> warm = new ArrayList<>();
+        final List<String> prefetched = new ArrayList<>();
+
+        // Create the archive before the runner, which looks for the archive when it is created.
+        final File plantUmlJar = resolvePlantUmlJar();
+        if (plantUmlArchive) {
+            final File archive = PlantUmlArchive.file(binaryCacheDir, plantUmlJar);
+            if (archive.isFile() && !force) {
+                warm.add("PlantUML class data sharing archive");
+            } else {
+                try {
+                    if (PlantUmlArchive.create(binaryCacheDir, plantUmlJar)) {
+                        prefetched.add("PlantUML class data sharing archive");
+                    } else {
+                        getLog().warn("The JVM does not support class data sharing archives; see " +
+                                      archive.getPath() + ".log");
+                    }
+                } catch (IOException e) {
+                    throw new MojoExecutionException("failed to create a PlantUML archive: " + archive, e);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new MojoExecutionException("interrupted while creating a PlantUML archive", e);
+                }
+            }
+        }
+
+        final SphinxRunner sphinxRunner = sphinxRunner(plantUmlJar);
+        final boolean[] cached = new boolean[1];
+        final SphinxRunnerListener listener = new CompositeSphinxRunnerListener(
+                newLoggingListener("", false, 0),
+                new SphinxRunnerListenerAdapter() {
+                    @Override
+                    public void onBinaryResolved(Path binary, boolean fromCache) {
+                        cached[0] = fromCache;
+                    }
+                });
+
+        final Path binary;
+        try {
+            binary = sphinxRunner.resolveBinary(new CancellationToken(), listener);
+        } catch (SphinxException e) {
+            throw new MojoExecutionException(e.getMessage(), e);
+        }
+        (cached[0] ? warm : prefetched).add("Sphinx binary");
+
+        final File stateFile = new File(binaryCacheDir, WARM_UP_STATE_FILE_NAME);
+        final String binaryState = binaryState(binary);
+        final Properties state = loadState(stateFile);
+        if (binaryState.equals(state.getProperty(binary.toString())) && !force) {
+            warm.add("Sphinx runtime");
+        } else {
+            warmUp(sphinxRunner, listener);
+            state.setProperty(binary.toString(), binaryState);
+            storeState(stateFile, state);
+            prefetched.add("Sphinx runtime");
+        }
+
+        evictBinaryCache(listener);
+        getLog().info("Already warm: " + (warm.isEmpty() ? "nothing" : join(warm)));
+        getLog().info("Prefetched: " + (prefetched.isEmpty() ? "nothing" : join(prefetched)));
+    }
+
+    /**
+     * Runs Sphinx on a trivial project, which has the binary unpack its runtime and compile
+     * its Python modules.
+     */
+    private void warmUp(SphinxRunner sphinxRunner, SphinxRunnerListener listener) throws MojoExecutionException {
+        Path tmpDir = null;
+        try {
+            tmpDir = Files.createTempDirectory("sphinx-prefetch");
+            final File sourceDir = new File(tmpDir.toFile(), "src");
+            final File outputDir = new File(tmpDir.toFile(), "out");
+            sourceDir.mkdirs();
+            Files.write(new File(sourceDir, "conf.py").toPath(),
+                        ("import os\n" +
+                         "project = u'prefetch'\n" +
+                         "master_doc = 'index'\n" +
+                         "extensions = ['sphinxcontrib.plantuml']\n" +
+                         "plantuml = os.getenv('plantuml')\n").getBytes(StandardCharsets.UTF_8));
+            Files.write(new File(sourceDir, "index.rst").toPath(),
+                        "Prefetch\n========\n\nWarming up.\n".getBytes(StandardCharsets.UTF_8));
+
+            final long startTime = System.nanoTime();
+            final int exitCode = sphinxRunner.run(
+                    sourceDir, Arrays.asList("-b", "html", "-Q", sourceDir.getPath(), outputDir.getPath()),
+                    ProcessLimits.NONE, new CancellationToken(), listener);
+            if (exitCode != 0) {
+                throw new MojoExecutionException("Sphinx failed to build a trivial project (exit code: " +
+                                                 exitCode + ')');
+            }
+            getLog().info("Warmed up the Sphinx runtime in " +
+                          TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime) + " ms");
+        } catch (IOException | SphinxException e) {
+            throw new MojoExecutionException("failed to warm up the Sphinx runtime", e);
+        } finally {
+            if (tmpDir != null) {
+                try {
+                    FileUtils.deleteDirectory(tmpDir.toFile());
+                } catch (IOException e) {
+                    // Swallow.
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the size and last modified time of the binary, which determine whether it has changed
+     * since it was warmed up.
+     */
+    private static String binaryState(Path binary) throws MojoExecutionException {
+        try {
+            return Files.size(binary) + " " + Files.getLastModifiedTime(binary).toMillis();
+        } catch (IOException e) {
+            throw new MojoExecutionException("failed to read the attributes of: " + binary, e);
+        }
+    }
+
+    private static Properties loadState(File stateFile) {
+        final Properties state = new Properties();
+        if (stateFile.isFile()) {
+            try (InputStream in = new FileInputStream(stateFile)) {
+                state.load(in);
+            } catch (IOException e) {
+                // Start over.
+                state.clear();
+            }
+        }
+        return state;
+    }
+
+    private static void storeState(File stateFile, Properties state) throws MojoExecutionException {
+        final File tmp = new File(stateFile.getPath() + ".tmp");
+        try {
+            try (OutputStream out = new FileOutputStream(tmp)) {
+                state.store(out, "Sphinx binaries warmed up by the prefetch goal");
+            }
+            Files.move(tmp.toPath(), stateFile.toPath(),
+                       StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            throw new MojoExecutionException("failed to write: " + stateFile, e);
+        } finally {
+            tmp.delete();
+        }
+    }
+
+    private static String join(List<String> items) {
+        final StringBuilder buf = new StringBuilder();
+        for (String item : items) {
+            if (buf.length() != 0) {
+                buf.append(", ");
+            }
+            buf.append(item);
+        }
+        return buf.toString();
+    }
+}
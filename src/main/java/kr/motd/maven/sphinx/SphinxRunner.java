@@ -3,13 +3,11 @@ package kr.motd.maven.sphinx;
 import static java.util.Objects.requireNonNull;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOError;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.math.BigInteger;
 import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
 import java.net.URI;
@@ -20,7 +18,6 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
 import java.nio.file.attribute.PosixFilePermissions;
-import java.security.CodeSource;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
@@ -28,9 +25,9 @@ import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
-
-import net.sourceforge.plantuml.UmlDiagram;
+import java.util.concurrent.atomic.AtomicLong;
 
 import kr.motd.maven.os.DetectionException;
 import kr.motd.maven.os.Detector;
@@ -38,17 +35,28 @@ import kr.motd.maven.os.Detector;
 /**
  * Sphinx Runner.
  */
-public class SphinxRunner {
+public class SphinxRunner implements DefaultBinaryUrlHolder {
 
     private static final OsDetector osDetector = new OsDetector();
 
-    public static final String DEFAULT_BINARY_URL =
-            "https://github.com/trustin/sphinx-binary/releases/download/v0.8.2/sphinx." +
-            osDetector.executableSuffix();
+    private static final String DEFAULT_BINARY_URL_PREFIX =
+            "https://github.com/trustin/sphinx-binary/releases/download/v0.8.2/sphinx.";
+
+    private static final long OUTPUT_DRAIN_TIMEOUT_SECONDS = 10;
+    private static final long DOWNLOAD_PROGRESS_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+    private static final long CANCELLATION_POLL_INTERVAL_MILLIS = 100;
+    private static final long CANCELLATION_GRACE_PERIOD_MILLIS = 500;
 
     private static final String VERSION;
     private static final String USER_AGENT;
 
+    /**
+     * The version of PlantUML this plugin has been tested with.
+     */
+    static final String PLANTUML_VERSION;
+
+    private static final String PLANTUML_CLASS_RESOURCE = "net/sourceforge/plantuml/UmlDiagram.class";
+
     static {
         final Properties versionProps = new Properties();
         try {
@@ -61,16 +69,44 @@ public class SphinxRunner {
             throw new IllegalStateException("cannot determine the plugin version");
         }
         USER_AGENT = SphinxRunner.class.getSimpleName() + '/' + VERSION;
+        PLANTUML_VERSION = versionProps.getProperty("plantumlVersion");
     }
 
     private final String binaryUrl;
     private final File binaryCacheDir;
     private final Map<String, String> environments;
-    private final SphinxRunnerLogger logger;
+    private final SphinxRunnerListener listener;
     private final String plantUmlCommand;
 
+    private final Object binaryLock = new Object();
+    private volatile Path resolvedBinary;
+    private volatile long binaryResolutionNanos;
+    private final AtomicLong savedBinaryResolutionNanos = new AtomicLong();
+    private final Map<InputStream, OutputStream> redirectTargets = new ConcurrentHashMap<>();
+
+    /**
+     * Creates a new instance which renders PlantUML diagrams with the PlantUML JAR in the class path, if any.
+     * PlantUML is not a runtime dependency of this library, so a warning is logged and PlantUML diagrams are
+     * not rendered unless {@code net.sourceforge.plantuml:plantuml} is added to the class path. Use
+     * {@link #SphinxRunner(String, File, Map, String, File, SphinxRunnerListener)} to specify the PlantUML JAR
+     * explicitly.
+     */
     public SphinxRunner(String binaryUrl, File binaryCacheDir,
                         Map<String, String> environments, String dotBinary, SphinxRunnerLogger logger) {
+        this(binaryUrl, binaryCacheDir, environments, dotBinary, findPlantUmlJar(logger),
+             new LoggingSphinxRunnerListener(logger));
+    }
+
+    /**
+     * Creates a new instance.
+     *
+     * @param plantUmlJar the PlantUML JAR which renders the diagrams, or {@code null} if the documents do not
+     *                    contain any PlantUML diagrams. Use {@link #findPlantUmlJar()} to use the PlantUML JAR
+     *                    in the class path.
+     */
+    public SphinxRunner(String binaryUrl, File binaryCacheDir,
+                        Map<String, String> environments, String dotBinary, File plantUmlJar,
+                        SphinxRunnerListener listener) {
 
         this.binaryUrl = requireNonNull(binaryUrl, "binaryUrl");
         if (!binaryUrl.startsWith("http://") &&
@@ -80,14 +116,20 @@ public class SphinxRunner {
                                                binaryUrl);
         }
         this.binaryCacheDir = requireNonNull(binaryCacheDir, "binaryCacheDir");
-        this.logger = requireNonNull(logger, "logger");
+        this.listener = requireNonNull(listener, "listener");
         this.environments = new HashMap<>(requireNonNull(environments, "environments"));
 
+        if (plantUmlJar == null) {
+            plantUmlCommand = null;
+            return;
+        }
+
         final StringBuilder plantUmlCommandBuf = new StringBuilder();
         plantUmlCommandBuf.append("java ");
         plantUmlCommandBuf.append("-Djava.awt.headless=true ");
+        plantUmlCommandBuf.append(PlantUmlArchive.jvmOptions(binaryCacheDir, plantUmlJar));
         plantUmlCommandBuf.append("-jar ");
-        plantUmlCommandBuf.append(findPlantUmlJar().getPath().replace("\\", "\\\\"));
+        plantUmlCommandBuf.append(plantUmlJar.getPath().replace("\\", "\\\\"));
         if (dotBinary != null) {
             plantUmlCommandBuf.append(" -graphvizdot ");
             plantUmlCommandBuf.append(dotBinary.replace("\\", "\\\\"));
@@ -97,94 +139,163 @@ public class SphinxRunner {
     }
 
     public final int run(File workingDir, List<String> args) {
+        return run(workingDir, args, ProcessLimits.NONE);
+    }
+
+    /**
+     * Runs Sphinx with the specified arguments, terminating it if it exceeds the specified {@link ProcessLimits}.
+     *
+     * @return the exit code of Sphinx
+     *
+     * @throws SphinxException if failed to run Sphinx or Sphinx exceeded the limits
+     */
+    public final int run(File workingDir, List<String> args, ProcessLimits limits) {
+        return run(workingDir, args, limits, new CancellationToken());
+    }
+
+    /**
+     * Runs Sphinx with the specified arguments, terminating it if it exceeds the specified {@link ProcessLimits}
+     * or the specified {@link CancellationToken} is cancelled.
+     *
+     * @return the exit code of Sphinx
+     *
+     * @throws SphinxException if failed to run Sphinx, Sphinx exceeded the limits or the run was cancelled
+     */
+    public final int run(File workingDir, List<String> args, ProcessLimits limits, CancellationToken token) {
+        return run(workingDir, args, limits, token, listener);
+    }
+
+    /**
+     * Runs Sphinx with the specified arguments, terminating it if it exceeds the specified {@link ProcessLimits}
+     * or the specified {@link CancellationToken} is cancelled. The events of this run are delivered to
+     * the specified {@link SphinxRunnerListener} instead of the one given at construction time, so that
+     * a single {@link SphinxRunner} can be shared by concurrent runs.
+     *
+     * @return the exit code of Sphinx
+     *
+     * @throws SphinxException if failed to run Sphinx, Sphinx exceeded the limits or the run was cancelled
+     */
+    public final int run(File workingDir, List<String> args, ProcessLimits limits, CancellationToken token,
+                         SphinxRunnerListener listener) {
         requireNonNull(workingDir, "workingDir");
         requireNonNull(args, "args");
+        requireNonNull(limits, "limits");
+        requireNonNull(token, "token");
+        requireNonNull(listener, "listener");
         if (args.isEmpty()) {
             throw new IllegalArgumentException("args is empty.");
         }
 
-        final Path sphinxBinary = downloadSphinxBinary();
-        final List<String> fullArgs = new ArrayList<>();
-        fullArgs.add(sphinxBinary.toString());
-        fullArgs.addAll(args);
-
-        final ProcessBuilder builder = new ProcessBuilder(fullArgs);
-        final Map<String, String> env = builder.environment();
-        builder.directory(workingDir);
-        configureProcessBuilder(builder);
-
-        // Set the locale and timezone for consistency.
-        env.put("LANG", "en_US.UTF-8");
-        env.put("LC_ALL", "en_US.UTF-8");
-        env.put("TZ", "UTC");
-        // Set the command that runs PlantUML.
-        env.put("plantuml", plantUmlCommand);
-        env.putAll(environments);
-
+        final BinaryCache.Lease lease = leaseCacheEntry(listener);
         try {
-            final long startTime = System.nanoTime();
-            final Process process = builder.start();
-            process.getOutputStream().close();
-            redirect(process.getInputStream(), process.getErrorStream());
-
-            final int exitCode = process.waitFor();
-            logger.log("Sphinx exited with code " + exitCode + ". Took " +
-                       TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime) + "ms.");
-            return exitCode;
-        } catch (Exception e) {
-            throw new SphinxException("Failed to run Sphinx: " + e, e);
-        }
-    }
-
-    protected void configureProcessBuilder(ProcessBuilder builder) {}
+            final Path sphinxBinary = resolveSphinxBinary(token, listener);
+            final List<String> fullArgs = new ArrayList<>();
+            fullArgs.add(sphinxBinary.toString());
+            fullArgs.addAll(args);
+
+            final ProcessBuilder builder = new ProcessBuilder(fullArgs);
+            final Map<String, String> env = builder.environment();
+            builder.directory(workingDir);
+            configureProcessBuilder(builder);
+
+            // Set the locale and timezone for consistency.
+            env.put("LANG", "en_US.UTF-8");
+            env.put("LC_ALL", "en_US.UTF-8");
+            env.put("TZ", "UTC");
+            // Set the command that runs PlantUML.
+            if (plantUmlCommand != null) {
+                env.put("plantuml", plantUmlCommand);
+            }
+            env.putAll(environments);
 
-    private void redirect(final InputStream stdout, final InputStream stderr) {
-        if (stdout != null) {
-            new Thread(new Runnable() {
-                @Override
-                public void run() {
-                    try {
-                        redirectStdout(stdout);
-                    } catch (Throwable t) {
-                        logger.log("Failed to redirect stdout: " + t);
-                    } finally {
+            try {
+                final long startTime = System.nanoTime();
+                final Process process = builder.start();
+                listener.onProcessStarted(Collections.unmodifiableList(fullArgs), workingDir);
+                process.getOutputStream().close();
+                final ProcessOutputPump pump = new ProcessOutputPump(listener);
+                pump.start(process.getInputStream(), process.getErrorStream(), new ProcessOutputPump.Redirector() {
+                    @Override
+                    public void redirect(InputStream in, OutputStream out, boolean error) throws Exception {
+                        redirectTargets.put(in, out);
                         try {
-                            stdout.close();
-                        } catch (IOException e) {
-                            // Swallow.
+                            if (error) {
+                                redirectStderr(in);
+                            } else {
+                                redirectStdout(in);
+                            }
+                        } finally {
+                            redirectTargets.remove(in);
                         }
                     }
+                });
+                final ProcessWatchdog watchdog = new ProcessWatchdog(process, limits, listener, startTime);
+                watchdog.start();
+
+                final Integer exitCode;
+                try {
+                    exitCode = waitFor(process, token);
+                } catch (InterruptedException e) {
+                    cancel(process, pump, watchdog);
+                    Thread.currentThread().interrupt();
+                    throw new SphinxException("Sphinx has been cancelled");
                 }
-            }, "sphinx-redirect-stdout").start();
-        }
-        if (stderr != null) {
-            new Thread(new Runnable() {
-                @Override
-                public void run() {
-                    try {
-                        redirectStderr(stderr);
-                    } catch (Throwable t) {
-                        logger.log("Failed to redirect stderr: " + t);
-                    } finally {
-                        try {
-                            stdout.close();
-                        } catch (IOException e) {
-                            // Swallow.
-                        }
-                    }
+                if (exitCode == null) {
+                    cancel(process, pump, watchdog);
+                    throw new SphinxException("Sphinx has been cancelled");
+                }
+                final ProcessResourceUsage usage = watchdog.stop();
+                if (!pump.await(OUTPUT_DRAIN_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                    // A grandchild process may still hold the pipes open.
+                    pump.stop();
+                }
+                listener.onProcessExited(exitCode, System.nanoTime() - startTime, usage);
+
+                final String violation = watchdog.violation();
+                if (violation != null) {
+                    throw new SphinxException(violation);
                 }
-            }, "sphinx-redirect-stderr").start();
+                return exitCode;
+            } catch (SphinxException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new SphinxException("Failed to run Sphinx: " + e, e);
+            }
+        } finally {
+            releaseCacheEntry(lease, listener);
         }
     }
 
+    protected void configureProcessBuilder(ProcessBuilder builder) {}
+
+    /**
+     * Copies the standard output of Sphinx into the stream which delivers its lines to the
+     * {@link SphinxRunnerListener}.
+     *
+     * @deprecated Use {@link SphinxRunnerListener#onProcessOutput(String, boolean)} to receive the output lines.
+     */
+    @Deprecated
     protected void redirectStdout(InputStream stdout) throws Exception {
-        redirect(stdout, System.out);
+        redirect(stdout, redirectTarget(stdout));
     }
 
+    /**
+     * Copies the standard error of Sphinx into the stream which delivers its lines to the
+     * {@link SphinxRunnerListener}.
+     *
+     * @deprecated Use {@link SphinxRunnerListener#onProcessOutput(String, boolean)} to receive the output lines.
+     */
+    @Deprecated
     protected void redirectStderr(InputStream stderr) throws Exception {
-        redirect(stderr, System.out);
+        redirect(stderr, redirectTarget(stderr));
     }
 
+    /**
+     * Copies the specified {@link InputStream} into the specified {@link OutputStream}.
+     *
+     * @deprecated Use {@link SphinxRunnerListener#onProcessOutput(String, boolean)} to receive the output lines.
+     */
+    @Deprecated
     protected void redirect(InputStream in, OutputStream out) throws Exception {
         final byte[] buf = new byte[8192];
         for (;;) {
@@ -198,52 +309,242 @@ public class SphinxRunner {
         }
     }
 
-    private static File findPlantUmlJar() {
-        return findJar(UmlDiagram.class, "PlantUML JAR");
+    private OutputStream redirectTarget(InputStream in) {
+        final OutputStream out = redirectTargets.get(in);
+        // Not a stream of the Sphinx process.
+        return out != null ? out : System.out;
     }
 
-    private static File findJar(Class<?> type, String name) {
-        final CodeSource codeSource = type.getProtectionDomain().getCodeSource();
-        if (codeSource == null) {
-            throw new SphinxException(
-                    "failed to get the location of " + name + " (CodeSource not available)");
+    /**
+     * Returns the URL of the Sphinx binary for the current platform. The platform is detected when this method
+     * is invoked for the first time, unless the {@code os.detected.classifier} system property has been set
+     * by {@code os-maven-plugin} already.
+     */
+    public static String defaultBinaryUrl() {
+        return DEFAULT_BINARY_URL_PREFIX + osDetector.executableSuffix();
+    }
+
+    /**
+     * Returns the classifier of the current platform, e.g. {@code linux-x86_64}.
+     */
+    static String detectedClassifier() {
+        return osDetector.classifier();
+    }
+
+    /**
+     * Returns the total time saved by reusing the binary resolved by a previous run, rather than
+     * resolving and verifying it again.
+     */
+    final long savedBinaryResolutionNanos() {
+        return savedBinaryResolutionNanos.get();
+    }
+
+    /**
+     * Resolves the Sphinx binary without running it, downloading and verifying it if necessary.
+     *
+     * @throws SphinxException if failed to resolve the binary
+     */
+    final Path resolveBinary(CancellationToken token, SphinxRunnerListener listener) {
+        requireNonNull(token, "token");
+        requireNonNull(listener, "listener");
+        final BinaryCache.Lease lease = leaseCacheEntry(listener);
+        try {
+            return resolveSphinxBinary(token, listener);
+        } finally {
+            releaseCacheEntry(lease, listener);
         }
+    }
 
-        final URL url = codeSource.getLocation();
-        if (!"file".equals(url.getProtocol()) || !url.getPath().toLowerCase(Locale.US).endsWith(".jar")) {
-            throw new SphinxException(
-                    "failed to get the location of " + name + " (unexpected URL: " + url + ')');
+    /**
+     * Acquires the {@link BinaryCache.Lease} on the cache entry of the binary, so that it is not evicted
+     * while in use.
+     *
+     * @return the lease, or {@code null} if the binary is not in the cache directory
+     */
+    private BinaryCache.Lease leaseCacheEntry(SphinxRunnerListener listener) {
+        final File entryDir = cacheEntryDir();
+        if (entryDir == null) {
+            return null;
         }
+        try {
+            return BinaryCache.acquire(entryDir);
+        } catch (IOException e) {
+            listener.onWarning("Failed to lock the Sphinx binary cache entry: " + entryDir, e);
+            return null;
+        }
+    }
 
-        File f;
+    private static void releaseCacheEntry(BinaryCache.Lease lease, SphinxRunnerListener listener) {
+        if (lease == null) {
+            return;
+        }
         try {
-            f = new File(url.toURI());
-        } catch (URISyntaxException ignored) {
-            f = new File(url.getPath());
+            lease.close();
+        } catch (IOException e) {
+            listener.onWarning("Failed to unlock the Sphinx binary cache entry", e);
         }
+    }
 
+    /**
+     * Returns the directory in the cache directory which contains the binary, or {@code null} if the binary
+     * is a local file outside of the cache directory.
+     */
+    private File cacheEntryDir() {
+        if (!binaryUrl.startsWith("file:")) {
+            return new File(binaryCacheDir, binaryUrl.replaceAll("[/\\\\<>:\"|?*]", "_"));
+        }
+
+        final File f = localBinary();
+        if (f == null) {
+            return null;
+        }
+        final File entryDir = f.getAbsoluteFile().getParentFile();
+        if (entryDir == null || !binaryCacheDir.getAbsoluteFile().equals(entryDir.getParentFile())) {
+            return null;
+        }
+        return entryDir;
+    }
+
+    /**
+     * Returns the file the {@code file:} binary URL points to.
+     */
+    private File localBinary() {
+        URL url = null;
+        File f = null;
+        try {
+            url = new URL(binaryUrl);
+            f = new File(url.toURI());
+        } catch (Exception ignored) {
+            if (url != null) {
+                f = new File(url.getPath());
+            }
+        }
         return f;
     }
 
-    private Path downloadSphinxBinary() {
-        if (binaryUrl.startsWith("file:")) {
-            URL url = null;
-            File f = null;
-            try {
-                url = new URL(binaryUrl);
-                f = new File(url.toURI());
-            } catch (Exception ignored) {
-                if (url != null) {
-                    f = new File(url.getPath());
+    /**
+     * Returns the Sphinx binary resolved by a previous run of this runner if it still exists,
+     * or resolves it otherwise.
+     */
+    private Path resolveSphinxBinary(CancellationToken token, SphinxRunnerListener listener) {
+        Path binary = resolvedBinary;
+        if (binary == null || !Files.isRegularFile(binary)) {
+            synchronized (binaryLock) {
+                binary = resolvedBinary;
+                if (binary == null || !Files.isRegularFile(binary)) {
+                    final long startTime = System.nanoTime();
+                    binary = downloadSphinxBinary(token, listener);
+                    binaryResolutionNanos = System.nanoTime() - startTime;
+                    resolvedBinary = binary;
+                    return binary;
                 }
             }
+        }
+
+        savedBinaryResolutionNanos.addAndGet(binaryResolutionNanos);
+        listener.onBinaryResolved(binary, true);
+        return binary;
+    }
+
+    /**
+     * Waits for the specified process to exit.
+     *
+     * @return the exit code, or {@code null} if the {@link CancellationToken} has been cancelled
+     *
+     * @throws InterruptedException if the current thread has been interrupted
+     */
+    private static Integer waitFor(Process process, CancellationToken token) throws InterruptedException {
+        for (;;) {
+            try {
+                return process.exitValue();
+            } catch (IllegalThreadStateException e) {
+                // Still running.
+            }
+            if (token.isCancelled()) {
+                return null;
+            }
+            Thread.sleep(CANCELLATION_POLL_INTERVAL_MILLIS);
+        }
+    }
+
+    /**
+     * Destroys the process tree and stops pumping its output.
+     */
+    private static void cancel(Process process, ProcessOutputPump pump, ProcessWatchdog watchdog) {
+        watchdog.stop();
+        final Map<Long, Long> descendants =
+                ProcessTree.destroy(process, false, Collections.<Long, Long>emptyMap());
+        final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(CANCELLATION_GRACE_PERIOD_MILLIS);
+        boolean interrupted = false;
+        while (ProcessTree.isAlive(process) && System.nanoTime() - deadline < 0) {
+            try {
+                Thread.sleep(10);
+            } catch (InterruptedException e) {
+                interrupted = true;
+                break;
+            }
+        }
+        ProcessTree.destroy(process, true, descendants);
+        pump.stop();
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void checkCancelled(CancellationToken token) {
+        if (token.isCancelled() || Thread.currentThread().isInterrupted()) {
+            throw new SphinxException("Sphinx has been cancelled");
+        }
+    }
+
+    /**
+     * Returns the PlantUML JAR in the class path. The JAR is located as a resource, so that no class is loaded
+     * from it.
+     *
+     * @return the JAR, or {@code null} if PlantUML is not in the class path
+     */
+    private static File findPlantUmlJar(SphinxRunnerLogger logger) {
+        requireNonNull(logger, "logger");
+        final File plantUmlJar = findPlantUmlJar();
+        if (plantUmlJar == null) {
+            logger.log("PlantUML JAR not found in the class path; PlantUML diagrams will not be rendered. " +
+                       "Add net.sourceforge.plantuml:plantuml to the class path to render them.");
+        }
+        return plantUmlJar;
+    }
+
+    public static File findPlantUmlJar() {
+        final ClassLoader classLoader = SphinxRunner.class.getClassLoader();
+        final URL url = classLoader != null ? classLoader.getResource(PLANTUML_CLASS_RESOURCE)
+                                            : ClassLoader.getSystemResource(PLANTUML_CLASS_RESOURCE);
+        if (url == null || !"jar".equals(url.getProtocol())) {
+            return null;
+        }
+
+        // jar:file:/path/to/plantuml.jar!/net/sourceforge/plantuml/UmlDiagram.class
+        final String path = url.getPath();
+        final int separatorIndex = path.indexOf("!/");
+        if (separatorIndex < 0 || !path.startsWith("file:")) {
+            return null;
+        }
+        try {
+            return new File(new URI(path.substring(0, separatorIndex)));
+        } catch (URISyntaxException | IllegalArgumentException e) {
+            return new File(path.substring("file:".length(), separatorIndex));
+        }
+    }
+
+    private Path downloadSphinxBinary(CancellationToken token, SphinxRunnerListener listener) {
+        if (binaryUrl.startsWith("file:")) {
+            final File f = localBinary();
             if (f == null || !f.exists()) {
                 throw new SphinxException("failed to locate Sphinx binary: " + binaryUrl);
             }
+            listener.onBinaryResolved(f.toPath(), true);
             return f.toPath();
         }
 
-        final File binaryDir = new File(binaryCacheDir, binaryUrl.replaceAll("[/\\\\<>:\"|?*]", "_"));
+        final File binaryDir = cacheEntryDir();
         binaryDir.mkdirs();
 
         if (!binaryDir.isDirectory()) {
@@ -256,8 +557,11 @@ public class SphinxRunner {
         final Path binary = new File(binaryDir, binaryName).toPath();
         final Path sha256 = new File(binaryDir, sha256Name).toPath();
         if (Files.exists(binary)) {
-            // Downloaded already.
-            return binary;
+            // Downloaded already; make sure it has not been truncated or corrupted since then.
+            if (verifyCachedBinary(binary, sha256, listener)) {
+                listener.onBinaryResolved(binary, true);
+                return binary;
+            }
         }
 
         final URI binaryUri = URI.create(binaryUrl);
@@ -267,35 +571,22 @@ public class SphinxRunner {
         try {
             // Download the binary and sha256 checksum.
             tmpBinary = newTempExecutableFile(binary.getParent(), binaryName);
-            download(binaryUri, tmpBinary);
+            download(binaryUri, tmpBinary, token, listener);
             tmpSha256 = newTempRegularFile(binary.getParent(), sha256Name);
-            download(sha256Uri, tmpSha256);
+            download(sha256Uri, tmpSha256, token, listener);
 
             // Make sure the sha256 checksum is valid.
-            final List<String> sha256Lines = Files.readAllLines(tmpSha256, StandardCharsets.US_ASCII);
-            if (sha256Lines.size() != 1 || !sha256Lines.get(0).matches("^[0-9a-fA-F]{64}(?:\\s.*$|$)")) {
+            final String expectedSha256 = readSha256(tmpSha256);
+            if (expectedSha256 == null) {
                 throw new SphinxException("invalid content: " + sha256Uri);
             }
 
-            final Sha256 digest = new Sha256();
-            final byte[] buffer = new byte[65536];
-            try (FileInputStream in = new FileInputStream(tmpBinary.toFile())) {
-                for (;;) {
-                    final int readBytes = in.read(buffer);
-                    if (readBytes < 0) {
-                        break;
-                    }
-                    if (readBytes != 0) {
-                        digest.update(buffer, 0, readBytes);
-                    }
-                }
-            }
-
-            final byte[] actualSha256Sum = new byte[digest.getDigestLen()];
-            digest.finishDigest(actualSha256Sum, 0);
-            if (!new BigInteger(sha256Lines.get(0), 16).equals(new BigInteger(1, actualSha256Sum))) {
+            final long verificationStartTime = System.nanoTime();
+            final String actualSha256 = SphinxUtil.toHexString(SphinxUtil.sha256(tmpBinary));
+            if (!actualSha256.equals(expectedSha256)) {
                 throw new SphinxException("mismatching checksum: " + binaryUri);
             }
+            listener.onBinaryVerified(tmpBinary, actualSha256, System.nanoTime() - verificationStartTime);
 
             // Move the downloaded and verified files to the desired locations.
             Files.move(tmpSha256, sha256,
@@ -307,6 +598,12 @@ public class SphinxRunner {
                        StandardCopyOption.ATOMIC_MOVE,
                        StandardCopyOption.REPLACE_EXISTING);
             tmpBinary = null;
+            try {
+                VerificationStamp.record(binary, actualSha256);
+            } catch (IOException e) {
+                listener.onWarning("Failed to record the verification of the Sphinx binary: " + binary, e);
+            }
+            listener.onBinaryResolved(binary, false);
             return binary;
         } catch (SphinxException e) {
             throw e;
@@ -330,6 +627,58 @@ public class SphinxRunner {
         }
     }
 
+    /**
+     * Verifies the cached binary against its checksum. The binary is hashed only when it has changed since
+     * the last verification, which is determined by its {@link VerificationStamp}.
+     *
+     * @return {@code true} if the binary is intact, {@code false} if it has to be downloaded again
+     */
+    private static boolean verifyCachedBinary(Path binary, Path sha256, SphinxRunnerListener listener) {
+        try {
+            final String expectedSha256 = Files.exists(sha256) ? readSha256(sha256) : null;
+            if (expectedSha256 == null) {
+                listener.onWarning("The checksum of the cached Sphinx binary is missing or invalid; " +
+                                   "downloading again: " + sha256, null);
+                return false;
+            }
+            if (VerificationStamp.isValid(binary, expectedSha256)) {
+                return true;
+            }
+
+            final long verificationStartTime = System.nanoTime();
+            final String actualSha256 = SphinxUtil.toHexString(SphinxUtil.sha256(binary));
+            if (!actualSha256.equals(expectedSha256)) {
+                listener.onWarning("The cached Sphinx binary is corrupt; downloading again: " + binary, null);
+                VerificationStamp.delete(binary);
+                return false;
+            }
+            listener.onBinaryVerified(binary, actualSha256, System.nanoTime() - verificationStartTime);
+
+            try {
+                VerificationStamp.record(binary, actualSha256);
+            } catch (IOException e) {
+                listener.onWarning("Failed to record the verification of the Sphinx binary: " + binary, e);
+            }
+            return true;
+        } catch (IOException e) {
+            listener.onWarning("Failed to verify the cached Sphinx binary; downloading again: " + binary, e);
+            return false;
+        }
+    }
+
+    /**
+     * Reads the lower-cased hexadecimal checksum from the specified {@code .sha256} file.
+     *
+     * @return the checksum, or {@code null} if the file does not contain a valid checksum
+     */
+    private static String readSha256(Path sha256) throws IOException {
+        final List<String> lines = Files.readAllLines(sha256, StandardCharsets.US_ASCII);
+        if (lines.size() != 1 || !lines.get(0).matches("^[0-9a-fA-F]{64}(?:\\s.*$|$)")) {
+            return null;
+        }
+        return lines.get(0).substring(0, 64).toLowerCase(Locale.US);
+    }
+
     private static Path newTempExecutableFile(Path dir, String name) throws IOException {
         if (osDetector.isWindows()) {
             return Files.createTempFile(dir, name + '.', ".tmp");
@@ -350,7 +699,7 @@ public class SphinxRunner {
         }
     }
 
-    private void download(URI uri, Path path) {
+    private static void download(URI uri, Path path, CancellationToken token, SphinxRunnerListener listener) {
         URL url;
         try {
             url = uri.toURL();
@@ -359,7 +708,9 @@ public class SphinxRunner {
         }
 
         for (;;) {
-            logger.log("Download " + url);
+            checkCancelled(token);
+            final URI currentUri = toUri(url);
+            listener.onDownloadStarted(currentUri);
             HttpURLConnection conn = null;
             try {
                 conn = (HttpURLConnection) url.openConnection();
@@ -409,11 +760,13 @@ public class SphinxRunner {
                 }
 
                 // Download the content into a new file.
-                final String contentLength = conn.getHeaderField("Content-Length");
-                long lastLogTimeNanos = System.nanoTime();
+                final long contentLength = conn.getHeaderFieldLong("Content-Length", -1);
+                final long startTimeNanos = System.nanoTime();
+                long progress = 0;
+                long lastProgressPercent = 0;
+                long lastProgressTimeNanos = startTimeNanos;
                 try (InputStream in = conn.getInputStream()) {
                     final byte[] buffer = new byte[65536];
-                    long progress = 0;
                     try (FileOutputStream out = new FileOutputStream(path.toFile())) {
                         for (;;) {
                             final int readBytes = in.read(buffer);
@@ -423,16 +776,27 @@ public class SphinxRunner {
                             if (readBytes != 0) {
                                 out.write(buffer, 0, readBytes);
                                 progress += readBytes;
-                                final long currentTimeNanos = System.nanoTime();
-                                if (currentTimeNanos - lastLogTimeNanos >= TimeUnit.SECONDS.toNanos(1)) {
-                                    logger.log("Download " + progress + '/' +
-                                               (contentLength != null ? contentLength : "?"));
-                                    lastLogTimeNanos = currentTimeNanos;
+                                // Notify on every percent, or periodically if the length is unknown.
+                                if (contentLength > 0) {
+                                    final long percent = progress * 100 / contentLength;
+                                    if (percent > lastProgressPercent) {
+                                        lastProgressPercent = percent;
+                                        listener.onDownloadProgress(currentUri, progress, contentLength);
+                                    }
+                                } else {
+                                    final long currentTimeNanos = System.nanoTime();
+                                    if (currentTimeNanos - lastProgressTimeNanos >=
+                                        DOWNLOAD_PROGRESS_INTERVAL_NANOS) {
+                                        lastProgressTimeNanos = currentTimeNanos;
+                                        listener.onDownloadProgress(currentUri, progress, contentLength);
+                                    }
                                 }
+                                checkCancelled(token);
                             }
                         }
                     }
                 }
+                listener.onDownloadFinished(currentUri, progress, System.nanoTime() - startTimeNanos);
                 return;
             } catch (SphinxException e) {
                 throw e;
@@ -446,9 +810,17 @@ public class SphinxRunner {
         }
     }
 
+    private static URI toUri(URL url) {
+        try {
+            return url.toURI();
+        } catch (URISyntaxException e) {
+            throw new SphinxException("invalid URL: " + url, e);
+        }
+    }
+
     private static class OsDetector extends Detector {
 
-        private String classifier;
+        private volatile String classifier;
 
         boolean isWindows() {
             return classifier().startsWith("windows");
@@ -462,11 +834,17 @@ public class SphinxRunner {
             }
         }
 
-        private String classifier() {
+        private synchronized String classifier() {
             if (classifier != null) {
                 return classifier;
             }
 
+            // Reuse the classifier detected by os-maven-plugin if available.
+            final String detectedClassifier = System.getProperty(Detector.DETECTED_CLASSIFIER);
+            if (detectedClassifier != null && !detectedClassifier.isEmpty()) {
+                return classifier = detectedClassifier;
+            }
+
             final Properties properties = new Properties();
             try {
                 detect(properties, Collections.<String>emptyList());
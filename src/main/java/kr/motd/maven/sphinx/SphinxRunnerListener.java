@@ -0,0 +1,87 @@
+package kr.motd.maven.sphinx;
+
+import java.io.File;
+import java.net.URI;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Receives the events that occur while resolving the Sphinx binary, running Sphinx and post-processing
+ * its output. Extend {@link SphinxRunnerListenerAdapter} to handle only the events of interest.
+ *
+ * <p>All durations are in nanoseconds. The methods may be invoked from a thread other than the one which
+ * invoked {@link SphinxRunner#run(File, List)}, and must not block.</p>
+ */
+public interface SphinxRunnerListener {
+
+    /**
+     * Invoked when the Sphinx binary has been resolved.
+     *
+     * @param cached {@code true} if the binary was found in the cache or the file system,
+     *               {@code false} if it has been downloaded
+     */
+    void onBinaryResolved(Path binary, boolean cached);
+
+    /**
+     * Invoked when a download from the specified {@link URI} starts, including when following a redirect.
+     */
+    void onDownloadStarted(URI uri);
+
+    /**
+     * Invoked while a download is in progress, whenever another percent of the content has been received, or
+     * periodically if the length of the content is unknown.
+     *
+     * @param totalBytes the total number of bytes, or {@code -1} if unknown
+     */
+    void onDownloadProgress(URI uri, long transferredBytes, long totalBytes);
+
+    /**
+     * Invoked when a download from the specified {@link URI} has been completed.
+     */
+    void onDownloadFinished(URI uri, long transferredBytes, long elapsedNanos);
+
+    /**
+     * Invoked when the SHA-256 checksum of the downloaded binary has been verified.
+     */
+    void onBinaryVerified(Path binary, String sha256, long elapsedNanos);
+
+    /**
+     * Invoked when the Sphinx process has been spawned.
+     */
+    void onProcessStarted(List<String> command, File workingDir);
+
+    /**
+     * Invoked when the Sphinx process has written a line to its standard output or error.
+     *
+     * @param line the line without the line separator
+     * @param error {@code true} if the line has been written to the standard error
+     */
+    void onProcessOutput(String line, boolean error);
+
+    /**
+     * Invoked when the Sphinx process has exited.
+     *
+     * @param usage the resources used by the process tree
+     */
+    void onProcessExited(int exitCode, long elapsedNanos, ProcessResourceUsage usage);
+
+    /**
+     * Invoked when a post-processing pass over the generated output starts.
+     */
+    void onPostProcessingStarted(String name, File dir);
+
+    /**
+     * Invoked when a post-processing pass over the generated output has been completed.
+     *
+     * @param scannedFiles the number of the files examined by the pass
+     * @param modifiedFiles the number of the files modified by the pass
+     * @param modifiedBytes the total size of the modified files
+     */
+    void onPostProcessingFinished(String name, File dir, int scannedFiles, int modifiedFiles,
+                                  long modifiedBytes, long elapsedNanos);
+
+    /**
+     * Invoked when a non-fatal problem has occurred.
+     */
+    void onWarning(String message, Throwable cause);
+}
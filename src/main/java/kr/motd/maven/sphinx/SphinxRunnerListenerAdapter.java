@@ -0,0 +1,46 @@
+package kr.motd.maven.sphinx;
+
+import java.io.File;
+import java.net.URI;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * A {@link SphinxRunnerListener} which ignores all events.
+ */
+public abstract class SphinxRunnerListenerAdapter implements SphinxRunnerListener {
+
+    @Override
+    public void onBinaryResolved(Path binary, boolean cached) {}
+
+    @Override
+    public void onDownloadStarted(URI uri) {}
+
+    @Override
+    public void onDownloadProgress(URI uri, long transferredBytes, long totalBytes) {}
+
+    @Override
+    public void onDownloadFinished(URI uri, long transferredBytes, long elapsedNanos) {}
+
+    @Override
+    public void onBinaryVerified(Path binary, String sha256, long elapsedNanos) {}
+
+    @Override
+    public void onProcessStarted(List<String> command, File workingDir) {}
+
+    @Override
+    public void onProcessOutput(String line, boolean error) {}
+
+    @Override
+    public void onProcessExited(int exitCode, long elapsedNanos, ProcessResourceUsage usage) {}
+
+    @Override
+    public void onPostProcessingStarted(String name, File dir) {}
+
+    @Override
+    public void onPostProcessingFinished(String name, File dir, int scannedFiles, int modifiedFiles,
+                                         long modifiedBytes, long elapsedNanos) {}
+
+    @Override
+    public void onWarning(String message, Throwable cause) {}
+}
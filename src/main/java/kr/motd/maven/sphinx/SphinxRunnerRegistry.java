@@ -0,0 +1,84 @@
+package kr.motd.maven.sphinx;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.WeakHashMap;
+
+import org.apache.maven.execution.MavenSession;
+
+/**
+ * Caches {@link SphinxRunner}s by their configuration for the duration of a Maven session, so that the modules
+ * of a reactor build which share the same configuration do not set up a runner and resolve and verify
+ * the Sphinx binary again. A cached runner remembers the binary it resolved, and the events of each run are
+ * delivered to the listener given to {@link SphinxRunner#run(File, List, ProcessLimits, CancellationToken,
+ * SphinxRunnerListener)}, so a runner can be shared by the modules built in parallel.
+ */
+final class SphinxRunnerRegistry {
+
+    /**
+     * The registries keyed by {@link MavenSession#getRequest()}, which is shared by the copies of the session
+     * created for the modules built in parallel.
+     */
+    private static final Map<Object, SphinxRunnerRegistry> registries = new WeakHashMap<>();
+
+    static SphinxRunnerRegistry get(MavenSession session) {
+        synchronized (registries) {
+            SphinxRunnerRegistry registry = registries.get(session.getRequest());
+            if (registry == null) {
+                registry = new SphinxRunnerRegistry();
+                registries.put(session.getRequest(), registry);
+            }
+            return registry;
+        }
+    }
+
+    private final Map<List<Object>, Entry> runners = new HashMap<>();
+    private long savedSetupNanos;
+
+    private SphinxRunnerRegistry() {}
+
+    /**
+     * Returns the {@link SphinxRunner} with the specified configuration, creating a new one if there is none.
+     */
+    synchronized SphinxRunner runner(String binaryUrl, File binaryCacheDir,
+                                     Map<String, String> environments, String dotBinary, File plantUmlJar) {
+        final List<Object> key = Arrays.<Object>asList(
+                binaryUrl, binaryCacheDir, new TreeMap<>(environments), dotBinary, plantUmlJar);
+        final Entry entry = runners.get(key);
+        if (entry != null) {
+            savedSetupNanos += entry.setupNanos;
+            return entry.runner;
+        }
+
+        final long startTime = System.nanoTime();
+        final SphinxRunner runner = new SphinxRunner(binaryUrl, binaryCacheDir, environments, dotBinary,
+                                                     plantUmlJar, new SphinxRunnerListenerAdapter() {});
+        runners.put(key, new Entry(runner, System.nanoTime() - startTime));
+        return runner;
+    }
+
+    /**
+     * Returns the total time saved by reusing the runners and the binaries they resolved.
+     */
+    synchronized long savedNanos() {
+        long savedNanos = savedSetupNanos;
+        for (Entry e : runners.values()) {
+            savedNanos += e.runner.savedBinaryResolutionNanos();
+        }
+        return savedNanos;
+    }
+
+    private static final class Entry {
+        final SphinxRunner runner;
+        final long setupNanos;
+
+        Entry(SphinxRunner runner, long setupNanos) {
+            this.runner = runner;
+            this.setupNanos = setupNanos;
+        }
+    }
+}
@@ -4,29 +4,93 @@ import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.Arrays;
+import java.util.Locale;
 
 public final class SphinxUtil {
 
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    private static final boolean WINDOWS =
+            System.getProperty("os.name", "").toLowerCase(Locale.US).startsWith("windows");
+
+    /**
+     * The files smaller than this are read rather than memory-mapped, because mapping costs more than
+     * copying for small files.
+     */
+    private static final long MIN_MAPPED_SIZE = 1024 * 1024;
+    private static final long MAX_MAPPED_REGION_SIZE = 256 * 1024 * 1024;
+
+    private static final boolean JDK_SHA256_AVAILABLE;
+
+    static {
+        boolean available;
+        try {
+            MessageDigest.getInstance("SHA-256");
+            available = true;
+        } catch (NoSuchAlgorithmException e) {
+            available = false;
+        }
+        JDK_SHA256_AVAILABLE = available;
+    }
+
     /**
      * Replaces the line separators of the generated text files with the platform default line separator.
      */
     public static void convertLineSeparators(File dir) throws IOException {
+        convertLineSeparators(dir, new SphinxRunnerListenerAdapter() {});
+    }
+
+    /**
+     * Replaces the line separators of the generated text files with the platform default line separator,
+     * notifying the specified {@link SphinxRunnerListener} of the progress.
+     */
+    public static void convertLineSeparators(File dir, SphinxRunnerListener listener) throws IOException {
+        final String name = "convertLineSeparators";
+        final long startTime = System.nanoTime();
+        listener.onPostProcessingStarted(name, dir);
+        final long[] stats = new long[3];
+        convertLineSeparators(dir, stats);
+        listener.onPostProcessingFinished(name, dir, (int) stats[0], (int) stats[1], stats[2],
+                                          System.nanoTime() - startTime);
+    }
+
+    /**
+     * @param stats the number of the scanned files, the number of the modified files and
+     *              the total size of the modified files
+     */
+    private static void convertLineSeparators(File dir, long[] stats) throws IOException {
         if (!dir.isDirectory()) {
             return;
         }
 
         for (File f : dir.listFiles()) {
             if (f.isDirectory()) {
-                convertLineSeparators(f);
+                convertLineSeparators(f, stats);
             } else if (isTextFile(f)) {
-                convertLineSeparators(f, System.lineSeparator());
+                stats[0]++;
+                final long newLength = convertLineSeparators(f, System.lineSeparator());
+                if (newLength >= 0) {
+                    stats[1]++;
+                    stats[2] += newLength;
+                }
             }
         }
     }
 
-    private static void convertLineSeparators(File f, String lineSeparatorStr) throws IOException {
+    /**
+     * @return the new length of the file, or {@code -1} if the file has not been modified
+     */
+    private static long convertLineSeparators(File f, String lineSeparatorStr) throws IOException {
         assert f.length() <= Integer.MAX_VALUE : "text file larger than 2 GiB";
 
         final byte[] content = new byte[(int) f.length()];
@@ -48,7 +112,7 @@ public final class SphinxUtil {
         for (final byte b : content) {
             if (b == 0) {
                 // Maybe not a text file or UTF-16; give up.
-                return;
+                return -1;
             }
 
             if (b == '\n') {
@@ -70,12 +134,126 @@ public final class SphinxUtil {
 
         final byte[] newContent = out.toByteArray();
         if (Arrays.equals(content, newContent)) {
-            return;
+            return -1;
         }
 
         try (FileOutputStream fout = new FileOutputStream(f)) {
             fout.write(newContent);
         }
+        return newContent.length;
+    }
+
+    /**
+     * Reads all bytes from the specified {@link InputStream} until the end of the stream.
+     */
+    static byte[] readFully(InputStream in) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final byte[] buf = new byte[8192];
+        for (;;) {
+            final int readBytes = in.read(buf);
+            if (readBytes < 0) {
+                break;
+            }
+            out.write(buf, 0, readBytes);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Returns the hexadecimal SHA-256 checksum of the specified data.
+     */
+    static String sha256(byte[] data) {
+        return toHexString(sha256(ByteBuffer.wrap(data)));
+    }
+
+    /**
+     * Returns the SHA-256 checksum of the remaining bytes of the specified buffer. The JDK implementation is
+     * used if available, because it is intrinsified on most platforms, and {@link Sha256} otherwise.
+     */
+    static byte[] sha256(ByteBuffer data) {
+        final MessageDigest jdkDigest = newJdkSha256();
+        if (jdkDigest != null) {
+            jdkDigest.update(data);
+            return jdkDigest.digest();
+        }
+
+        final Sha256 digest = new Sha256();
+        digest.update(data);
+        final byte[] sum = new byte[digest.getDigestLen()];
+        digest.finishDigest(sum, 0);
+        return sum;
+    }
+
+    /**
+     * Returns the SHA-256 checksum of the content of the specified file, from its current position to its end.
+     * The file is memory-mapped in large regions, except on Windows where a mapped file cannot be moved or
+     * deleted until the mapping is garbage-collected.
+     */
+    static byte[] sha256(FileChannel ch) throws IOException {
+        final MessageDigest jdkDigest = newJdkSha256();
+        final Sha256 digest = jdkDigest == null ? new Sha256() : null;
+
+        long position = ch.position();
+        final long size = ch.size();
+        if (WINDOWS || size - position < MIN_MAPPED_SIZE) {
+            final ByteBuffer buf = ByteBuffer.allocateDirect(65536);
+            while (ch.read(buf) >= 0) {
+                buf.flip();
+                update(jdkDigest, digest, buf);
+                buf.clear();
+            }
+        } else {
+            while (position < size) {
+                final long length = Math.min(size - position, MAX_MAPPED_REGION_SIZE);
+                update(jdkDigest, digest, ch.map(MapMode.READ_ONLY, position, length));
+                position += length;
+            }
+            ch.position(position);
+        }
+
+        if (jdkDigest != null) {
+            return jdkDigest.digest();
+        }
+        final byte[] sum = new byte[digest.getDigestLen()];
+        digest.finishDigest(sum, 0);
+        return sum;
+    }
+
+    /**
+     * Returns the SHA-256 checksum of the content of the specified file.
+     */
+    static byte[] sha256(Path file) throws IOException {
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            return sha256(ch);
+        }
+    }
+
+    private static void update(MessageDigest jdkDigest, Sha256 digest, ByteBuffer data) {
+        if (jdkDigest != null) {
+            jdkDigest.update(data);
+        } else {
+            digest.update(data);
+        }
+    }
+
+    private static MessageDigest newJdkSha256() {
+        if (!JDK_SHA256_AVAILABLE) {
+            return null;
+        }
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            return null;
+        }
+    }
+
+    static String toHexString(byte[] data) {
+        final char[] hex = new char[data.length * 2];
+        for (int i = 0; i < data.length; i++) {
+            hex[i * 2] = HEX_DIGITS[(data[i] >>> 4) & 0xF];
+            hex[i * 2 + 1] = HEX_DIGITS[data[i] & 0xF];
+        }
+        return new String(hex);
     }
 
     private static boolean isTextFile(File f) {
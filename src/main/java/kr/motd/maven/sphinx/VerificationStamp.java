@@ -0,0 +1,119 @@
+package kr.motd.maven.sphinx;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.UserDefinedFileAttributeView;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Records that a file has been verified against its SHA-256 checksum, along with the size, last modified time
+ * and file key (e.g. the inode) of the file at the time of the verification, so that the file does not have to
+ * be hashed again until any of them changes. The stamp is stored as a user-defined extended attribute of
+ * the file if the file system supports it, or in a sidecar file next to it otherwise.
+ */
+final class VerificationStamp {
+
+    private static final String ATTRIBUTE_NAME = "kr.motd.maven.sphinx.verified";
+    private static final String SIDECAR_SUFFIX = ".verified";
+
+    /**
+     * Returns whether the specified file has been verified against the specified checksum and
+     * has not changed since then.
+     */
+    static boolean isValid(Path file, String sha256) {
+        try {
+            final String stamp = read(file);
+            return stamp != null && stamp.equals(newStamp(file, sha256));
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Records that the specified file has been verified against the specified checksum.
+     */
+    static void record(Path file, String sha256) throws IOException {
+        final byte[] stamp = newStamp(file, sha256).getBytes(StandardCharsets.US_ASCII);
+        final Path sidecar = sidecar(file);
+        final UserDefinedFileAttributeView view =
+                Files.getFileAttributeView(file, UserDefinedFileAttributeView.class);
+        if (view != null) {
+            try {
+                view.write(ATTRIBUTE_NAME, ByteBuffer.wrap(stamp));
+                Files.deleteIfExists(sidecar);
+                return;
+            } catch (IOException | UnsupportedOperationException e) {
+                // The file system does not support user-defined attributes; use a sidecar file.
+            }
+        }
+
+        final Path tmp = Files.createTempFile(file.getParent(), sidecar.getFileName().toString() + '.', ".tmp");
+        try {
+            Files.write(tmp, stamp);
+            Files.move(tmp, sidecar, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    /**
+     * Removes the stamp of the specified file.
+     */
+    static void delete(Path file) throws IOException {
+        Files.deleteIfExists(sidecar(file));
+        final UserDefinedFileAttributeView view =
+                Files.getFileAttributeView(file, UserDefinedFileAttributeView.class);
+        if (view != null && Files.exists(file)) {
+            try {
+                if (view.list().contains(ATTRIBUTE_NAME)) {
+                    view.delete(ATTRIBUTE_NAME);
+                }
+            } catch (IOException | UnsupportedOperationException e) {
+                // The file system does not support user-defined attributes.
+            }
+        }
+    }
+
+    private static String read(Path file) throws IOException {
+        final UserDefinedFileAttributeView view =
+                Files.getFileAttributeView(file, UserDefinedFileAttributeView.class);
+        if (view != null) {
+            try {
+                if (view.list().contains(ATTRIBUTE_NAME)) {
+                    final ByteBuffer buf = ByteBuffer.allocate(view.size(ATTRIBUTE_NAME));
+                    view.read(ATTRIBUTE_NAME, buf);
+                    buf.flip();
+                    return StandardCharsets.US_ASCII.decode(buf).toString();
+                }
+            } catch (IOException | UnsupportedOperationException e) {
+                // The file system does not support user-defined attributes; try the sidecar file.
+            }
+        }
+
+        final Path sidecar = sidecar(file);
+        if (!Files.exists(sidecar)) {
+            return null;
+        }
+        return new String(Files.readAllBytes(sidecar), StandardCharsets.US_ASCII);
+    }
+
+    private static String newStamp(Path file, String sha256) throws IOException {
+        final BasicFileAttributes attrs = Files.readAttributes(file, BasicFileAttributes.class);
+        final Object fileKey = attrs.fileKey();
+        return sha256.toLowerCase(Locale.US) + ' ' + attrs.size() + ' ' +
+               attrs.lastModifiedTime().to(TimeUnit.NANOSECONDS) + ' ' +
+               (fileKey != null ? fileKey : "-");
+    }
+
+    private static Path sidecar(Path file) {
+        return file.resolveSibling(file.getFileName() + SIDECAR_SUFFIX);
+    }
+
+    private VerificationStamp() {}
+}
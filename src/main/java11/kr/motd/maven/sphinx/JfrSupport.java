@@ -0,0 +1,245 @@
+package kr.motd.maven.sphinx;
+
+import java.io.File;
+import java.net.URI;
+import java.nio.file.Path;
+import java.util.List;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Frequency;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * Provides the {@link SphinxRunnerListener} which records Java Flight Recorder events.
+ *
+ * <p>The events are created only when they are enabled in a recording, so the listener has no measurable
+ * overhead when nothing is being recorded.</p>
+ */
+final class JfrSupport {
+
+    /**
+     * Returns a new {@link SphinxRunnerListener} which records Java Flight Recorder events,
+     * or {@code null} if Java Flight Recorder is not available.
+     */
+    static SphinxRunnerListener newListener() {
+        try {
+            if (!FlightRecorder.isAvailable()) {
+                return null;
+            }
+        } catch (Throwable t) {
+            return null;
+        }
+        return new JfrListener();
+    }
+
+    private JfrSupport() {}
+
+    private static final class JfrListener extends SphinxRunnerListenerAdapter {
+
+        private DownloadEvent downloadEvent;
+        private ProcessEvent processEvent;
+        private PostProcessingEvent postProcessingEvent;
+
+        @Override
+        public void onBinaryResolved(Path binary, boolean cached) {
+            final BinaryResolutionEvent e = new BinaryResolutionEvent();
+            if (e.isEnabled()) {
+                e.binary = binary.toString();
+                e.cacheHit = cached;
+                e.commit();
+            }
+        }
+
+        @Override
+        public synchronized void onDownloadStarted(URI uri) {
+            final DownloadEvent e = new DownloadEvent();
+            if (e.isEnabled()) {
+                e.begin();
+                downloadEvent = e;
+            } else {
+                downloadEvent = null;
+            }
+        }
+
+        @Override
+        public synchronized void onDownloadFinished(URI uri, long transferredBytes, long elapsedNanos) {
+            final DownloadEvent e = downloadEvent;
+            downloadEvent = null;
+            if (e != null) {
+                e.end();
+                if (e.shouldCommit()) {
+                    e.uri = uri.toString();
+                    e.bytes = transferredBytes;
+                    e.throughput = elapsedNanos > 0 ? transferredBytes * 1000000000L / elapsedNanos : 0;
+                    e.commit();
+                }
+            }
+        }
+
+        @Override
+        public void onBinaryVerified(Path binary, String sha256, long elapsedNanos) {
+            final VerificationEvent e = new VerificationEvent();
+            if (e.isEnabled()) {
+                e.binary = binary.toString();
+                e.sha256 = sha256;
+                e.verificationTime = elapsedNanos;
+                e.commit();
+            }
+        }
+
+        @Override
+        public synchronized void onProcessStarted(List<String> command, File workingDir) {
+            final ProcessEvent e = new ProcessEvent();
+            if (e.isEnabled()) {
+                e.begin();
+                e.command = String.join(" ", command);
+                processEvent = e;
+            } else {
+                processEvent = null;
+            }
+        }
+
+        @Override
+        public synchronized void onProcessExited(int exitCode, long elapsedNanos, ProcessResourceUsage usage) {
+            final ProcessEvent e = processEvent;
+            processEvent = null;
+            if (e != null) {
+                e.end();
+                if (e.shouldCommit()) {
+                    e.exitCode = exitCode;
+                    e.peakRss = usage.peakRssBytes();
+                    e.cpuTime = usage.cpuTimeNanos();
+                    e.commit();
+                }
+            }
+        }
+
+        @Override
+        public synchronized void onPostProcessingStarted(String name, File dir) {
+            final PostProcessingEvent e = new PostProcessingEvent();
+            if (e.isEnabled()) {
+                e.begin();
+                postProcessingEvent = e;
+            } else {
+                postProcessingEvent = null;
+            }
+        }
+
+        @Override
+        public synchronized void onPostProcessingFinished(String name, File dir, int scannedFiles,
+                                                          int modifiedFiles, long modifiedBytes,
+                                                          long elapsedNanos) {
+            final PostProcessingEvent e = postProcessingEvent;
+            postProcessingEvent = null;
+            if (e != null) {
+                e.end();
+                if (e.shouldCommit()) {
+                    e.name = name;
+                    e.directory = dir.getPath();
+                    e.scannedFiles = scannedFiles;
+                    e.modifiedFiles = modifiedFiles;
+                    e.modifiedBytes = modifiedBytes;
+                    e.commit();
+                }
+            }
+        }
+    }
+
+    @Name("kr.motd.maven.sphinx.BinaryResolution")
+    @Label("Sphinx Binary Resolution")
+    @Category("Sphinx Maven Plugin")
+    @StackTrace(false)
+    static final class BinaryResolutionEvent extends Event {
+        @Label("Binary")
+        String binary;
+
+        @Label("Cache Hit")
+        @Description("Whether the binary was found in the cache or the file system")
+        boolean cacheHit;
+    }
+
+    @Name("kr.motd.maven.sphinx.Download")
+    @Label("Sphinx Binary Download")
+    @Category("Sphinx Maven Plugin")
+    @StackTrace(false)
+    static final class DownloadEvent extends Event {
+        @Label("URI")
+        String uri;
+
+        @Label("Bytes")
+        @DataAmount
+        long bytes;
+
+        @Label("Throughput")
+        @DataAmount
+        @Frequency
+        long throughput;
+    }
+
+    @Name("kr.motd.maven.sphinx.Verification")
+    @Label("Sphinx Binary Verification")
+    @Category("Sphinx Maven Plugin")
+    @StackTrace(false)
+    static final class VerificationEvent extends Event {
+        @Label("Binary")
+        String binary;
+
+        @Label("SHA-256")
+        String sha256;
+
+        @Label("Verification Time")
+        @Timespan
+        long verificationTime;
+    }
+
+    @Name("kr.motd.maven.sphinx.Process")
+    @Label("Sphinx Process")
+    @Category("Sphinx Maven Plugin")
+    @StackTrace(false)
+    static final class ProcessEvent extends Event {
+        @Label("Command")
+        String command;
+
+        @Label("Exit Code")
+        int exitCode;
+
+        @Label("Peak RSS")
+        @Description("The peak resident set size of the process tree, or -1 if unknown")
+        @DataAmount
+        long peakRss;
+
+        @Label("CPU Time")
+        @Description("The CPU time consumed by the process tree, or -1 if unknown")
+        @Timespan
+        long cpuTime;
+    }
+
+    @Name("kr.motd.maven.sphinx.PostProcessing")
+    @Label("Sphinx Post-processing")
+    @Category("Sphinx Maven Plugin")
+    @StackTrace(false)
+    static final class PostProcessingEvent extends Event {
+        @Label("Name")
+        String name;
+
+        @Label("Directory")
+        String directory;
+
+        @Label("Scanned Files")
+        int scannedFiles;
+
+        @Label("Modified Files")
+        int modifiedFiles;
+
+        @Label("Modified Bytes")
+        @DataAmount
+        long modifiedBytes;
+    }
+}
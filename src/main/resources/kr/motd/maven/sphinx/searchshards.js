@@ -0,0 +1,94 @@
+/*
+ * Loads the search index sharded by the prefixes of the terms, generated by sphinx-maven-plugin.
+ * The index without the terms is set immediately, and the shards of the terms are loaded on demand before
+ * a query is executed.
+ */
+var SearchShards = (function () {
+  // The current script is not available when the index is evaluated by Search.loadIndex() of old Sphinx.
+  var scriptSrc = document.currentScript ? document.currentScript.src : "";
+  var baseUrl = scriptSrc ? scriptSrc.substring(0, scriptSrc.lastIndexOf("/") + 1)
+      : typeof DOCUMENTATION_OPTIONS !== "undefined" && DOCUMENTATION_OPTIONS.URL_ROOT || "";
+  var prefixLength = 2;
+  var available = {};
+  var loaded = {};
+  var callbacks = {};
+
+  function shardKey(word) {
+    var prefix = Array.from(word).slice(0, prefixLength).join("");
+    return Array.from(new TextEncoder().encode(prefix), function (b) {
+      return (b < 16 ? "0" : "") + b.toString(16);
+    }).join("");
+  }
+
+  function queryWords(query) {
+    var split = typeof splitQuery === "function" ? splitQuery : function (q) { return q.split(/\s+/); };
+    var stemmer = typeof Stemmer === "function" ? new Stemmer() : null;
+    var words = [];
+    split(query.trim()).forEach(function (term) {
+      var lower = term.toLowerCase();
+      if (!lower || (typeof stopwords !== "undefined" && stopwords.indexOf(lower) !== -1)) return;
+      var word = stemmer ? stemmer.stemWord(lower) : lower;
+      words.push(word[0] === "-" ? word.substr(1) : word);
+    });
+    return words;
+  }
+
+  function load(key, callback) {
+    if (loaded[key]) {
+      callback();
+      return;
+    }
+    if (callbacks[key]) {
+      callbacks[key].push(callback);
+      return;
+    }
+    callbacks[key] = [callback];
+    var script = document.createElement("script");
+    script.src = baseUrl + "_searchindex/" + key + ".js";
+    script.onerror = function () {
+      // Search with the shards loaded so far.
+      addShard(key, {});
+    };
+    document.body.appendChild(script);
+  }
+
+  function addShard(key, shard) {
+    if (loaded[key]) return;
+    loaded[key] = true;
+    ["terms", "titleterms"].forEach(function (name) {
+      var terms = shard[name] || {};
+      Object.keys(terms).forEach(function (term) {
+        Search._index[name][term] = terms[term];
+      });
+    });
+    var pending = callbacks[key] || [];
+    delete callbacks[key];
+    pending.forEach(function (callback) { callback(); });
+  }
+
+  function init(index, keys, length) {
+    prefixLength = length;
+    keys.forEach(function (key) { available[key] = true; });
+
+    var query = Search.query;
+    Search.query = function (q) {
+      var self = this;
+      var keys = queryWords(q).map(shardKey).filter(function (key) {
+        return available[key] && !loaded[key];
+      });
+      if (keys.length === 0) {
+        query.call(self, q);
+        return;
+      }
+      var remaining = keys.length;
+      keys.forEach(function (key) {
+        load(key, function () {
+          if (--remaining === 0) query.call(self, q);
+        });
+      });
+    };
+    Search.setIndex(index);
+  }
+
+  return { init: init, addShard: addShard };
+})();
@@ -0,0 +1,74 @@
+package kr.motd.maven.sphinx;
+
+import static kr.motd.maven.sphinx.TestUtil.NOOP_LISTENER;
+import static kr.motd.maven.sphinx.TestUtil.read;
+import static kr.motd.maven.sphinx.TestUtil.write;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class AssetFingerprinterTest {
+
+    private static final String NL = System.lineSeparator();
+
+    @Rule
+    public final TemporaryFolder tempDir = new TemporaryFolder();
+
+    @Test
+    public void fingerprint() throws Exception {
+        final File dir = tempDir.newFolder("html");
+        write(dir, "_static/basic.css", "body { margin: 0 }");
+        write(dir, "_static/theme.css", "@import url(\"basic.css\");" + NL + "a { background: url(logo.png) }");
+        write(dir, "_static/doctools.js", "var a = 1;");
+        write(dir, "index.html",
+              "<link rel=\"stylesheet\" href=\"_static/theme.css?v=1\" />" + NL +
+              "<script src=\"_static/doctools.js\"></script>" + NL +
+              "<a href=\"https://example.com/_static/theme.css\">x</a>" + NL);
+        write(dir, "sub/page.html", "<script src=\"../_static/doctools.js\"></script>");
+
+        final AssetFingerprinter.Result result = new AssetFingerprinter().fingerprint(dir, NOOP_LISTENER);
+        assertEquals(3, result.assets);
+        assertEquals(2, result.scannedFiles);
+        assertEquals(2, result.modifiedFiles);
+
+        final String index = read(dir, "index.html");
+        final String themeCopy = find(index, "_static/theme\\.[0-9a-f]{8}\\.css");
+        final String jsCopy = find(index, "_static/doctools\\.[0-9a-f]{8}\\.js");
+        assertTrue(index.contains(themeCopy + "?v=1\""));
+        assertTrue(index.contains("https://example.com/_static/theme.css"));
+        assertTrue(index.endsWith(NL));
+        assertEquals("<script src=\"../" + jsCopy + "\"></script>", read(dir, "sub/page.html"));
+
+        // The copy of a style sheet refers to the copies of the style sheets it imports.
+        final String theme = read(dir, themeCopy);
+        assertTrue(theme.matches("@import url\\(\"basic\\.[0-9a-f]{8}\\.css\"\\);" + NL +
+                                 "a \\{ background: url\\(logo\\.png\\) }"));
+        assertTrue(new File(dir, "_static/theme.css").isFile());
+
+        final String manifest = read(dir, AssetFingerprinter.MANIFEST_FILE_NAME);
+        assertTrue(manifest.contains("\"_static/theme.css\": \"" + themeCopy + '"'));
+
+        // Update a script; the old copy is removed and the HTML files refer to the new copy.
+        write(dir, "_static/doctools.js", "var a = 2;");
+        new AssetFingerprinter().fingerprint(dir, NOOP_LISTENER);
+        final String newJsCopy = find(read(dir, "sub/page.html"), "_static/doctools\\.[0-9a-f]{8}\\.js");
+        assertFalse(newJsCopy.equals(jsCopy));
+        assertFalse(new File(dir, jsCopy).exists());
+        assertTrue(read(dir, "index.html").contains(newJsCopy));
+        assertTrue(read(dir, "index.html").contains(themeCopy));
+    }
+
+    private static String find(String content, String regex) {
+        final Matcher m = Pattern.compile(regex).matcher(content);
+        assertTrue(content, m.find());
+        return m.group();
+    }
+}
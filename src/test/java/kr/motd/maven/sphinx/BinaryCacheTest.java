@@ -0,0 +1,89 @@
+package kr.motd.maven.sphinx;
+
+import static kr.motd.maven.sphinx.TestUtil.NOOP_LISTENER;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.attribute.FileTime;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class BinaryCacheTest {
+
+    @Rule
+    public final TemporaryFolder tempDir = new TemporaryFolder();
+
+    @Test
+    public void evictBySize() throws Exception {
+        final File cacheDir = tempDir.newFolder();
+        final File a = newEntry(cacheDir, "a", 3);
+        final File b = newEntry(cacheDir, "b", 2);
+        final File c = newEntry(cacheDir, "c", 1);
+
+        // Evict the least recently used entry only.
+        assertEquals(Collections.singletonList(a), BinaryCache.evict(cacheDir, 2500, 0, NOOP_LISTENER));
+        assertFalse(a.exists());
+        assertTrue(b.exists());
+        assertTrue(c.exists());
+
+        // Never evict the most recently used entry.
+        assertEquals(Collections.singletonList(b), BinaryCache.evict(cacheDir, 1, 0, NOOP_LISTENER));
+        assertTrue(c.exists());
+    }
+
+    @Test
+    public void evictByAge() throws Exception {
+        final File cacheDir = tempDir.newFolder();
+        final File a = newEntry(cacheDir, "a", 10);
+        final File b = newEntry(cacheDir, "b", 0);
+
+        assertEquals(Collections.singletonList(a),
+                     BinaryCache.evict(cacheDir, 0, TimeUnit.DAYS.toMillis(1), NOOP_LISTENER));
+        assertTrue(b.exists());
+    }
+
+    @Test
+    public void doNotEvictEntryInUse() throws Exception {
+        final File cacheDir = tempDir.newFolder();
+        final File a = newEntry(cacheDir, "a", 3);
+        newEntry(cacheDir, "b", 2);
+
+        try (BinaryCache.Lease ignored = BinaryCache.acquire(a);
+             BinaryCache.Lease ignored2 = BinaryCache.acquire(a)) {
+            // Acquiring marks the entry as used.
+            setLastUsed(a, 3);
+            assertEquals(Collections.emptyList(), BinaryCache.evict(cacheDir, 1, 0, NOOP_LISTENER));
+        }
+        assertTrue(a.exists());
+
+        setLastUsed(a, 3);
+        assertEquals(Collections.singletonList(a), BinaryCache.evict(cacheDir, 1, 0, NOOP_LISTENER));
+
+        // Acquiring an evicted entry creates it again.
+        try (BinaryCache.Lease ignored = BinaryCache.acquire(a)) {
+            assertTrue(new File(a, BinaryCache.LOCK_FILE_NAME).isFile());
+        }
+    }
+
+    private static File newEntry(File cacheDir, String name, int lastUsedDaysAgo) throws Exception {
+        final File entry = new File(cacheDir, name);
+        assertTrue(entry.mkdir());
+        Files.write(new File(entry, "sphinx.bin").toPath(), new byte[1000]);
+        BinaryCache.touch(entry);
+        setLastUsed(entry, lastUsedDaysAgo);
+        return entry;
+    }
+
+    private static void setLastUsed(File entry, int daysAgo) throws Exception {
+        Files.setLastModifiedTime(new File(entry, BinaryCache.LAST_USED_FILE_NAME).toPath(),
+                                  FileTime.fromMillis(System.currentTimeMillis() -
+                                                      TimeUnit.DAYS.toMillis(daysAgo)));
+    }
+}
@@ -0,0 +1,97 @@
+package kr.motd.maven.sphinx;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+public class CompositeSphinxRunnerListenerTest {
+
+    @Test
+    public void fanOut() {
+        final List<String> events = new ArrayList<>();
+        final SphinxRunnerListener listener = new CompositeSphinxRunnerListener(
+                new RecordingListener("a", events), new RecordingListener("b", events));
+
+        listener.onProcessStarted(Collections.singletonList("sphinx-build"), new File("."));
+        listener.onProcessOutput("reading sources...", false);
+        listener.onProcessExited(0, 1, ProcessResourceUsage.UNKNOWN);
+        listener.onPostProcessingFinished("syncOutput", new File("."), 3, 2, 1, 0);
+
+        assertEquals(Arrays.asList("a:started [sphinx-build]", "b:started [sphinx-build]",
+                                   "a:output reading sources...", "b:output reading sources...",
+                                   "a:exited 0", "b:exited 0",
+                                   "a:syncOutput 2/3", "b:syncOutput 2/3"), events);
+    }
+
+    @Test
+    public void exceptionIsolation() {
+        final List<String> events = new ArrayList<>();
+        final RuntimeException cause = new IllegalStateException();
+        final List<Throwable> warnings = new ArrayList<>();
+        final SphinxRunnerListener broken = new SphinxRunnerListenerAdapter() {
+            @Override
+            public void onProcessOutput(String line, boolean error) {
+                throw cause;
+            }
+
+            @Override
+            public void onWarning(String message, Throwable cause) {
+                throw new IllegalStateException();
+            }
+        };
+        final SphinxRunnerListener listener = new CompositeSphinxRunnerListener(
+                broken, new RecordingListener("a", events) {
+                    @Override
+                    public void onWarning(String message, Throwable cause) {
+                        warnings.add(cause);
+                    }
+                });
+
+        // Neither the exception of the broken listener nor the one from its onWarning() propagates.
+        listener.onProcessOutput("line", true);
+        listener.onWarning("warning", null);
+
+        assertEquals(Collections.singletonList("a:output line"), events);
+        assertEquals(2, warnings.size());
+        assertSame(cause, warnings.get(0));
+        assertEquals(null, warnings.get(1));
+    }
+
+    private static class RecordingListener extends SphinxRunnerListenerAdapter {
+        private final String name;
+        private final List<String> events;
+
+        RecordingListener(String name, List<String> events) {
+            this.name = name;
+            this.events = events;
+        }
+
+        @Override
+        public void onProcessStarted(List<String> command, File workingDir) {
+            events.add(name + ":started " + command);
+        }
+
+        @Override
+        public void onProcessOutput(String line, boolean error) {
+            events.add(name + ":output " + line);
+        }
+
+        @Override
+        public void onProcessExited(int exitCode, long elapsedNanos, ProcessResourceUsage usage) {
+            events.add(name + ":exited " + exitCode);
+        }
+
+        @Override
+        public void onPostProcessingFinished(String name, File dir, int scannedFiles, int modifiedFiles,
+                                             long modifiedBytes, long elapsedNanos) {
+            events.add(this.name + ':' + name + ' ' + modifiedFiles + '/' + scannedFiles);
+        }
+    }
+}
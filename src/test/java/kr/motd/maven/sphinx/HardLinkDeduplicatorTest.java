@@ -0,0 +1,63 @@
+package kr.motd.maven.sphinx;
+
+import static kr.motd.maven.sphinx.TestUtil.NOOP_LISTENER;
+import static kr.motd.maven.sphinx.TestUtil.write;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Collections;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class HardLinkDeduplicatorTest {
+
+    @Rule
+    public final TemporaryFolder tempDir = new TemporaryFolder();
+
+    @Test
+    public void deduplicate() throws Exception {
+        final File dir = tempDir.newFolder("html");
+        final File otherDir = tempDir.newFolder("other");
+        assumeTrue(HardLinkDeduplicator.isSupported(dir));
+
+        final File a = write(dir, "_static/jquery.js", "jquery");
+        final File b = write(dir, "v2/_static/jquery.js", "jquery");
+        final File c = write(dir, "v2/_static/basic.css", "jquery-");
+        final File d = write(dir, "_static/other.js", "jqueri");
+        final File e = write(otherDir, "_static/basic.css", "jquery-");
+
+        final Object otherFileKey = Files.readAttributes(e.toPath(), BasicFileAttributes.class).fileKey();
+
+        final HardLinkDeduplicator deduplicator = new HardLinkDeduplicator(2);
+        HardLinkDeduplicator.Result result =
+                deduplicator.deduplicate(dir, Collections.singletonList(otherDir), NOOP_LISTENER);
+        assertEquals(4, result.scannedFiles);
+        assertEquals(2, result.linkedFiles);
+        assertEquals(13, result.savedBytes);
+        assertTrue(Files.isSameFile(a.toPath(), b.toPath()));
+        assertFalse(Files.isSameFile(a.toPath(), d.toPath()));
+        // The file in the other directory is linked to, but not replaced.
+        assertTrue(Files.isSameFile(c.toPath(), e.toPath()));
+        assertEquals(otherFileKey, Files.readAttributes(e.toPath(), BasicFileAttributes.class).fileKey());
+
+        // Linked already.
+        result = deduplicator.deduplicate(dir, Collections.<File>emptyList(), NOOP_LISTENER);
+        assertEquals(0, result.linkedFiles);
+        assertEquals(6, result.sharedBytes);
+
+        // Writing an unshared file does not change the other file. Copying one of the two files is enough,
+        // but the file linked to the other directory has to be copied as well.
+        assertEquals(2, HardLinkDeduplicator.unshare(dir));
+        assertFalse(Files.isSameFile(c.toPath(), e.toPath()));
+        Files.write(b.toPath(), "changed".getBytes(StandardCharsets.UTF_8));
+        assertEquals("jquery", new String(Files.readAllBytes(a.toPath()), StandardCharsets.UTF_8));
+    }
+}
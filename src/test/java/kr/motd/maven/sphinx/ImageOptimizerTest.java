@@ -0,0 +1,133 @@
+package kr.motd.maven.sphinx;
+
+import static kr.motd.maven.sphinx.TestUtil.NOOP_LISTENER;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.zip.CRC32;
+
+import javax.imageio.ImageIO;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ImageOptimizerTest {
+
+    @Rule
+    public final TemporaryFolder tempDir = new TemporaryFolder();
+
+    @Test
+    public void recompressLosslessly() throws Exception {
+        final File dir = tempDir.newFolder("html");
+        final File cacheDir = tempDir.newFolder("cache");
+        final BufferedImage original = new BufferedImage(200, 100, BufferedImage.TYPE_INT_ARGB);
+        final Graphics2D g = original.createGraphics();
+        g.setColor(Color.WHITE);
+        g.fillRect(0, 0, 200, 100);
+        g.setColor(Color.BLUE);
+        g.fillRect(10, 10, 50, 30);
+        g.setColor(new Color(255, 0, 0, 128));
+        g.fillOval(80, 20, 60, 60);
+        g.dispose();
+
+        final File png = new File(dir, "diagram.png");
+        ImageIO.write(original, "png", png);
+        final long originalSize = png.length();
+        final File text = new File(dir, "index.html");
+        Files.write(text.toPath(), new byte[] { 'a' });
+
+        final ImageOptimizer optimizer =
+                new ImageOptimizer(cacheDir, Collections.singletonList("no-such-format"), 2);
+        ImageOptimizer.Result result = optimizer.optimize(dir, NOOP_LISTENER);
+        assertEquals(1, result.scannedFiles);
+        assertEquals(1, result.modifiedFiles);
+        assertEquals(0, result.alternativeFiles);
+        assertTrue(png.length() < originalSize);
+        assertEquals(originalSize - png.length(), result.savedBytes());
+        assertFalse(new File(dir, "diagram.png.no-such-format").exists());
+
+        final BufferedImage optimized = ImageIO.read(png);
+        assertArrayEquals(original.getRGB(0, 0, 200, 100, null, 0, 200),
+                          optimized.getRGB(0, 0, 200, 100, null, 0, 200));
+
+        // The optimized image is not processed again.
+        final byte[] content = Files.readAllBytes(png.toPath());
+        result = optimizer.optimize(dir, NOOP_LISTENER);
+        assertEquals(0, result.modifiedFiles);
+        assertArrayEquals(content, Files.readAllBytes(png.toPath()));
+
+        // The original image written again is replaced with the cached one.
+        ImageIO.write(original, "png", png);
+        result = optimizer.optimize(dir, NOOP_LISTENER);
+        assertEquals(1, result.modifiedFiles);
+        assertArrayEquals(content, Files.readAllBytes(png.toPath()));
+    }
+
+    @Test
+    public void keepColorChunks() throws Exception {
+        final File dir = tempDir.newFolder("html");
+        final BufferedImage original = new BufferedImage(200, 100, BufferedImage.TYPE_INT_RGB);
+        final Graphics2D g = original.createGraphics();
+        g.setColor(Color.ORANGE);
+        g.fillRect(20, 20, 100, 50);
+        g.dispose();
+
+        final ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+        ImageIO.write(original, "png", encoded);
+        final byte[] gamma = chunk("gAMA", new byte[] { 0, 0, (byte) 0xb1, (byte) 0x8f });
+        final byte[] text = chunk("tEXt", "Software\0PlantUML".getBytes(StandardCharsets.ISO_8859_1));
+        final byte[] time = chunk("tIME", new byte[] { 0x07, (byte) 0xea, 1, 2, 3, 4, 5 });
+        final ByteArrayOutputStream withChunks = new ByteArrayOutputStream();
+        // The signature (8 bytes) and IHDR (25 bytes) come first.
+        withChunks.write(encoded.toByteArray(), 0, 33);
+        withChunks.write(gamma);
+        withChunks.write(text);
+        withChunks.write(time);
+        withChunks.write(encoded.toByteArray(), 33, encoded.size() - 33);
+        final File png = new File(dir, "diagram.png");
+        Files.write(png.toPath(), withChunks.toByteArray());
+
+        final ImageOptimizer.Result result =
+                new ImageOptimizer(tempDir.newFolder("cache"), Collections.<String>emptyList(), 1)
+                        .optimize(dir, NOOP_LISTENER);
+        assertEquals(1, result.modifiedFiles);
+
+        final byte[] optimized = Files.readAllBytes(png.toPath());
+        assertEquals(33, indexOf(optimized, gamma));
+        assertEquals(-1, indexOf(optimized, text));
+        assertEquals(-1, indexOf(optimized, time));
+        assertArrayEquals(original.getRGB(0, 0, 200, 100, null, 0, 200),
+                          ImageIO.read(png).getRGB(0, 0, 200, 100, null, 0, 200));
+    }
+
+    private static byte[] chunk(String type, byte[] data) {
+        final ByteBuffer buf = ByteBuffer.allocate(12 + data.length);
+        buf.putInt(data.length).put(type.getBytes(StandardCharsets.US_ASCII)).put(data);
+        final CRC32 crc = new CRC32();
+        crc.update(buf.array(), 4, 4 + data.length);
+        buf.putInt((int) crc.getValue());
+        return buf.array();
+    }
+
+    private static int indexOf(byte[] data, byte[] part) {
+        for (int i = 0; i + part.length <= data.length; i++) {
+            if (Arrays.equals(Arrays.copyOfRange(data, i, i + part.length), part)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,86 @@
+package kr.motd.maven.sphinx;
+
+import static kr.motd.maven.sphinx.TestUtil.NOOP_LISTENER;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class OutputOptimizerTest {
+
+    @Rule
+    public final TemporaryFolder tempDir = new TemporaryFolder();
+
+    @Test
+    public void minifyHtml() {
+        assertEquals("<p>a b</p>\n<pre>  x\n\n  y</pre>\n<p>c</p>",
+                     Minifier.html("<p>a    b</p>\n  <!-- comment -->\n<pre>  x\n\n  y</pre>\n\n  <p>c</p>"));
+        assertEquals("<!--[if IE]><p>ie</p><![endif]-->", Minifier.html("<!--[if IE]><p>ie</p><![endif]-->"));
+    }
+
+    @Test
+    public void minifyCss() {
+        assertEquals("/*! license */\na:hover,b{color:red;content:\"a  b\";}div .x{margin:0 auto}",
+                     Minifier.css("/*! license */\n/* comment */\na:hover, b {\n  color: red;\n" +
+                                  "  content: \"a  b\";\n}\n\ndiv .x { margin: 0 auto }\n"));
+    }
+
+    @Test
+    public void minifyJs() {
+        assertEquals("var a=1;var s=\"x  // y\";var t=`a\n  b`;var r=/[/]\\//g;function f(x){return x+ +1;}",
+                     Minifier.js("// comment\nvar a = 1;\nvar s = \"x  // y\";\nvar t = `a\n  b`;\n" +
+                                 "var r = /[/]\\//g;\n/* block */\nfunction f(x) {\n  return x + +1;\n}\n"));
+    }
+
+    @Test
+    public void optimizeChangedFilesOnly() throws Exception {
+        final File dir = tempDir.newFolder("html");
+        final StringBuilder buf = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            buf.append("<p>\n    paragraph ").append(i).append("\n</p>\n");
+        }
+        final File html = new File(dir, "index.html");
+        Files.write(html.toPath(), buf.toString().getBytes(StandardCharsets.UTF_8));
+        final File small = new File(dir, "small.css");
+        Files.write(small.toPath(), "a { }".getBytes(StandardCharsets.UTF_8));
+        final File image = new File(dir, "image.png");
+        Files.write(image.toPath(), new byte[1024]);
+
+        final OutputOptimizer optimizer = new OutputOptimizer(true, true, 2);
+        OutputOptimizer.Result result = optimizer.optimize(dir, NOOP_LISTENER);
+        assertEquals(2, result.scannedFiles);
+        assertEquals(2, result.modifiedFiles);
+        assertEquals(1, result.compressedFiles);
+        assertTrue(result.minificationSavedBytes() > 0);
+        assertTrue(result.compressionSavedBytes() > 0);
+
+        final byte[] minified = Files.readAllBytes(html.toPath());
+        assertTrue(minified.length < buf.length());
+        final File gzip = new File(dir, "index.html.gz");
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(Files.readAllBytes(gzip.toPath())))) {
+            assertArrayEquals(minified, SphinxUtil.readFully(in));
+        }
+        assertFalse(new File(dir, "small.css.gz").exists());
+        assertFalse(new File(dir, "image.png.gz").exists());
+
+        // Nothing has been changed.
+        result = optimizer.optimize(dir, NOOP_LISTENER);
+        assertEquals(2, result.scannedFiles);
+        assertEquals(0, result.modifiedFiles);
+
+        // A removed file's compressed sibling is removed as well.
+        Files.delete(html.toPath());
+        optimizer.optimize(dir, NOOP_LISTENER);
+        assertFalse(gzip.exists());
+    }
+}
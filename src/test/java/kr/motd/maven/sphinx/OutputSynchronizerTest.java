@@ -0,0 +1,64 @@
+package kr.motd.maven.sphinx;
+
+import static kr.motd.maven.sphinx.TestUtil.NOOP_LISTENER;
+import static kr.motd.maven.sphinx.TestUtil.read;
+import static kr.motd.maven.sphinx.TestUtil.write;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class OutputSynchronizerTest {
+
+    @Rule
+    public final TemporaryFolder tempDir = new TemporaryFolder();
+
+    @Test
+    public void sync() throws Exception {
+        final File stagingDir = tempDir.newFolder("staging");
+        final File targetDir = tempDir.newFolder("site");
+        write(stagingDir, "index.html", "index");
+        write(stagingDir, "a/page.html", "page");
+        write(stagingDir, "_static/basic.css", "css");
+        final File otherReport = write(targetDir, "apidocs/index.html", "javadoc");
+
+        final OutputSynchronizer synchronizer = new OutputSynchronizer();
+        OutputSynchronizer.Result result = synchronizer.sync(stagingDir, targetDir, NOOP_LISTENER);
+        assertEquals(Arrays.asList("_static/basic.css", "a/page.html", "index.html"), result.added);
+        assertEquals("page", read(targetDir, "a/page.html"));
+
+        // Rewrite the files as Sphinx does, changing one and deleting another.
+        final File css = new File(targetDir, "_static/basic.css");
+        final FileTime oldTime = FileTime.fromMillis(System.currentTimeMillis() - TimeUnit.HOURS.toMillis(1));
+        Files.setLastModifiedTime(css.toPath(), oldTime);
+        write(stagingDir, "index.html", "index2");
+        write(stagingDir, "_static/basic.css", "css");
+        Files.delete(new File(stagingDir, "a/page.html").toPath());
+
+        result = synchronizer.sync(stagingDir, targetDir, NOOP_LISTENER);
+        assertEquals(2, result.scannedFiles);
+        assertEquals(Collections.emptyList(), result.added);
+        assertEquals(Collections.singletonList("index.html"), result.modified);
+        assertEquals(Collections.singletonList("a/page.html"), result.deleted);
+        assertEquals("index2", read(targetDir, "index.html"));
+        assertEquals(oldTime, Files.getLastModifiedTime(css.toPath()));
+        assertFalse(new File(targetDir, "a").exists());
+        assertTrue(otherReport.isFile());
+
+        final File manifest = new File(tempDir.getRoot(), "changes.json");
+        result.writeJson(manifest);
+        assertEquals("{\n  \"added\": [],\n  \"modified\": [\n    \"index.html\"\n  ],\n" +
+                     "  \"deleted\": [\n    \"a/page.html\"\n  ]\n}\n",
+                     read(tempDir.getRoot(), "changes.json"));
+    }
+}
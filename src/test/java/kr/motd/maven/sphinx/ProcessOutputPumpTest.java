@@ -0,0 +1,100 @@
+package kr.motd.maven.sphinx;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class ProcessOutputPumpTest {
+    @Test
+    public void test() throws Exception {
+        final List<String> stdoutLines = new ArrayList<>();
+        final List<String> stderrLines = new ArrayList<>();
+        final ProcessOutputPump pump = new ProcessOutputPump(new SphinxRunnerListenerAdapter() {
+            @Override
+            public void onProcessOutput(String line, boolean error) {
+                (error ? stderrLines : stdoutLines).add(line);
+            }
+        }, 2);
+
+        final StringBuilder stdout = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            stdout.append("line ").append(i).append(i % 2 == 0 ? "\n" : "\r\n");
+        }
+        stdout.append("last");
+
+        pump.start(new ByteArrayInputStream(stdout.toString().getBytes(StandardCharsets.UTF_8)),
+                   new ByteArrayInputStream("WARNING: foo\rWARNING: 바\n".getBytes(StandardCharsets.UTF_8)));
+        assertTrue(pump.await(10, TimeUnit.SECONDS));
+
+        assertEquals(1001, stdoutLines.size());
+        assertEquals("line 0", stdoutLines.get(0));
+        assertEquals("line 999", stdoutLines.get(999));
+        assertEquals("last", stdoutLines.get(1000));
+        assertEquals(Arrays.asList("WARNING: foo", "WARNING: 바"), stderrLines);
+    }
+
+    @Test
+    public void splitLongLineAtCharBoundary() throws Exception {
+        final List<String> lines = new ArrayList<>();
+        final ProcessOutputPump pump = new ProcessOutputPump(new SphinxRunnerListenerAdapter() {
+            @Override
+            public void onProcessOutput(String line, boolean error) {
+                lines.add(line);
+            }
+        });
+
+        // 65535 bytes of ASCII followed by 3-byte characters, so that the limit falls inside a character.
+        final StringBuilder buf = new StringBuilder();
+        for (int i = 0; i < 65535; i++) {
+            buf.append('a');
+        }
+        final String line = buf.append("바바").toString();
+        pump.start(new ByteArrayInputStream((line + '\n').getBytes(StandardCharsets.UTF_8)),
+                   new ByteArrayInputStream(new byte[0]));
+        assertTrue(pump.await(10, TimeUnit.SECONDS));
+
+        assertEquals(2, lines.size());
+        assertEquals(65535, lines.get(0).length());
+        assertEquals("바바", lines.get(1));
+    }
+
+    @Test
+    public void charBoundary() {
+        final byte[] bytes = "a바".getBytes(StandardCharsets.UTF_8);
+        assertEquals(4, ProcessOutputPump.charBoundary(bytes, 4));
+        assertEquals(1, ProcessOutputPump.charBoundary(bytes, 3));
+        assertEquals(1, ProcessOutputPump.charBoundary(bytes, 2));
+        assertEquals(1, ProcessOutputPump.charBoundary(bytes, 1));
+        // Never returns an empty prefix.
+        assertEquals(2, ProcessOutputPump.charBoundary(Arrays.copyOfRange(bytes, 1, 4), 2));
+    }
+
+    @Test
+    public void reportFirstListenerFailure() throws Exception {
+        final List<String> warnings = new ArrayList<>();
+        final ProcessOutputPump pump = new ProcessOutputPump(new SphinxRunnerListenerAdapter() {
+            @Override
+            public void onProcessOutput(String line, boolean error) {
+                throw new IllegalStateException(line);
+            }
+
+            @Override
+            public void onWarning(String message, Throwable cause) {
+                warnings.add(cause.getMessage());
+            }
+        });
+
+        pump.start(new ByteArrayInputStream("foo\nbar\n".getBytes(StandardCharsets.UTF_8)),
+                   new ByteArrayInputStream(new byte[0]));
+        assertTrue(pump.await(10, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList("foo"), warnings);
+    }
+}
@@ -0,0 +1,116 @@
+package kr.motd.maven.sphinx;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class ProcessTreeTest {
+
+    @Before
+    public void assumeProcfs() {
+        assumeTrue(ProcessTree.PROCFS_AVAILABLE);
+    }
+
+    @Test(timeout = 30000)
+    public void destroyTree() throws Exception {
+        final Process process = start("sleep 30 & sleep 30 & wait");
+        final List<Long> children = awaitDescendants(process, 2);
+
+        final Map<Long, Long> destroyed =
+                ProcessTree.destroy(process, true, Collections.<Long, Long>emptyMap());
+        process.waitFor();
+        assertEquals(children, Arrays.asList(destroyed.keySet().toArray()));
+        for (Long pid : children) {
+            assertTerminated(pid);
+        }
+    }
+
+    @Test(timeout = 30000)
+    public void destroyKnownDescendants() throws Exception {
+        // The shell exits immediately, leaving its child behind.
+        final Process process = start("sleep 30 & echo $!");
+        final long orphan;
+        try (BufferedReader in = new BufferedReader(
+                new InputStreamReader(process.getInputStream(), StandardCharsets.US_ASCII))) {
+            orphan = Long.parseLong(in.readLine());
+        }
+        process.waitFor();
+        final Process unrelated = start("exec sleep 30");
+        try {
+            final long unrelatedPid = ProcessTree.pid(unrelated);
+            final Map<Long, Long> known = new LinkedHashMap<>();
+            known.put(orphan, ProcessTree.startTime(orphan));
+            // Pretends that the ID of an exited descendant has been reused by another process.
+            known.put(unrelatedPid, ProcessTree.startTime(unrelatedPid) - 1);
+
+            final Map<Long, Long> destroyed = ProcessTree.destroy(process, true, known);
+            assertEquals(Collections.singleton(orphan), destroyed.keySet());
+            assertTerminated(orphan);
+            Thread.sleep(500);
+            assertTrue(ProcessTree.isAlive(unrelated));
+        } finally {
+            ProcessTree.destroy(unrelated, true, Collections.<Long, Long>emptyMap());
+        }
+    }
+
+    @Test
+    public void cpuTime() {
+        final long ticks = ProcessTree.clockTicksPerSecond();
+        assertTrue(ticks > 0);
+
+        final String[] stat = new String[22];
+        Arrays.fill(stat, "0");
+        stat[0] = "S";
+        // utime, stime, cutime and cstime
+        for (int i = 11; i <= 14; i++) {
+            stat[i] = String.valueOf(ticks / 2);
+        }
+        assertEquals(TimeUnit.SECONDS.toNanos(2), ProcessTree.cpuTimeNanos(stat), 100000000);
+        assertFalse(ProcessTree.isZombie(stat));
+        stat[0] = "Z";
+        assertTrue(ProcessTree.isZombie(stat));
+    }
+
+    static Process start(String script) throws Exception {
+        final Process process = new ProcessBuilder("sh", "-c", script).start();
+        process.getOutputStream().close();
+        return process;
+    }
+
+    static List<Long> awaitDescendants(Process process, int expected) throws InterruptedException {
+        for (;;) {
+            final List<Long> descendants = ProcessTree.descendants(ProcessTree.pid(process));
+            if (descendants.size() >= expected) {
+                return descendants;
+            }
+            Thread.sleep(10);
+        }
+    }
+
+    /**
+     * Waits until the specified process exits. An orphan may remain a zombie if nothing reaps it.
+     */
+    static void assertTerminated(long pid) throws InterruptedException {
+        for (;;) {
+            final String[] stat = ProcessTree.readStat(pid);
+            if (stat == null || ProcessTree.isZombie(stat)) {
+                return;
+            }
+            Thread.sleep(10);
+        }
+    }
+}
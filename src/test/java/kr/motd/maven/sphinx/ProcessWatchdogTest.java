@@ -0,0 +1,106 @@
+package kr.motd.maven.sphinx;
+
+import static kr.motd.maven.sphinx.ProcessTreeTest.assertTerminated;
+import static kr.motd.maven.sphinx.ProcessTreeTest.awaitDescendants;
+import static kr.motd.maven.sphinx.ProcessTreeTest.start;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+public class ProcessWatchdogTest {
+
+    @Test(timeout = 30000)
+    public void timeout() throws Exception {
+        assumeTrue(ProcessTree.PROCFS_AVAILABLE);
+        final List<String> warnings = new ArrayList<>();
+        final Process process = start("sleep 30 & sleep 30 & wait");
+        final List<Long> children = awaitDescendants(process, 2);
+
+        final ProcessWatchdog watchdog = new ProcessWatchdog(process, ProcessLimits.of(300, 0, 10000),
+                                                             recordingListener(warnings), System.nanoTime());
+        watchdog.start();
+        process.waitFor();
+        final ProcessResourceUsage usage = watchdog.stop();
+
+        assertEquals("Sphinx exceeded the time limit of 300ms", watchdog.violation());
+        assertTrue(usage.samples() > 0);
+        assertTrue(usage.peakRssBytes() > 0);
+        assertEquals(3, usage.peakThreads());
+        for (Long pid : children) {
+            assertTerminated(pid);
+        }
+    }
+
+    @Test(timeout = 30000)
+    public void memoryLimit() throws Exception {
+        assumeTrue(ProcessTree.PROCFS_AVAILABLE);
+        final List<String> warnings = new ArrayList<>();
+        final Process process = start("sleep 30 & wait");
+        final List<Long> children = awaitDescendants(process, 1);
+
+        final ProcessWatchdog watchdog = new ProcessWatchdog(process, ProcessLimits.of(0, 1, 10000),
+                                                             recordingListener(warnings), System.nanoTime());
+        watchdog.start();
+        process.waitFor();
+        watchdog.stop();
+
+        assertTrue(watchdog.violation(), watchdog.violation().startsWith(
+                "Sphinx exceeded the memory limit of 0 MiB (RSS: "));
+        assertEquals(1, warnings.size());
+        assertTerminated(children.get(0));
+    }
+
+    @Test(timeout = 30000)
+    public void killAfterGracePeriod() throws Exception {
+        assumeTrue(ProcessTree.PROCFS_AVAILABLE);
+        final List<String> warnings = new ArrayList<>();
+        // The shell and its children ignore SIGTERM.
+        final Process process = start("trap '' TERM; sleep 30 & sleep 30 & wait");
+        final List<Long> children = awaitDescendants(process, 2);
+
+        final ProcessWatchdog watchdog = new ProcessWatchdog(process, ProcessLimits.of(100, 0, 300),
+                                                             recordingListener(warnings), System.nanoTime());
+        watchdog.start();
+        process.waitFor();
+        watchdog.stop();
+
+        for (Long pid : children) {
+            assertTerminated(pid);
+        }
+        synchronized (warnings) {
+            assertEquals(2, warnings.size());
+            assertEquals("Sphinx did not terminate within 300ms; killing the process tree", warnings.get(1));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void negativeTimeout() {
+        ProcessLimits.of(-1, 0, 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void negativeMaxRss() {
+        ProcessLimits.of(0, -1, 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void negativeGracePeriod() {
+        ProcessLimits.of(0, 0, -1);
+    }
+
+    private static SphinxRunnerListener recordingListener(final List<String> warnings) {
+        return new SphinxRunnerListenerAdapter() {
+            @Override
+            public void onWarning(String message, Throwable cause) {
+                synchronized (warnings) {
+                    warnings.add(message);
+                }
+            }
+        };
+    }
+}
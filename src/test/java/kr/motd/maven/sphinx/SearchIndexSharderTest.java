@@ -0,0 +1,94 @@
+package kr.motd.maven.sphinx;
+
+import static kr.motd.maven.sphinx.TestUtil.NOOP_LISTENER;
+import static kr.motd.maven.sphinx.TestUtil.read;
+import static kr.motd.maven.sphinx.TestUtil.write;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class SearchIndexSharderTest {
+
+    @Rule
+    public final TemporaryFolder tempDir = new TemporaryFolder();
+
+    @Test
+    public void shard() throws Exception {
+        final File dir = tempDir.newFolder("html");
+        final File index = write(dir, "searchindex.js",
+                                 "Search.setIndex({\"docnames\": [\"index\", \"page\"], " +
+                                 "\"terms\": {\"apple\": [0, 1], \"apricot\": 1, \"\\u00e9t\\u00e9\": 0}, " +
+                                 "\"titleterms\": {\"banana\": 1}, \"objects\": {}})");
+        final File searchPage = write(dir, "search.html",
+                                      "<script src=\"searchindex.js\" defer></script>\n" +
+                                      "<script>Search.loadIndex(\"searchindex.js\");</script>\n");
+        final File page = write(dir, "page.html", "<p>searchindex.json</p>\n");
+
+        final SearchIndexSharder sharder = new SearchIndexSharder(2);
+        SearchIndexSharder.Result result = sharder.shard(dir, NOOP_LISTENER);
+        assertEquals(3, result.shards);
+        assertEquals(5, result.modifiedFiles);
+        assertEquals("6170", sharder.shardKey("apple"));
+        assertEquals("c3a974", sharder.shardKey("été"));
+        assertEquals("61", sharder.shardKey("a"));
+
+        assertEquals("SearchShards.addShard(\"6170\", {\"terms\":{\"apple\":[0,1],\"apricot\":1}," +
+                     "\"titleterms\":{}});\n", read(dir, "_searchindex/6170.js"));
+        assertEquals("SearchShards.addShard(\"6261\", {\"terms\":{},\"titleterms\":{\"banana\":1}});\n",
+                     read(dir, "_searchindex/6261.js"));
+        assertTrue(read(dir, "searchshards.js").endsWith(
+                "SearchShards.init({\"docnames\":[\"index\",\"page\"],\"terms\":{},\"titleterms\":{}," +
+                "\"objects\":{}}, [\"6170\",\"6261\",\"c3a974\"], 2);\n"));
+        assertEquals("<script src=\"searchshards.js\" defer></script>\n" +
+                     "<script>Search.loadIndex(\"searchshards.js\");</script>\n", read(dir, "search.html"));
+        assertEquals("<p>searchindex.json</p>\n", read(dir, "page.html"));
+        assertTrue(page.isFile());
+        assertTrue(index.isFile());
+
+        // Sphinx writes the search page again, but not the index.
+        write(dir, "search.html", "<script src=\"searchindex.js\" defer></script>\n");
+        result = sharder.shard(dir, NOOP_LISTENER);
+        assertEquals(3, result.shards);
+        assertEquals(1, result.modifiedFiles);
+        assertEquals("<script src=\"searchshards.js\" defer></script>\n", read(dir, "search.html"));
+        assertTrue(searchPage.isFile());
+
+        // Only the shards whose terms have changed are written.
+        write(dir, "searchindex.js",
+              "Search.setIndex({\"docnames\": [\"index\", \"page\"], " +
+              "\"terms\": {\"apple\": [0, 1], \"apricot\": 1}, \"titleterms\": {\"banana\": 0}})");
+        index.setLastModified(index.lastModified() + 2000);
+        result = sharder.shard(dir, NOOP_LISTENER);
+        assertEquals(2, result.shards);
+        assertEquals(2, result.modifiedFiles);
+        assertEquals("SearchShards.addShard(\"6261\", {\"terms\":{},\"titleterms\":{\"banana\":0}});\n",
+                     read(dir, "_searchindex/6261.js"));
+        assertFalse(new File(dir, "_searchindex/c3a974.js").exists());
+    }
+
+    @Test
+    public void shardJsdumpIndex() throws Exception {
+        // Sphinx before 5.0 writes the search index with jsdump, which does not quote the member names.
+        final File dir = tempDir.newFolder("html");
+        write(dir, "searchindex.js",
+              "Search.setIndex({docnames:[\"index\",\"page\"],objects:{},terms:{apple:[0,1],apricot:1}," +
+              "titles:[\"Index\",\"Page\"],titleterms:{banana:1}})");
+        write(dir, "search.html", "<script src=\"searchindex.js\" defer></script>\n");
+
+        final SearchIndexSharder sharder = new SearchIndexSharder(2);
+        final SearchIndexSharder.Result result = sharder.shard(dir, NOOP_LISTENER);
+        assertEquals(2, result.shards);
+        assertEquals("SearchShards.addShard(\"6170\", {\"terms\":{\"apple\":[0,1],\"apricot\":1}," +
+                     "\"titleterms\":{}});\n", read(dir, "_searchindex/6170.js"));
+        assertTrue(read(dir, "searchshards.js").endsWith(
+                "SearchShards.init({\"docnames\":[\"index\",\"page\"],\"objects\":{},\"terms\":{}," +
+                "\"titles\":[\"Index\",\"Page\"],\"titleterms\":{}}, [\"6170\",\"6261\"], 2);\n"));
+        assertEquals("<script src=\"searchshards.js\" defer></script>\n", read(dir, "search.html"));
+    }
+}
@@ -0,0 +1,85 @@
+package kr.motd.maven.sphinx;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class Sha256Test {
+    @Test
+    public void testEmpty() {
+        assertEquals("e3b0c44298fc1c149afbf4c8996fb92427ae41e4649b934ca495991b7852b855",
+                     SphinxUtil.toHexString(digest(new byte[0], 1, false)));
+    }
+
+    @Test
+    public void testChunkedUpdates() throws Exception {
+        final Random random = new Random(42);
+        for (int size : new int[] { 1, 55, 56, 63, 64, 65, 127, 128, 1000, 65537 }) {
+            final byte[] data = new byte[size];
+            random.nextBytes(data);
+            final byte[] expected = MessageDigest.getInstance("SHA-256").digest(data);
+            for (int chunkSize : new int[] { 1, 7, 64, 100, 8192 }) {
+                final String msg = "size: " + size + ", chunkSize: " + chunkSize;
+                assertArrayEquals(msg, expected, digest(data, chunkSize, false));
+                assertArrayEquals(msg, expected, digest(data, chunkSize, true));
+                assertArrayEquals(msg, expected, digestBuffer(ByteBuffer.wrap(data), chunkSize));
+                final ByteBuffer direct = ByteBuffer.allocateDirect(size);
+                direct.put(data).flip();
+                assertArrayEquals(msg, expected, digestBuffer(direct, chunkSize));
+                direct.clear();
+                assertArrayEquals(msg, expected, digestBuffer(direct.order(ByteOrder.LITTLE_ENDIAN), chunkSize));
+            }
+        }
+    }
+
+    @Test
+    public void testFile() throws Exception {
+        final byte[] data = new byte[3 * 1024 * 1024 + 17];
+        new Random(42).nextBytes(data);
+        final File f = File.createTempFile("sha256", ".bin");
+        try {
+            Files.write(f.toPath(), data);
+            assertArrayEquals(MessageDigest.getInstance("SHA-256").digest(data), SphinxUtil.sha256(f.toPath()));
+        } finally {
+            f.delete();
+        }
+    }
+
+    private static byte[] digest(byte[] data, int chunkSize, boolean mixed) {
+        final Sha256 digest = new Sha256();
+        boolean useBuffer = false;
+        for (int i = 0; i < data.length; i += chunkSize) {
+            final int length = Math.min(chunkSize, data.length - i);
+            if (useBuffer) {
+                digest.update(ByteBuffer.wrap(data, i, length));
+            } else {
+                digest.update(data, i, length);
+            }
+            useBuffer = mixed && !useBuffer;
+        }
+        final byte[] sum = new byte[digest.getDigestLen()];
+        digest.finishDigest(sum, 0);
+        return sum;
+    }
+
+    private static byte[] digestBuffer(ByteBuffer data, int chunkSize) {
+        final Sha256 digest = new Sha256();
+        final int limit = data.limit();
+        while (data.position() < limit) {
+            data.limit(Math.min(data.position() + chunkSize, limit));
+            digest.update(data);
+            assertEquals(data.limit(), data.position());
+        }
+        final byte[] sum = new byte[digest.getDigestLen()];
+        digest.finishDigest(sum, 0);
+        return sum;
+    }
+}
@@ -0,0 +1,159 @@
+package kr.motd.maven.sphinx;
+
+import static kr.motd.maven.sphinx.TestUtil.write;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class SourceDependencyGraphTest {
+
+    @Rule
+    public final TemporaryFolder tmp = new TemporaryFolder();
+
+    @Test
+    public void documents() throws Exception {
+        final SourceDependencyGraph graph = SourceDependencyGraph.scan(newSourceDir());
+        assertEquals(set("guide/intro.rst", "index.rst", "usage.md"), graph.documents());
+    }
+
+    @Test
+    public void affectedDocuments() throws Exception {
+        final SourceDependencyGraph graph = SourceDependencyGraph.scan(newSourceDir());
+
+        // A transitively included file affects the documents including it and their parent toctrees.
+        assertEquals(set("guide/intro.rst", "index.rst"),
+                     graph.affectedDocuments(set("_includes/common.rst"), null));
+        assertEquals(set("guide/intro.rst", "index.rst"),
+                     graph.affectedDocuments(set("snippets/example.py"), null));
+        assertEquals(set("guide/intro.rst", "index.rst"),
+                     graph.affectedDocuments(set("guide/diagram.png"), null));
+        assertEquals(set("index.rst", "usage.md"),
+                     graph.affectedDocuments(set("_static/logo.png"), null));
+    }
+
+    @Test
+    public void fullBuild() throws Exception {
+        final SourceDependencyGraph graph = SourceDependencyGraph.scan(newSourceDir());
+
+        // Files outside the graph require a full build.
+        assertNull(graph.affectedDocuments(set("conf.py"), null));
+        assertNull(graph.affectedDocuments(set("removed.rst"), null));
+    }
+
+    @Test
+    public void storeAndLoad() throws Exception {
+        final SourceDependencyGraph graph = SourceDependencyGraph.scan(newSourceDir());
+        final File stateFile = new File(tmp.getRoot(), "state.properties");
+        graph.store(stateFile);
+        final SourceDependencyGraph loaded = SourceDependencyGraph.load(stateFile);
+        assertEquals(graph.documents(), loaded.documents());
+        assertEquals(Collections.<String>emptySet(), graph.changedSince(loaded));
+    }
+
+    @Test
+    public void changedSince() throws Exception {
+        final File srcDir = newSourceDir();
+        final SourceDependencyGraph graph = SourceDependencyGraph.scan(srcDir);
+        final File example = new File(srcDir, "snippets/example.py");
+        example.setLastModified(example.lastModified() + 10000);
+        assertTrue(new File(srcDir, "_static/logo.png").delete());
+        write(srcDir, "new.rst", "New\n");
+        assertEquals(set("_static/logo.png", "new.rst", "snippets/example.py"),
+                     SourceDependencyGraph.scan(srcDir).changedSince(graph));
+    }
+
+    @Test
+    public void includedDocuments() throws Exception {
+        final File srcDir = tmp.newFolder("src");
+        write(srcDir, "conf.py", "root_doc = 'contents'\n");
+        write(srcDir, "contents.rst", ".. include:: intro.rst\n\n.. toctree::\n\n   shared\n");
+        write(srcDir, "intro.rst", "Introduction\n");
+        write(srcDir, "shared.rst", "Shared\n");
+        write(srcDir, "page.rst", ".. include:: shared.rst\n.. include:: contents.rst\n");
+
+        // Only the included files which are neither the root document nor listed in a toctree are left out.
+        final SourceDependencyGraph graph = SourceDependencyGraph.scan(srcDir);
+        assertEquals(set("contents.rst", "page.rst", "shared.rst"), graph.documents());
+        assertEquals(set("contents.rst", "page.rst"), graph.affectedDocuments(set("intro.rst"), null));
+    }
+
+    @Test
+    public void excludedFiles() throws Exception {
+        final File srcDir = tmp.newFolder("src");
+        final File confDir = tmp.newFolder("conf");
+        write(confDir, "conf.py", "exclude_patterns = [\n    '_build',  # the output\n    \"**/_*.rst\",\n]\n" +
+                                  "exclude_patterns += ['drafts']\n");
+        write(srcDir, "index.rst", ".. include:: guide/_common.rst\n");
+        write(srcDir, "guide/_common.rst", "Common\n");
+        write(srcDir, "guide/_unused.rst", "Unused\n");
+        write(srcDir, "drafts/draft.rst", "Draft\n");
+        write(srcDir, "_build/index.html", "<html></html>");
+
+        final SourceDependencyGraph graph = SourceDependencyGraph.scan(srcDir, confDir);
+        assertEquals(set("index.rst"), graph.documents());
+
+        // An excluded file affects only the documents including it.
+        assertEquals(set("index.rst"), graph.affectedDocuments(set("guide/_common.rst"), null));
+        assertEquals(set(), graph.affectedDocuments(set("guide/_unused.rst", "drafts/draft.rst",
+                                                        "_build/index.html"), null));
+
+        // The excluded files are remembered, so that their removal does not require a full build.
+        final File stateFile = new File(tmp.getRoot(), "state.properties");
+        graph.store(stateFile);
+        final SourceDependencyGraph previous = SourceDependencyGraph.load(stateFile);
+        assertTrue(new File(srcDir, "drafts/draft.rst").delete());
+        assertEquals(set(), SourceDependencyGraph.scan(srcDir, confDir)
+                                                 .affectedDocuments(set("drafts/draft.rst"), previous));
+    }
+
+    @Test
+    public void globToctree() throws Exception {
+        final File srcDir = tmp.newFolder("src");
+        write(srcDir, "index.rst", ".. toctree::\n   :glob:\n\n   guide/*\n   other\n");
+        write(srcDir, "guide/a.rst", "A\n");
+        write(srcDir, "guide/sub/b.rst", "B\n");
+        write(srcDir, "other.rst", "Other\n");
+
+        final SourceDependencyGraph graph = SourceDependencyGraph.scan(srcDir);
+        final File stateFile = new File(tmp.getRoot(), "state.properties");
+        graph.store(stateFile);
+        final SourceDependencyGraph previous = SourceDependencyGraph.load(stateFile);
+
+        // A document matched by a glob is tracked like any other toctree entry.
+        assertEquals(set("guide/a.rst", "index.rst"), graph.affectedDocuments(set("guide/a.rst"), previous));
+        assertEquals(set("guide/sub/b.rst"), graph.affectedDocuments(set("guide/sub/b.rst"), previous));
+
+        // A changed glob toctree or a new document matched by it requires a full build.
+        assertNull(graph.affectedDocuments(set("index.rst"), previous));
+        assertNull(previous.affectedDocuments(set("index.rst"), null));
+        write(srcDir, "guide/c.rst", "C\n");
+        assertNull(SourceDependencyGraph.scan(srcDir).affectedDocuments(set("guide/c.rst"), previous));
+    }
+
+    private File newSourceDir() throws Exception {
+        final File srcDir = tmp.newFolder("src");
+        write(srcDir, "conf.py", "project = 'test'\n");
+        write(srcDir, "index.rst", "Index\n=====\n\n.. toctree::\n   :maxdepth: 2\n\n   guide/intro\n   Usage <usage>\n");
+        write(srcDir, "guide/intro.rst", ".. include:: ../_includes/common.rst\n\n.. image:: diagram.png\n");
+        write(srcDir, "guide/diagram.png", "PNG");
+        write(srcDir, "usage.md", "# Usage\n\n![logo](/_static/logo.png)\n");
+        write(srcDir, "_includes/common.rst", ".. literalinclude:: /snippets/example.py\n");
+        write(srcDir, "snippets/example.py", "print('hello')\n");
+        write(srcDir, "_static/logo.png", "PNG");
+        return srcDir;
+    }
+
+    private static Set<String> set(String... values) {
+        return new TreeSet<>(Arrays.asList(values));
+    }
+}
@@ -0,0 +1,105 @@
+package kr.motd.maven.sphinx;
+
+import static kr.motd.maven.sphinx.TestUtil.read;
+import static kr.motd.maven.sphinx.TestUtil.write;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.nio.file.attribute.FileTime;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.maven.shared.filtering.DefaultMavenReaderFilter;
+import org.apache.maven.shared.utils.io.FileUtils.FilterWrapper;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class SourceStagerTest {
+
+    @Rule
+    public final TemporaryFolder tempDir = new TemporaryFolder();
+
+    @Test
+    public void stage() throws Exception {
+        final File sourceDir = tempDir.newFolder("sphinx");
+        final File stagingDir = new File(tempDir.getRoot(), "staging");
+        write(sourceDir, "index.rst", "Version ${version}");
+        write(sourceDir, "a/page.rst", "Page");
+        write(sourceDir, "_static/logo.png", "${version}");
+
+        assertStaged(sourceDir, stagingDir, 3, 0, 0);
+        assertEquals("Version 1.0", read(stagingDir, "index.rst"));
+        assertEquals("${version}", read(stagingDir, "_static/logo.png"));
+
+        // Add, modify and delete the sources.
+        final File page = new File(stagingDir, "a/page.rst");
+        final FileTime oldTime = FileTime.fromMillis(System.currentTimeMillis() - TimeUnit.HOURS.toMillis(1));
+        Files.setLastModifiedTime(page.toPath(), oldTime);
+        write(sourceDir, "b/new.rst", "New");
+        write(sourceDir, "index.rst", "Release ${version}");
+        Files.delete(new File(sourceDir, "_static/logo.png").toPath());
+
+        assertStaged(sourceDir, stagingDir, 2, 1, 1);
+        assertEquals("New", read(stagingDir, "b/new.rst"));
+        assertEquals("Release 1.0", read(stagingDir, "index.rst"));
+        assertFalse(new File(stagingDir, "_static/logo.png").exists());
+        assertEquals(oldTime, Files.getLastModifiedTime(page.toPath()));
+
+        // Without the index, the staged files without a source are still removed,
+        // and the staged files with the same content are not rewritten.
+        Files.delete(new File(stagingDir.getPath() + ".index").toPath());
+        Files.delete(new File(sourceDir, "b/new.rst").toPath());
+        assertStaged(sourceDir, stagingDir, 0, 2, 1);
+        assertFalse(new File(stagingDir, "b/new.rst").exists());
+        assertEquals(oldTime, Files.getLastModifiedTime(page.toPath()));
+
+        // A corrupt index is treated as a missing one.
+        write(tempDir.getRoot(), "staging.index", "a/page.rst=\\uZZZZ\n");
+        write(stagingDir, "stale.rst", "Stale");
+        assertStaged(sourceDir, stagingDir, 0, 2, 1);
+        assertFalse(new File(stagingDir, "stale.rst").exists());
+        assertTrue(page.isFile());
+    }
+
+    private static void assertStaged(File sourceDir, File stagingDir,
+                                     int written, int unchanged, int deleted) throws IOException {
+        final SourceStager stager = new SourceStager(new DefaultMavenReaderFilter(),
+                                                     Collections.<FilterWrapper>singletonList(new VersionFilter()),
+                                                     "UTF-8", Collections.singletonList("rst"));
+        stager.stage(sourceDir, stagingDir);
+        assertEquals("written", written, stager.written());
+        assertEquals("unchanged", unchanged, stager.unchanged());
+        assertEquals("deleted", deleted, stager.deleted());
+    }
+
+    /**
+     * Replaces {@code ${version}} with {@code 1.0}, standing in for the filter wrappers of a Maven project.
+     */
+    private static final class VersionFilter extends FilterWrapper {
+        @Override
+        public Reader getReader(Reader in) {
+            final StringWriter buf = new StringWriter();
+            final char[] chars = new char[8192];
+            try {
+                for (;;) {
+                    final int readChars = in.read(chars);
+                    if (readChars < 0) {
+                        break;
+                    }
+                    buf.write(chars, 0, readChars);
+                }
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+            return new StringReader(buf.toString().replace("${version}", "1.0"));
+        }
+    }
+}
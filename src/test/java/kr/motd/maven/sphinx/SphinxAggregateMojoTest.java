@@ -0,0 +1,98 @@
+package kr.motd.maven.sphinx;
+
+import static kr.motd.maven.sphinx.TestUtil.read;
+import static kr.motd.maven.sphinx.TestUtil.write;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.lang.reflect.Field;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.maven.project.MavenProject;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class SphinxAggregateMojoTest {
+
+    @Rule
+    public final TemporaryFolder tempDir = new TemporaryFolder();
+
+    @Test
+    public void staleSections() throws Exception {
+        final SphinxAggregateMojo mojo = new SphinxAggregateMojo();
+        final Field moduleSourceDirectory = SphinxAggregateMojo.class.getDeclaredField("moduleSourceDirectory");
+        moduleSourceDirectory.setAccessible(true);
+        moduleSourceDirectory.set(mojo, "src/site/sphinx");
+        mojo.project = newProject("root");
+
+        final File aggregateDir = tempDir.newFolder("aggregate");
+        final File sourceDir = new File(aggregateDir, "source");
+        final File outputDir = new File(aggregateDir, "html");
+        final Map<String, MavenProject> sections = new LinkedHashMap<>();
+        sections.put("a", newProject("a"));
+        sections.put("b", newProject("b"));
+        mojo.stageSources(sections, sourceDir);
+        assertEquals("Root\n====\n\n.. toctree::\n   :maxdepth: 2\n\n   a/index\n   b/index\n",
+                     read(new File(sourceDir, "index.rst")));
+        assertTrue(new File(sourceDir, "b/index.rst").isFile());
+        assertTrue(new File(sourceDir, "b.index").isFile());
+
+        // Pretend that Sphinx has built both sections.
+        write(new File(outputDir, "a/index.html"), "a");
+        write(new File(outputDir, "b/index.html"), "b");
+
+        // Module 'b' does not have the Sphinx sources anymore.
+        sections.remove("b");
+        mojo.stageSources(sections, sourceDir);
+        assertEquals("Root\n====\n\n.. toctree::\n   :maxdepth: 2\n\n   a/index\n",
+                     read(new File(sourceDir, "index.rst")));
+        assertTrue(new File(sourceDir, "a/index.rst").isFile());
+        assertFalse(new File(sourceDir, "b").exists());
+        assertFalse(new File(sourceDir, "b.index").exists());
+
+        // The output is left intact.
+        assertEquals("a", read(new File(outputDir, "a/index.html")));
+        assertEquals("b", read(new File(outputDir, "b/index.html")));
+    }
+
+    @Test
+    public void cmdLine() throws Exception {
+        final SphinxAggregateMojo mojo = new SphinxAggregateMojo();
+        set(mojo, "builder", "dirhtml");
+        set(mojo, "tags", Arrays.asList("a", "b"));
+        set(mojo, "warningsAsErrors", true);
+        assertEquals(Arrays.asList("-b", "dirhtml", "-Q", "-W", "-c", "conf", "-d", "doctrees",
+                                   "-D", "master_doc=index", "-t", "a", "-t", "b", "-n", "source", "html"),
+                     mojo.getSphinxRunnerCmdLine(new File("conf"), new File("source"), new File("html"),
+                                                 new File("doctrees")));
+
+        set(mojo, "verbose", true);
+        set(mojo, "force", true);
+        assertEquals(Arrays.asList("-b", "dirhtml", "-v", "-W", "-a", "-E", "-c", "conf", "-d", "doctrees",
+                                   "-D", "master_doc=index", "-t", "a", "-t", "b", "-n", "source", "html"),
+                     mojo.getSphinxRunnerCmdLine(new File("conf"), new File("source"), new File("html"),
+                                                 new File("doctrees")));
+    }
+
+    private static void set(SphinxAggregateMojo mojo, String name, Object value) throws Exception {
+        final Field field = SphinxAggregateMojo.class.getDeclaredField(name);
+        field.setAccessible(true);
+        field.set(mojo, value);
+    }
+
+    private MavenProject newProject(String artifactId) throws Exception {
+        final File baseDir = new File(tempDir.getRoot(), "modules/" + artifactId);
+        write(new File(baseDir, "src/site/sphinx/index.rst"), artifactId + "\n==\n");
+        final MavenProject p = new MavenProject();
+        p.setGroupId("com.example");
+        p.setArtifactId(artifactId);
+        p.setName(Character.toUpperCase(artifactId.charAt(0)) + artifactId.substring(1));
+        p.setFile(new File(baseDir, "pom.xml"));
+        return p;
+    }
+}
@@ -0,0 +1,133 @@
+package kr.motd.maven.sphinx;
+
+import static kr.motd.maven.sphinx.TestUtil.write;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.eclipse.aether.DefaultRepositorySystemSession;
+import org.eclipse.aether.RepositorySystem;
+import org.eclipse.aether.RepositorySystemSession;
+import org.eclipse.aether.artifact.Artifact;
+import org.eclipse.aether.repository.RemoteRepository;
+import org.eclipse.aether.resolution.ArtifactRequest;
+import org.eclipse.aether.resolution.ArtifactResolutionException;
+import org.eclipse.aether.resolution.ArtifactResult;
+import org.eclipse.aether.transfer.ArtifactNotFoundException;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class SphinxBinaryArtifactTest {
+
+    @Rule
+    public final TemporaryFolder tempDir = new TemporaryFolder();
+
+    private final RepositorySystemSession session = new DefaultRepositorySystemSession();
+    // A stub, because the implementation of the repository system is provided by Maven at runtime.
+    private final RepositorySystem repositorySystem = (RepositorySystem) Proxy.newProxyInstance(
+            RepositorySystem.class.getClassLoader(), new Class<?>[] { RepositorySystem.class },
+            new FileRepositorySystem());
+
+    @Test
+    public void resolveWithStubbedRepositorySystem() throws Exception {
+        final File repoDir = tempDir.newFolder("repo");
+        final File cacheDir = tempDir.newFolder("cache");
+        final File deployed = write(repoDir, "com/example/sphinx/1.0/sphinx-1.0-linux-x86_64.exe", "binary");
+        final List<RemoteRepository> repos = Collections.singletonList(
+                new RemoteRepository.Builder("file", "default", repoDir.toURI().toString()).build());
+
+        final SphinxBinaryArtifact artifact = new SphinxBinaryArtifact("com.example:sphinx:1.0:exe:linux-x86_64");
+        assertEquals("com.example:sphinx:1.0:exe:linux-x86_64", artifact.toString());
+        final File resolved = AbstractSphinxMojo.resolveArtifact(
+                repositorySystem, session, repos,
+                artifact.newArtifact(session.getArtifactTypeRegistry()));
+        assertEquals(deployed, resolved);
+
+        final File binary = artifact.install(resolved, cacheDir);
+        assertEquals(new File(cacheDir, "com.example_sphinx_1.0_exe_linux-x86_64/sphinx.linux-x86_64"), binary);
+        assertTrue(binary.canExecute());
+        assertEquals("binary", new String(Files.readAllBytes(binary.toPath()), StandardCharsets.UTF_8));
+
+        // Not copied again if unchanged.
+        final Object fileKey = Files.readAttributes(binary.toPath(), BasicFileAttributes.class).fileKey();
+        assertEquals(binary, artifact.install(resolved, cacheDir));
+        assertEquals(fileKey, Files.readAttributes(binary.toPath(), BasicFileAttributes.class).fileKey());
+
+        // Windows binaries keep their extension.
+        write(repoDir, "com/example/sphinx/1.0/sphinx-1.0-windows-x86_64.exe", "binary");
+        final SphinxBinaryArtifact windows = new SphinxBinaryArtifact("com.example:sphinx:1.0:exe:windows-x86_64");
+        assertEquals("sphinx.windows-x86_64.exe",
+                     windows.install(AbstractSphinxMojo.resolveArtifact(
+                             repositorySystem, session, repos,
+                             windows.newArtifact(session.getArtifactTypeRegistry())), cacheDir).getName());
+
+        // Not deployed.
+        try {
+            AbstractSphinxMojo.resolveArtifact(
+                    repositorySystem, session, repos,
+                    new SphinxBinaryArtifact("com.example:sphinx:2.0:exe:linux-x86_64")
+                            .newArtifact(session.getArtifactTypeRegistry()));
+            fail();
+        } catch (MojoExecutionException e) {
+            assertEquals("failed to resolve: com.example:sphinx:exe:linux-x86_64:2.0", e.getMessage());
+        }
+    }
+
+    @Test
+    public void invalidCoordinates() {
+        for (String coordinates : new String[] { "com.example:sphinx", "com.example::1.0", "a:b:c:d:e:f" }) {
+            try {
+                new SphinxBinaryArtifact(coordinates);
+                fail(coordinates);
+            } catch (MojoExecutionException expected) {
+                // Expected
+            }
+        }
+    }
+
+    /**
+     * A stub of {@link RepositorySystem} which resolves the artifacts from the remote repositories of
+     * the {@code file:} scheme by reimplementing the default layout. It verifies the artifact requested by
+     * {@link SphinxBinaryArtifact} and the handling of the result, not the resolution by Maven itself.
+     */
+    private static final class FileRepositorySystem implements InvocationHandler {
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            if (!"resolveArtifact".equals(method.getName())) {
+                throw new UnsupportedOperationException(method.getName());
+            }
+
+            final ArtifactRequest request = (ArtifactRequest) args[1];
+            final Artifact artifact = request.getArtifact();
+            final ArtifactResult result = new ArtifactResult(request);
+            final String path = artifact.getGroupId().replace('.', '/') + '/' + artifact.getArtifactId() + '/' +
+                                artifact.getVersion() + '/' + artifact.getArtifactId() + '-' +
+                                artifact.getVersion() + '-' + artifact.getClassifier() + '.' +
+                                artifact.getExtension();
+            for (RemoteRepository repo : request.getRepositories()) {
+                final File file = new File(new File(URI.create(repo.getUrl())), path);
+                if (file.isFile()) {
+                    result.setArtifact(artifact.setFile(file));
+                    result.setRepository(repo);
+                    return result;
+                }
+            }
+            result.addException(new ArtifactNotFoundException(artifact, null));
+            throw new ArtifactResolutionException(Collections.singletonList(result));
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package kr.motd.maven.sphinx;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class SphinxBuildMetricsTest {
+
+    @Rule
+    public final TemporaryFolder tempDir = new TemporaryFolder();
+
+    @Test
+    public void json() throws Exception {
+        final SphinxBuildMetrics metrics = newMetrics();
+        final File file = new File(tempDir.getRoot(), "metrics/sphinx-metrics.json");
+        metrics.writeJson(file);
+
+        final Map<?, ?> json = (Map<?, ?>) Json.parse(
+                new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8));
+        assertEquals(false, json.get("binaryCacheHit"));
+        assertEquals(1024L, ((Map<?, ?>) json.get("download")).get("bytes"));
+        assertEquals(2000L, ((Map<?, ?>) json.get("download")).get("millis"));
+        assertEquals(5L, json.get("verificationMillis"));
+        final Map<?, ?> sphinx = (Map<?, ?>) json.get("sphinx");
+        assertEquals(1L, sphinx.get("exitCode"));
+        assertEquals(1500L, sphinx.get("millis"));
+        assertEquals(4096L, sphinx.get("peakRssBytes"));
+        assertEquals(750L, sphinx.get("cpuMillis"));
+        final List<?> postProcessing = (List<?>) json.get("postProcessing");
+        assertEquals(1, postProcessing.size());
+        final Map<?, ?> step = (Map<?, ?>) postProcessing.get(0);
+        assertEquals("minify \"js\"", step.get("name"));
+        assertEquals(20L, step.get("millis"));
+        assertEquals(6L, step.get("scannedFiles"));
+        assertEquals(3L, step.get("modifiedFiles"));
+        assertEquals(300L, step.get("modifiedBytes"));
+        // Not measured.
+        assertEquals(-1L, ((Map<?, ?>) json.get("output")).get("files"));
+    }
+
+    @Test
+    public void prometheus() throws Exception {
+        final SphinxBuildMetrics metrics = newMetrics();
+        final File file = new File(tempDir.getRoot(), "sphinx.prom");
+        metrics.writePrometheus(file, labels("a"));
+
+        final List<String> lines = Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+        assertTrue(lines.contains("# HELP sphinx_binary_cache_hit " +
+                                  "Whether the Sphinx binary was found in the cache (1) or downloaded (0)."));
+        assertTrue(lines.contains("# TYPE sphinx_binary_cache_hit gauge"));
+        assertTrue(lines.contains("sphinx_binary_cache_hit{group_id=\"g\",artifact_id=\"a\"} 0"));
+        assertTrue(lines.contains("sphinx_download_seconds{group_id=\"g\",artifact_id=\"a\"} 2"));
+        assertTrue(lines.contains("sphinx_verification_seconds{group_id=\"g\",artifact_id=\"a\"} 0.005000"));
+        assertTrue(lines.contains("sphinx_exit_code{group_id=\"g\",artifact_id=\"a\"} 1"));
+        assertTrue(lines.contains("sphinx_post_processing_modified_files" +
+                                  "{group_id=\"g\",artifact_id=\"a\",step=\"minify \\\"js\\\"\"} 3"));
+        assertEquals(0, count(lines, "sphinx_output_files"));
+    }
+
+    @Test
+    public void prometheusMultipleModules() throws Exception {
+        final File file = new File(tempDir.getRoot(), "sphinx.prom");
+        newMetrics().writePrometheus(file, labels("a"));
+        newMetrics().writePrometheus(file, labels("ab"));
+
+        // Module 'a' is built again, without downloading the binary this time.
+        final SphinxBuildMetrics metrics = new SphinxBuildMetrics();
+        metrics.onBinaryResolved(Paths.get("sphinx"), true);
+        metrics.writePrometheus(file, labels("a"));
+
+        final List<String> lines = Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+        // The samples of both modules are grouped under a single header.
+        assertEquals(1, count(lines, "# HELP sphinx_binary_cache_hit "));
+        assertEquals(1, count(lines, "# TYPE sphinx_binary_cache_hit "));
+        assertTrue(lines.contains("sphinx_binary_cache_hit{group_id=\"g\",artifact_id=\"ab\"} 0"));
+        assertTrue(lines.contains("sphinx_binary_cache_hit{group_id=\"g\",artifact_id=\"a\"} 1"));
+        assertEquals(2, count(lines, "sphinx_binary_cache_hit{"));
+        // The stale samples of module 'a' are gone.
+        assertEquals(1, count(lines, "sphinx_exit_code{"));
+        assertEquals(4, count(lines, "sphinx_post_processing_"));
+        assertEquals(2, count(lines, "sphinx_last_run_timestamp_seconds{"));
+    }
+
+    private static SphinxBuildMetrics newMetrics() {
+        final SphinxBuildMetrics metrics = new SphinxBuildMetrics();
+        metrics.onBinaryResolved(Paths.get("sphinx"), false);
+        metrics.onDownloadFinished(URI.create("https://example.com/sphinx"), 1000, TimeUnit.SECONDS.toNanos(1));
+        metrics.onDownloadFinished(URI.create("https://example.com/sphinx.sha256"), 24,
+                                   TimeUnit.SECONDS.toNanos(1));
+        metrics.onBinaryVerified(Paths.get("sphinx"), "0123", TimeUnit.MILLISECONDS.toNanos(5));
+        metrics.onProcessExited(1, TimeUnit.MILLISECONDS.toNanos(1500),
+                                new ProcessResourceUsage(4096, TimeUnit.MILLISECONDS.toNanos(750), 4, 3));
+        metrics.onPostProcessingFinished("minify \"js\"", new File("."), 4, 2, 200,
+                                         TimeUnit.MILLISECONDS.toNanos(15));
+        metrics.onPostProcessingFinished("minify \"js\"", new File("."), 2, 1, 100,
+                                         TimeUnit.MILLISECONDS.toNanos(5));
+        return metrics;
+    }
+
+    private static Map<String, String> labels(String artifactId) {
+        final Map<String, String> labels = new LinkedHashMap<>();
+        labels.put("group_id", "g");
+        labels.put("artifact_id", artifactId);
+        return labels;
+    }
+
+    private static int count(List<String> lines, String prefix) {
+        int count = 0;
+        for (String l : lines) {
+            if (l.startsWith(prefix)) {
+                count++;
+            }
+        }
+        return count;
+    }
+}
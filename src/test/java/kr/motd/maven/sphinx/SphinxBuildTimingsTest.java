@@ -0,0 +1,111 @@
+package kr.motd.maven.sphinx;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class SphinxBuildTimingsTest {
+
+    /**
+     * The output of {@code sphinx-build -v} with colors, as captured from a build of two documents.
+     */
+    private static final String[] OUTPUT = {
+            "\u001B[01mRunning Sphinx v4.2.0\u001B[39;49;00m",
+            "\u001B[01mloading pickled environment... \u001B[39;49;00mdone",
+            "\u001B[01mbuilding [mo]: \u001B[39;49;00mtargets for 0 po files that are out of date",
+            "\u001B[01mbuilding [html]: \u001B[39;49;00mtargets for 2 source files that are out of date",
+            "\u001B[01mupdating environment: \u001B[39;49;00m[new config] 2 added, 0 changed, 0 removed",
+            "\u001B[01mreading sources... \u001B[39;49;00m[ 50%] \u001B[35mindex\u001B[39;49;00m",
+            "\u001B[01mreading sources... \u001B[39;49;00m[100%] \u001B[35mpage\u001B[39;49;00m",
+            "",
+            "\u001B[01mlooking for now-outdated files... \u001B[39;49;00mnone found",
+            "\u001B[01mpickling environment... \u001B[39;49;00mdone",
+            "\u001B[01mchecking consistency... \u001B[39;49;00mdone",
+            "\u001B[01mpreparing documents... \u001B[39;49;00mdone",
+            "\u001B[01mwriting output... \u001B[39;49;00m[ 50%] \u001B[32mindex\u001B[39;49;00m",
+            "\u001B[01mwriting output... \u001B[39;49;00m[100%] \u001B[32mpage\u001B[39;49;00m",
+            "",
+            "\u001B[01mgenerating indices... \u001B[39;49;00mgenindex done",
+            "\u001B[01mwriting additional pages... \u001B[39;49;00msearch done",
+            "\u001B[01mcopying static files... \u001B[39;49;00mdone",
+            "\u001B[01mcopying extra files... \u001B[39;49;00mdone",
+            "\u001B[01mdumping search index in English (code: en)... \u001B[39;49;00mdone",
+            "\u001B[01mdumping object inventory... \u001B[39;49;00mdone",
+            "\u001B[01mbuild succeeded.\u001B[39;49;00m",
+    };
+
+    @Rule
+    public final TemporaryFolder tempDir = new TemporaryFolder();
+
+    @Test
+    public void phases() throws Exception {
+        final SphinxBuildTimings timings = new SphinxBuildTimings(1);
+        timings.onProcessStarted(Collections.singletonList("sphinx-build"), new File("."));
+        for (String line : OUTPUT) {
+            timings.onProcessOutput(line, false);
+            // A warning does not start a new phase.
+            timings.onProcessOutput("WARNING: reading sources... is not a phase", true);
+            if (line.contains("[ 50%] \u001B[32mindex")) {
+                // Make 'index' the slowest document.
+                Thread.sleep(100);
+            }
+        }
+        timings.onProcessExited(0, 123000000, ProcessResourceUsage.UNKNOWN);
+
+        final Map<String, Long> phaseNanos = timings.phaseNanos();
+        assertEquals(Arrays.asList("startup", "loading pickled environment", "building", "updating environment",
+                                   "reading sources", "looking for now-outdated files", "pickling environment",
+                                   "checking consistency", "preparing documents", "writing output",
+                                   "generating indices", "writing additional pages", "copying static files",
+                                   "copying extra files", "dumping search index", "dumping object inventory",
+                                   "build succeeded"),
+                     new ArrayList<>(phaseNanos.keySet()));
+        assertTrue(phaseNanos.get("writing output") >= 100000000);
+
+        final File report = new File(tempDir.getRoot(), "timings.json");
+        timings.writeReport(report);
+        final Map<?, ?> json = (Map<?, ?>) Json.parse(
+                new String(Files.readAllBytes(report.toPath()), StandardCharsets.UTF_8));
+        assertEquals(123L, json.get("totalMillis"));
+        assertEquals(phaseNanos.size(), ((List<?>) json.get("phases")).size());
+        final List<?> slowest = (List<?>) json.get("slowestDocuments");
+        assertEquals(1, slowest.size());
+        assertEquals("writing output", ((Map<?, ?>) slowest.get(0)).get("phase"));
+        assertEquals("index", ((Map<?, ?>) slowest.get(0)).get("document"));
+    }
+
+    @Test
+    public void phaseTransitions() {
+        final SphinxBuildTimings timings = new SphinxBuildTimings(10);
+        // Ignored until the process starts.
+        timings.onProcessOutput("reading sources... [100%] index", false);
+        assertTrue(timings.phaseNanos().isEmpty());
+
+        timings.onProcessStarted(Collections.singletonList("sphinx-build"), new File("."));
+        timings.onProcessOutput("reading sources... [ 50%] index", false);
+        timings.onProcessOutput("writing output... [100%] index", false);
+        // A phase which occurs again is accumulated.
+        timings.onProcessOutput("reading sources... [100%] page", false);
+        timings.onProcessExited(0, 0, ProcessResourceUsage.UNKNOWN);
+        assertEquals(Arrays.asList("startup", "reading sources", "writing output"),
+                     new ArrayList<>(timings.phaseNanos().keySet()));
+
+        // A new run starts over.
+        timings.onProcessStarted(Collections.singletonList("sphinx-build"), new File("."));
+        timings.onProcessOutput("build succeeded.", false);
+        timings.onProcessExited(0, 0, ProcessResourceUsage.UNKNOWN);
+        assertEquals(Arrays.asList("startup", "build succeeded"), new ArrayList<>(timings.phaseNanos().keySet()));
+    }
+}
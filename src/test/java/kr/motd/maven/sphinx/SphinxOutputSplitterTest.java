@@ -0,0 +1,104 @@
+package kr.motd.maven.sphinx;
+
+import static kr.motd.maven.sphinx.TestUtil.read;
+import static kr.motd.maven.sphinx.TestUtil.write;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class SphinxOutputSplitterTest {
+
+    @Rule
+    public final TemporaryFolder tempDir = new TemporaryFolder();
+
+    @Test
+    public void localLinks() throws Exception {
+        final File outputDir = newOutputDir();
+        final File targetDir = new File(tempDir.getRoot(), "module/target/site");
+        final SphinxOutputSplitter.Result result =
+                new SphinxOutputSplitter(outputDir, null).split("module", targetDir);
+        assertEquals(4, result.copiedFiles);
+        assertEquals(3, result.localLinks);
+
+        assertEquals("<script id=\"documentation_options\" data-url_root=\"../../../aggregate/html/\"></script>\n" +
+                     "<link rel=\"stylesheet\" href=\"_static/basic.css\" />\n" +
+                     "<a href=\"guide/intro.html#usage\">Intro</a>\n" +
+                     "<a href=\"../../../aggregate/html/other/index.html\">Other</a>\n" +
+                     "<a href=\"../../../aggregate/html/genindex.html\">Index</a>\n" +
+                     "<a href=\"https://example.com/\">Example</a>\n" +
+                     "<a href=\"#top\">Top</a>\n",
+                     read(new File(targetDir, "index.html")));
+        assertEquals("<img src=\"../_images/diagram.svg\" />\n" +
+                     "<a href=\"../index.html\">Up</a>\n",
+                     read(new File(targetDir, "guide/intro.html")));
+        assertTrue(new File(targetDir, "_static/basic.css").isFile());
+    }
+
+    @Test
+    public void publishedLinks() throws Exception {
+        final File outputDir = newOutputDir();
+        final File targetDir = new File(tempDir.getRoot(), "module/target/site");
+        final SphinxOutputSplitter.Result result =
+                new SphinxOutputSplitter(outputDir, "https://example.com/docs").split("module", targetDir);
+        assertEquals(4, result.copiedFiles);
+        assertEquals(0, result.localLinks);
+        assertEquals("<script id=\"documentation_options\" data-url_root=\"https://example.com/docs/\"></script>\n" +
+                     "<link rel=\"stylesheet\" href=\"_static/basic.css\" />\n" +
+                     "<a href=\"guide/intro.html#usage\">Intro</a>\n" +
+                     "<a href=\"https://example.com/docs/other/index.html\">Other</a>\n" +
+                     "<a href=\"https://example.com/docs/genindex.html\">Index</a>\n" +
+                     "<a href=\"https://example.com/\">Example</a>\n" +
+                     "<a href=\"#top\">Top</a>\n",
+                     read(new File(targetDir, "index.html")));
+    }
+
+    @Test
+    public void changedFilesOnly() throws Exception {
+        final File outputDir = newOutputDir();
+        final File targetDir = new File(tempDir.getRoot(), "module/target/site");
+        final SphinxOutputSplitter splitter = new SphinxOutputSplitter(outputDir, null);
+        splitter.split("module", targetDir);
+
+        // Only the changed files are written, and the files which are not built anymore are removed.
+        final File unrelated = write(new File(targetDir, "project-info.html"), "");
+        assertTrue(new File(outputDir, "module/guide/intro.html").delete());
+        write(new File(outputDir, "module/guide/usage.html"), "");
+        final File index = new File(targetDir, "index.html");
+        index.setLastModified(index.lastModified() - 10000);
+        final long indexLastModified = index.lastModified();
+        final SphinxOutputSplitter.Result result = splitter.split("module", targetDir);
+        assertEquals(1, result.copiedFiles);
+        assertEquals(3, result.unchangedFiles);
+        assertEquals(1, result.deletedFiles);
+        assertEquals(indexLastModified, index.lastModified());
+        assertFalse(new File(targetDir, "guide/intro.html").exists());
+        assertTrue(new File(targetDir, "guide/usage.html").isFile());
+        assertTrue(unrelated.isFile());
+    }
+
+    private File newOutputDir() throws Exception {
+        final File outputDir = tempDir.newFolder("aggregate", "html");
+        write(new File(outputDir, "_static/basic.css"), "body {}");
+        write(new File(outputDir, "_images/diagram.svg"), "<svg/>");
+        write(new File(outputDir, "genindex.html"), "");
+        write(new File(outputDir, "other/index.html"), "");
+        write(new File(outputDir, "module/index.html"),
+              "<script id=\"documentation_options\" data-url_root=\"../\"></script>\n" +
+              "<link rel=\"stylesheet\" href=\"../_static/basic.css\" />\n" +
+              "<a href=\"guide/intro.html#usage\">Intro</a>\n" +
+              "<a href=\"../other/index.html\">Other</a>\n" +
+              "<a href=\"../genindex.html\">Index</a>\n" +
+              "<a href=\"https://example.com/\">Example</a>\n" +
+              "<a href=\"#top\">Top</a>\n");
+        write(new File(outputDir, "module/guide/intro.html"),
+              "<img src=\"../../_images/diagram.svg\" />\n" +
+              "<a href=\"../index.html\">Up</a>\n");
+        return outputDir;
+    }
+}
@@ -0,0 +1,167 @@
+package kr.motd.maven.sphinx;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+public class SphinxRunnerListenerTest {
+
+    @Rule
+    public final TemporaryFolder tempDir = new TemporaryFolder();
+
+    @Test
+    public void downloadEvents() throws Exception {
+        final byte[] binary = new byte[4 << 20];
+        new Random(42).nextBytes(binary);
+        final byte[] sha256 = (SphinxUtil.sha256(binary) + '\n').getBytes(StandardCharsets.US_ASCII);
+
+        final HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                final byte[] content = exchange.getRequestURI().getPath().endsWith(".sha256") ? sha256 : binary;
+                exchange.sendResponseHeaders(200, content.length);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    // Write in small chunks, so that the client receives many chunks.
+                    for (int i = 0; i < content.length; i += 4096) {
+                        out.write(content, i, Math.min(4096, content.length - i));
+                    }
+                }
+            }
+        });
+        server.start();
+        try {
+            final String binaryUrl = "http://127.0.0.1:" + server.getAddress().getPort() + "/sphinx";
+            final List<String> events = new ArrayList<>();
+            final List<Long> progress = new ArrayList<>();
+            final SphinxRunnerListener listener = new SphinxRunnerListenerAdapter() {
+                @Override
+                public void onBinaryResolved(Path binary, boolean cached) {
+                    events.add("resolved " + cached);
+                }
+
+                @Override
+                public void onDownloadStarted(URI uri) {
+                    events.add("started " + uri.getPath());
+                }
+
+                @Override
+                public void onDownloadProgress(URI uri, long transferredBytes, long totalBytes) {
+                    if (totalBytes == binary.length) {
+                        progress.add(transferredBytes);
+                    }
+                }
+
+                @Override
+                public void onDownloadFinished(URI uri, long transferredBytes, long elapsedNanos) {
+                    events.add("finished " + uri.getPath() + ' ' + transferredBytes);
+                }
+
+                @Override
+                public void onBinaryVerified(Path binary, String sha256, long elapsedNanos) {
+                    events.add("verified");
+                }
+            };
+
+            final SphinxRunner runner = new SphinxRunner(binaryUrl, tempDir.getRoot(),
+                                                         Collections.<String, String>emptyMap(), null, null,
+                                                         listener);
+            final Path resolved = runner.resolveBinary(new CancellationToken(), listener);
+            assertTrue(Arrays.equals(binary, Files.readAllBytes(resolved)));
+            assertEquals(Arrays.asList("started /sphinx", "finished /sphinx " + binary.length,
+                                       "started /sphinx.sha256", "finished /sphinx.sha256 " + sha256.length,
+                                       "verified", "resolved false"), events);
+
+            // The progress is reported once per percent at most, in order.
+            assertFalse(progress.isEmpty());
+            assertTrue(String.valueOf(progress.size()), progress.size() <= 100);
+            for (int i = 1; i < progress.size(); i++) {
+                assertTrue(progress.get(i) > progress.get(i - 1));
+            }
+
+            // Resolved by the previous call.
+            events.clear();
+            runner.resolveBinary(new CancellationToken(), listener);
+            assertEquals(Collections.singletonList("resolved true"), events);
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    @Test
+    public void quietLogging() {
+        final List<String> messages = new ArrayList<>();
+        final SphinxRunnerLogger logger = new SphinxRunnerLogger() {
+            @Override
+            public void log(String msg) {
+                messages.add(msg);
+            }
+        };
+        final LoggingSphinxRunnerListener listener = new LoggingSphinxRunnerListener(logger, "[a] ", true, 2);
+
+        for (int i = 0; i < 3; i++) {
+            listener.onProcessOutput("line " + i, false);
+        }
+        listener.onProcessExited(0, 0, ProcessResourceUsage.UNKNOWN);
+        assertEquals(Collections.singletonList("Sphinx exited with code 0. Took 0ms."), messages);
+
+        messages.clear();
+        for (int i = 0; i < 3; i++) {
+            listener.onProcessOutput("line " + i, false);
+        }
+        listener.onProcessExited(1, 0, ProcessResourceUsage.UNKNOWN);
+        assertEquals(Arrays.asList("[a] ... (1 line(s) omitted)", "[a] line 1", "[a] line 2",
+                                   "Sphinx exited with code 1. Took 0ms."), messages);
+    }
+
+    @Test
+    public void errorLogging() {
+        final List<String> messages = new ArrayList<>();
+        final SphinxRunnerLogger logger = new SphinxRunnerLogger() {
+            @Override
+            public void log(String msg) {
+                messages.add("info " + msg);
+            }
+        };
+        final SphinxRunnerLogger errorLogger = new SphinxRunnerLogger() {
+            @Override
+            public void log(String msg) {
+                messages.add("warn " + msg);
+            }
+        };
+
+        LoggingSphinxRunnerListener listener = new LoggingSphinxRunnerListener(logger, errorLogger, "", false, 0);
+        listener.onProcessOutput("out", false);
+        listener.onProcessOutput("err", true);
+        assertEquals(Arrays.asList("info out", "warn err"), messages);
+
+        // The retained lines are replayed to the logger of their stream.
+        messages.clear();
+        listener = new LoggingSphinxRunnerListener(logger, errorLogger, "", true, 10);
+        listener.onProcessOutput("out", false);
+        listener.onProcessOutput("err", true);
+        listener.onProcessExited(1, 0, ProcessResourceUsage.UNKNOWN);
+        assertEquals(Arrays.asList("info out", "warn err", "info Sphinx exited with code 1. Took 0ms."), messages);
+    }
+}
@@ -0,0 +1,154 @@
+package kr.motd.maven.sphinx;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.junit.Assume.assumeFalse;
+
+import java.io.File;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Runs a shell script in place of the Sphinx binary.
+ */
+public class SphinxRunnerProcessTest {
+
+    @Rule
+    public final TemporaryFolder tempDir = new TemporaryFolder();
+
+    @Before
+    public void assumeUnix() {
+        assumeFalse(System.getProperty("os.name").toLowerCase(Locale.US).contains("windows"));
+    }
+
+    @Test
+    public void processOutput() throws Exception {
+        final List<String> lines = new ArrayList<>();
+        final SphinxRunner runner = newRunner("echo out; echo err >&2; printf last; exit 3", lines);
+
+        assertEquals(3, runner.run(tempDir.getRoot(), Collections.singletonList("-v"),
+                                   ProcessLimits.NONE, new CancellationToken()));
+        Collections.sort(lines);
+        assertEquals(Arrays.asList("err (stderr)", "last", "out"), lines);
+    }
+
+    @Test
+    @SuppressWarnings("deprecation")
+    public void deprecatedRedirectHooks() throws Exception {
+        final List<String> lines = new ArrayList<>();
+        final SphinxRunner runner = new SphinxRunner(script("echo out; echo err >&2"), tempDir.getRoot(),
+                                                     Collections.<String, String>emptyMap(), null, null,
+                                                     recordingListener(lines)) {
+            @Override
+            protected void redirectStderr(InputStream stderr) throws Exception {
+                super.redirectStderr(stderr);
+                lines.add("redirectStderr");
+            }
+
+            @Override
+            protected void redirect(InputStream in, OutputStream out) throws Exception {
+                out.write("> ".getBytes(StandardCharsets.UTF_8));
+                super.redirect(in, out);
+            }
+        };
+
+        assertEquals(0, runner.run(tempDir.getRoot(), Collections.singletonList("-v"),
+                                   ProcessLimits.NONE, new CancellationToken()));
+        Collections.sort(lines);
+        assertEquals(Arrays.asList("> err (stderr)", "> out", "redirectStderr"), lines);
+    }
+
+    @Test(timeout = 30000)
+    public void cancellation() throws Exception {
+        final SphinxRunner runner = newRunner("sleep 30", new ArrayList<String>());
+        final CancellationToken token = new CancellationToken();
+        final Thread canceller = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(200);
+                } catch (InterruptedException ignored) {
+                    // Cancel now.
+                }
+                token.cancel();
+            }
+        };
+        canceller.start();
+        try {
+            runner.run(tempDir.getRoot(), Collections.singletonList("-v"), ProcessLimits.NONE, token);
+            fail();
+        } catch (SphinxException e) {
+            assertEquals("Sphinx has been cancelled", e.getMessage());
+        }
+        // Cancelling the token does not interrupt the current thread.
+        assertFalse(Thread.currentThread().isInterrupted());
+    }
+
+    @Test(timeout = 30000)
+    public void interruption() throws Exception {
+        final SphinxRunner runner = newRunner("sleep 30", new ArrayList<String>());
+        final Thread runnerThread = Thread.currentThread();
+        final Thread interrupter = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(200);
+                } catch (InterruptedException ignored) {
+                    // Interrupt now.
+                }
+                runnerThread.interrupt();
+            }
+        };
+        interrupter.start();
+        try {
+            runner.run(tempDir.getRoot(), Collections.singletonList("-v"),
+                       ProcessLimits.NONE, new CancellationToken());
+            fail();
+        } catch (SphinxException e) {
+            assertEquals("Sphinx has been cancelled", e.getMessage());
+        } finally {
+            interrupter.join();
+        }
+        // The interrupt status is restored.
+        assertTrue(Thread.interrupted());
+    }
+
+    private SphinxRunner newRunner(String script, List<String> lines) throws Exception {
+        return new SphinxRunner(script(script), tempDir.getRoot(), Collections.<String, String>emptyMap(),
+                                null, null, recordingListener(lines));
+    }
+
+    private String script(String script) throws Exception {
+        final File f = tempDir.newFile();
+        Files.write(f.toPath(), ("#!/bin/sh\n" + script + '\n').getBytes(StandardCharsets.UTF_8));
+        if (!f.setExecutable(true)) {
+            throw new IllegalStateException("failed to make executable: " + f);
+        }
+        return f.toURI().toString();
+    }
+
+    private static SphinxRunnerListener recordingListener(final List<String> lines) {
+        return new SphinxRunnerListenerAdapter() {
+            @Override
+            public void onProcessOutput(String line, boolean error) {
+                synchronized (lines) {
+                    lines.add(error ? line + " (stderr)" : line);
+                }
+            }
+        };
+    }
+}
@@ -0,0 +1,50 @@
+package kr.motd.maven.sphinx;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+/**
+ * The fixtures shared by the tests.
+ */
+final class TestUtil {
+
+    /**
+     * A {@link SphinxRunnerListener} which ignores all events.
+     */
+    static final SphinxRunnerListener NOOP_LISTENER = new SphinxRunnerListenerAdapter() {};
+
+    /**
+     * Writes the specified UTF-8 content into the file at the specified path relative to the specified directory,
+     * creating its parent directories if necessary.
+     */
+    static File write(File dir, String path, String content) throws IOException {
+        return write(new File(dir, path), content);
+    }
+
+    /**
+     * Writes the specified UTF-8 content into the specified file, creating its parent directories if necessary.
+     */
+    static File write(File file, String content) throws IOException {
+        file.getParentFile().mkdirs();
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+
+    /**
+     * Reads the UTF-8 content of the file at the specified path relative to the specified directory.
+     */
+    static String read(File dir, String path) throws IOException {
+        return read(new File(dir, path));
+    }
+
+    /**
+     * Reads the UTF-8 content of the specified file.
+     */
+    static String read(File file) throws IOException {
+        return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+    }
+
+    private TestUtil() {}
+}
@@ -0,0 +1,49 @@
+package kr.motd.maven.sphinx;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class VerificationStampTest {
+
+    @Rule
+    public final TemporaryFolder tempDir = new TemporaryFolder();
+
+    @Test
+    public void test() throws Exception {
+        final Path file = tempDir.newFile("sphinx.bin").toPath();
+        Files.write(file, "foo".getBytes(StandardCharsets.US_ASCII));
+        final String sha256 = SphinxUtil.toHexString(SphinxUtil.sha256(file));
+        assertFalse(VerificationStamp.isValid(file, sha256));
+
+        VerificationStamp.record(file, sha256);
+        assertTrue(VerificationStamp.isValid(file, sha256));
+        assertTrue(VerificationStamp.isValid(file, sha256.toUpperCase()));
+        assertFalse(VerificationStamp.isValid(file, SphinxUtil.sha256(new byte[0])));
+
+        // Truncated
+        Files.write(file, "fo".getBytes(StandardCharsets.US_ASCII));
+        assertFalse(VerificationStamp.isValid(file, sha256));
+
+        // Replaced with a new file
+        VerificationStamp.record(file, sha256);
+        final File newFile = tempDir.newFile("sphinx.new");
+        Files.write(newFile.toPath(), "fo".getBytes(StandardCharsets.US_ASCII));
+        Files.setLastModifiedTime(newFile.toPath(), Files.getLastModifiedTime(file));
+        Files.move(newFile.toPath(), file, StandardCopyOption.REPLACE_EXISTING);
+        assertFalse(VerificationStamp.isValid(file, sha256));
+
+        VerificationStamp.record(file, sha256);
+        VerificationStamp.delete(file);
+        assertFalse(VerificationStamp.isValid(file, sha256));
+    }
+}